@@ -9,8 +9,12 @@ import java.util.Arrays;
 import java.util.Vector;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 /*
  * Generic Item Interface Exporter
@@ -110,7 +114,72 @@ public final class Remote extends UnicastRemoteObject
    private static int defaultServerPort, defaultClientPort;
    private static RCSF defaultRCSF;
    private static RSSF defaultRSSF;
-   private static final HashMap cache   = new HashMap();
+   /**
+    * A method lookup key: the item class, the method name, and the argument
+    * classes, compared by value.
+    */
+   private static final class Signature {
+      private final Class type;
+      private final String method;
+      private final Class[] args;
+      private final int hash;
+      private Signature(Class type, String method, Class[] args) {
+         this.type = type;
+         this.method = method;
+         this.args = args;
+         hash = (type.hashCode() * 31 + method.hashCode()) * 31 +
+            Arrays.hashCode(args);
+      }
+      public boolean equals(Object o) {
+         if (!(o instanceof Signature)) return false;
+         Signature s = (Signature)o;
+         return s.type == type && s.method.equals(method) &&
+            Arrays.equals(s.args, args);
+      }
+      public int hashCode() { return hash; }
+   }
+   /**
+    * A cached lookup result: the best method, if any, and the handle used
+    * to invoke it, created on first invocation.
+    */
+   private static final class Target {
+      private final Method method;
+      private volatile MethodHandle handle;
+      private volatile boolean reflective;
+      private Target(Method method) {
+         this.method = method;
+         // static methods take no receiver: invoked through reflection
+         reflective = method != null &&
+            java.lang.reflect.Modifier.isStatic(method.getModifiers());
+      }
+      private Object invoke(Object item, Object[] args) throws Throwable {
+         MethodHandle h = handle;
+         if (h == null && !reflective) try { // (item, Object[]) -> Object
+            int count = method.getParameterTypes().length;
+            h = MethodHandles.publicLookup().unreflect(method).
+               asFixedArity(). // varargs arrays are passed as they are
+                  asType(MethodType.genericMethodType(count + 1)).
+                     asSpreader(Object[].class, count);
+            handle = h;
+         } catch(Exception x) { reflective = true; } // handle not buildable
+         if (h == null) try { // not accessible as a handle, use reflection
+            return method.invoke(item, args);
+         } catch(java.lang.reflect.InvocationTargetException x) {
+            throw x.getTargetException();
+         }
+         Object[] spread = args != null ? args : NOARGS;
+         return h.invokeExact(item, spread);
+      }
+   }
+   /**
+    * The maximum number of method lookups held in the cache, read from the
+    * gnu.cajo.invoke.Remote.cacheSize system property. Beyond it, arbitrary
+    * entries are evicted.
+    */
+   private static final int CACHE_SIZE =
+      Integer.getInteger("gnu.cajo.invoke.Remote.cacheSize", 1024).intValue();
+   private static final Target NO_TARGET = new Target(null);
+   private static final ConcurrentHashMap cache = new ConcurrentHashMap();
    private static final Vector items    = new Vector();
    private static final Class[] NULL    = {}, OBJECT = { Object.class };
    private static final Object[] NOARGS = {};
@@ -309,7 +378,7 @@ public final class Remote extends UnicastRemoteObject
             try { Remote.unexportObject((Remote)items.elementAt(i), true); }
             catch(NoSuchObjectException x) {}
          items.clear();
-         synchronized(cache) { cache.clear(); }
+         cache.clear();
       }
    }
    /**
@@ -455,17 +524,37 @@ public final class Remote extends UnicastRemoteObject
     */
    public static Method findBestMethod(
       Object item, String method, Class[] args) {
+      return findTarget(item, method, args).method;
+   }
+   /**
+    * Looks up the best method in the cache, keyed by the item class, method
+    * name, and argument classes; and resolves it on a cache miss.
+    */
+   private static Target findTarget(Object item, String method, Class[] args) {
       if (args == null) args = NULL;
-      HashMap methods = (HashMap)cache.get(item.getClass());
-      if (methods != null) { // item already chached?
-         HashMap arguments = (HashMap)methods.get(method);
-         if (arguments != null) { // method already chached?
-            Object[] argumentSet = arguments.keySet().toArray();
-            for (int i = 0; i < argumentSet.length; i++)
-               if (Arrays.equals(args, (Class[])argumentSet[i]))
-                  return (Method)arguments.get(argumentSet[i]);
+      Signature signature = new Signature(item.getClass(), method, args);
+      Target target = (Target)cache.get(signature);
+      if (target != null) return target;
+      Method best = resolveBestMethod(item, method, args);
+      target = best != null ? new Target(best) : NO_TARGET;
+      if (cache.size() >= CACHE_SIZE) { // make room, roughly...
+         Iterator i = cache.keySet().iterator();
+         for (int n = cache.size() - CACHE_SIZE; n >= 0 && i.hasNext(); n--) {
+            i.next();
+            i.remove();
          }
-      } // else lookup best method...
+      }
+      // the key must not share the caller's array, which may be reused
+      Object previous = cache.putIfAbsent(new Signature(
+         signature.type, method, (Class[])args.clone()), target);
+      return previous != null ? (Target)previous : target;
+   }
+   /**
+    * Number of method lookups currently cached.
+    */
+   static int getCacheSize() { return cache.size(); }
+   private static Method resolveBestMethod(
+      Object item, String method, Class[] args) {
       ArrayList matchList = new ArrayList();
       if (((Object[])args).length > 0) { // if multiple arguments...
          Method[] ms = item.getClass().getMethods();
@@ -497,19 +586,6 @@ public final class Remote extends UnicastRemoteObject
             }
          }
       }
-      synchronized(cache) { // update lookup cache, if necessary...
-         methods = (HashMap)cache.get(item.getClass());
-         if (methods == null) {
-            methods = new HashMap();
-            cache.put(item.getClass(), methods);
-         }
-         HashMap arguments = (HashMap)methods.get(method);
-         if (arguments == null) {
-            arguments = new HashMap();
-            methods.put(method, arguments);
-         }
-         if (arguments.get(args) == null) arguments.put(args, best);
-      }
       return best;
    }
    /**
@@ -567,19 +643,19 @@ public final class Remote extends UnicastRemoteObject
       if (c_args != NULL)
          for (int i = 0; i < c_args.length; i++)
             c_args[i] = o_args[i] == null ? null : o_args[i].getClass();
-      Method m = findBestMethod(item, method, c_args);
-      if (m == null && args != null) {
+      Target t = findTarget(item, method, c_args);
+      if (t.method == null && args != null) {
          c_args = new Class[] { args.getClass() };
-         m = findBestMethod(item, method, c_args);
+         t = findTarget(item, method, c_args);
          o_args = new Object[] { args };
       }
-      if (m == null) {
+      if (t.method == null) {
          c_args = new Class[] { args.getClass() };
-         m = findBestMethod(item, method, OBJECT);
+         t = findTarget(item, method, OBJECT);
          o_args = new Object[] { args };
       }
-      if (m != null) try {
-         Object result = m.invoke(item, o_args != NOARGS ? o_args : null);
+      if (t.method != null) try {
+         Object result = t.invoke(item, o_args);
          if (result != null && !(result instanceof Serializable)) try {
             RemoteServer.getClientHost();
             HashSet interfaces = new HashSet();
@@ -589,9 +665,8 @@ public final class Remote extends UnicastRemoteObject
                result, (Class[])interfaces.toArray(new Class[0]));
          } catch(ServerNotActiveException x) { /* not a remote call */ }
          return result;
-      } catch(java.lang.reflect.InvocationTargetException x) {
-         Throwable t = x.getTargetException();
-         throw t instanceof Exception ? (Exception)t : new Exception(t);
+      } catch(Throwable x) { // thrown directly by the invoked method
+         throw x instanceof Exception ? (Exception)x : new Exception(x);
       }
       StringBuffer sb = new StringBuffer(item.getClass().getName());
       sb.append('.').append(method).append('(');
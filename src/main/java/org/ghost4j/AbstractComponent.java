@@ -99,8 +99,9 @@ public abstract class AbstractComponent implements Component {
 	// if no device names know yet : query the interpreter
 	if (AVAILABLE_DEVICE_NAMES.size() == 0) {
 
-	    // get Ghostscript instance
-	    Ghostscript gs = Ghostscript.getInstance();
+	    // get Ghostscript instance pool
+	    GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	    GhostscriptInstance gs = null;
 
 	    // retrieve available devices
 	    try {
@@ -110,12 +111,11 @@ public abstract class AbstractComponent implements Component {
 		String[] gsArgs = { "-dQUIET", "-dNOPAUSE", "-dBATCH",
 			"-dNODISPLAY" };
 
-		synchronized (gs) {
-		    gs.setStdOut(baos);
-		    gs.initialize(gsArgs);
-		    gs.runString("devicenames ==");
-		    gs.exit();
-		}
+		gs = pool.borrow();
+		gs.setStdOut(baos);
+		gs.initialize(gsArgs);
+		gs.runString("devicenames ==");
+		gs.exit();
 
 		// result string
 		String result = new String(baos.toByteArray());
@@ -133,7 +133,7 @@ public abstract class AbstractComponent implements Component {
 	    } catch (GhostscriptException e) {
 		throw e;
 	    } finally {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    }
 	}
 
@@ -8,12 +8,45 @@ package org.ghost4j;
 
 import gnu.cajo.invoke.Remote;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.UnmarshalException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.ghost4j.util.DiskStore;
 import org.ghost4j.util.JavaFork;
-import org.ghost4j.util.NetworkUtil;
+import org.ghost4j.util.UnixSocketUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,6 +58,86 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class AbstractRemoteComponent extends AbstractComponent {
 
+    /**
+     * Name of the system property used to enable (true) class data sharing
+     * archives for remote component JVMs (Java 13 or later).
+     */
+    public static final String PROPERTY_NAME_CLASS_DATA_SHARING = "ghost4j.remote.cds";
+
+    /**
+     * Name of the system property giving extra options (space separated) for
+     * remote component JVMs, for instance -XX:TieredStopAtLevel=1.
+     */
+    public static final String PROPERTY_NAME_JVM_OPTIONS = "ghost4j.remote.jvmoptions";
+
+    /**
+     * Directory of the class data sharing archives of remote component JVMs.
+     */
+    public static final String SHARED_ARCHIVE_PATH = DiskStore.ROOT_PATH
+	    + File.separator + "cds";
+
+    /**
+     * Prefix of the message printed by a remote server to report its port.
+     */
+    static final String SERVER_PORT_MESSAGE = "ghost4j.remote.port=";
+
+    /**
+     * Name of the environment variable giving a remote server the Unix domain
+     * socket file to listen on.
+     */
+    static final String SOCKET_ENVIRONMENT_NAME = "ghost4j.remote.socket";
+
+    /**
+     * Name of the environment variable giving a remote server the directory
+     * of the memory-mapped files used to exchange large payloads.
+     */
+    static final String SHARED_MEMORY_ENVIRONMENT_NAME = "ghost4j.remote.sharedmemory";
+
+    /**
+     * Maximum time (in milliseconds) to wait for a remote server to start.
+     */
+    private static final long SERVER_START_TIMEOUT = 30000;
+
+    /**
+     * Maximum time (in milliseconds) to wait for a failing worker to
+     * terminate, to tell a crash from a job failure.
+     */
+    private static final long CRASH_DETECTION_TIMEOUT = 1000;
+
+    /**
+     * Exit value of a process killed with SIGKILL (by the out of memory
+     * killer for instance).
+     */
+    private static final int KILLED_EXIT_VALUE = 137;
+
+    /**
+     * Maximum number of attempts of a retryable job whose worker crashed.
+     */
+    private static final int MAX_JOB_ATTEMPTS = 2;
+
+    /**
+     * Type of the garbage collection notifications of HotSpot and OpenJ9 JVMs.
+     */
+    private static final String GC_NOTIFICATION_TYPE = "com.sun.management.gc.notification";
+
+    /**
+     * Largest heap used after a garbage collection since the start of the
+     * current job (-1 if no garbage collection occurred), updated in worker
+     * JVMs by garbage collection notifications.
+     */
+    private static final AtomicLong liveHeap = new AtomicLong(-1);
+
+    /**
+     * Whether garbage collections are monitored in the current JVM.
+     */
+    private static boolean heapMonitored;
+
+    /**
+     * Scheduler stopping workers whose job deadline is passed (created when
+     * needed).
+     */
+    private static ScheduledThreadPoolExecutor deadlineScheduler;
+
     /**
      * Logger used to log messages.
      */
@@ -37,20 +150,98 @@ public abstract class AbstractRemoteComponent extends AbstractComponent {
     /**
      * Number of parallel processes running.
      */
-    protected int processCount = 0;
+    protected volatile int processCount = 0;
+    /**
+     * Maximum time (in milliseconds) a request waits for a free process (0 to
+     * wait without limit).
+     */
+    private long processWaitTimeout = 0;
+    /**
+     * Maximum number of requests waiting for a free process: requests beyond
+     * it are rejected immediately (0 for no limit).
+     */
+    private int maxQueueLength = 0;
+    /**
+     * Maximum time (in milliseconds) a job can run on a remote worker before
+     * the worker is stopped (0 for no limit).
+     */
+    private long jobTimeout = 0;
+    /**
+     * Permits bounding the number of parallel processes (fair: requests get
+     * a process in arrival order, as soon as one is free).
+     */
+    private final AdmissionSemaphore processPermits = new AdmissionSemaphore();
 
     /**
      * Wait for a process to get free.
+     * 
+     * @deprecated Use acquireProcess / releaseProcess to reserve a process
      */
+    @Deprecated
     public void waitForFreeProcess() {
 
-	while (processCount >= maxProcessCount) {
-	    try {
-		Thread.sleep(1000);
-	    } catch (Exception e) {
-		// nothing
+	try {
+	    acquireProcess();
+	    releaseProcess();
+	} catch (IOException e) {
+	    // nothing
+	}
+    }
+
+    /**
+     * Waits for a free process and reserves it. Requests are served in
+     * arrival order, and woken up as soon as a process is released.
+     * 
+     * @throws IOException
+     *             If the wait queue is full, if the wait times out or if the
+     *             thread is interrupted
+     */
+    protected void acquireProcess() throws IOException {
+
+	if (maxQueueLength > 0 && processPermits.availablePermits() <= 0
+		&& processPermits.getQueueLength() >= maxQueueLength) {
+	    throw new IOException("Too many requests waiting for a free process ("
+		    + processPermits.getQueueLength() + ")");
+	}
+
+	// follow maxProcessCount changes
+	synchronized (processPermits) {
+	    processPermits.resize(maxProcessCount);
+	}
+
+	boolean acquired;
+	try {
+	    if (processWaitTimeout > 0) {
+		acquired = processPermits.tryAcquire(processWaitTimeout,
+			TimeUnit.MILLISECONDS);
+	    } else {
+		processPermits.acquire();
+		acquired = true;
 	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while waiting for a free process");
+	}
+
+	if (!acquired) {
+	    throw new IOException("Timeout waiting for a free process after "
+		    + processWaitTimeout + " ms");
+	}
+
+	synchronized (processPermits) {
+	    processCount++;
+	}
+    }
+
+    /**
+     * Releases a process reserved with acquireProcess.
+     */
+    protected void releaseProcess() {
+
+	synchronized (processPermits) {
+	    processCount--;
 	}
+	processPermits.release();
     }
 
     /**
@@ -69,39 +260,154 @@ public abstract class AbstractRemoteComponent extends AbstractComponent {
     }
 
     /**
-     * Start a remote component server on a Javafork object.
+     * Start a remote component server on a Javafork object. The server binds
+     * an ephemeral port and reports it on its output once listening.
      * 
      * @param fork
      *            JavaFork used to run the server
      * @return Port number used by the server
      * @throws IOException
      */
-    protected synchronized int startRemoteServer(JavaFork fork)
-	    throws IOException {
+    protected int startRemoteServer(JavaFork fork) throws IOException {
+	return startRemoteServer(fork, null);
+    }
 
-	// get free TCP port to run Cajo server on
-	int cajoPort = NetworkUtil.findAvailablePort("127.0.0.1", 5000, 6000);
-	if (cajoPort == 0) {
-	    throw new IOException("No port available to start remote component");
-	}
-	logger.debug(Thread.currentThread() + " uses " + cajoPort
-		+ " as server port");
+    /**
+     * Start a remote component server on a Javafork object, also serving
+     * requests on a Unix domain socket if supported by the remote JVM (the
+     * socket file exists once the server is started).
+     * 
+     * @param fork
+     *            JavaFork used to run the server
+     * @param socketFile
+     *            Socket file the server should listen on (null for none)
+     * @return Port number used by the server
+     * @throws IOException
+     */
+    protected int startRemoteServer(JavaFork fork, File socketFile)
+	    throws IOException {
 
-	// add extra environment variables to JVM
+	// add extra environment variables to JVM (keeping those already set)
 	Map<String, String> environment = new HashMap<String, String>();
-	// Cajo port
-	environment.put("cajo.port", String.valueOf(cajoPort));
+	if (fork.getEnvironment() != null) {
+	    environment.putAll(fork.getEnvironment());
+	}
+	// Cajo port: let the system choose it
+	environment.put("cajo.port", "0");
+	// local socket
+	if (socketFile != null) {
+	    environment.put(SOCKET_ENVIRONMENT_NAME,
+		    socketFile.getAbsolutePath());
+	}
 	fork.setEnvironment(environment);
+	fork.setReadyMessagePrefix(SERVER_PORT_MESSAGE);
 
 	// start new JVM with current converter
 	fork.start();
 
-	// wait for the remote JVM to start
-	NetworkUtil.waitUntilPortListening("127.0.0.1", cajoPort, 10000);
+	// wait for the remote JVM to report its port
+	String message = fork.waitUntilReady(SERVER_START_TIMEOUT);
+	int cajoPort;
+	try {
+	    cajoPort = Integer.parseInt(message.trim());
+	} catch (NumberFormatException e) {
+	    throw new IOException("Invalid port reported by remote component: "
+		    + message);
+	}
+	logger.debug(Thread.currentThread() + " uses " + cajoPort
+		+ " as server port");
 
 	return cajoPort;
     }
 
+    /**
+     * Reports the port of the remote server started in the current JVM to the
+     * parent JVM (through the standard output). Must be called once the
+     * server is bound.
+     */
+    protected static void reportServerPort() {
+
+	// jobs are about to run: measure their heap
+	startHeapMonitoring();
+
+	System.out.println(SERVER_PORT_MESSAGE + Remote.getDefaultServerPort());
+	System.out.flush();
+    }
+
+    /**
+     * Starts serving requests of a remote component on the Unix domain socket
+     * given by the parent JVM (if any, if supported by the current JVM and if
+     * the component serves channel requests). Must be called before reporting
+     * the server port.
+     * 
+     * @param component
+     *            Component serving the requests
+     */
+    protected static void startChannelServer(AbstractRemoteComponent component) {
+
+	String socketPath = System.getenv(SOCKET_ENVIRONMENT_NAME);
+	if (socketPath == null || !UnixSocketUtil.isSupported()
+		|| !component.isChannelSupported()) {
+	    return;
+	}
+
+	// shared memory directory (if enabled)
+	File sharedMemoryDirectory = null;
+	String sharedMemoryPath = System.getenv(SHARED_MEMORY_ENVIRONMENT_NAME);
+	if (sharedMemoryPath != null) {
+	    sharedMemoryDirectory = new File(sharedMemoryPath);
+	}
+
+	try {
+	    new RemoteChannelServer(component, new File(socketPath),
+		    sharedMemoryDirectory).start();
+	} catch (IOException e) {
+	    // requests will be served by the Cajo server only
+	    component.logger.warn("Cannot listen on local socket "
+		    + socketPath, e);
+	}
+    }
+
+    /**
+     * Serves a request sent on the local socket by a component of the parent
+     * JVM: reads the request from the channel, runs it and writes the result.
+     * Exceptions thrown are sent back to the parent component.
+     * <p>
+     * Components not overriding this method are only served by Cajo: no local
+     * socket is opened for them.
+     * 
+     * @param channel
+     *            Channel of the request
+     * @throws Exception
+     */
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+	throw new UnsupportedOperationException(
+		"Local socket requests are not supported by this component");
+    }
+
+    /**
+     * Checks if the component serves requests sent on a local socket (if it
+     * overrides serveChannelRequest).
+     * 
+     * @return true if supported
+     */
+    boolean isChannelSupported() {
+
+	Class<?> clazz = this.getClass();
+	while (clazz != AbstractRemoteComponent.class) {
+	    try {
+		clazz.getDeclaredMethod("serveChannelRequest",
+			RemoteChannel.class);
+		return true;
+	    } catch (NoSuchMethodException e) {
+		// look in super class
+		clazz = clazz.getSuperclass();
+	    }
+	}
+
+	return false;
+    }
+
     /**
      * Get a client proxy of a remote component
      * 
@@ -132,18 +438,533 @@ public abstract class AbstractRemoteComponent extends AbstractComponent {
 	fork.setWaitBeforeExiting(false);
 	fork.setStartClass(this.getClass());
 
+	// class data sharing archive (created by the first JVM)
+	if (Boolean.getBoolean(PROPERTY_NAME_CLASS_DATA_SHARING)) {
+	    fork.setSharedArchiveDirectory(new File(SHARED_ARCHIVE_PATH));
+	}
+
+	// extra JVM options
+	String jvmOptions = System.getProperty(PROPERTY_NAME_JVM_OPTIONS);
+	if (jvmOptions != null && jvmOptions.trim().length() > 0) {
+	    fork.getJvmOptions().addAll(
+		    Arrays.asList(jvmOptions.trim().split("\\s+")));
+	}
+
 	return fork;
     }
 
+    /**
+     * Builds the key identifying the workload of a job in the remote heap
+     * model: component class, resolution (if the component has one) and job
+     * size.
+     * 
+     * @param unit
+     *            Unit of the job size (pages, mb...)
+     * @param amount
+     *            Job size
+     * @return The workload key
+     */
+    protected String getWorkloadKey(String unit, long amount) {
+
+	int resolution = 0;
+	try {
+	    Object value = this.extractSettings().get("resolution");
+	    if (value instanceof Number) {
+		resolution = ((Number) value).intValue();
+	    }
+	} catch (Exception e) {
+	    // no resolution
+	}
+
+	return RemoteHeapModel.getWorkloadKey(this.getClass(), resolution,
+		unit, amount);
+    }
+
+    /**
+     * Runs a job on a worker leased from the shared RemoteWorkerPool. If the
+     * worker crashes during the job, the job is run again on another worker
+     * (once) when it is retryable; otherwise a RemoteWorkerException is
+     * thrown. Memory used by the job is recorded in the remote heap model.
+     * <p>
+     * If a job timeout is set, a job still running at its deadline is
+     * stopped by killing its worker (which is replaced in the pool) and an
+     * IOException is thrown: timed out jobs are not retried. Without job
+     * timeout, a worker hanging during a job (while alive) is not detected,
+     * as heartbeats only check idle workers.
+     * 
+     * @param remoteInterface
+     *            Interface of the remote component
+     * @param workloadKey
+     *            Workload key of the job
+     * @param defaultXmx
+     *            Heap size (in MB) of the worker if the workload was never
+     *            observed
+     * @param job
+     *            Job to run
+     * @return The job result
+     * @throws Exception
+     *             If the job fails
+     */
+    protected <T> T runRemoteJob(Class<?> remoteInterface, String workloadKey,
+	    int defaultXmx, RemoteJob<T> job) throws Exception {
+
+	RemoteWorkerPool pool = RemoteWorkerPool.getInstance();
+
+	for (int attempt = 1;; attempt++) {
+
+	    // sized again on retry: a killed worker may have lacked memory
+	    int xmx = RemoteHeapModel.getInstance().estimateXmx(workloadKey,
+		    defaultXmx);
+	    RemoteWorker worker = pool.borrow(this, remoteInterface, xmx);
+	    JobDeadline deadline = jobTimeout > 0 ? new JobDeadline(worker,
+		    jobTimeout) : null;
+
+	    try {
+		return job.run(worker);
+	    } catch (Exception e) {
+
+		if (deadline != null && deadline.finish()) {
+		    throw new IOException("Remote job timed out after "
+			    + jobTimeout + " ms: worker on port "
+			    + worker.getPort() + " stopped", e);
+		}
+		if (!(e instanceof IOException)) {
+		    throw e;
+		}
+
+		IOException failure = checkWorkerCrash(worker, (IOException) e);
+		if (!(failure instanceof RemoteWorkerException)
+			|| attempt >= MAX_JOB_ATTEMPTS || !job.isRetryable()) {
+		    throw failure;
+		}
+		logger.warn(failure.getMessage()
+			+ ": retrying on another worker");
+
+	    } finally {
+		if (deadline != null && deadline.finish()) {
+		    pool.replace(worker);
+		} else {
+		    this.recordMemoryUsage(workloadKey, worker);
+		    pool.release(worker);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Checks if a communication failure with a worker comes from the worker
+     * JVM terminating (crash, killed process...). Only transport failures are
+     * checked: exceptions thrown by the remote component are returned as they
+     * are, without waiting.
+     * 
+     * @param worker
+     *            Worker
+     * @param e
+     *            Communication failure
+     * @return A RemoteWorkerException if the worker terminated, the failure
+     *         otherwise
+     */
+    static IOException checkWorkerCrash(RemoteWorker worker, IOException e) {
+
+	if (!isTransportFailure(e)
+		|| !worker.waitForExit(CRASH_DETECTION_TIMEOUT)) {
+	    return e;
+	}
+
+	return new RemoteWorkerException("Remote worker on port "
+		+ worker.getPort() + " terminated during job (exit value "
+		+ worker.getExitValue() + ")", worker.getExitValue(), e);
+    }
+
+    /**
+     * Checks if a communication failure means the connection with the worker
+     * broke (end of stream, connection reset or refused, Cajo call not
+     * completed), as opposed to an exception sent back by the worker.
+     * 
+     * @param e
+     *            Communication failure
+     * @return true for a transport failure
+     */
+    static boolean isTransportFailure(IOException e) {
+
+	if (e instanceof EOFException || e instanceof SocketException
+		|| e instanceof ClosedChannelException
+		|| e instanceof ConnectException
+		|| e instanceof ConnectIOException
+		|| e instanceof UnmarshalException) {
+	    return true;
+	}
+
+	// socket channel failures are reported as plain IOExceptions
+	String message = e.getMessage();
+	return e.getClass() == IOException.class
+		&& message != null
+		&& (message.contains("Connection reset") || message
+			.contains("Broken pipe"));
+    }
+
+    /**
+     * Records the memory used by the job just run by a worker in the remote
+     * heap model. Must be called before the worker is released.
+     * 
+     * @param workloadKey
+     *            Workload key of the job
+     * @param worker
+     *            Worker which ran the job (may be null)
+     */
+    protected void recordMemoryUsage(String workloadKey, RemoteWorker worker) {
+
+	if (worker == null) {
+	    return;
+	}
+
+	RemoteHeapModel model = RemoteHeapModel.getInstance();
+
+	if (worker.isRunning()) {
+	    // reported by the worker with the job results
+	    long[] usage = worker.getJobMemoryUsage();
+	    if (usage != null) {
+		model.record(workloadKey, usage[0], usage[1]);
+	    }
+	    return;
+	}
+
+	// a killed worker most likely lacked memory (crashes are not recorded)
+	if (worker.waitForExit(0)
+		&& worker.getExitValue() == KILLED_EXIT_VALUE) {
+	    model.recordFailure(workloadKey, worker.getXmx());
+	}
+    }
+
+    /**
+     * Runs a method of the component and returns its result with the memory
+     * used meanwhile (see collectMemoryUsage), so that memory usage comes
+     * back with the job result. Called remotely (Cajo) on workers by
+     * RemoteWorker.invoke.
+     * 
+     * @param method
+     *            Name of the method
+     * @param args
+     *            Method arguments (as given to Remote.invoke)
+     * @return The method result and the memory usage
+     * @throws Exception
+     *             If the method fails
+     */
+    public Object[] invokeMeasured(String method, Object args)
+	    throws Exception {
+
+	startMemoryUsage();
+	Object result = Remote.invoke(this, method, args);
+
+	return new Object[] { result, collectMemoryUsage() };
+    }
+
+    /**
+     * Resets the live heap and the peak resident set size of the JVM. Called
+     * on workers when a job starts.
+     */
+    static void startMemoryUsage() {
+
+	liveHeap.set(-1);
+
+	// reset the high water mark of the RSS
+	try {
+	    Writer writer = new FileWriter("/proc/self/clear_refs");
+	    try {
+		writer.write("5");
+	    } finally {
+		writer.close();
+	    }
+	} catch (Exception e) {
+	    // not available (not Linux or reset not allowed)
+	}
+    }
+
+    /**
+     * Gets the live heap and peak resident set size of the JVM since the
+     * start of the current (or last) job, or since startup. Called on workers
+     * after each job, and remotely by heartbeats.
+     * <p>
+     * The live heap is the largest heap used after a garbage collection: peak
+     * usages also count garbage waiting for collection, which depends on the
+     * heap size rather than on the job. If no garbage collection occurred,
+     * the heap currently used (live objects and garbage) is returned.
+     * 
+     * @return Live heap and peak RSS (in bytes, -1 if unknown)
+     */
+    public long[] collectMemoryUsage() {
+
+	long heap = liveHeap.get();
+	if (heap < 0) {
+	    heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+		    .getUsed();
+	}
+
+	// peak RSS: high water mark reported by Linux
+	long peakRss = -1;
+	try {
+	    BufferedReader reader = new BufferedReader(new FileReader(
+		    "/proc/self/status"));
+	    try {
+		String line;
+		while ((line = reader.readLine()) != null) {
+		    if (line.startsWith("VmHWM:")) {
+			peakRss = Long.parseLong(line.substring(6)
+				.replace("kB", "").trim()) * 1024;
+			break;
+		    }
+		}
+	    } finally {
+		reader.close();
+	    }
+	} catch (Exception e) {
+	    // not available (not Linux)
+	}
+
+	return new long[] { heap, peakRss };
+    }
+
+    /**
+     * Starts recording the heap used after each garbage collection of the
+     * current JVM (see collectMemoryUsage).
+     */
+    static synchronized void startHeapMonitoring() {
+
+	if (heapMonitored) {
+	    return;
+	}
+	heapMonitored = true;
+
+	final Set<String> heapPools = new HashSet<String>();
+	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+	    if (pool.getType() == MemoryType.HEAP) {
+		heapPools.add(pool.getName());
+	    }
+	}
+
+	NotificationListener listener = new NotificationListener() {
+
+	    @Override
+	    public void handleNotification(Notification notification,
+		    Object handback) {
+
+		if (!GC_NOTIFICATION_TYPE.equals(notification.getType())) {
+		    return;
+		}
+
+		// heap after collection: sum of the heap pools
+		long used = 0;
+		try {
+		    CompositeData gcInfo = (CompositeData) ((CompositeData) notification
+			    .getUserData()).get("gcInfo");
+		    TabularData usageAfterGc = (TabularData) gcInfo
+			    .get("memoryUsageAfterGc");
+		    for (Object row : usageAfterGc.values()) {
+			CompositeData entry = (CompositeData) row;
+			if (heapPools.contains(entry.get("key"))) {
+			    used += MemoryUsage.from(
+				    (CompositeData) entry.get("value"))
+				    .getUsed();
+			}
+		    }
+		} catch (RuntimeException e) {
+		    // notification content not supported
+		    return;
+		}
+
+		long max;
+		do {
+		    max = liveHeap.get();
+		} while (used > max && !liveHeap.compareAndSet(max, used));
+	    }
+	};
+
+	for (GarbageCollectorMXBean collector : ManagementFactory
+		.getGarbageCollectorMXBeans()) {
+	    if (collector instanceof NotificationEmitter) {
+		((NotificationEmitter) collector).addNotificationListener(
+			listener, null, null);
+	    }
+	}
+    }
+
     public int getMaxProcessCount() {
 	return maxProcessCount;
     }
 
     public void setMaxProcessCount(int maxProcessCount) {
-	this.maxProcessCount = maxProcessCount;
+
+	synchronized (processPermits) {
+	    this.maxProcessCount = maxProcessCount;
+	    processPermits.resize(maxProcessCount);
+	}
     }
 
     public int getProcessCount() {
 	return processCount;
     }
+
+    /**
+     * Gets the number of requests waiting for a free process.
+     * 
+     * @return Queue length (estimate)
+     */
+    public int getQueueLength() {
+	return processPermits.getQueueLength();
+    }
+
+    public long getProcessWaitTimeout() {
+	return processWaitTimeout;
+    }
+
+    public void setProcessWaitTimeout(long processWaitTimeout) {
+	this.processWaitTimeout = processWaitTimeout;
+    }
+
+    public int getMaxQueueLength() {
+	return maxQueueLength;
+    }
+
+    public void setMaxQueueLength(int maxQueueLength) {
+	this.maxQueueLength = maxQueueLength;
+    }
+
+    public long getJobTimeout() {
+	return jobTimeout;
+    }
+
+    public void setJobTimeout(long jobTimeout) {
+	this.jobTimeout = jobTimeout;
+    }
+
+    /**
+     * Deadline of a job run by runRemoteJob: the worker is stopped if the job
+     * is not finished in time.
+     */
+    private static class JobDeadline implements Runnable {
+
+	/**
+	 * Worker running the job.
+	 */
+	private final RemoteWorker worker;
+
+	private static final int RUNNING = 0;
+
+	private static final int FINISHED = 1;
+
+	private static final int TIMED_OUT = 2;
+
+	/**
+	 * Job state: RUNNING, FINISHED or TIMED_OUT.
+	 */
+	private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+	/**
+	 * Task stopping the worker at the deadline.
+	 */
+	private final ScheduledFuture<?> task;
+
+	JobDeadline(RemoteWorker worker, long timeout) {
+
+	    this.worker = worker;
+	    this.task = getDeadlineScheduler().schedule(this, timeout,
+		    TimeUnit.MILLISECONDS);
+	}
+
+	public void run() {
+
+	    if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+		worker.stop();
+	    }
+	}
+
+	/**
+	 * Marks the job as finished (if not timed out yet).
+	 * 
+	 * @return true if the job timed out
+	 */
+	boolean finish() {
+
+	    if (state.compareAndSet(RUNNING, FINISHED)) {
+		task.cancel(false);
+	    }
+
+	    return state.get() == TIMED_OUT;
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getDeadlineScheduler() {
+
+	    if (deadlineScheduler == null) {
+		deadlineScheduler = new ScheduledThreadPoolExecutor(1,
+			new ThreadFactory() {
+
+			    public Thread newThread(Runnable runnable) {
+
+				Thread thread = new Thread(runnable,
+					"ghost4j-remote-job-deadline");
+				thread.setDaemon(true);
+
+				return thread;
+			    }
+			});
+		deadlineScheduler.setRemoveOnCancelPolicy(true);
+	    }
+
+	    return deadlineScheduler;
+	}
+    }
+
+    /**
+     * Job run on a remote worker by runRemoteJob.
+     */
+    protected abstract static class RemoteJob<T> {
+
+	/**
+	 * Runs the job.
+	 * 
+	 * @param worker
+	 *            Leased worker
+	 * @return The job result
+	 * @throws Exception
+	 *             If the job fails
+	 */
+	protected abstract T run(RemoteWorker worker) throws Exception;
+
+	/**
+	 * Checks if the job can be run again after a worker crash. Jobs have
+	 * no effect until their result is received: true by default.
+	 * 
+	 * @return true if retryable
+	 */
+	protected boolean isRetryable() {
+	    return true;
+	}
+    }
+
+    /**
+     * Fair semaphore whose number of permits follows maxProcessCount.
+     */
+    private static class AdmissionSemaphore extends Semaphore {
+
+	private static final long serialVersionUID = -6314587128407361502L;
+
+	/**
+	 * Total number of permits (available and acquired).
+	 */
+	private int size;
+
+	public AdmissionSemaphore() {
+	    super(0, true);
+	}
+
+	public void resize(int newSize) {
+
+	    if (newSize > size) {
+		release(newSize - size);
+	    } else if (newSize < size) {
+		reducePermits(size - newSize);
+	    }
+	    size = newSize;
+	}
+    }
 }
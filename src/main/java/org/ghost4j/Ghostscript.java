@@ -6,62 +6,39 @@
  */
 package org.ghost4j;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-
-import org.ghost4j.display.DisplayCallback;
-import org.ghost4j.display.DisplayData;
-
-import com.sun.jna.Pointer;
-import com.sun.jna.ptr.IntByReference;
-import org.slf4j.event.Level;
+import java.util.Date;
 
 /**
- * Class representing the Ghostscript interpreter.
+ * Class representing the Ghostscript interpreter. This is the singleton
+ * GhostscriptInstance historically used by ghost4j: use a
+ * GhostscriptInstancePool to run several interpreters concurrently.
+ * <p>
+ * The singleton takes a permit of the shared GhostscriptInstancePool when its
+ * native interpreter instance is created, and gives it back when the
+ * interpreter is exited (the native instance is then deleted) or the
+ * singleton deleted. With the default pool size of 1, it therefore waits for
+ * components to finish (without locking the singleton), and components wait
+ * for it to be exited. The thread which initialized the singleton gets a
+ * GhostscriptException instead of waiting for itself if it borrows the only
+ * pooled instance (directly or through a component) before exiting it. A thread
+ * holding a pooled instance must not use the singleton.
  * 
  * @author Gilles Grousset (gi.grousset@gmail.com)
  */
-public class Ghostscript {
+public class Ghostscript extends GhostscriptInstance {
 
     /**
      * Name of the system property used to set the encoding to use for stdin.
+     * When set, stdin streams are read as text in this encoding, otherwise
+     * stdin data is sent unchanged (binary) to the interpreter.
      */
     public static final String PROPERTY_NAME_ENCODING = "ghost4j.encoding";
-    /**
-     * Holds Ghostscript interpreter native instance (C pointer).
-     */
-    private static GhostscriptLibrary.gs_main_instance.ByReference nativeInstanceByRef;
     /**
      * Holds singleton instance.
      */
     private static Ghostscript instance;
-    /**
-     * Standard input stream.
-     */
-    private static InputStream stdIn;
-    /**
-     * Standard output stream.
-     */
-    private static OutputStream stdOut;
-    /**
-     * Error output stream.
-     */
-    private static OutputStream stdErr;
-    /**
-     * Display callback used to handle display.
-     */
-    private static DisplayCallback displayCallback;
-    /**
-     * Stores display data when working with display callback.
-     */
-    private static DisplayData displayData;
-    /**
-     * Holds the native display callback.
-     */
-    private static GhostscriptLibrary.display_callback_s nativeDisplayCallback;
 
     /**
      * Singleton access method.
@@ -81,84 +58,16 @@ public class Ghostscript {
     }
 
     /**
-     * Gets the display callback set on the Ghostscript interpreter (may be null
-     * if not set).
-     * 
-     * @return The DisplayCallback or null
-     */
-    public synchronized DisplayCallback getDisplayCallback() {
-	return displayCallback;
-    }
-
-    /**
-     * Sets a display callback for the Ghostscript interpreter.
-     * 
-     * @param displayCallback
-     *            DisplayCallback object
-     */
-    public synchronized void setDisplayCallback(DisplayCallback displayCallback) {
-	this.displayCallback = displayCallback;
-    }
-
-    /**
-     * Gets the error output stream of the Ghostscript interpreter (may be null
-     * if not set).
-     * 
-     * @return The OutputStream or null
-     */
-    public synchronized OutputStream getStdErr() {
-	return stdErr;
-    }
-
-    /**
-     * Sets the error output stream of the Ghostscript interpreter.
-     * 
-     * @param stdErr
-     *            OutputStream object
+     * Whether the singleton holds a permit of the shared pool (guarded by
+     * permitLock).
      */
-    public synchronized void setStdErr(OutputStream stdErr) {
-	this.stdErr = stdErr;
-    }
+    private boolean poolPermit;
 
     /**
-     * Gets the standard output stream of the Ghostscript interpreter (may be
-     * null if not set).
-     * 
-     * @return The OutputStream or null
+     * Lock guarding poolPermit, distinct from the singleton monitor so that
+     * threads waiting for a permit do not lock the singleton.
      */
-    public synchronized OutputStream getStdOut() {
-	return stdOut;
-    }
-
-    /**
-     * Sets the standard output stream of the Ghostscript interpreter.
-     * 
-     * @param stdOut
-     *            OutputStream object
-     */
-    public synchronized void setStdOut(OutputStream stdOut) {
-	this.stdOut = stdOut;
-    }
-
-    /**
-     * Gets the standard input stream of the Ghostscript interpreter (may be
-     * null if not set).
-     * 
-     * @return The InputStream or null
-     */
-    public synchronized InputStream getStdIn() {
-	return stdIn;
-    }
-
-    /**
-     * Sets the standard input stream of the Ghostscript interpreter.
-     * 
-     * @param stdIn
-     *            InputStream object
-     */
-    public synchronized void setStdIn(InputStream stdIn) {
-	this.stdIn = stdIn;
-    }
+    private final Object permitLock = new Object();
 
     /**
      * Private constructor.
@@ -167,475 +76,166 @@ public class Ghostscript {
     }
 
     /**
-     * Singleton factory method for getting a Ghostscript,interpreter instance.
-     * Only called from class itself.
-     * 
-     * @return Ghostscript instance.
+     * Initializes Ghostscript interpreter. A permit of the shared pool is
+     * acquired first, waiting for pooled instances to be released if needed.
+     *
+     * @param args
+     *            Interpreter parameters. Use the same as Ghostscript command
+     *            line arguments.
      * @throws org.ghost4j.GhostscriptException
      */
-    private synchronized GhostscriptLibrary.gs_main_instance.ByReference getNativeInstanceByRef()
-	    throws GhostscriptException {
-
-	if (nativeInstanceByRef == null) {
-
-	    // prepare instance
-	    nativeInstanceByRef = new GhostscriptLibrary.gs_main_instance.ByReference();
-	    // create instance
-	    int result = GhostscriptLibrary.instance.gsapi_new_instance(
-		    nativeInstanceByRef.getPointer(), null);
-
-	    // test result
-	    if (result != 0) {
-		// failure
-		nativeInstanceByRef = null;
-		throw new GhostscriptException(
-			"Cannot get Ghostscript interpreter instance. Error code is "
-				+ result);
-	    }
-	}
+    @Override
+    public void initialize(String[] args) throws GhostscriptException {
 
-	return nativeInstanceByRef;
+	// wait for the permit before locking the singleton
+	acquirePoolPermit();
+	super.initialize(args);
     }
 
-    private synchronized DisplayData getDisplayData() {
+    @Override
+    protected synchronized GhostscriptLibrary.gs_main_instance.ByReference getNativeInstanceByRef()
+	    throws GhostscriptException {
 
-	if (displayData == null) {
-	    displayData = new DisplayData();
-	}
+	// native instance count is bounded by the shared pool (permit usually
+	// acquired by initialize)
+	acquirePoolPermit();
 
-	return displayData;
+	boolean created = false;
+	try {
+	    GhostscriptLibrary.gs_main_instance.ByReference result = super
+		    .getNativeInstanceByRef();
+	    created = true;
+	    return result;
+	} finally {
+	    if (!created) {
+		releasePoolPermit();
+	    }
+	}
     }
 
     /**
-     * Gets Ghostscript revision data.
-     * 
-     * @return Revision data.
+     * Exits Ghostscript interpreter and deletes its native instance, so that
+     * pooled instances can be created.
+     *
+     * @throws org.ghost4j.GhostscriptException
      */
-    public static GhostscriptRevision getRevision() {
-
-	// prepare revision structure and call revision function
-	GhostscriptLibrary.gsapi_revision_s revision = new GhostscriptLibrary.gsapi_revision_s();
-	GhostscriptLibrary.instance.gsapi_revision(revision, revision.size());
+    @Override
+    public void exit() throws GhostscriptException {
 
-	GhostscriptRevision result = new GhostscriptRevision();
-	result.setProduct(revision.product);
-	result.setCopyright(revision.copyright);
-	result.setNumber(new Float(revision.revision.floatValue() / 100)
-		.toString());
-	// parse revision date
 	try {
-	    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
-	    result.setRevisionDate(sdf.parse(revision.revisiondate.toString()));
-	} catch (ParseException e) {
-	    result.setRevisionDate(null);
+	    super.exit();
+	} finally {
+	    delete();
 	}
+    }
 
-	return result;
+    @Override
+    public synchronized void delete() {
 
+	super.delete();
+	releasePoolPermit();
     }
 
     /**
-     * Initializes Ghostscript interpreter.
-     * 
-     * @param args
-     *            Interpreter parameters. Use the same as Ghostscript command
-     *            line arguments.
-     * @throws org.ghost4j.GhostscriptException
+     * Acquires a permit of the shared pool if the singleton holds none.
+     *
+     * @throws GhostscriptException
+     *             If the calling thread is interrupted while waiting
      */
-    public void initialize(String[] args) throws GhostscriptException {
+    private void acquirePoolPermit() throws GhostscriptException {
 
-	int result = 0;
-
-	// stdin callback
-	GhostscriptLibrary.stdin_fn stdinCallback = null;
-	if (getStdIn() != null) {
-	    stdinCallback = new GhostscriptLibrary.stdin_fn() {
-
-		public int callback(Pointer caller_handle, Pointer buf, int len) {
-
-		    // retrieve encoding, if no ghost4j encoding defined = use
-		    // JVM default
-		    String encoding = System.getProperty(
-			    PROPERTY_NAME_ENCODING,
-			    System.getProperty("file.encoding"));
-
-		    try {
-			byte[] buffer = new byte[1000];
-			int read = getStdIn().read(buffer);
-			if (read != -1) {
-			    buf.setString(0, new String(buffer, 0, read,
-				    encoding));
-			    buffer = null;
-			    return read;
-			}
-		    } catch (Exception e) {
-			// an error occurs: do nothing
-		    }
-
-		    return 0;
-		}
-	    };
-	}
-
-	// stdout callback, if no stdout explicitly defined, use a
-	// GhostscriptLoggerOutputStream to log messages
-	GhostscriptLibrary.stdout_fn stdoutCallback = null;
-	if (getStdOut() == null) {
-	    setStdOut(new GhostscriptLoggerOutputStream(Level.INFO));
-	}
-
-	stdoutCallback = new GhostscriptLibrary.stdout_fn() {
-
-	    public int callback(Pointer caller_handle, String str, int len) {
-
-		try {
-		    getStdOut().write(str.getBytes(), 0, len);
-		} catch (IOException ex) {
-		    // do nothing
-		}
-
-		return len;
+	synchronized (permitLock) {
+	    if (poolPermit) {
+		return;
 	    }
-	};
-
-	// stderr callback, if no stdout explicitly defined, use a
-	// GhostscriptLoggerOutputStream to log messages
-	GhostscriptLibrary.stderr_fn stderrCallback = null;
-	if (getStdErr() == null) {
-	    setStdErr(new GhostscriptLoggerOutputStream(Level.ERROR));
 	}
 
-	stderrCallback = new GhostscriptLibrary.stderr_fn() {
-
-	    public int callback(Pointer caller_handle, String str, int len) {
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	pool.acquirePermit();
 
-		try {
-		    getStdErr().write(str.getBytes(), 0, len);
-		} catch (IOException ex) {
-		    // do nothing
-		}
-
-		return len;
+	synchronized (permitLock) {
+	    if (!poolPermit) {
+		poolPermit = true;
+		pool.setSingletonThread(Thread.currentThread());
+		return;
 	    }
-	};
-
-	// io setting
-	result = GhostscriptLibrary.instance.gsapi_set_stdio(
-		getNativeInstanceByRef().getValue(), stdinCallback,
-		stdoutCallback, stderrCallback);
-
-	// test result
-	if (result != 0) {
-	    throw new GhostscriptException(
-		    "Cannot set IO on Ghostscript interpreter. Error code is "
-			    + result);
 	}
 
-	// display callback setting
-	if (getDisplayCallback() != null) {
-	    result = GhostscriptLibrary.instance.gsapi_set_display_callback(
-		    getNativeInstanceByRef().getValue(),
-		    buildNativeDisplayCallback(getDisplayCallback()));
-
-	    // test result
-	    if (result != 0) {
-		throw new GhostscriptException(
-			"Cannot set display callback on Ghostscript interpreter. Error code is "
-				+ result);
-	    }
-	}
-
-	// init
-        result = GhostscriptLibrary.instance.gsapi_set_arg_encoding(getNativeInstanceByRef().getValue(), GhostscriptLibrary.GS_ARG_ENCODING_UTF8);
-	if (args != null) {
-	    result = GhostscriptLibrary.instance.gsapi_init_with_args(
-		    getNativeInstanceByRef().getValue(), args.length, args);
-	} else {
-	    result = GhostscriptLibrary.instance.gsapi_init_with_args(
-		    getNativeInstanceByRef().getValue(), 0, null);
-	}
-
-	// interpreter exited: this is not an error
-	if (result == -101) {
-	    exit();
-	    result = 0;
-	}
-
-	// test result
-	if (result != 0) {
-	    throw new GhostscriptException(
-		    "Cannot initialize Ghostscript interpreter. Error code is "
-			    + result);
-	}
+	// acquired meanwhile by another thread
+	pool.releasePermit();
     }
 
-    /**
-     * Builds a native display callback from a DisplayCallback object.
-     * 
-     * @param displayCallback
-     *            DisplayCallback to use.
-     * @return The created native display callback.
-     */
-    private synchronized GhostscriptLibrary.display_callback_s buildNativeDisplayCallback(
-	    DisplayCallback displayCallback) throws GhostscriptException {
-
-	nativeDisplayCallback = new GhostscriptLibrary.display_callback_s();
-
-	// determine display callback version from Ghostscript version
-	float version = Float.parseFloat(getRevision().getNumber());
-	// some versions report version 8.15 as 815.05
-	if (version < 8.50 || version > 100) {
-	    nativeDisplayCallback.version_major = 1;
-	} else {
-	    nativeDisplayCallback.version_major = 2;
-	}
-	nativeDisplayCallback.version_minor = 0;
-
-	nativeDisplayCallback.display_open = new GhostscriptLibrary.display_callback_s.display_open() {
-
-	    public int callback(Pointer handle, Pointer device) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayOpen();
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_preclose = new GhostscriptLibrary.display_callback_s.display_preclose() {
-
-	    public int callback(Pointer handle, Pointer device) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayPreClose();
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_close = new GhostscriptLibrary.display_callback_s.display_close() {
-
-	    public int callback(Pointer handle, Pointer device) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayClose();
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_presize = new GhostscriptLibrary.display_callback_s.display_presize() {
-
-	    public int callback(Pointer handle, Pointer device, int width,
-		    int height, int raster, int format) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayPreSize(width, height, raster,
-			    format);
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_size = new GhostscriptLibrary.display_callback_s.display_size() {
-
-	    public int callback(Pointer handle, Pointer device, int width,
-		    int height, int raster, int format, Pointer pimage) {
-
-		// prepare current page data
-		getDisplayData().setWidth(width);
-		getDisplayData().setHeight(height);
-		getDisplayData().setRaster(raster);
-		getDisplayData().setFormat(format);
-		getDisplayData().setPimage(pimage);
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displaySize(width, height, raster,
-			    format);
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_sync = new GhostscriptLibrary.display_callback_s.display_sync() {
-
-	    public int callback(Pointer handle, Pointer device) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displaySync();
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_page = new GhostscriptLibrary.display_callback_s.display_page() {
-
-	    public int callback(Pointer handle, Pointer device, int copies,
-		    int flush) {
-
-		byte[] data = getDisplayData().getPimage().getByteArray(
-			0,
-			getDisplayData().getRaster()
-				* getDisplayData().getHeight());
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayPage(
-			    getDisplayData().getWidth(),
-			    getDisplayData().getHeight(),
-			    getDisplayData().getRaster(),
-			    getDisplayData().getFormat(), copies, flush, data);
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
-
-		return 0;
-	    }
-	};
-	nativeDisplayCallback.display_update = new GhostscriptLibrary.display_callback_s.display_update() {
-
-	    public int callback(Pointer handle, Pointer device, int x, int y,
-		    int w, int h) {
-
-		// call to java callback
-		try {
-		    getDisplayCallback().displayUpdate(x, y, w, h);
-		} catch (GhostscriptException e) {
-		    return 1;
-		}
+    private void releasePoolPermit() {
 
-		return 0;
+	synchronized (permitLock) {
+	    if (poolPermit) {
+		poolPermit = false;
+		GhostscriptInstancePool pool = GhostscriptInstancePool
+			.getInstance();
+		pool.setSingletonThread(null);
+		pool.releasePermit();
 	    }
-	};
-
-	nativeDisplayCallback.display_memalloc = null;
-	nativeDisplayCallback.display_memfree = null;
-
-	switch (nativeDisplayCallback.version_major) {
-	case 1:
-	    nativeDisplayCallback.size = nativeDisplayCallback.size()
-		    - Pointer.SIZE;
-	    break;
-	default:
-	    nativeDisplayCallback.size = nativeDisplayCallback.size();
-	    break;
 	}
-
-	nativeDisplayCallback.display_separation = null;
-
-	return nativeDisplayCallback;
     }
 
     /**
-     * Exits Ghostscript interpreter. Must be called after initialize.
-     * 
-     * @throws org.ghost4j.GhostscriptException
+     * Revision of the loaded Ghostscript library, read on first access.
      */
-    public void exit() throws GhostscriptException {
-
-	if (nativeInstanceByRef != null) {
-	    int result = GhostscriptLibrary.instance
-		    .gsapi_exit(getNativeInstanceByRef().getValue());
-
-	    if (result != 0) {
-		throw new GhostscriptException(
-			"Cannot exit Ghostscript interpreter. Error code is "
-				+ result);
-	    }
-	}
-    }
+    private static GhostscriptRevision revision;
 
     /**
-     * Sends command string to Ghostscript interpreter. Must be called after
-     * initialize method.
+     * Gets Ghostscript revision data. The library is only queried on first
+     * call: a copy of the cached data is returned.
      * 
-     * @param string
-     *            Command string
-     * @throws org.ghost4j.GhostscriptException
+     * @return Revision data.
      */
-    public void runString(String string) throws GhostscriptException {
-
-	IntByReference exitCode = new IntByReference();
-
-	GhostscriptLibrary.instance.gsapi_run_string_begin(
-		getNativeInstanceByRef().getValue(), 0, exitCode);
-
-	// test exit code
-	if (exitCode.getValue() != 0) {
-	    throw new GhostscriptException(
-		    "Cannot run command on Ghostscript interpreter. gsapi_run_string_begin failed with error code "
-			    + exitCode.getValue());
-	}
-
-	// split string on carriage return
-	String[] slices = string.split("\n");
-
-	for (int i = 0; i < slices.length; i++) {
-	    String slice = slices[i] + "\n";
-	    GhostscriptLibrary.instance.gsapi_run_string_continue(
-		    getNativeInstanceByRef().getValue(), slice, slice.length(),
-		    0, exitCode);
+    public static GhostscriptRevision getRevision() {
 
-	    // test exit code
-	    if (exitCode.getValue() != 0) {
-		throw new GhostscriptException(
-			"Cannot run command on Ghostscript interpreter. gsapi_run_string_continue failed with error code "
-				+ exitCode.getValue());
+	GhostscriptRevision cached;
+	synchronized (Ghostscript.class) {
+	    if (revision == null) {
+		revision = readRevision();
 	    }
+	    cached = revision;
 	}
 
-	GhostscriptLibrary.instance.gsapi_run_string_end(
-		getNativeInstanceByRef().getValue(), 0, exitCode);
-
-	// test exit code
-	if (exitCode.getValue() != 0) {
-	    throw new GhostscriptException(
-		    "Cannot run command on Ghostscript interpreter. gsapi_run_string_end failed with error code "
-			    + exitCode.getValue());
+	GhostscriptRevision result = new GhostscriptRevision();
+	result.setProduct(cached.getProduct());
+	result.setCopyright(cached.getCopyright());
+	result.setNumber(cached.getNumber());
+	if (cached.getRevisionDate() != null) {
+	    result.setRevisionDate(new Date(cached.getRevisionDate().getTime()));
 	}
 
+	return result;
     }
 
     /**
-     * Sends file Ghostscript interpreter. Must be called after initialize
-     * method.
+     * Reads revision data from the Ghostscript library.
      * 
-     * @param fileName
-     *            File name
-     * @throws org.ghost4j.GhostscriptException
+     * @return Revision data.
      */
-    public void runFile(String fileName) throws GhostscriptException {
+    private static GhostscriptRevision readRevision() {
 
-	IntByReference exitCode = new IntByReference();
-
-	GhostscriptLibrary.instance.gsapi_run_file(getNativeInstanceByRef()
-		.getValue(), fileName, 0, exitCode);
+	// prepare revision structure and call revision function
+	GhostscriptLibrary.gsapi_revision_s revision = new GhostscriptLibrary.gsapi_revision_s();
+	GhostscriptLibrary.instance.gsapi_revision(revision, revision.size());
 
-	// test exit code
-	if (exitCode.getValue() != 0) {
-	    throw new GhostscriptException(
-		    "Cannot run file on Ghostscript interpreter. Error code "
-			    + exitCode.getValue());
+	GhostscriptRevision result = new GhostscriptRevision();
+	result.setProduct(revision.product);
+	result.setCopyright(revision.copyright);
+	result.setNumber(new Float(revision.revision.floatValue() / 100)
+		.toString());
+	// parse revision date
+	try {
+	    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd");
+	    result.setRevisionDate(sdf.parse(revision.revisiondate.toString()));
+	} catch (ParseException e) {
+	    result.setRevisionDate(null);
 	}
 
+	return result;
+
     }
 
     /**
@@ -650,15 +250,10 @@ public class Ghostscript {
 
 	// clear instance
 	if (instance != null) {
+	    // delete native interpeter instance
+	    instance.delete();
 	    // unreference singleton instance
 	    instance = null;
 	}
-
-	// delete native interpeter instance
-	if (nativeInstanceByRef != null) {
-	    GhostscriptLibrary.instance
-		    .gsapi_delete_instance(nativeInstanceByRef.getValue());
-	    nativeInstanceByRef = null;
-	}
     }
 }
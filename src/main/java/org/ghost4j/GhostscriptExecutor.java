@@ -0,0 +1,503 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.awt.Image;
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.ghost4j.analyzer.AnalysisItem;
+import org.ghost4j.analyzer.Analyzer;
+import org.ghost4j.converter.Converter;
+import org.ghost4j.document.Document;
+import org.ghost4j.modifier.Modifier;
+import org.ghost4j.renderer.Renderer;
+
+/**
+ * Asynchronous job executor. Jobs (component calls or any code using the
+ * interpreter) are queued and run on dedicated interpreter threads, so that
+ * calling threads never block on the interpreter or on a native call: each
+ * submission returns a CompletableFuture completed with the job result.
+ * <p>
+ * The number of interpreter threads should match the size of the
+ * GhostscriptInstancePool (default): more threads would only wait for an
+ * instance. Documents can be given as a CompletionStage, so that document
+ * loading (I/O) runs on other threads and overlaps with the interpretation of
+ * previously queued jobs.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptExecutor {
+
+    /**
+     * Shared instance.
+     */
+    private static GhostscriptExecutor instance;
+
+    /**
+     * Scheduler completing the futures of timed out jobs (created when
+     * needed, shared by all executors).
+     */
+    private static ScheduledThreadPoolExecutor timeoutScheduler;
+
+    /**
+     * Executor running jobs on interpreter threads.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Access to the shared executor. It runs as many interpreter threads as
+     * the shared GhostscriptInstancePool allows instances, with an unbounded
+     * queue.
+     *
+     * @return The shared GhostscriptExecutor
+     */
+    public static synchronized GhostscriptExecutor getInstance() {
+
+	if (instance == null) {
+	    instance = new GhostscriptExecutor(GhostscriptInstancePool
+		    .getInstance().getMaxSize(), Integer.MAX_VALUE);
+	}
+
+	return instance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount
+     *            Number of interpreter threads
+     * @param queueCapacity
+     *            Maximum number of jobs waiting to run: jobs submitted when
+     *            the queue is full complete exceptionally with a
+     *            RejectedExecutionException
+     */
+    public GhostscriptExecutor(int threadCount, int queueCapacity) {
+
+	if (threadCount < 1) {
+	    throw new IllegalArgumentException(
+		    "Thread count must be at least 1");
+	}
+
+	executor = new ThreadPoolExecutor(threadCount, threadCount, 0L,
+		TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+			queueCapacity), new InterpreterThreadFactory());
+    }
+
+    /**
+     * Submits a job. Cancelling the returned future cancels the job: if it is
+     * running, the interpreter it uses is interrupted (see GhostscriptJob).
+     *
+     * @param job
+     *            Job to run on an interpreter thread
+     * @return Future completed with the job result, or exceptionally with the
+     *         exception thrown by the job
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> job) {
+	return submit(job, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Submits a job with a timeout. The timeout starts when the job starts
+     * running: once elapsed, the future completes exceptionally with a
+     * TimeoutException, whatever the job does. Cancelling the returned future
+     * cancels the job.
+     * <p>
+     * The interpreter used by the job is also interrupted at the timeout, but
+     * only by Ghostscript libraries calling the poll callback (see
+     * GhostscriptJob): with other libraries, the job keeps its interpreter
+     * thread and instance until it ends by itself, and its result is
+     * discarded.
+     *
+     * @param job
+     *            Job to run on an interpreter thread
+     * @param timeout
+     *            Maximum time the job can run (0 for no timeout)
+     * @param unit
+     *            Time unit of the timeout
+     * @return Future completed with the job result, or exceptionally with the
+     *         exception thrown by the job or with a TimeoutException
+     */
+    public <T> CompletableFuture<T> submit(final Callable<T> job,
+	    final long timeout, final TimeUnit unit) {
+
+	final CompletableFuture<T> future = new CompletableFuture<T>();
+	final AtomicReference<GhostscriptJob> control = new AtomicReference<GhostscriptJob>();
+
+	// propagate future cancellation to the running job
+	future.whenComplete(new BiConsumer<T, Throwable>() {
+
+	    public void accept(T result, Throwable error) {
+
+		GhostscriptJob running = control.get();
+		if (running != null && future.isCancelled()) {
+		    running.cancel();
+		}
+	    }
+	});
+
+	try {
+	    executor.execute(new Runnable() {
+
+		public void run() {
+
+		    GhostscriptJob running = timeout > 0 ? new GhostscriptJob(
+			    timeout, unit) : new GhostscriptJob();
+		    control.set(running);
+
+		    // cancelled while queued: nothing to do
+		    if (future.isDone()) {
+			return;
+		    }
+
+		    // fallback for libraries not calling the poll callback
+		    ScheduledFuture<?> deadline = null;
+		    if (timeout > 0) {
+			deadline = scheduleTimeout(future, timeout, unit);
+		    }
+
+		    running.attach();
+		    try {
+			T result = job.call();
+			if (!running.isTimedOut()) {
+			    future.complete(result);
+			}
+		    } catch (Throwable e) {
+			if (!running.isTimedOut()) {
+			    future.completeExceptionally(e);
+			}
+		    } finally {
+			running.detach();
+			if (deadline != null) {
+			    deadline.cancel(false);
+			}
+			// finished after the deadline: report the timeout
+			if (running.isTimedOut()) {
+			    future.completeExceptionally(timeoutException(
+				    timeout, unit));
+			}
+		    }
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    future.completeExceptionally(e);
+	}
+
+	return future;
+    }
+
+    /**
+     * Submits a job once an input is available: the job is queued when the
+     * input stage completes (it is not queued if the input fails).
+     *
+     * @param input
+     *            Stage providing the job input (a document being loaded for
+     *            instance)
+     * @param job
+     *            Job to run on an interpreter thread with the input
+     * @return Future completed with the job result
+     */
+    public <I, T> CompletableFuture<T> submit(CompletionStage<I> input,
+	    final Function<? super I, T> job) {
+
+	return input.toCompletableFuture().thenCompose(
+		new Function<I, CompletableFuture<T>>() {
+
+		    public CompletableFuture<T> apply(final I value) {
+			return submit(new Callable<T>() {
+
+			    public T call() throws Exception {
+				return job.apply(value);
+			    }
+			});
+		    }
+		});
+    }
+
+    /**
+     * Converts a document asynchronously.
+     *
+     * @param converter
+     *            Converter to use
+     * @param document
+     *            Document to convert
+     * @return Future completed with the converted document data
+     */
+    public CompletableFuture<byte[]> convert(final Converter converter,
+	    final Document document) {
+
+	return submit(new Callable<byte[]>() {
+
+	    public byte[] call() throws Exception {
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		converter.convert(document, baos);
+		return baos.toByteArray();
+	    }
+	});
+    }
+
+    /**
+     * Converts a document asynchronously, once it is loaded.
+     *
+     * @param converter
+     *            Converter to use
+     * @param document
+     *            Stage providing the document to convert
+     * @return Future completed with the converted document data
+     */
+    public CompletableFuture<byte[]> convert(final Converter converter,
+	    CompletionStage<? extends Document> document) {
+
+	return input(document).thenCompose(
+		new Function<Document, CompletableFuture<byte[]>>() {
+
+		    public CompletableFuture<byte[]> apply(Document value) {
+			return convert(converter, value);
+		    }
+		});
+    }
+
+    /**
+     * Renders a document asynchronously.
+     *
+     * @param renderer
+     *            Renderer to use
+     * @param document
+     *            Document to render
+     * @return Future completed with page images
+     */
+    public CompletableFuture<List<Image>> render(final Renderer renderer,
+	    final Document document) {
+
+	return submit(new Callable<List<Image>>() {
+
+	    public List<Image> call() throws Exception {
+		return renderer.render(document);
+	    }
+	});
+    }
+
+    /**
+     * Renders pages of a document asynchronously.
+     *
+     * @param renderer
+     *            Renderer to use
+     * @param document
+     *            Document to render
+     * @param begin
+     *            Index of page to start rendering from (0 is the first page)
+     * @param end
+     *            Index of page to render to
+     * @return Future completed with page images
+     */
+    public CompletableFuture<List<Image>> render(final Renderer renderer,
+	    final Document document, final int begin, final int end) {
+
+	return submit(new Callable<List<Image>>() {
+
+	    public List<Image> call() throws Exception {
+		return renderer.render(document, begin, end);
+	    }
+	});
+    }
+
+    /**
+     * Renders a document asynchronously, once it is loaded.
+     *
+     * @param renderer
+     *            Renderer to use
+     * @param document
+     *            Stage providing the document to render
+     * @return Future completed with page images
+     */
+    public CompletableFuture<List<Image>> render(final Renderer renderer,
+	    CompletionStage<? extends Document> document) {
+
+	return input(document).thenCompose(
+		new Function<Document, CompletableFuture<List<Image>>>() {
+
+		    public CompletableFuture<List<Image>> apply(Document value) {
+			return render(renderer, value);
+		    }
+		});
+    }
+
+    /**
+     * Analyzes a document asynchronously.
+     *
+     * @param analyzer
+     *            Analyzer to use
+     * @param document
+     *            Document to analyze
+     * @return Future completed with analysis items
+     */
+    public CompletableFuture<List<AnalysisItem>> analyze(
+	    final Analyzer analyzer, final Document document) {
+
+	return submit(new Callable<List<AnalysisItem>>() {
+
+	    public List<AnalysisItem> call() throws Exception {
+		return analyzer.analyze(document);
+	    }
+	});
+    }
+
+    /**
+     * Modifies a document asynchronously.
+     *
+     * @param modifier
+     *            Modifier to use
+     * @param document
+     *            Document to modify
+     * @param parameters
+     *            Modifier parameters
+     * @return Future completed with the modified document
+     */
+    public CompletableFuture<Document> modify(final Modifier modifier,
+	    final Document document,
+	    final Map<String, Serializable> parameters) {
+
+	return submit(new Callable<Document>() {
+
+	    public Document call() throws Exception {
+		return modifier.modify(document, parameters);
+	    }
+	});
+    }
+
+    /**
+     * Gets the number of jobs waiting to run.
+     *
+     * @return Queued job count
+     */
+    public int getQueueSize() {
+	return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of jobs running.
+     *
+     * @return Running job count (estimate)
+     */
+    public int getActiveCount() {
+	return executor.getActiveCount();
+    }
+
+    /**
+     * Stops accepting jobs: queued jobs still run.
+     */
+    public void shutdown() {
+	executor.shutdown();
+    }
+
+    /**
+     * Waits for queued and running jobs to complete after shutdown.
+     *
+     * @param timeout
+     *            Maximum time to wait
+     * @param unit
+     *            Time unit of the timeout
+     * @return true if all jobs completed, false if the timeout elapsed
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+	    throws InterruptedException {
+	return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Schedules the completion of a job future with a TimeoutException.
+     */
+    private static ScheduledFuture<?> scheduleTimeout(
+	    final CompletableFuture<?> future, final long timeout,
+	    final TimeUnit unit) {
+
+	synchronized (GhostscriptExecutor.class) {
+	    if (timeoutScheduler == null) {
+		timeoutScheduler = new ScheduledThreadPoolExecutor(1,
+			new ThreadFactory() {
+
+			    public Thread newThread(Runnable runnable) {
+
+				Thread thread = new Thread(runnable,
+					"ghost4j-executor-timeout");
+				thread.setDaemon(true);
+
+				return thread;
+			    }
+			});
+		timeoutScheduler.setRemoveOnCancelPolicy(true);
+	    }
+	}
+
+	return timeoutScheduler.schedule(new Runnable() {
+
+	    public void run() {
+		future.completeExceptionally(timeoutException(timeout, unit));
+	    }
+	}, timeout, unit);
+    }
+
+    private static TimeoutException timeoutException(long timeout,
+	    TimeUnit unit) {
+
+	return new TimeoutException("Ghostscript job timed out after "
+		+ timeout + " " + unit.toString().toLowerCase());
+    }
+
+    private static CompletableFuture<Document> input(
+	    CompletionStage<? extends Document> document) {
+
+	return document.toCompletableFuture().thenApply(
+		new Function<Document, Document>() {
+
+		    public Document apply(Document value) {
+			return value;
+		    }
+		});
+    }
+
+    /**
+     * Creates named daemon interpreter threads.
+     */
+    private static class InterpreterThreadFactory implements ThreadFactory {
+
+	private static final AtomicInteger executorCount = new AtomicInteger();
+
+	private final int executorNumber = executorCount.incrementAndGet();
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	public Thread newThread(Runnable runnable) {
+
+	    Thread thread = new Thread(runnable, "ghost4j-executor-"
+		    + executorNumber + "-interpreter-"
+		    + threadCount.incrementAndGet());
+	    thread.setDaemon(true);
+
+	    return thread;
+	}
+    }
+}
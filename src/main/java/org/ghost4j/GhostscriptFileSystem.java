@@ -0,0 +1,663 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.ghost4j.document.Document;
+import org.ghost4j.util.DiskStore;
+
+import com.sun.jna.Function;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Set of files used by a Ghostscript job (input documents and output files).
+ * When the Ghostscript library supports custom filesystems (gsapi_add_fs,
+ * Ghostscript 9.53+), files are kept in memory: they are given to the
+ * interpreter as virtual paths resolved by filesystem callbacks, so that no
+ * temporary file is written to disk. Otherwise files are stored in the
+ * DiskStore, as before.
+ * <p>
+ * The file system must be set on the interpreter instance (see
+ * GhostscriptInstance.setFileSystem) before virtual paths are used, and closed
+ * once the job is done.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptFileSystem {
+
+    /**
+     * Name of the system property used to disable in-memory files (set to
+     * false to always use the DiskStore).
+     */
+    public static final String PROPERTY_NAME_MEMORY = "ghost4j.fs.memory";
+
+    /**
+     * Root of virtual paths.
+     */
+    public static final String ROOT_PATH = "/ghost4j-memory/";
+
+    /**
+     * seek whence values.
+     */
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_CUR = 1;
+    private static final int SEEK_END = 2;
+
+    /**
+     * Support of custom filesystems by the loaded library (null until
+     * checked).
+     */
+    private static Boolean supported;
+
+    /**
+     * gp_file_alloc native function.
+     */
+    private static Function fileAllocFunction;
+
+    /**
+     * Set to true if files are kept in memory.
+     */
+    private final boolean inMemory;
+
+    /**
+     * Prefix of the virtual paths of this file system.
+     */
+    private final String pathPrefix;
+
+    /**
+     * In-memory files, by virtual path.
+     */
+    private final Map<String, MemoryFile> memoryFiles;
+
+    /**
+     * Files opened by the interpreter, by native gp_file address.
+     */
+    private final Map<Long, OpenFile> openFiles;
+
+    /**
+     * DiskStore keys of files stored on disk.
+     */
+    private final List<String> diskStoreKeys;
+
+    /**
+     * Number of files added.
+     */
+    private int fileCount;
+
+    /**
+     * Native filesystem callbacks (in-memory mode).
+     */
+    private GhostscriptLibrary.gsapi_fs_t nativeFileSystem;
+
+    /**
+     * Native file operations (in-memory mode).
+     */
+    private GhostscriptLibrary.gp_file_ops_t nativeFileOps;
+
+    /**
+     * Checks if the loaded Ghostscript library supports custom filesystems.
+     *
+     * @return true if supported
+     */
+    public static synchronized boolean isSupported() {
+
+	if (supported == null) {
+	    try {
+		NativeLibrary library = NativeLibrary
+			.getInstance(GhostscriptLibraryLoader.getLibraryName());
+		library.getFunction("gsapi_add_fs");
+		fileAllocFunction = library.getFunction("gp_file_alloc");
+		supported = Boolean.TRUE;
+	    } catch (UnsatisfiedLinkError e) {
+		supported = Boolean.FALSE;
+	    }
+	}
+
+	return supported.booleanValue();
+    }
+
+    /**
+     * Constructor. Files are kept in memory if the library supports custom
+     * filesystems and the ghost4j.fs.memory property is not set to false.
+     */
+    public GhostscriptFileSystem() {
+	this(!"false".equals(System.getProperty(PROPERTY_NAME_MEMORY))
+		&& isSupported());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param inMemory
+     *            true to keep files in memory (requires a library supporting
+     *            custom filesystems), false to store files in the DiskStore
+     */
+    public GhostscriptFileSystem(boolean inMemory) {
+
+	if (inMemory && !isSupported()) {
+	    throw new IllegalStateException(
+		    "Ghostscript library does not support custom filesystems");
+	}
+
+	this.inMemory = inMemory;
+	this.pathPrefix = ROOT_PATH + UUID.randomUUID() + "/";
+	this.memoryFiles = new HashMap<String, MemoryFile>();
+	this.openFiles = new HashMap<Long, OpenFile>();
+	this.diskStoreKeys = new ArrayList<String>();
+    }
+
+    /**
+     * Checks if files are kept in memory.
+     *
+     * @return true if in memory, false if stored in the DiskStore
+     */
+    public boolean isInMemory() {
+	return inMemory;
+    }
+
+    /**
+     * Adds an input document.
+     *
+     * @param document
+     *            Document to add
+     * @return Path of the document, to give to the interpreter
+     * @throws IOException
+     */
+    public synchronized String addInput(Document document) throws IOException {
+
+	if (inMemory) {
+	    String path = nextPath();
+	    memoryFiles.put(path, new MemoryFile(document.getContent()));
+	    return path;
+	}
+
+	DiskStore diskStore = DiskStore.getInstance();
+	String key = diskStore.generateUniqueKey();
+	diskStoreKeys.add(key);
+	File file = diskStore.addFile(key);
+	document.write(file);
+
+	return file.getAbsolutePath();
+    }
+
+    /**
+     * Adds an output file, to be written by the interpreter.
+     *
+     * @return Path of the output file, to give to the interpreter
+     */
+    public synchronized String addOutput() {
+
+	if (inMemory) {
+	    String path = nextPath();
+	    memoryFiles.put(path, new MemoryFile(new byte[0]));
+	    return path;
+	}
+
+	DiskStore diskStore = DiskStore.getInstance();
+	String key = diskStore.generateUniqueKey();
+	diskStoreKeys.add(key);
+
+	return diskStore.addFile(key).getAbsolutePath();
+    }
+
+    /**
+     * Opens a file of the file system (an output file written by the
+     * interpreter for instance) for reading.
+     *
+     * @param path
+     *            Path returned by addInput or addOutput
+     * @return InputStream on file data
+     * @throws IOException
+     *             If the file does not exist
+     */
+    public synchronized InputStream openInput(String path) throws IOException {
+
+	if (inMemory) {
+	    MemoryFile file = memoryFiles.get(path);
+	    if (file == null) {
+		throw new IOException("File " + path
+			+ " does not exist in file system");
+	    }
+	    return new ByteArrayInputStream(file.data, 0, file.length);
+	}
+
+	return new FileInputStream(path);
+    }
+
+    /**
+     * Closes the file system: files are removed (from memory or from the
+     * DiskStore).
+     *
+     * @throws IOException
+     *             If a temporary file cannot be deleted
+     */
+    public synchronized void close() throws IOException {
+
+	memoryFiles.clear();
+	openFiles.clear();
+
+	DiskStore diskStore = DiskStore.getInstance();
+	for (String key : diskStoreKeys) {
+	    diskStore.removeFile(key);
+	}
+	diskStoreKeys.clear();
+    }
+
+    /**
+     * Gets the native filesystem structure to register on an interpreter
+     * (in-memory mode only).
+     *
+     * @return The native filesystem
+     */
+    synchronized GhostscriptLibrary.gsapi_fs_t getNativeFileSystem() {
+
+	if (nativeFileSystem == null) {
+	    buildNativeFileSystem();
+	}
+
+	return nativeFileSystem;
+    }
+
+    private String nextPath() {
+	return pathPrefix + (fileCount++);
+    }
+
+    /**
+     * Opens a virtual file for the interpreter.
+     *
+     * @return gp_file pointer or null if the file is not handled by this file
+     *         system
+     */
+    private synchronized Pointer openFile(Pointer mem, String fileName,
+	    String mode) {
+
+	if (fileName == null || !fileName.startsWith(pathPrefix)) {
+	    return null;
+	}
+
+	boolean read = mode.startsWith("r");
+	MemoryFile file = memoryFiles.get(fileName);
+	if (file == null) {
+	    if (read) {
+		return null;
+	    }
+	    file = new MemoryFile(new byte[0]);
+	    memoryFiles.put(fileName, file);
+	} else if (mode.startsWith("w")) {
+	    file.truncate();
+	}
+
+	Pointer gpFile = (Pointer) fileAllocFunction.invoke(Pointer.class,
+		new Object[] { mem, nativeFileOps.getPointer(), getGpFileSize(),
+			"ghost4j_fs" });
+	if (gpFile == null) {
+	    return null;
+	}
+
+	OpenFile openFile = new OpenFile(file);
+	if (mode.startsWith("a")) {
+	    openFile.position = file.length;
+	}
+	openFiles.put(Pointer.nativeValue(gpFile), openFile);
+
+	return gpFile;
+    }
+
+    /**
+     * Gets the size of the gp_file structures allocated for open files (file
+     * state is kept on the Java side).
+     */
+    private static GhostscriptLibrary.size_t getGpFileSize() {
+	return new GhostscriptLibrary.size_t(
+		new GhostscriptLibrary.gp_file_s().size());
+    }
+
+    private synchronized OpenFile getOpenFile(Pointer f) {
+	return openFiles.get(Pointer.nativeValue(f));
+    }
+
+    private synchronized void closeFile(Pointer f) {
+	openFiles.remove(Pointer.nativeValue(f));
+    }
+
+
+    private void buildNativeFileSystem() {
+
+	nativeFileOps = new GhostscriptLibrary.gp_file_ops_t();
+
+	nativeFileOps.close = new GhostscriptLibrary.gp_file_ops_t.close() {
+
+	    public int callback(Pointer f) {
+		closeFile(f);
+		return 0;
+	    }
+	};
+	nativeFileOps.getc = new GhostscriptLibrary.gp_file_ops_t.getc() {
+
+	    public int callback(Pointer f) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null || file.position >= file.file.length) {
+		    if (file != null) {
+			file.eof = true;
+		    }
+		    return -1;
+		}
+
+		return file.file.data[(int) file.position++] & 0xff;
+	    }
+	};
+	nativeFileOps.putc = new GhostscriptLibrary.gp_file_ops_t.putc() {
+
+	    public int callback(Pointer f, int c) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null) {
+		    return -1;
+		}
+
+		file.file.write(file.position, new byte[] { (byte) c }, 1);
+		file.position++;
+
+		return c & 0xff;
+	    }
+	};
+	nativeFileOps.read = new GhostscriptLibrary.gp_file_ops_t.read() {
+
+	    public int callback(Pointer f, GhostscriptLibrary.size_t size,
+		    int count, Pointer buf) {
+
+		OpenFile file = getOpenFile(f);
+		int itemSize = size.intValue();
+		if (file == null || itemSize <= 0) {
+		    return 0;
+		}
+
+		int read = file.read(file.position, buf, itemSize * count);
+		file.position += read;
+		if (read < itemSize * count) {
+		    file.eof = true;
+		}
+
+		return read / itemSize;
+	    }
+	};
+	nativeFileOps.write = new GhostscriptLibrary.gp_file_ops_t.write() {
+
+	    public int callback(Pointer f, GhostscriptLibrary.size_t size,
+		    int count, Pointer buf) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null) {
+		    return 0;
+		}
+
+		int length = size.intValue() * count;
+		file.file.write(file.position, buf, length);
+		file.position += length;
+
+		return count;
+	    }
+	};
+	nativeFileOps.seek = new GhostscriptLibrary.gp_file_ops_t.seek() {
+
+	    public int callback(Pointer f, long offset, int whence) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null) {
+		    return -1;
+		}
+
+		long position;
+		switch (whence) {
+		case SEEK_SET:
+		    position = offset;
+		    break;
+		case SEEK_CUR:
+		    position = file.position + offset;
+		    break;
+		case SEEK_END:
+		    position = file.file.length + offset;
+		    break;
+		default:
+		    return -1;
+		}
+
+		if (position < 0) {
+		    return -1;
+		}
+		file.position = position;
+		file.eof = false;
+
+		return 0;
+	    }
+	};
+	nativeFileOps.tell = new GhostscriptLibrary.gp_file_ops_t.tell() {
+
+	    public long callback(Pointer f) {
+
+		OpenFile file = getOpenFile(f);
+		return file == null ? -1 : file.position;
+	    }
+	};
+	nativeFileOps.eof = new GhostscriptLibrary.gp_file_ops_t.eof() {
+
+	    public int callback(Pointer f) {
+
+		OpenFile file = getOpenFile(f);
+		return file == null || file.eof ? 1 : 0;
+	    }
+	};
+	nativeFileOps.dup = new GhostscriptLibrary.gp_file_ops_t.dup() {
+
+	    public Pointer callback(Pointer f, String mode) {
+		// not supported
+		return null;
+	    }
+	};
+	nativeFileOps.seekable = new GhostscriptLibrary.gp_file_ops_t.seekable() {
+
+	    public int callback(Pointer f) {
+		return 1;
+	    }
+	};
+	nativeFileOps.pread = new GhostscriptLibrary.gp_file_ops_t.pread() {
+
+	    public int callback(Pointer f, GhostscriptLibrary.size_t count,
+		    long offset, Pointer buf) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null) {
+		    return -1;
+		}
+
+		return file.read(offset, buf, count.intValue());
+	    }
+	};
+	nativeFileOps.pwrite = new GhostscriptLibrary.gp_file_ops_t.pwrite() {
+
+	    public int callback(Pointer f, GhostscriptLibrary.size_t count,
+		    long offset, Pointer buf) {
+
+		OpenFile file = getOpenFile(f);
+		if (file == null) {
+		    return -1;
+		}
+
+		file.file.write(offset, buf, count.intValue());
+
+		return count.intValue();
+	    }
+	};
+	nativeFileOps.is_char_buffered = new GhostscriptLibrary.gp_file_ops_t.is_char_buffered() {
+
+	    public int callback(Pointer f) {
+		return 0;
+	    }
+	};
+	nativeFileOps.fflush = new GhostscriptLibrary.gp_file_ops_t.fflush() {
+
+	    public void callback(Pointer f) {
+		// nothing to flush
+	    }
+	};
+	nativeFileOps.ferror = new GhostscriptLibrary.gp_file_ops_t.ferror() {
+
+	    public int callback(Pointer f) {
+		return getOpenFile(f) == null ? 1 : 0;
+	    }
+	};
+	nativeFileOps.get_file = new GhostscriptLibrary.gp_file_ops_t.get_file() {
+
+	    public Pointer callback(Pointer f) {
+		// no FILE behind virtual files
+		return null;
+	    }
+	};
+	nativeFileOps.clearerr = new GhostscriptLibrary.gp_file_ops_t.clearerr() {
+
+	    public void callback(Pointer f) {
+
+		OpenFile file = getOpenFile(f);
+		if (file != null) {
+		    file.eof = false;
+		}
+	    }
+	};
+	nativeFileOps.reopen = new GhostscriptLibrary.gp_file_ops_t.reopen() {
+
+	    public Pointer callback(Pointer f, String fname, String mode) {
+		// not supported
+		return null;
+	    }
+	};
+	nativeFileOps.write();
+
+	nativeFileSystem = new GhostscriptLibrary.gsapi_fs_t();
+
+	nativeFileSystem.open_file = new GhostscriptLibrary.gsapi_fs_t.open_file() {
+
+	    public int callback(Pointer mem, Pointer secret, String fname,
+		    String mode, PointerByReference file) {
+
+		file.setValue(openFile(mem, fname, mode));
+		return 0;
+	    }
+	};
+	nativeFileSystem.open_printer = new GhostscriptLibrary.gsapi_fs_t.open_printer() {
+
+	    public int callback(Pointer mem, Pointer secret, String fname,
+		    int binary, PointerByReference file) {
+
+		file.setValue(openFile(mem, fname, binary != 0 ? "wb" : "w"));
+		return 0;
+	    }
+	};
+	// pipes, scratch files and handles are left to the default filesystem
+	nativeFileSystem.open_pipe = null;
+	nativeFileSystem.open_scratch = null;
+	nativeFileSystem.open_handle = null;
+    }
+
+    /**
+     * In-memory file data.
+     */
+    private static class MemoryFile {
+
+	private byte[] data;
+
+	private int length;
+
+	/**
+	 * Set to true while data is shared with a document (copied before the
+	 * first write).
+	 */
+	private boolean shared;
+
+	public MemoryFile(byte[] data) {
+
+	    this.data = data;
+	    this.length = data.length;
+	    this.shared = true;
+	}
+
+	public void truncate() {
+
+	    data = new byte[0];
+	    length = 0;
+	    shared = false;
+	}
+
+	public void write(long position, byte[] bytes, int count) {
+
+	    ensureCapacity(position + count);
+	    System.arraycopy(bytes, 0, data, (int) position, count);
+	    length = Math.max(length, (int) position + count);
+	}
+
+	public void write(long position, Pointer buf, int count) {
+
+	    ensureCapacity(position + count);
+	    buf.read(0, data, (int) position, count);
+	    length = Math.max(length, (int) position + count);
+	}
+
+	private void ensureCapacity(long capacity) {
+
+	    if (capacity > Integer.MAX_VALUE) {
+		throw new IllegalStateException("In-memory file is too large");
+	    }
+
+	    if (shared || capacity > data.length) {
+		byte[] newData = new byte[Math.max((int) capacity,
+			Math.min(Integer.MAX_VALUE - 8, data.length * 2))];
+		System.arraycopy(data, 0, newData, 0, length);
+		data = newData;
+		shared = false;
+	    }
+	}
+    }
+
+    /**
+     * File opened by the interpreter.
+     */
+    private static class OpenFile {
+
+	private final MemoryFile file;
+
+	private long position;
+
+	private boolean eof;
+
+	public OpenFile(MemoryFile file) {
+	    this.file = file;
+	}
+
+	public int read(long offset, Pointer buf, int count) {
+
+	    int read = (int) Math.max(0,
+		    Math.min(count, (long) file.length - offset));
+	    if (read > 0) {
+		buf.write(0, file.data, (int) offset, read);
+	    }
+
+	    return read;
+	}
+    }
+}
@@ -0,0 +1,1702 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ghost4j.display.BandDisplayCallback;
+import org.ghost4j.display.DirectDisplayCallback;
+import org.ghost4j.display.DisplayCallback;
+import org.ghost4j.display.DisplayData;
+import org.ghost4j.display.DisplayMemoryPool;
+import org.ghost4j.display.SeparationDisplayCallback;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+/**
+ * Class representing a Ghostscript interpreter instance. Unlike the Ghostscript
+ * singleton, several GhostscriptInstance objects may exist at the same time:
+ * each one holds its own native interpreter instance, streams and display
+ * callback. Running several instances concurrently requires a thread-safe
+ * build of the Ghostscript library (see GhostscriptInstancePool).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptInstance {
+
+    /**
+     * Maximum length of data sent to the interpreter in a single
+     * gsapi_run_string_* call.
+     */
+    public static final int RUN_CHUNK_SIZE = 65535;
+
+    /**
+     * Holds Ghostscript interpreter native instance (C pointer).
+     */
+    private GhostscriptLibrary.gs_main_instance.ByReference nativeInstanceByRef;
+    /**
+     * Standard input stream.
+     */
+    private InputStream stdIn;
+    /**
+     * Standard input data, when provided as a buffer.
+     */
+    private ByteBuffer stdInByteBuffer;
+    /**
+     * Standard input channel, when provided as a channel.
+     */
+    private ReadableByteChannel stdInChannel;
+    /**
+     * Buffer reused to read standard input stream data.
+     */
+    private byte[] stdInReadBuffer;
+    /**
+     * Transcoded standard input data not yet sent to the interpreter (only
+     * used when the ghost4j.encoding property is set).
+     */
+    private ByteBuffer stdInTranscoded;
+    /**
+     * Standard output stream.
+     */
+    private OutputStream stdOut;
+    /**
+     * Error output stream.
+     */
+    private OutputStream stdErr;
+    /**
+     * Display callback used to handle display.
+     */
+    private DisplayCallback displayCallback;
+    /**
+     * Stores display data when working with display callback.
+     */
+    private DisplayData displayData;
+    /**
+     * Holds the native display callback.
+     */
+    private GhostscriptLibrary.display_callback_s nativeDisplayCallback;
+    /**
+     * Native standard input callback, built once and reused by all
+     * initializations.
+     */
+    private GhostscriptLibrary.stdin_fn nativeStdInCallback;
+    /**
+     * Native standard output callback, built once and reused by all
+     * initializations.
+     */
+    private GhostscriptLibrary.stdout_raw_fn nativeStdOutCallback;
+    /**
+     * Native error output callback, built once and reused by all
+     * initializations.
+     */
+    private GhostscriptLibrary.stderr_raw_fn nativeStdErrCallback;
+    /**
+     * Native poll callback, checking the GhostscriptJob of the calling thread.
+     */
+    private GhostscriptLibrary.poll_fn nativePollCallback;
+
+    /**
+     * Set to true once the failure to set the poll callback was logged.
+     */
+    private static volatile boolean pollFailureLogged;
+
+    /**
+     * Logger used to log messages.
+     */
+    private static final Logger logger = LoggerFactory
+	    .getLogger(GhostscriptInstance.class.getName());
+    /**
+     * Display callback structure major version matching the loaded Ghostscript
+     * library (0 until computed).
+     */
+    private static volatile int displayCallbackVersion;
+    /**
+     * Native display memory allocation callback (used when a
+     * DisplayMemoryPool is set).
+     */
+    private GhostscriptLibrary.display_callback_s.display_memalloc nativeDisplayMemAlloc;
+    /**
+     * Native display memory free callback (used when a DisplayMemoryPool is
+     * set).
+     */
+    private GhostscriptLibrary.display_callback_s.display_memfree nativeDisplayMemFree;
+    /**
+     * Pool providing display device bitmap memory (null to let Ghostscript
+     * allocate it).
+     */
+    private DisplayMemoryPool displayMemoryPool;
+    /**
+     * File system providing in-memory files to the interpreter (may be null).
+     */
+    private GhostscriptFileSystem fileSystem;
+    /**
+     * Native filesystem registered on the native instance (null if none).
+     */
+    private GhostscriptLibrary.gsapi_fs_t registeredFileSystem;
+    /**
+     * Native buffer reused to send data to the interpreter.
+     */
+    private Memory runBuffer;
+    /**
+     * Buffer reused to read data sent to the interpreter.
+     */
+    private byte[] runReadBuffer;
+    /**
+     * Set to true while the interpreter is initialized (between initialize and
+     * exit).
+     */
+    private volatile boolean initialized;
+
+    /**
+     * Gets the display callback set on the Ghostscript interpreter (may be null
+     * if not set).
+     *
+     * @return The DisplayCallback or null
+     */
+    public synchronized DisplayCallback getDisplayCallback() {
+	return displayCallback;
+    }
+
+    /**
+     * Sets a display callback for the Ghostscript interpreter.
+     *
+     * @param displayCallback
+     *            DisplayCallback object
+     */
+    public synchronized void setDisplayCallback(DisplayCallback displayCallback) {
+	this.displayCallback = displayCallback;
+    }
+
+    /**
+     * Gets the pool providing display device bitmap memory (may be null if not
+     * set).
+     *
+     * @return The DisplayMemoryPool or null
+     */
+    public synchronized DisplayMemoryPool getDisplayMemoryPool() {
+	return displayMemoryPool;
+    }
+
+    /**
+     * Sets a pool providing display device bitmap memory. When set, page
+     * bitmaps of the display device are allocated from the pool (through
+     * display_memalloc / display_memfree) and reused by later renders at the
+     * same resolution. Must be set before the interpreter is initialized.
+     *
+     * @param displayMemoryPool
+     *            DisplayMemoryPool object
+     */
+    public synchronized void setDisplayMemoryPool(
+	    DisplayMemoryPool displayMemoryPool) {
+	this.displayMemoryPool = displayMemoryPool;
+    }
+
+    /**
+     * Gets the file system providing files to the interpreter (may be null if
+     * not set).
+     *
+     * @return The GhostscriptFileSystem or null
+     */
+    public synchronized GhostscriptFileSystem getFileSystem() {
+	return fileSystem;
+    }
+
+    /**
+     * Sets the file system providing files to the interpreter. When the file
+     * system keeps files in memory, it is registered on the native instance
+     * (gsapi_add_fs) so that its virtual paths can be used in interpreter
+     * arguments and PostScript code.
+     *
+     * @param fileSystem
+     *            GhostscriptFileSystem object (null to remove it)
+     * @throws GhostscriptException
+     */
+    public synchronized void setFileSystem(GhostscriptFileSystem fileSystem)
+	    throws GhostscriptException {
+
+	unregisterFileSystem();
+	this.fileSystem = fileSystem;
+	if (nativeInstanceByRef != null) {
+	    registerFileSystem();
+	}
+    }
+
+    /**
+     * Gets the error output stream of the Ghostscript interpreter (may be null
+     * if not set).
+     *
+     * @return The OutputStream or null
+     */
+    public synchronized OutputStream getStdErr() {
+	return stdErr;
+    }
+
+    /**
+     * Sets the error output stream of the Ghostscript interpreter.
+     *
+     * @param stdErr
+     *            OutputStream object
+     */
+    public synchronized void setStdErr(OutputStream stdErr) {
+	this.stdErr = stdErr;
+    }
+
+    /**
+     * Gets the standard output stream of the Ghostscript interpreter (may be
+     * null if not set).
+     *
+     * @return The OutputStream or null
+     */
+    public synchronized OutputStream getStdOut() {
+	return stdOut;
+    }
+
+    /**
+     * Sets the standard output stream of the Ghostscript interpreter.
+     *
+     * @param stdOut
+     *            OutputStream object
+     */
+    public synchronized void setStdOut(OutputStream stdOut) {
+	this.stdOut = stdOut;
+    }
+
+    /**
+     * Gets the standard input stream of the Ghostscript interpreter (may be null
+     * if not set, or if standard input was set as a buffer or a channel).
+     *
+     * @return The InputStream or null
+     */
+    public synchronized InputStream getStdIn() {
+	return stdIn;
+    }
+
+    /**
+     * Sets the standard input stream of the Ghostscript interpreter. Data is
+     * sent unchanged (binary) to the interpreter, unless the ghost4j.encoding
+     * system property is set: in that case data is decoded with this encoding
+     * and re-encoded with the native encoding.
+     *
+     * @param stdIn
+     *            InputStream object
+     */
+    public synchronized void setStdIn(InputStream stdIn) {
+	clearStdIn();
+	this.stdIn = stdIn;
+    }
+
+    /**
+     * Sets the standard input of the Ghostscript interpreter from a buffer.
+     * Data between the buffer position and limit is copied straight to the
+     * interpreter input buffer. The position of the given buffer is not
+     * modified.
+     *
+     * @param stdIn
+     *            ByteBuffer holding input data
+     */
+    public synchronized void setStdIn(ByteBuffer stdIn) {
+	clearStdIn();
+	this.stdInByteBuffer = stdIn.duplicate();
+    }
+
+    /**
+     * Sets the standard input of the Ghostscript interpreter from a channel
+     * (a FileChannel for instance). Data is read from the channel straight into
+     * the interpreter input buffer.
+     *
+     * @param stdIn
+     *            Blocking ReadableByteChannel providing input data
+     */
+    public synchronized void setStdIn(ReadableByteChannel stdIn) {
+	clearStdIn();
+	this.stdInChannel = stdIn;
+    }
+
+    /**
+     * Checks if a standard input (stream, buffer or channel) is set.
+     *
+     * @return true if set
+     */
+    public synchronized boolean hasStdIn() {
+	return stdIn != null || stdInByteBuffer != null || stdInChannel != null;
+    }
+
+    private void clearStdIn() {
+
+	stdIn = null;
+	stdInByteBuffer = null;
+	stdInChannel = null;
+	stdInTranscoded = null;
+    }
+
+    /**
+     * Reads standard input data into the native buffer provided by the
+     * interpreter.
+     *
+     * @param buf
+     *            Native buffer
+     * @param len
+     *            Native buffer length
+     * @return Number of bytes written to the native buffer, 0 on end of input
+     * @throws IOException
+     */
+    private synchronized int readStdIn(Pointer buf, int len)
+	    throws IOException {
+
+	// legacy text mode (ghost4j.encoding set)
+	String encoding = System.getProperty(Ghostscript.PROPERTY_NAME_ENCODING);
+	if (encoding != null) {
+	    return readTranscodedStdIn(buf, len, encoding);
+	}
+
+	// buffer: copy directly to native memory
+	if (stdInByteBuffer != null) {
+	    int count = Math.min(len, stdInByteBuffer.remaining());
+	    if (count > 0) {
+		ByteBuffer chunk = stdInByteBuffer.duplicate();
+		chunk.limit(chunk.position() + count);
+		buf.getByteBuffer(0, count).put(chunk);
+		stdInByteBuffer.position(chunk.position());
+	    }
+	    return count;
+	}
+
+	// channel: read directly into native memory
+	if (stdInChannel != null) {
+	    int read = stdInChannel.read(buf.getByteBuffer(0, len));
+	    return read == -1 ? 0 : read;
+	}
+
+	// stream: read into reused buffer
+	int read = readRawStdIn(len);
+	if (read <= 0) {
+	    return 0;
+	}
+	buf.write(0, stdInReadBuffer, 0, read);
+
+	return read;
+    }
+
+    private int readTranscodedStdIn(Pointer buf, int len, String encoding)
+	    throws IOException {
+
+	if (stdInTranscoded == null || !stdInTranscoded.hasRemaining()) {
+	    int read = readRawStdIn(len);
+	    if (read <= 0) {
+		return 0;
+	    }
+	    stdInTranscoded = ByteBuffer.wrap(new String(stdInReadBuffer, 0,
+		    read, encoding).getBytes(Native.getDefaultStringEncoding()));
+	}
+
+	int count = Math.min(len, stdInTranscoded.remaining());
+	stdInTranscoded.get(getStdInReadBuffer(len), 0, count);
+	buf.write(0, stdInReadBuffer, 0, count);
+
+	return count;
+    }
+
+    /**
+     * Reads at most len bytes of standard input into the reused read buffer,
+     * whatever the input source is.
+     *
+     * @return Number of bytes read, -1 on end of input
+     */
+    private int readRawStdIn(int len) throws IOException {
+
+	byte[] buffer = getStdInReadBuffer(len);
+
+	if (stdInByteBuffer != null) {
+	    int count = Math.min(len, stdInByteBuffer.remaining());
+	    if (count == 0) {
+		return -1;
+	    }
+	    stdInByteBuffer.get(buffer, 0, count);
+	    return count;
+	} else if (stdInChannel != null) {
+	    return stdInChannel.read(ByteBuffer.wrap(buffer, 0, len));
+	} else if (stdIn != null) {
+	    return stdIn.read(buffer, 0, len);
+	}
+
+	return -1;
+    }
+
+    /**
+     * Sends updated rows of the display device raster to a band callback, as
+     * a view over native image memory.
+     *
+     * @param callback
+     *            Band callback
+     * @param y
+     *            First updated page row
+     * @param h
+     *            Number of updated rows
+     * @throws GhostscriptException
+     */
+    private void displayBand(BandDisplayCallback callback, int y, int h)
+	    throws GhostscriptException {
+
+	DisplayData data = getDisplayData();
+	if (data.getPimage() == null) {
+	    return;
+	}
+
+	// clip band to the page
+	int first = Math.max(0, y);
+	int last = Math.min(data.getHeight(), y + h);
+	if (last <= first) {
+	    return;
+	}
+
+	// first memory row of the band
+	int memoryRow = first;
+	if ((data.getFormat() & BandDisplayCallback.DISPLAY_BOTTOMFIRST) != 0) {
+	    memoryRow = data.getHeight() - last;
+	}
+
+	callback.displayBand(data.getWidth(), data.getHeight(),
+		data.getRaster(), data.getFormat(), first, last - first, data
+			.getPimage().getByteBuffer(
+				(long) memoryRow * data.getRaster(),
+				(long) (last - first) * data.getRaster()));
+    }
+
+    /**
+     * Copies interpreter output bytes to an output stream, through a reused
+     * buffer.
+     *
+     * @param out
+     *            OutputStream receiving the output (ignored if null)
+     * @param buffer
+     *            Buffer to reuse (may be null)
+     * @param buf
+     *            Native output data
+     * @param len
+     *            Output length
+     * @return The buffer, to reuse on next call
+     */
+    private static byte[] writeOutput(OutputStream out, byte[] buffer,
+	    Pointer buf, int len) {
+
+	if (buffer == null || buffer.length < len) {
+	    buffer = new byte[Math.max(len, 1024)];
+	}
+
+	if (out != null && len > 0) {
+	    buf.read(0, buffer, 0, len);
+	    try {
+		out.write(buffer, 0, len);
+	    } catch (IOException ex) {
+		// do nothing
+	    }
+	}
+
+	return buffer;
+    }
+
+    private byte[] getStdInReadBuffer(int len) {
+
+	if (stdInReadBuffer == null || stdInReadBuffer.length < len) {
+	    stdInReadBuffer = new byte[len];
+	}
+
+	return stdInReadBuffer;
+    }
+
+    /**
+     * Gets the native interpreter instance, creating it on first call.
+     *
+     * @return Ghostscript native instance.
+     * @throws org.ghost4j.GhostscriptException
+     */
+    protected synchronized GhostscriptLibrary.gs_main_instance.ByReference getNativeInstanceByRef()
+	    throws GhostscriptException {
+
+	if (nativeInstanceByRef == null) {
+
+	    // prepare instance
+	    nativeInstanceByRef = new GhostscriptLibrary.gs_main_instance.ByReference();
+	    // create instance
+	    int result = GhostscriptLibrary.instance.gsapi_new_instance(
+		    nativeInstanceByRef.getPointer(), null);
+
+	    // test result
+	    if (result != 0) {
+		// failure
+		nativeInstanceByRef = null;
+		throw new GhostscriptException(
+			"Cannot get Ghostscript interpreter instance. Error code is "
+				+ result);
+	    }
+	}
+
+	return nativeInstanceByRef;
+    }
+
+    private synchronized DisplayData getDisplayData() {
+
+	if (displayData == null) {
+	    displayData = new DisplayData();
+	}
+
+	return displayData;
+    }
+
+    /**
+     * Initializes Ghostscript interpreter.
+     *
+     * @param args
+     *            Interpreter parameters. Use the same as Ghostscript command
+     *            line arguments.
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void initialize(String[] args) throws GhostscriptException {
+
+	int result = 0;
+
+	// native callbacks dispatch to current streams
+	buildNativeStdioCallbacks();
+
+	// stdout, if no stdout explicitly defined, use a
+	// GhostscriptLoggerOutputStream to log messages
+	if (getStdOut() == null) {
+	    setStdOut(new GhostscriptLoggerOutputStream(Level.INFO));
+	}
+
+	// stderr, if no stderr explicitly defined, use a
+	// GhostscriptLoggerOutputStream to log messages
+	if (getStdErr() == null) {
+	    setStdErr(new GhostscriptLoggerOutputStream(Level.ERROR));
+	}
+
+	// io setting (stdin callback only if a stdin is set)
+	result = GhostscriptLibrary.instance.gsapi_set_stdio_raw(
+		getNativeInstanceByRef().getValue(),
+		hasStdIn() ? nativeStdInCallback : null, nativeStdOutCallback,
+		nativeStdErrCallback);
+
+	// test result
+	if (result != 0) {
+	    throw new GhostscriptException(
+		    "Cannot set IO on Ghostscript interpreter. Error code is "
+			    + result);
+	}
+
+	// poll setting (job cancellation and timeout), optional: jobs are
+	// then not interrupted
+	try {
+	    result = GhostscriptLibrary.instance.gsapi_set_poll(
+		    getNativeInstanceByRef().getValue(), nativePollCallback);
+	} catch (UnsatisfiedLinkError e) {
+	    result = -1;
+	}
+	if (result != 0 && !pollFailureLogged) {
+	    pollFailureLogged = true;
+	    logger.warn("Cannot set poll callback on Ghostscript interpreter (error code is "
+		    + result + "): jobs will not be interrupted");
+	}
+
+	// in-memory files
+	registerFileSystem();
+
+	// display callback setting
+	if (getDisplayCallback() != null) {
+	    result = GhostscriptLibrary.instance.gsapi_set_display_callback(
+		    getNativeInstanceByRef().getValue(),
+		    buildNativeDisplayCallback());
+
+	    // test result
+	    if (result != 0) {
+		throw new GhostscriptException(
+			"Cannot set display callback on Ghostscript interpreter. Error code is "
+				+ result);
+	    }
+	}
+
+	// init
+	result = GhostscriptLibrary.instance.gsapi_set_arg_encoding(getNativeInstanceByRef().getValue(), GhostscriptLibrary.GS_ARG_ENCODING_UTF8);
+	if (args != null) {
+	    result = GhostscriptLibrary.instance.gsapi_init_with_args(
+		    getNativeInstanceByRef().getValue(), args.length, args);
+	} else {
+	    result = GhostscriptLibrary.instance.gsapi_init_with_args(
+		    getNativeInstanceByRef().getValue(), 0, null);
+	}
+
+	// interpreter is running until exited
+	if (result == 0 || result == -101) {
+	    initialized = true;
+	}
+
+	// interpreter exited: this is not an error
+	if (result == -101) {
+	    exit();
+	    result = 0;
+	}
+
+	// test result
+	if (result != 0) {
+	    GhostscriptJob.checkCurrent(result);
+	    throw new GhostscriptException(
+		    "Cannot initialize Ghostscript interpreter. Error code is "
+			    + result);
+	}
+    }
+
+    /**
+     * Builds native standard input, output and error callbacks, once per
+     * instance. Callbacks dispatch to the streams set when they are called,
+     * so that JNA native trampolines are created only once.
+     */
+    private synchronized void buildNativeStdioCallbacks() {
+
+	if (nativeStdInCallback != null) {
+	    return;
+	}
+
+	nativeStdInCallback = new GhostscriptLibrary.stdin_fn() {
+
+	    public int callback(Pointer caller_handle, Pointer buf, int len) {
+
+		try {
+		    return readStdIn(buf, len);
+		} catch (Exception e) {
+		    // an error occurs: do nothing
+		}
+
+		return 0;
+	    }
+	};
+
+	nativeStdOutCallback = new GhostscriptLibrary.stdout_raw_fn() {
+
+	    private byte[] buffer;
+
+	    public int callback(Pointer caller_handle, Pointer buf, int len) {
+
+		buffer = writeOutput(getStdOut(), buffer, buf, len);
+		return len;
+	    }
+	};
+
+	nativeStdErrCallback = new GhostscriptLibrary.stderr_raw_fn() {
+
+	    private byte[] buffer;
+
+	    public int callback(Pointer caller_handle, Pointer buf, int len) {
+
+		buffer = writeOutput(getStdErr(), buffer, buf, len);
+		return len;
+	    }
+	};
+
+	nativePollCallback = new GhostscriptLibrary.poll_fn() {
+
+	    public int callback(Pointer caller_handle) {
+
+		// called on the thread calling the interpreter
+		GhostscriptJob job = GhostscriptJob.current();
+		if (job != null && job.isInterrupted()) {
+		    return GhostscriptJob.ERROR_INTERRUPT;
+		}
+
+		return 0;
+	    }
+	};
+    }
+
+    /**
+     * Gets the display callback structure major version to use with the
+     * loaded Ghostscript library. The revision is only read once.
+     *
+     * @return Major version
+     */
+    private static int getDisplayCallbackVersion() {
+
+	if (displayCallbackVersion == 0) {
+	    // determine display callback version from Ghostscript version
+	    float version = Float.parseFloat(Ghostscript.getRevision()
+		    .getNumber());
+	    // some versions report version 8.15 as 815.05
+	    if (version < 8.50 || version > 100) {
+		displayCallbackVersion = 1;
+	    } else {
+		displayCallbackVersion = 2;
+	    }
+	}
+
+	return displayCallbackVersion;
+    }
+
+    /**
+     * Builds the native display callback structure. The structure and its
+     * callbacks are built once per instance and dispatch to the
+     * DisplayCallback set when they are called.
+     *
+     * @return The native display callback.
+     */
+    private synchronized GhostscriptLibrary.display_callback_s buildNativeDisplayCallback()
+	    throws GhostscriptException {
+
+	if (nativeDisplayCallback != null) {
+	    setNativeDisplayMemoryCallbacks();
+	    return nativeDisplayCallback;
+	}
+
+	nativeDisplayCallback = new GhostscriptLibrary.display_callback_s();
+
+	nativeDisplayCallback.version_major = getDisplayCallbackVersion();
+	nativeDisplayCallback.version_minor = 0;
+
+	nativeDisplayCallback.display_open = new GhostscriptLibrary.display_callback_s.display_open() {
+
+	    public int callback(Pointer handle, Pointer device) {
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displayOpen();
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_preclose = new GhostscriptLibrary.display_callback_s.display_preclose() {
+
+	    public int callback(Pointer handle, Pointer device) {
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displayPreClose();
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_close = new GhostscriptLibrary.display_callback_s.display_close() {
+
+	    public int callback(Pointer handle, Pointer device) {
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displayClose();
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_presize = new GhostscriptLibrary.display_callback_s.display_presize() {
+
+	    public int callback(Pointer handle, Pointer device, int width,
+		    int height, int raster, int format) {
+
+		// prepare size of memory to allocate
+		getDisplayData().setWidth(width);
+		getDisplayData().setHeight(height);
+		getDisplayData().setRaster(raster);
+		getDisplayData().setFormat(format);
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displayPreSize(width, height, raster,
+			    format);
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_size = new GhostscriptLibrary.display_callback_s.display_size() {
+
+	    public int callback(Pointer handle, Pointer device, int width,
+		    int height, int raster, int format, Pointer pimage) {
+
+		// prepare current page data
+		getDisplayData().setWidth(width);
+		getDisplayData().setHeight(height);
+		getDisplayData().setRaster(raster);
+		getDisplayData().setFormat(format);
+		getDisplayData().setPimage(pimage);
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displaySize(width, height, raster,
+			    format);
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_sync = new GhostscriptLibrary.display_callback_s.display_sync() {
+
+	    public int callback(Pointer handle, Pointer device) {
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displaySync();
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_page = new GhostscriptLibrary.display_callback_s.display_page() {
+
+	    public int callback(Pointer handle, Pointer device, int copies,
+		    int flush) {
+
+		DisplayData displayData = getDisplayData();
+		DisplayCallback displayCallback = getDisplayCallback();
+		long length = (long) displayData.getRaster()
+			* displayData.getHeight();
+
+		// call to java callback
+		try {
+		    if (displayCallback instanceof DirectDisplayCallback) {
+			// view over native image memory: no copy
+			((DirectDisplayCallback) displayCallback).displayPage(
+				displayData.getWidth(),
+				displayData.getHeight(),
+				displayData.getRaster(),
+				displayData.getFormat(), copies, flush,
+				displayData.getPimage().getByteBuffer(0,
+					length));
+		    } else {
+			byte[] data = displayData.getPimage().getByteArray(0,
+				(int) length);
+			displayCallback.displayPage(displayData.getWidth(),
+				displayData.getHeight(),
+				displayData.getRaster(),
+				displayData.getFormat(), copies, flush, data);
+		    }
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+	nativeDisplayCallback.display_update = new GhostscriptLibrary.display_callback_s.display_update() {
+
+	    public int callback(Pointer handle, Pointer device, int x, int y,
+		    int w, int h) {
+
+		// call to java callback
+		try {
+		    getDisplayCallback().displayUpdate(x, y, w, h);
+		    if (getDisplayCallback() instanceof BandDisplayCallback) {
+			displayBand((BandDisplayCallback) getDisplayCallback(),
+				y, h);
+		    }
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+
+	nativeDisplayMemAlloc = new GhostscriptLibrary.display_callback_s.display_memalloc() {
+
+	    public Pointer callback(Pointer handle, Pointer device,
+		    NativeLong size) {
+
+		DisplayMemoryPool memoryPool = getDisplayMemoryPool();
+		if (memoryPool == null) {
+		    return null;
+		}
+
+		try {
+		    return memoryPool.allocate(getDisplayData().getWidth(),
+			    getDisplayData().getHeight(), getDisplayData()
+				    .getFormat(), size.longValue());
+		} catch (Throwable e) {
+		    // allocation failed: Ghostscript reports an error
+		    return null;
+		}
+	    }
+	};
+	nativeDisplayMemFree = new GhostscriptLibrary.display_callback_s.display_memfree() {
+
+	    public int callback(Pointer handle, Pointer device, Pointer mem) {
+
+		DisplayMemoryPool memoryPool = getDisplayMemoryPool();
+		return memoryPool != null && memoryPool.free(mem) ? 0 : 1;
+	    }
+	};
+	setNativeDisplayMemoryCallbacks();
+
+	switch (nativeDisplayCallback.version_major) {
+	case 1:
+	    nativeDisplayCallback.size = nativeDisplayCallback.size()
+		    - Pointer.SIZE;
+	    break;
+	default:
+	    nativeDisplayCallback.size = nativeDisplayCallback.size();
+	    break;
+	}
+
+	nativeDisplayCallback.display_separation = new GhostscriptLibrary.display_callback_s.display_separation() {
+
+	    public int callback(Pointer handle, Pointer device, int component,
+		    String component_name, short c, short m, short y, short k) {
+
+		// call to java callback (values are unsigned)
+		try {
+		    if (getDisplayCallback() instanceof SeparationDisplayCallback) {
+			((SeparationDisplayCallback) getDisplayCallback())
+				.displaySeparation(component, component_name,
+					c & 0xffff, m & 0xffff, y & 0xffff,
+					k & 0xffff);
+		    }
+		} catch (GhostscriptException e) {
+		    return 1;
+		}
+
+		return 0;
+	    }
+	};
+
+	return nativeDisplayCallback;
+    }
+
+    /**
+     * Sets memory callbacks of the native display callback structure: only
+     * when a DisplayMemoryPool is set, otherwise Ghostscript allocates bitmap
+     * memory itself.
+     */
+    private void setNativeDisplayMemoryCallbacks() {
+
+	if (getDisplayMemoryPool() != null) {
+	    nativeDisplayCallback.display_memalloc = nativeDisplayMemAlloc;
+	    nativeDisplayCallback.display_memfree = nativeDisplayMemFree;
+	} else {
+	    nativeDisplayCallback.display_memalloc = null;
+	    nativeDisplayCallback.display_memfree = null;
+	}
+    }
+
+    /**
+     * Exits Ghostscript interpreter. Must be called after initialize.
+     *
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void exit() throws GhostscriptException {
+
+	if (nativeInstanceByRef != null) {
+	    initialized = false;
+	    int result = GhostscriptLibrary.instance
+		    .gsapi_exit(getNativeInstanceByRef().getValue());
+
+	    if (result != 0) {
+		throw new GhostscriptException(
+			"Cannot exit Ghostscript interpreter. Error code is "
+				+ result);
+	    }
+	}
+    }
+
+    /**
+     * Sends command string to Ghostscript interpreter. Must be called after
+     * initialize method. The string is encoded with the native (JNA) encoding
+     * and sent with runBytes.
+     *
+     * @param string
+     *            Command string
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void runString(String string) throws GhostscriptException {
+
+	try {
+	    runBytes(ByteBuffer.wrap(string.getBytes(Native
+		    .getDefaultStringEncoding())));
+	} catch (UnsupportedEncodingException e) {
+	    throw new GhostscriptException(e);
+	}
+    }
+
+    /**
+     * Sends binary command data to the Ghostscript interpreter. Must be called
+     * after initialize method. Data between the buffer position and limit is
+     * sent as is (the buffer position is not modified): data of a direct
+     * buffer is read in place by the interpreter, data of other buffers goes
+     * through a reused native buffer. Data longer than RUN_CHUNK_SIZE is sent
+     * in chunks.
+     *
+     * @param data
+     *            Command data
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void runBytes(ByteBuffer data)
+	    throws GhostscriptException {
+
+	ByteBuffer remaining = data.duplicate();
+	Pointer direct = null;
+	if (remaining.isDirect()) {
+	    direct = Native.getDirectBufferPointer(remaining).share(
+		    remaining.position());
+	}
+
+	// small data: single call
+	if (remaining.remaining() <= RUN_CHUNK_SIZE) {
+	    int length = remaining.remaining();
+	    if (direct == null) {
+		direct = getRunBuffer();
+		direct.getByteBuffer(0, length).put(remaining);
+	    }
+	    IntByReference exitCode = new IntByReference();
+	    GhostscriptLibrary.instance.gsapi_run_string_with_length(
+		    getNativeInstanceByRef().getValue(), direct, length, 0,
+		    exitCode);
+	    checkRunExitCode("gsapi_run_string_with_length", exitCode);
+	    return;
+	}
+
+	// large data: chunks
+	beginRun();
+	boolean completed = false;
+	try {
+	    long offset = 0;
+	    while (remaining.hasRemaining()) {
+		int length = Math.min(RUN_CHUNK_SIZE, remaining.remaining());
+		if (direct != null) {
+		    continueRun(direct.share(offset), length);
+		    remaining.position(remaining.position() + length);
+		    offset += length;
+		} else {
+		    ByteBuffer chunk = remaining.duplicate();
+		    chunk.limit(chunk.position() + length);
+		    getRunBuffer().getByteBuffer(0, length).put(chunk);
+		    remaining.position(chunk.position());
+		    continueRun(runBuffer, length);
+		}
+	    }
+	    completed = true;
+	} finally {
+	    endRun(completed);
+	}
+    }
+
+    /**
+     * Sends binary command data read from a stream to the Ghostscript
+     * interpreter, in chunks of RUN_CHUNK_SIZE bytes. Must be called after
+     * initialize method. The stream is read until its end but not closed.
+     *
+     * @param data
+     *            Stream providing command data
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void runStream(InputStream data)
+	    throws GhostscriptException {
+
+	if (runReadBuffer == null) {
+	    runReadBuffer = new byte[RUN_CHUNK_SIZE];
+	}
+
+	beginRun();
+	boolean completed = false;
+	try {
+	    int read;
+	    while ((read = data.read(runReadBuffer, 0, RUN_CHUNK_SIZE)) != -1) {
+		if (read > 0) {
+		    getRunBuffer().write(0, runReadBuffer, 0, read);
+		    continueRun(runBuffer, read);
+		}
+	    }
+	    completed = true;
+	} catch (IOException e) {
+	    throw new GhostscriptException(
+		    "Cannot read command data sent to Ghostscript interpreter",
+		    e);
+	} finally {
+	    endRun(completed);
+	}
+    }
+
+    private void beginRun() throws GhostscriptException {
+
+	IntByReference exitCode = new IntByReference();
+	GhostscriptLibrary.instance.gsapi_run_string_begin(
+		getNativeInstanceByRef().getValue(), 0, exitCode);
+	checkRunExitCode("gsapi_run_string_begin", exitCode);
+    }
+
+    private void continueRun(Pointer data, int length)
+	    throws GhostscriptException {
+
+	// e_NeedInput (-106) returned while data is incomplete is not an
+	// error: only test exit code
+	IntByReference exitCode = new IntByReference();
+	GhostscriptLibrary.instance.gsapi_run_string_continue(
+		getNativeInstanceByRef().getValue(), data, length, 0, exitCode);
+	checkRunExitCode("gsapi_run_string_continue", exitCode);
+    }
+
+    private void endRun(boolean completed) throws GhostscriptException {
+
+	// always leave the run_string mode, so that the interpreter accepts
+	// further commands; when data was not completely sent, the end error
+	// would only hide the original one
+	IntByReference exitCode = new IntByReference();
+	GhostscriptLibrary.instance.gsapi_run_string_end(
+		getNativeInstanceByRef().getValue(), 0, exitCode);
+	if (completed) {
+	    checkRunExitCode("gsapi_run_string_end", exitCode);
+	}
+    }
+
+    private static void checkRunExitCode(String functionName,
+	    IntByReference exitCode) throws GhostscriptException {
+
+	// test exit code
+	if (exitCode.getValue() != 0) {
+	    GhostscriptJob.checkCurrent(exitCode.getValue());
+	    throw new GhostscriptException(
+		    "Cannot run command on Ghostscript interpreter. "
+			    + functionName + " failed with error code "
+			    + exitCode.getValue());
+	}
+    }
+
+    private Memory getRunBuffer() {
+
+	if (runBuffer == null) {
+	    runBuffer = new Memory(RUN_CHUNK_SIZE);
+	}
+
+	return runBuffer;
+    }
+
+    /**
+     * Sends file Ghostscript interpreter. Must be called after initialize
+     * method.
+     *
+     * @param fileName
+     *            File name
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void runFile(String fileName) throws GhostscriptException {
+
+	IntByReference exitCode = new IntByReference();
+
+	GhostscriptLibrary.instance.gsapi_run_file(getNativeInstanceByRef()
+		.getValue(), fileName, 0, exitCode);
+
+	// test exit code
+	if (exitCode.getValue() != 0) {
+	    GhostscriptJob.checkCurrent(exitCode.getValue());
+	    throw new GhostscriptException(
+		    "Cannot run file on Ghostscript interpreter. Error code "
+			    + exitCode.getValue());
+	}
+
+    }
+
+    /**
+     * Sets a boolean device parameter on the running interpreter (requires
+     * Ghostscript 9.55 or later). The device is updated immediately, without
+     * reinitializing the interpreter.
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParam(String name, boolean value)
+	    throws GhostscriptException {
+	setParam(name, value ? Boolean.TRUE : Boolean.FALSE, false);
+    }
+
+    /**
+     * Sets an integer device parameter on the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParam(String name, int value)
+	    throws GhostscriptException {
+	setParam(name, Integer.valueOf(value), false);
+    }
+
+    /**
+     * Sets a 64 bits integer device parameter on the running interpreter
+     * (requires Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParam(String name, long value)
+	    throws GhostscriptException {
+	setParam(name, Long.valueOf(value), false);
+    }
+
+    /**
+     * Sets a float device parameter on the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParam(String name, float value)
+	    throws GhostscriptException {
+	setParam(name, Float.valueOf(value), false);
+    }
+
+    /**
+     * Sets a string device parameter on the running interpreter (requires
+     * Ghostscript 9.55 or later). Example: setParam("OutputFile", path)
+     * switches the output file of the current device.
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParam(String name, String value)
+	    throws GhostscriptException {
+	setParam(name, value, false);
+    }
+
+    /**
+     * Sets a name device parameter on the running interpreter (requires
+     * Ghostscript 9.55 or later). Example: setNameParam("ProcessColorModel",
+     * "DeviceCMYK").
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Name value, without leading slash
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setNameParam(String name, String value)
+	    throws GhostscriptException {
+	setNativeParam(name, toNativeString(value),
+		GhostscriptLibrary.GS_SPT_NAME, false);
+    }
+
+    /**
+     * Sets a device parameter given as PostScript code on the running
+     * interpreter (requires Ghostscript 9.55 or later). Example:
+     * setParsedParam("HWResolution", "[300 300]").
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            PostScript representation of the value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParsedParam(String name, String value)
+	    throws GhostscriptException {
+	setNativeParam(name, toNativeString(value),
+		GhostscriptLibrary.GS_SPT_PARSED, false);
+    }
+
+    /**
+     * Sets several device parameters on the running interpreter (requires
+     * Ghostscript 9.55 or later). The device is updated once, after the last
+     * parameter is set. Supported value types are Boolean, Integer, Long,
+     * Float, Double and String (sent as a PostScript string, use setNameParam
+     * for names).
+     *
+     * @param params
+     *            Parameter values, by name
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized void setParams(Map<String, ?> params)
+	    throws GhostscriptException {
+
+	int remaining = params.size();
+	for (Map.Entry<String, ?> param : params.entrySet()) {
+	    remaining--;
+	    setParam(param.getKey(), param.getValue(), remaining > 0);
+	}
+    }
+
+    /**
+     * Gets a boolean device parameter of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized boolean getBooleanParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_BOOL).getInt(0) != 0;
+    }
+
+    /**
+     * Gets an integer device parameter of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized int getIntParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_INT).getInt(0);
+    }
+
+    /**
+     * Gets a 64 bits integer device parameter of the running interpreter
+     * (requires Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized long getLongParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_I64).getLong(0);
+    }
+
+    /**
+     * Gets a float device parameter of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized float getFloatParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_FLOAT)
+		.getFloat(0);
+    }
+
+    /**
+     * Gets a string device parameter of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Parameter value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized String getStringParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_STRING)
+		.getString(0);
+    }
+
+    /**
+     * Gets a name device parameter of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return Name value, without leading slash
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized String getNameParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_NAME)
+		.getString(0);
+    }
+
+    /**
+     * Gets a device parameter of any type of the running interpreter, as
+     * PostScript code (requires Ghostscript 9.55 or later).
+     *
+     * @param name
+     *            Parameter name
+     * @return PostScript representation of the value
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized String getParsedParam(String name)
+	    throws GhostscriptException {
+	return getNativeParam(name, GhostscriptLibrary.GS_SPT_PARSED)
+		.getString(0);
+    }
+
+    /**
+     * Enumerates device parameters of the running interpreter (requires
+     * Ghostscript 9.55 or later).
+     *
+     * @return Parameter types (GhostscriptLibrary.GS_SPT_* constants), by
+     *         parameter name
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public synchronized Map<String, Integer> getParamTypes()
+	    throws GhostscriptException {
+
+	assertParamsAvailable();
+
+	Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+
+	PointerByReference iterator = new PointerByReference();
+	PointerByReference key = new PointerByReference();
+	IntByReference type = new IntByReference();
+
+	int code;
+	while ((code = GhostscriptLibrary.instance.gsapi_enumerate_params(
+		nativeInstanceByRef.getValue(), iterator, key, type)) == 0) {
+	    result.put(key.getValue().getString(0),
+		    Integer.valueOf(type.getValue()));
+	}
+
+	// test result
+	if (code < 0) {
+	    throw new GhostscriptException(
+		    "Cannot enumerate parameters of Ghostscript interpreter. Error code is "
+			    + code);
+	}
+
+	return result;
+    }
+
+    /**
+     * Sets a device parameter from a Java value.
+     *
+     * @param name
+     *            Parameter name
+     * @param value
+     *            Boolean, Integer, Long, Float, Double or String value
+     * @param moreToCome
+     *            true to defer the device update
+     * @throws GhostscriptException
+     */
+    private void setParam(String name, Object value, boolean moreToCome)
+	    throws GhostscriptException {
+
+	Memory memory;
+	int type;
+	if (value instanceof Boolean) {
+	    memory = new Memory(4);
+	    memory.setInt(0, ((Boolean) value).booleanValue() ? 1 : 0);
+	    type = GhostscriptLibrary.GS_SPT_BOOL;
+	} else if (value instanceof Integer) {
+	    memory = new Memory(4);
+	    memory.setInt(0, ((Integer) value).intValue());
+	    type = GhostscriptLibrary.GS_SPT_INT;
+	} else if (value instanceof Long) {
+	    memory = new Memory(8);
+	    memory.setLong(0, ((Long) value).longValue());
+	    type = GhostscriptLibrary.GS_SPT_I64;
+	} else if (value instanceof Float || value instanceof Double) {
+	    memory = new Memory(4);
+	    memory.setFloat(0, ((Number) value).floatValue());
+	    type = GhostscriptLibrary.GS_SPT_FLOAT;
+	} else if (value instanceof String) {
+	    memory = toNativeString((String) value);
+	    type = GhostscriptLibrary.GS_SPT_STRING;
+	} else {
+	    throw new IllegalArgumentException(
+		    "Unsupported value type for parameter " + name + ": "
+			    + (value == null ? "null" : value.getClass()
+				    .getName()));
+	}
+
+	setNativeParam(name, memory, type, moreToCome);
+    }
+
+    private void setNativeParam(String name, Pointer value, int type,
+	    boolean moreToCome) throws GhostscriptException {
+
+	assertParamsAvailable();
+
+	if (moreToCome) {
+	    type |= GhostscriptLibrary.GS_SPT_MORE_TO_COME;
+	}
+
+	int result = GhostscriptLibrary.instance.gsapi_set_param(
+		nativeInstanceByRef.getValue(), name, value, type);
+
+	// test result
+	if (result < 0) {
+	    throw new GhostscriptException("Cannot set parameter " + name
+		    + " on Ghostscript interpreter. Error code is " + result);
+	}
+    }
+
+    private Memory getNativeParam(String name, int type)
+	    throws GhostscriptException {
+
+	assertParamsAvailable();
+
+	// first call gets the value size
+	int size = GhostscriptLibrary.instance.gsapi_get_param(
+		nativeInstanceByRef.getValue(), name, null, type);
+	int result = size;
+	Memory memory = null;
+	if (size >= 0) {
+	    memory = new Memory(Math.max(size, 8));
+	    memory.clear();
+	    result = GhostscriptLibrary.instance.gsapi_get_param(
+		    nativeInstanceByRef.getValue(), name, memory, type);
+	}
+
+	// test result
+	if (result < 0) {
+	    throw new GhostscriptException("Cannot get parameter " + name
+		    + " of Ghostscript interpreter. Error code is " + result);
+	}
+
+	return memory;
+    }
+
+    private void assertParamsAvailable() throws GhostscriptException {
+
+	if (!initialized || nativeInstanceByRef == null) {
+	    throw new GhostscriptException(
+		    "Ghostscript interpreter must be initialized to access parameters");
+	}
+    }
+
+    private static Memory toNativeString(String value) {
+
+	byte[] bytes = Native.toByteArray(value);
+	Memory memory = new Memory(bytes.length);
+	memory.write(0, bytes, 0, bytes.length);
+
+	return memory;
+    }
+
+    /**
+     * Checks if the interpreter is initialized and ready to accept commands
+     * (initialize was called, and neither exit nor an interpreter quit
+     * occurred since).
+     *
+     * @return true if initialized
+     */
+    public boolean isInitialized() {
+	return initialized;
+    }
+
+    /**
+     * Deletes the native Ghostscript interpreter instance held by this object.
+     * The interpreter must have been exited before. A new native instance is
+     * created the next time the interpreter is initialized.
+     */
+    public synchronized void delete() {
+
+	if (nativeInstanceByRef != null) {
+	    GhostscriptLibrary.instance
+		    .gsapi_delete_instance(nativeInstanceByRef.getValue());
+	    nativeInstanceByRef = null;
+	    registeredFileSystem = null;
+	}
+    }
+
+    /**
+     * Registers the in-memory file system (if any) on the native instance.
+     *
+     * @throws GhostscriptException
+     */
+    private synchronized void registerFileSystem() throws GhostscriptException {
+
+	if (fileSystem == null || !fileSystem.isInMemory()
+		|| registeredFileSystem != null) {
+	    return;
+	}
+
+	GhostscriptLibrary.gsapi_fs_t nativeFileSystem = fileSystem
+		.getNativeFileSystem();
+	int result = GhostscriptLibrary.instance.gsapi_add_fs(
+		getNativeInstanceByRef().getValue(), nativeFileSystem, null);
+
+	// test result
+	if (result != 0) {
+	    throw new GhostscriptException(
+		    "Cannot add file system on Ghostscript interpreter. Error code is "
+			    + result);
+	}
+
+	registeredFileSystem = nativeFileSystem;
+    }
+
+    /**
+     * Removes the registered file system (if any) from the native instance.
+     */
+    private synchronized void unregisterFileSystem() {
+
+	if (registeredFileSystem != null && nativeInstanceByRef != null) {
+	    GhostscriptLibrary.instance.gsapi_remove_fs(
+		    nativeInstanceByRef.getValue(), registeredFileSystem, null);
+	}
+	registeredFileSystem = null;
+    }
+
+    /**
+     * Resets streams of an initialized interpreter to their defaults (no
+     * standard input, output and errors sent to the logger, no display
+     * callback and memory pool), so that a running interpreter can be handed
+     * to another caller.
+     */
+    protected synchronized void resetStreams() {
+
+	clearStdIn();
+	stdOut = new GhostscriptLoggerOutputStream(Level.INFO);
+	stdErr = new GhostscriptLoggerOutputStream(Level.ERROR);
+	displayCallback = null;
+	displayData = null;
+	displayMemoryPool = null;
+	unregisterFileSystem();
+	fileSystem = null;
+    }
+
+    /**
+     * Resets streams and display callback so that the object can be handed to
+     * another caller.
+     */
+    protected synchronized void reset() {
+
+	clearStdIn();
+	stdInReadBuffer = null;
+	runBuffer = null;
+	runReadBuffer = null;
+	stdOut = null;
+	stdErr = null;
+	displayCallback = null;
+	displayData = null;
+	displayMemoryPool = null;
+	unregisterFileSystem();
+	fileSystem = null;
+    }
+}
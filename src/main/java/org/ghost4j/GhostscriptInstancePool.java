@@ -0,0 +1,456 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of Ghostscript interpreter instances. Each caller borrows its
+ * own GhostscriptInstance (and therefore its own native interpreter instance),
+ * uses it and releases it to the pool. The pool size defines how many
+ * interpreters may run at the same time in the JVM: values greater than 1
+ * require a Ghostscript library built thread-safe (GS_THREADSAFE), otherwise
+ * gsapi_new_instance fails for the second concurrent instance.
+ * <p>
+ * The pool can also hand out GhostscriptSession objects. Released sessions are
+ * kept warm (initialized) and reused by the next caller asking for a session
+ * with the same base arguments. Idle sessions count against the pool size:
+ * they are closed when their native instance is needed by another caller.
+ * <p>
+ * The Ghostscript singleton counts against the size of the shared pool too:
+ * it holds a permit while it has a native interpreter instance (from its
+ * initialization until it is exited or deleted), so that with the default
+ * pool size of 1 the singleton and pooled instances (used by components)
+ * never run at the same time. With this size, the thread which initialized
+ * the singleton cannot borrow from the shared pool until the singleton is
+ * exited: it would wait for itself, a GhostscriptException is thrown instead.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptInstancePool {
+
+    /**
+     * Name of the system property used to set the size of the shared pool.
+     */
+    public static final String PROPERTY_NAME_POOL_SIZE = "ghost4j.pool.size";
+
+    /**
+     * Shared instance.
+     */
+    private static GhostscriptInstancePool instance;
+
+    /**
+     * Maximum number of instances that can be borrowed at the same time.
+     */
+    private final int maxSize;
+
+    /**
+     * Permits bounding the number of borrowed instances (fair: first come,
+     * first served).
+     */
+    private final Semaphore permits;
+
+    /**
+     * Thread which acquired the permit held by the Ghostscript singleton
+     * (null if the singleton holds no permit of this pool).
+     */
+    private volatile Thread singletonThread;
+
+    /**
+     * Instances available for borrowing.
+     */
+    private final LinkedList<GhostscriptInstance> idleInstances;
+
+    /**
+     * Initialized sessions available for borrowing (most recently used
+     * first).
+     */
+    private final LinkedList<GhostscriptSession> idleSessions;
+
+    /**
+     * Access to the shared pool. Its size is read from the ghost4j.pool.size
+     * system property (default is 1, suitable for non thread-safe Ghostscript
+     * libraries).
+     *
+     * @return The shared GhostscriptInstancePool
+     */
+    public static synchronized GhostscriptInstancePool getInstance() {
+
+	if (instance == null) {
+	    instance = new GhostscriptInstancePool(Integer.getInteger(
+		    PROPERTY_NAME_POOL_SIZE, 1));
+	}
+
+	return instance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize
+     *            Maximum number of instances borrowed at the same time
+     */
+    public GhostscriptInstancePool(int maxSize) {
+
+	if (maxSize < 1) {
+	    throw new IllegalArgumentException("Pool size must be at least 1");
+	}
+
+	this.maxSize = maxSize;
+	this.permits = new Semaphore(maxSize, true);
+	this.idleInstances = new LinkedList<GhostscriptInstance>();
+	this.idleSessions = new LinkedList<GhostscriptSession>();
+    }
+
+    /**
+     * Borrows an instance from the pool, waiting for one to be released if
+     * the pool is exhausted.
+     *
+     * @return A GhostscriptInstance
+     * @throws GhostscriptException
+     *             If the calling thread is interrupted while waiting
+     */
+    public GhostscriptInstance borrow() throws GhostscriptException {
+
+	checkSingletonThread();
+	try {
+	    permits.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new GhostscriptException(
+		    "Interrupted while waiting for a Ghostscript instance", e);
+	}
+
+	return takeIdleInstance();
+    }
+
+    /**
+     * Borrows an open session from the pool, waiting for one to be released
+     * if the pool is exhausted. A warm session initialized with the same base
+     * arguments is reused when available, otherwise a new session is opened.
+     *
+     * @param baseArgs
+     *            Session base arguments (null for
+     *            GhostscriptSession.DEFAULT_BASE_ARGS)
+     * @return An open GhostscriptSession
+     * @throws GhostscriptException
+     *             If the session cannot be opened or the calling thread is
+     *             interrupted while waiting
+     */
+    public GhostscriptSession borrowSession(String[] baseArgs)
+	    throws GhostscriptException {
+
+	checkSingletonThread();
+	try {
+	    permits.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new GhostscriptException(
+		    "Interrupted while waiting for a Ghostscript session", e);
+	}
+
+	try {
+
+	    // reuse a warm session
+	    GhostscriptSession session = takeIdleSession(baseArgs);
+	    if (session != null) {
+		return session;
+	    }
+
+	    // open a new one
+	    session = new GhostscriptSession(takeIdleInstance(), baseArgs);
+	    try {
+		session.open();
+	    } catch (GhostscriptException e) {
+		closeSession(session);
+		throw e;
+	    }
+
+	    return session;
+
+	} catch (GhostscriptException e) {
+	    permits.release();
+	    throw e;
+	} catch (RuntimeException e) {
+	    permits.release();
+	    throw e;
+	}
+    }
+
+    /**
+     * Releases a borrowed session. The session is reset and kept open for
+     * reuse; it is closed if it cannot be reset, if a job state could not be
+     * restored (dirty session) or if a display callback is set (it may be
+     * registered on the interpreter).
+     *
+     * @param session
+     *            Session to release (null is ignored)
+     */
+    public void release(GhostscriptSession session) {
+
+	if (session == null) {
+	    return;
+	}
+
+	try {
+	    if (session.isOpen() && !session.isDirty()
+		    && session.getInstance().getDisplayCallback() == null) {
+		session.reset();
+		session.getInstance().resetStreams();
+		synchronized (this) {
+		    idleSessions.addFirst(session);
+		}
+	    } else {
+		closeSession(session);
+	    }
+	} catch (GhostscriptException e) {
+	    closeSession(session);
+	} finally {
+	    permits.release();
+	}
+    }
+
+    /**
+     * Acquires a permit without borrowing an instance (used by the Ghostscript
+     * singleton), waiting for one to be released if the pool is exhausted.
+     * Idle sessions are closed if needed so that no more than maxSize native
+     * instances exist.
+     *
+     * @throws GhostscriptException
+     *             If the calling thread is interrupted while waiting
+     */
+    void acquirePermit() throws GhostscriptException {
+
+	try {
+	    permits.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new GhostscriptException(
+		    "Interrupted while waiting for a Ghostscript instance", e);
+	}
+
+	evictIdleSession();
+    }
+
+    /**
+     * Releases a permit acquired with acquirePermit.
+     */
+    void releasePermit() {
+	permits.release();
+    }
+
+    /**
+     * Sets the thread which acquired the permit held by the Ghostscript
+     * singleton.
+     *
+     * @param thread
+     *            The thread, or null once the permit is released
+     */
+    void setSingletonThread(Thread thread) {
+	singletonThread = thread;
+    }
+
+    /**
+     * Checks that the calling thread does not hold the only permit of the
+     * pool through the Ghostscript singleton, as it would wait for itself.
+     *
+     * @throws GhostscriptException
+     *             If the calling thread holds the only permit
+     */
+    private void checkSingletonThread() throws GhostscriptException {
+
+	if (maxSize == 1 && singletonThread == Thread.currentThread()) {
+	    throw new GhostscriptException(
+		    "The Ghostscript singleton initialized by this thread holds the only pool permit: exit it before using pooled instances or components");
+	}
+    }
+
+    /**
+     * Closes all idle sessions of the pool.
+     */
+    public void closeIdleSessions() {
+
+	while (true) {
+	    GhostscriptSession session;
+	    synchronized (this) {
+		if (idleSessions.isEmpty()) {
+		    return;
+		}
+		session = idleSessions.removeLast();
+	    }
+	    closeSession(session);
+	}
+    }
+
+    /**
+     * Borrows an instance from the pool, waiting at most the given time for
+     * one to be released if the pool is exhausted.
+     *
+     * @param timeout
+     *            Maximum time to wait
+     * @param unit
+     *            Time unit of the timeout
+     * @return A GhostscriptInstance
+     * @throws GhostscriptException
+     *             If no instance got available in time or the calling thread
+     *             is interrupted while waiting
+     */
+    public GhostscriptInstance borrow(long timeout, TimeUnit unit)
+	    throws GhostscriptException {
+
+	checkSingletonThread();
+	try {
+	    if (!permits.tryAcquire(timeout, unit)) {
+		throw new GhostscriptException(
+			"Timeout waiting for a Ghostscript instance");
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new GhostscriptException(
+		    "Interrupted while waiting for a Ghostscript instance", e);
+	}
+
+	return takeIdleInstance();
+    }
+
+    /**
+     * Releases a borrowed instance. The interpreter is exited and its native
+     * instance deleted (Ghostscript does not support re-initializing an
+     * interpreter), then the object is made available to other callers.
+     *
+     * @param gs
+     *            Instance to release (null is ignored)
+     * @throws GhostscriptException
+     *             If the interpreter cannot be exited
+     */
+    public void release(GhostscriptInstance gs) throws GhostscriptException {
+
+	if (gs == null) {
+	    return;
+	}
+
+	try {
+	    gs.exit();
+	} finally {
+	    gs.delete();
+	    gs.reset();
+	    synchronized (this) {
+		idleInstances.addFirst(gs);
+	    }
+	    permits.release();
+	}
+    }
+
+    /**
+     * Gets the maximum number of instances that can be borrowed at the same
+     * time.
+     *
+     * @return The pool size
+     */
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    /**
+     * Gets the number of instances currently borrowed.
+     *
+     * @return Borrowed instance count
+     */
+    public int getActiveCount() {
+	return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * Gets the number of warm sessions waiting to be reused.
+     *
+     * @return Idle session count
+     */
+    public synchronized int getIdleSessionCount() {
+	return idleSessions.size();
+    }
+
+    /**
+     * Gets the number of callers waiting for an instance.
+     *
+     * @return Waiting caller count (estimate)
+     */
+    public int getWaitingCount() {
+	return permits.getQueueLength();
+    }
+
+    /**
+     * Takes an instance without native interpreter, closing idle sessions if
+     * needed so that no more than maxSize native instances exist.
+     */
+    private GhostscriptInstance takeIdleInstance() {
+
+	evictIdleSession();
+
+	GhostscriptInstance result = null;
+	synchronized (this) {
+	    if (!idleInstances.isEmpty()) {
+		result = idleInstances.removeFirst();
+	    }
+	}
+
+	return result != null ? result : new GhostscriptInstance();
+    }
+
+    /**
+     * Closes the least recently used idle session if more than maxSize native
+     * instances would exist otherwise.
+     */
+    private void evictIdleSession() {
+
+	GhostscriptSession evicted = null;
+	synchronized (this) {
+	    if (getActiveCount() + idleSessions.size() > maxSize) {
+		evicted = idleSessions.removeLast();
+	    }
+	}
+
+	if (evicted != null) {
+	    closeSession(evicted);
+	}
+    }
+
+    /**
+     * Takes a warm session opened with given base arguments, or null if none
+     * is available.
+     */
+    private synchronized GhostscriptSession takeIdleSession(String[] baseArgs) {
+
+	for (GhostscriptSession session : idleSessions) {
+	    if (session.hasBaseArgs(baseArgs)) {
+		idleSessions.remove(session);
+		return session;
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Closes a session and makes its instance available again.
+     */
+    private void closeSession(GhostscriptSession session) {
+
+	try {
+	    session.close();
+	} catch (GhostscriptException e) {
+	    // instance is deleted anyway: nothing
+	}
+
+	GhostscriptInstance gs = session.getInstance();
+	gs.reset();
+	synchronized (this) {
+	    idleInstances.addFirst(gs);
+	}
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle controlling interpreter work done by a thread: it holds an optional
+ * deadline and can be cancelled from any thread. While a job is attached to a
+ * thread, interpreters called by this thread (directly or through components)
+ * check the job from the Ghostscript poll callback and abort the interpretation
+ * with an interrupt error once the job is cancelled or its deadline is passed.
+ * The native instance is then exited normally and can be reused.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * GhostscriptJob job = new GhostscriptJob(30, TimeUnit.SECONDS);
+ * job.attach();
+ * try {
+ *     converter.convert(document, outputStream);
+ * } finally {
+ *     job.detach();
+ * }
+ * </pre>
+ *
+ * Note: the poll callback is only called by Ghostscript libraries built with
+ * interrupt checks (CHECK_INTERRUPTS), which standard builds lack: elsewhere
+ * the interpreter runs until the end of its work. GhostscriptExecutor still
+ * completes the future of a timed out job, and remote components stop their
+ * worker JVM at the deadline (see AbstractRemoteComponent.setJobTimeout).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptJob {
+
+    /**
+     * Ghostscript interrupt error code, returned by the poll callback to abort
+     * interpretation.
+     */
+    public static final int ERROR_INTERRUPT = -6;
+
+    /**
+     * Job attached to the current thread.
+     */
+    private static final ThreadLocal<GhostscriptJob> currentJob = new ThreadLocal<GhostscriptJob>();
+
+    /**
+     * Deadline (System.nanoTime based), meaningless if hasDeadline is false.
+     */
+    private final long deadline;
+
+    /**
+     * Set to true if the job has a deadline.
+     */
+    private final boolean hasDeadline;
+
+    /**
+     * Set to true when the job is cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Constructor of a job without deadline (it can only be cancelled).
+     */
+    public GhostscriptJob() {
+
+	this.deadline = 0;
+	this.hasDeadline = false;
+    }
+
+    /**
+     * Constructor of a job with a deadline.
+     *
+     * @param timeout
+     *            Maximum time the job can run, from now
+     * @param unit
+     *            Time unit of the timeout
+     */
+    public GhostscriptJob(long timeout, TimeUnit unit) {
+
+	this.deadline = System.nanoTime() + unit.toNanos(timeout);
+	this.hasDeadline = true;
+    }
+
+    /**
+     * Gets the job attached to the current thread.
+     *
+     * @return The job or null if none is attached
+     */
+    public static GhostscriptJob current() {
+	return currentJob.get();
+    }
+
+    /**
+     * Attaches the job to the current thread.
+     */
+    public void attach() {
+	currentJob.set(this);
+    }
+
+    /**
+     * Detaches the job from the current thread.
+     */
+    public void detach() {
+
+	if (currentJob.get() == this) {
+	    currentJob.remove();
+	}
+    }
+
+    /**
+     * Cancels the job: the interpreter running it is interrupted at the next
+     * poll.
+     */
+    public void cancel() {
+	cancelled = true;
+    }
+
+    /**
+     * Checks if the job was cancelled.
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+	return cancelled;
+    }
+
+    /**
+     * Checks if the job deadline is passed.
+     *
+     * @return true if timed out
+     */
+    public boolean isTimedOut() {
+	return hasDeadline && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Checks if the job must be interrupted (cancelled or timed out).
+     *
+     * @return true if the interpreter must stop
+     */
+    public boolean isInterrupted() {
+	return cancelled || isTimedOut();
+    }
+
+    /**
+     * Checks the job attached to the current thread, throwing an exception if
+     * it was interrupted. Called when an interpreter call fails, to report the
+     * cause of the failure.
+     *
+     * @param errorCode
+     *            Error code returned by the interpreter
+     * @throws GhostscriptException
+     *             If the current job was cancelled or timed out
+     */
+    static void checkCurrent(int errorCode) throws GhostscriptException {
+
+	GhostscriptJob job = current();
+	if (job == null) {
+	    return;
+	}
+
+	if (job.isCancelled()) {
+	    throw new GhostscriptException(
+		    "Ghostscript job was cancelled. Error code is " + errorCode);
+	} else if (job.isTimedOut()) {
+	    throw new GhostscriptException(
+		    "Ghostscript job timed out. Error code is " + errorCode);
+	}
+    }
+}
@@ -8,7 +8,9 @@ package org.ghost4j;
 
 import com.sun.jna.Callback;
 import com.sun.jna.FromNativeContext;
+import com.sun.jna.IntegerType;
 import com.sun.jna.Library;
+import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
 import com.sun.jna.Pointer;
 import com.sun.jna.PointerType;
@@ -21,7 +23,7 @@ import java.util.List;
 
 /**
  * Interface (JNA) bridging Ghostscript API (C language) with Java. All API
- * methods are bridged except for: gsapi_set_poll and gsapi_set_visual_tracer.
+ * methods are bridged except for: gsapi_set_visual_tracer.
  * Note: in this interface variable names are kept unchanged compared with the C
  * API. Ghostscript API documentation can be found here:
  * http://ghostscript.com/doc/8.54/API.htm
@@ -32,6 +34,27 @@ public interface GhostscriptLibrary extends Library {
     
     final int GS_ARG_ENCODING_UTF8 = 1;
 
+    /**
+     * Parameter types (gs_set_param_type) used by gsapi_set_param,
+     * gsapi_get_param and gsapi_enumerate_params.
+     */
+    final int GS_SPT_INVALID = -1;
+    final int GS_SPT_NULL = 0;
+    final int GS_SPT_BOOL = 1;
+    final int GS_SPT_INT = 2;
+    final int GS_SPT_FLOAT = 3;
+    final int GS_SPT_NAME = 4;
+    final int GS_SPT_STRING = 5;
+    final int GS_SPT_LONG = 6;
+    final int GS_SPT_I64 = 7;
+    final int GS_SPT_SIZE_T = 8;
+    final int GS_SPT_PARSED = 9;
+    /**
+     * Flag combined with a parameter type to defer the device update until a
+     * parameter is set without it.
+     */
+    final int GS_SPT_MORE_TO_COME = 1 << 31;
+
     /**
      * Static instance of the library itself.
      */
@@ -150,11 +173,12 @@ public interface GhostscriptLibrary extends Library {
          * Callback called to allocate memory for bitmap This is provided in
          * case you need to create memory in a special way, e.g. shared. This
          * will only be called to allocate the image buffer. The first row will
-         * be placed at the address returned by display_memalloc.
+         * be placed at the address returned by display_memalloc. Returns null
+         * if memory cannot be allocated.
          */
         public static interface display_memalloc extends Callback {
 
-            public void callback(Pointer handle, Pointer device, NativeLong size);
+            public Pointer callback(Pointer handle, Pointer device, NativeLong size);
         }
 
         /**
@@ -239,6 +263,224 @@ public interface GhostscriptLibrary extends Library {
         }
     }
 
+    /**
+     * Structure defining custom filesystem callbacks (gsapi_add_fs, available
+     * since Ghostscript 9.53). Each callback sets *file to a gp_file allocated
+     * with gp_file_alloc and returns 0 if it handles the file name, or leaves
+     * *file to NULL and returns 0 to let the next filesystem handle it.
+     */
+    public class gsapi_fs_t extends Structure {
+
+        /**
+         * Callback called to open a file.
+         */
+        public static interface open_file extends Callback {
+
+            public int callback(Pointer mem, Pointer secret, String fname,
+                    String mode, PointerByReference file);
+        }
+
+        /**
+         * Callback called to open a pipe.
+         */
+        public static interface open_pipe extends Callback {
+
+            public int callback(Pointer mem, Pointer secret, String fname,
+                    Pointer rfname, String mode, PointerByReference file);
+        }
+
+        /**
+         * Callback called to open a scratch (temporary) file.
+         */
+        public static interface open_scratch extends Callback {
+
+            public int callback(Pointer mem, Pointer secret, String prefix,
+                    Pointer rfname, String mode, int rm, PointerByReference file);
+        }
+
+        /**
+         * Callback called to open a printer (device output file).
+         */
+        public static interface open_printer extends Callback {
+
+            public int callback(Pointer mem, Pointer secret, String fname,
+                    int binary, PointerByReference file);
+        }
+
+        /**
+         * Callback called to open a handle.
+         */
+        public static interface open_handle extends Callback {
+
+            public int callback(Pointer mem, Pointer secret, String fname,
+                    String access, PointerByReference file);
+        }
+
+        public open_file open_file;
+        public open_pipe open_pipe;
+        public open_scratch open_scratch;
+        public open_printer open_printer;
+        public open_handle open_handle;
+
+        protected List<?> getFieldOrder() {
+            return Arrays.asList("open_file", "open_pipe", "open_scratch", "open_printer", "open_handle");
+        }
+    }
+
+    /**
+     * Structure defining the operations of a gp_file (file opened by a custom
+     * filesystem). f is the gp_file pointer.
+     */
+    public class gp_file_ops_t extends Structure {
+
+        public static interface close extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface getc extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface putc extends Callback {
+
+            public int callback(Pointer f, int c);
+        }
+
+        public static interface read extends Callback {
+
+            public int callback(Pointer f, size_t size, int count, Pointer buf);
+        }
+
+        public static interface write extends Callback {
+
+            public int callback(Pointer f, size_t size, int count, Pointer buf);
+        }
+
+        public static interface seek extends Callback {
+
+            public int callback(Pointer f, long offset, int whence);
+        }
+
+        public static interface tell extends Callback {
+
+            public long callback(Pointer f);
+        }
+
+        public static interface eof extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface dup extends Callback {
+
+            public Pointer callback(Pointer f, String mode);
+        }
+
+        public static interface seekable extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface pread extends Callback {
+
+            public int callback(Pointer f, size_t count, long offset, Pointer buf);
+        }
+
+        public static interface pwrite extends Callback {
+
+            public int callback(Pointer f, size_t count, long offset, Pointer buf);
+        }
+
+        public static interface is_char_buffered extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface fflush extends Callback {
+
+            public void callback(Pointer f);
+        }
+
+        public static interface ferror extends Callback {
+
+            public int callback(Pointer f);
+        }
+
+        public static interface get_file extends Callback {
+
+            public Pointer callback(Pointer f);
+        }
+
+        public static interface clearerr extends Callback {
+
+            public void callback(Pointer f);
+        }
+
+        public static interface reopen extends Callback {
+
+            public Pointer callback(Pointer f, String fname, String mode);
+        }
+
+        public close close;
+        public getc getc;
+        public putc putc;
+        public read read;
+        public write write;
+        public seek seek;
+        public tell tell;
+        public eof eof;
+        public dup dup;
+        public seekable seekable;
+        public pread pread;
+        public pwrite pwrite;
+        public is_char_buffered is_char_buffered;
+        public fflush fflush;
+        public ferror ferror;
+        public get_file get_file;
+        public clearerr clearerr;
+        public reopen reopen;
+
+        protected List<?> getFieldOrder() {
+            return Arrays.asList("close", "getc", "putc", "read", "write", "seek", "tell", "eof", "dup", "seekable", "pread", "pwrite", "is_char_buffered", "fflush", "ferror", "get_file", "clearerr", "reopen");
+        }
+    }
+
+    /**
+     * Structure of a gp_file, as declared in base/gp.h (Ghostscript 9.53 and
+     * later, which support custom filesystems). Only used for its size: files
+     * are allocated by gp_file_alloc.
+     */
+    public class gp_file_s extends Structure {
+
+        public gp_file_ops_t ops;
+        public Pointer memory;
+        public Pointer buffer;
+        public int buffer_size;
+
+        protected List<?> getFieldOrder() {
+            return Arrays.asList("ops", "memory", "buffer", "buffer_size");
+        }
+    }
+
+    /**
+     * C size_t type (unsigned, 32 or 64 bits depending on the platform, even
+     * where long is 32 bits as on Win64).
+     */
+    public class size_t extends IntegerType {
+
+        private static final long serialVersionUID = 3542432349451620462L;
+
+        public size_t() {
+            this(0);
+        }
+
+        public size_t(long value) {
+            super(Native.SIZE_T_SIZE, value, true);
+        }
+    }
+
     /**
      * Pointer holding a native Ghostscript instance.
      */
@@ -258,6 +500,16 @@ public interface GhostscriptLibrary extends Library {
         }
     }
 
+    /**
+     * Callback called frequently by Ghostscript during interpretation and
+     * rendering. Must return 0 if all is well, or a negative error code to
+     * make Ghostscript abort (user cancel for instance). Must be fast.
+     */
+    public interface poll_fn extends StdCallCallback {
+
+        public int callback(Pointer caller_handle);
+    }
+
     /**
      * Callback called to provide a custom input to Ghostscript. buf is a
      * pointer to a char array. len is the length of the char array.
@@ -286,6 +538,24 @@ public interface GhostscriptLibrary extends Library {
         public int callback(Pointer caller_handle, String str, int len);
     }
 
+    /**
+     * Same as stdout_fn, but output is received as raw bytes: buf points to
+     * len bytes of output that are not decoded (binary output is preserved).
+     */
+    public interface stdout_raw_fn extends StdCallCallback {
+
+        public int callback(Pointer caller_handle, Pointer buf, int len);
+    }
+
+    /**
+     * Same as stderr_fn, but output is received as raw bytes: buf points to
+     * len bytes of output that are not decoded.
+     */
+    public interface stderr_raw_fn extends StdCallCallback {
+
+        public int callback(Pointer caller_handle, Pointer buf, int len);
+    }
+
     /**
      * This function returns the revision numbers and strings of the Ghostscript
      * interpreter library. You should call it before any other interpreter
@@ -392,6 +662,22 @@ public interface GhostscriptLibrary extends Library {
     public int gsapi_run_string_with_length(Pointer instance, String str,
             int length, int user_errors, IntByReference pexit_code);
 
+    /**
+     * Same as gsapi_run_string_with_length, with instructions read from native
+     * memory (no string conversion).
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param str Pointer to instructions. Max length is 65535.
+     * @param length str length.
+     * @param user_errors If set to 0 errors are returned the normal way (to the
+     * interpreter output), if a negative value is used errors are returns
+     * directly by the function.
+     * @param pexit_code Pointer to the exit return code
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_run_string_with_length(Pointer instance, Pointer str,
+            int length, int user_errors, IntByReference pexit_code);
+
     /**
      * Open an instruction block to the Ghostscript interpreter. The address
      * passed in pexit_code will be used to return the exit code for the
@@ -425,6 +711,23 @@ public interface GhostscriptLibrary extends Library {
     public int gsapi_run_string_continue(Pointer instance, String str,
             int length, int user_errors, IntByReference pexit_code);
 
+    /**
+     * Same as gsapi_run_string_continue, with instructions read from native
+     * memory (no string conversion). Returns e_NeedInput (-106) when the
+     * interpreter waits for more data, which is not an error.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param str Pointer to instructions. Max length is 65535.
+     * @param length str length.
+     * @param user_errors If set to 0 errors are returned the normal way (to the
+     * interpreter output), if a negative value is used errors are returns
+     * directly by the function.
+     * @param pexit_code Pointer to the exit return code
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_run_string_continue(Pointer instance, Pointer str,
+            int length, int user_errors, IntByReference pexit_code);
+
     /**
      * Close an instruction block to the Ghostscript interpreter. The address
      * passed in pexit_code will be used to return the exit code for the
@@ -469,6 +772,20 @@ public interface GhostscriptLibrary extends Library {
     public int gsapi_set_stdio(Pointer instance, stdin_fn stdin_fn,
             stdout_fn stdout_fn, stderr_fn stderr_fn);
 
+    /**
+     * Same as gsapi_set_stdio, with stdout and stderr callbacks receiving raw
+     * bytes. Mapped to the gsapi_set_stdio native function (see
+     * GhostscriptLibraryLoader).
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param stdin_fn Stdin callback function.
+     * @param stdout_fn Raw stdout callback function.
+     * @param stderr_fn Raw stderr callback function.
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_set_stdio_raw(Pointer instance, stdin_fn stdin_fn,
+            stdout_raw_fn stdout_fn, stderr_raw_fn stderr_fn);
+
     /**
      * Set the callback structure for the display device. If the display device
      * is used, this must be called after gsapi_new_instance() and before
@@ -480,4 +797,77 @@ public interface GhostscriptLibrary extends Library {
      * @return 0 if everything is OK, < 0 otherwise
      */
     public int gsapi_set_display_callback(Pointer instance, Structure callback);
+
+    /**
+     * Set the callback function for polling. This must be called after
+     * gsapi_new_instance() and before gsapi_init_with_args().
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param poll_fn Poll callback function.
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_set_poll(Pointer instance, poll_fn poll_fn);
+
+    /**
+     * Add a custom filesystem to the Ghostscript instance: files are opened
+     * through its callbacks before the default filesystem is tried. Available
+     * since Ghostscript 9.53.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param fs gsapi_fs_t Structure holding filesystem callback functions.
+     * @param secret Pointer passed back to filesystem callbacks.
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_add_fs(Pointer instance, Structure fs, Pointer secret);
+
+    /**
+     * Remove a custom filesystem previously added with gsapi_add_fs.
+     * Available since Ghostscript 9.53.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param fs gsapi_fs_t Structure given to gsapi_add_fs.
+     * @param secret Pointer given to gsapi_add_fs.
+     */
+    public void gsapi_remove_fs(Pointer instance, Structure fs, Pointer secret);
+
+    /**
+     * Set a device parameter on a running interpreter. The device is updated
+     * (and reopened if needed) unless GS_SPT_MORE_TO_COME is set in type.
+     * Signature introduced in Ghostscript 9.55.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param param Parameter name.
+     * @param value Pointer to the value: int for GS_SPT_BOOL and GS_SPT_INT,
+     * float for GS_SPT_FLOAT, 64 bits integer for GS_SPT_I64, null
+     * terminated string for GS_SPT_NAME, GS_SPT_STRING and GS_SPT_PARSED.
+     * @param type Value type (GS_SPT_* constant).
+     * @return 0 if everything is OK, < 0 otherwise
+     */
+    public int gsapi_set_param(Pointer instance, String param, Pointer value, int type);
+
+    /**
+     * Get a device parameter of a running interpreter. Signature introduced in
+     * Ghostscript 9.55.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param param Parameter name.
+     * @param value Pointer to memory receiving the value (as for
+     * gsapi_set_param), or null to get the required size.
+     * @param type Requested value type (GS_SPT_* constant).
+     * @return Size of the value in bytes if everything is OK, < 0 otherwise
+     */
+    public int gsapi_get_param(Pointer instance, String param, Pointer value, int type);
+
+    /**
+     * Enumerate device parameters of a running interpreter, one per call.
+     * Introduced in Ghostscript 9.55.
+     *
+     * @param instance Pointer to the Ghostscript instance.
+     * @param iterator Iterator state, pointing to null for the first call.
+     * @param key Receives the parameter name.
+     * @param type Receives the parameter type (GS_SPT_* constant).
+     * @return 0 if a parameter was returned, 1 at the end of the parameters,
+     * < 0 otherwise
+     */
+    public int gsapi_enumerate_params(Pointer instance, PointerByReference iterator, PointerByReference key, IntByReference type);
 }
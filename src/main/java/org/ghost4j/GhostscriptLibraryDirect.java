@@ -0,0 +1,190 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Pointer;
+import com.sun.jna.StringArray;
+import com.sun.jna.Structure;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * GhostscriptLibrary implementation using JNA direct mapping (native methods
+ * registered with Native.register) for the functions called the most:
+ * gsapi_run_string_continue (with a Pointer), gsapi_run_file,
+ * gsapi_init_with_args and gsapi_exit. Direct calls avoid the reflection
+ * based proxy dispatch and argument conversion of interface mapping. Other
+ * functions are delegated to an interface mapped library.
+ * <p>
+ * Selected by setting the ghost4j.library.mapping system property to direct
+ * (see GhostscriptLibraryLoader).
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptLibraryDirect implements GhostscriptLibrary {
+
+    /**
+     * Interface mapped library used for functions that are not directly
+     * mapped.
+     */
+    private final GhostscriptLibrary delegate;
+
+    /**
+     * Constructor.
+     * 
+     * @param libName
+     *            Name of the native library
+     * @param delegate
+     *            Interface mapped library, used for functions that are not
+     *            directly mapped
+     */
+    public GhostscriptLibraryDirect(String libName, GhostscriptLibrary delegate) {
+
+	this.delegate = delegate;
+	Native.register(DirectFunctions.class,
+		NativeLibrary.getInstance(libName));
+    }
+
+    public int gsapi_revision(Structure pr, int len) {
+	return delegate.gsapi_revision(pr, len);
+    }
+
+    public int gsapi_new_instance(Pointer pinstance, Pointer caller_handle) {
+	return delegate.gsapi_new_instance(pinstance, caller_handle);
+    }
+
+    public void gsapi_delete_instance(Pointer instance) {
+	delegate.gsapi_delete_instance(instance);
+    }
+
+    public int gsapi_exit(Pointer instance) {
+	return DirectFunctions.gsapi_exit(instance);
+    }
+
+    public int gsapi_set_arg_encoding(Pointer instance, int encoding) {
+	return delegate.gsapi_set_arg_encoding(instance, encoding);
+    }
+
+    public int gsapi_init_with_args(Pointer instance, int argc, String[] argv) {
+
+	// direct mapping does not convert String arrays
+	return DirectFunctions.gsapi_init_with_args(instance, argc,
+		argv == null ? null : new StringArray(argv));
+    }
+
+    public int gsapi_run_string(Pointer instance, String str,
+	    int user_errors, IntByReference pexit_code) {
+	return delegate.gsapi_run_string(instance, str, user_errors,
+		pexit_code);
+    }
+
+    public int gsapi_run_string_with_length(Pointer instance, String str,
+	    int length, int user_errors, IntByReference pexit_code) {
+	return delegate.gsapi_run_string_with_length(instance, str, length,
+		user_errors, pexit_code);
+    }
+
+    public int gsapi_run_string_with_length(Pointer instance, Pointer str,
+	    int length, int user_errors, IntByReference pexit_code) {
+	return delegate.gsapi_run_string_with_length(instance, str, length,
+		user_errors, pexit_code);
+    }
+
+    public int gsapi_run_string_begin(Pointer instance, int user_errors,
+	    IntByReference pexit_code) {
+	return delegate.gsapi_run_string_begin(instance, user_errors,
+		pexit_code);
+    }
+
+    public int gsapi_run_string_continue(Pointer instance, String str,
+	    int length, int user_errors, IntByReference pexit_code) {
+	return delegate.gsapi_run_string_continue(instance, str, length,
+		user_errors, pexit_code);
+    }
+
+    public int gsapi_run_string_continue(Pointer instance, Pointer str,
+	    int length, int user_errors, IntByReference pexit_code) {
+	return DirectFunctions.gsapi_run_string_continue(instance, str,
+		length, user_errors, pexit_code);
+    }
+
+    public int gsapi_run_string_end(Pointer instance, int user_errors,
+	    IntByReference pexit_code) {
+	return delegate.gsapi_run_string_end(instance, user_errors,
+		pexit_code);
+    }
+
+    public int gsapi_run_file(Pointer instance, String file_name,
+	    int user_errors, IntByReference pexit_code) {
+	return DirectFunctions.gsapi_run_file(instance, file_name,
+		user_errors, pexit_code);
+    }
+
+    public int gsapi_set_stdio(Pointer instance, stdin_fn stdin_fn,
+	    stdout_fn stdout_fn, stderr_fn stderr_fn) {
+	return delegate.gsapi_set_stdio(instance, stdin_fn, stdout_fn,
+		stderr_fn);
+    }
+
+    public int gsapi_set_stdio_raw(Pointer instance, stdin_fn stdin_fn,
+	    stdout_raw_fn stdout_fn, stderr_raw_fn stderr_fn) {
+	return delegate.gsapi_set_stdio_raw(instance, stdin_fn, stdout_fn,
+		stderr_fn);
+    }
+
+    public int gsapi_set_display_callback(Pointer instance, Structure callback) {
+	return delegate.gsapi_set_display_callback(instance, callback);
+    }
+
+    public int gsapi_set_poll(Pointer instance, poll_fn poll_fn) {
+	return delegate.gsapi_set_poll(instance, poll_fn);
+    }
+
+    public int gsapi_add_fs(Pointer instance, Structure fs, Pointer secret) {
+	return delegate.gsapi_add_fs(instance, fs, secret);
+    }
+
+    public void gsapi_remove_fs(Pointer instance, Structure fs, Pointer secret) {
+	delegate.gsapi_remove_fs(instance, fs, secret);
+    }
+
+    public int gsapi_set_param(Pointer instance, String param, Pointer value,
+	    int type) {
+	return delegate.gsapi_set_param(instance, param, value, type);
+    }
+
+    public int gsapi_get_param(Pointer instance, String param, Pointer value,
+	    int type) {
+	return delegate.gsapi_get_param(instance, param, value, type);
+    }
+
+    public int gsapi_enumerate_params(Pointer instance,
+	    PointerByReference iterator, PointerByReference key,
+	    IntByReference type) {
+	return delegate.gsapi_enumerate_params(instance, iterator, key, type);
+    }
+
+    /**
+     * Directly mapped native functions.
+     */
+    private static class DirectFunctions {
+
+	public static native int gsapi_exit(Pointer instance);
+
+	public static native int gsapi_init_with_args(Pointer instance,
+		int argc, Pointer argv);
+
+	public static native int gsapi_run_string_continue(Pointer instance,
+		Pointer str, int length, int user_errors,
+		IntByReference pexit_code);
+
+	public static native int gsapi_run_file(Pointer instance,
+		String file_name, int user_errors, IntByReference pexit_code);
+    }
+}
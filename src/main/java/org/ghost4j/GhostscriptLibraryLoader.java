@@ -6,7 +6,14 @@
  */
 package org.ghost4j;
 
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.jna.FunctionMapper;
+import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
 import com.sun.jna.Platform;
 
 /**
@@ -17,12 +24,49 @@ import com.sun.jna.Platform;
 public class GhostscriptLibraryLoader {
 
     /**
-     * Load native library according to host OS.
+     * Name of the system property used to select how the native API is
+     * mapped: interface (default, JNA interface mapping) or direct (JNA direct
+     * mapping for the most called functions, see GhostscriptLibraryDirect).
+     */
+    public static final String PROPERTY_NAME_MAPPING = "ghost4j.library.mapping";
+
+    /**
+     * Value of the ghost4j.library.mapping property selecting direct mapping.
+     */
+    public static final String MAPPING_DIRECT = "direct";
+
+    /**
+     * Load native library according to host OS. Interface mapping is used,
+     * unless direct mapping is selected with the ghost4j.library.mapping
+     * system property.
      * 
      * @return The loaded library.
      */
     protected static GhostscriptLibrary loadLibrary() {
 
+	String libName = getLibraryName();
+
+	Map<String, Object> options = new HashMap<String, Object>();
+	options.put(Library.OPTION_FUNCTION_MAPPER, new GhostscriptFunctionMapper());
+
+	GhostscriptLibrary library = (GhostscriptLibrary) Native.loadLibrary(
+		libName, GhostscriptLibrary.class, options);
+
+	// direct mapping
+	if (MAPPING_DIRECT.equals(System.getProperty(PROPERTY_NAME_MAPPING))) {
+	    return new GhostscriptLibraryDirect(libName, library);
+	}
+
+	return library;
+    }
+
+    /**
+     * Gets the name of the native library according to host OS.
+     * 
+     * @return The library name.
+     */
+    protected static String getLibraryName() {
+
 	// library name
 	String libName = "gs";
 
@@ -36,7 +80,24 @@ public class GhostscriptLibraryLoader {
 
 	}
 
-	return (GhostscriptLibrary) Native.loadLibrary(libName,
-		GhostscriptLibrary.class);
+	return libName;
+    }
+
+    /**
+     * Maps Java method names of GhostscriptLibrary to native function names:
+     * variants of a native function taking other callback types have their
+     * own Java name (gsapi_set_stdio_raw for gsapi_set_stdio).
+     */
+    private static class GhostscriptFunctionMapper implements FunctionMapper {
+
+	public String getFunctionName(NativeLibrary library, Method method) {
+
+	    String name = method.getName();
+	    if ("gsapi_set_stdio_raw".equals(name)) {
+		return "gsapi_set_stdio";
+	    }
+
+	    return name;
+	}
     }
 }
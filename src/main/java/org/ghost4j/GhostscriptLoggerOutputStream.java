@@ -69,14 +69,88 @@ public class GhostscriptLoggerOutputStream extends OutputStream {
     public void write(int b) throws IOException {
 
 	if (b == LINE_END) {
-	    if (level == Level.INFO) {
-            logger.info(baos.toString());
-        } else if (level == Level.ERROR) {
-            logger.error(baos.toString());
-        }
+	    log(baos.toString());
 	    baos.reset();
 	} else {
 	    baos.write(b);
 	}
     }
+
+    /**
+     * Write method that splits data in lines in bulk: complete lines are sent
+     * to the logger directly, the remaining bytes are stored until the line
+     * ends.
+     * 
+     * @param b
+     *            Data to write
+     * @param off
+     *            Data offset
+     * @param len
+     *            Number of bytes to write
+     * @throws IOException
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+
+	if (off < 0 || len < 0 || off + len > b.length) {
+	    throw new IndexOutOfBoundsException();
+	}
+
+	// nothing would be logged: skip line splitting
+	if (!isLogEnabled()) {
+	    baos.reset();
+	    return;
+	}
+
+	int end = off + len;
+	int lineStart = off;
+
+	for (int i = off; i < end; i++) {
+	    if (b[i] == LINE_END) {
+		if (baos.size() > 0) {
+		    baos.write(b, lineStart, i - lineStart);
+		    log(baos.toString());
+		    baos.reset();
+		} else {
+		    log(new String(b, lineStart, i - lineStart));
+		}
+		lineStart = i + 1;
+	    }
+	}
+
+	if (lineStart < end) {
+	    baos.write(b, lineStart, end - lineStart);
+	}
+    }
+
+    /**
+     * Checks if messages of the log level of the stream are logged.
+     * 
+     * @return true if enabled
+     */
+    protected boolean isLogEnabled() {
+
+	if (level == Level.INFO) {
+	    return logger.isInfoEnabled();
+	} else if (level == Level.ERROR) {
+	    return logger.isErrorEnabled();
+	}
+
+	return false;
+    }
+
+    /**
+     * Sends a message to the logger, with the log level of the stream.
+     * 
+     * @param message
+     *            Message to log
+     */
+    protected void log(String message) {
+
+	if (level == Level.INFO) {
+	    logger.info(message);
+	} else if (level == Level.ERROR) {
+	    logger.error(message);
+	}
+    }
 }
@@ -0,0 +1,387 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Persistent Ghostscript interpreter session. The interpreter is initialized
+ * once with base arguments (no -dBATCH, so that it keeps running) and then
+ * processes many documents through runFile / runString / runStream. Each
+ * document is run as a job enclosed in a save / restore pair so that
+ * definitions made by a document do not leak to the next one. This avoids
+ * paying interpreter startup (and font initialization) for every document.
+ * <p>
+ * Output devices can be switched between jobs with setDevice and
+ * setPageDevice. When -dSAFER is part of the base arguments, output files set
+ * at runtime must be allowed with --permit-file-write.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptSession {
+
+    /**
+     * Default base arguments: quiet interpreter without display, that does not
+     * pause between pages.
+     */
+    public static final String[] DEFAULT_BASE_ARGS = { "-dQUIET",
+	    "-dNOPAUSE", "-dNODISPLAY" };
+
+    /**
+     * Name of the userdict entry holding the save object of the current job.
+     */
+    private static final String JOB_SAVE_KEY = "ghost4jjobsave";
+
+    /**
+     * Interpreter instance running the session.
+     */
+    private final GhostscriptInstance instance;
+
+    /**
+     * Arguments used to initialize the interpreter.
+     */
+    private final String[] baseArgs;
+
+    /**
+     * Set to true while a job is running (between beginJob and endJob).
+     */
+    private boolean jobOpen;
+
+    /**
+     * Number of jobs run since the session was opened.
+     */
+    private int jobCount;
+
+    /**
+     * Set to true when the state saved by a job could not be restored.
+     */
+    private boolean dirty;
+
+    /**
+     * Constructor.
+     *
+     * @param instance
+     *            Interpreter instance to use (must not be initialized)
+     * @param baseArgs
+     *            Arguments used to initialize the interpreter, if null
+     *            DEFAULT_BASE_ARGS are used
+     */
+    public GhostscriptSession(GhostscriptInstance instance, String[] baseArgs) {
+
+	this.instance = instance;
+	if (baseArgs == null) {
+	    this.baseArgs = DEFAULT_BASE_ARGS.clone();
+	} else {
+	    this.baseArgs = baseArgs.clone();
+	}
+    }
+
+    /**
+     * Initializes the interpreter of the session.
+     *
+     * @throws GhostscriptException
+     */
+    public synchronized void open() throws GhostscriptException {
+
+	if (instance.isInitialized()) {
+	    throw new GhostscriptException("Session is already open");
+	}
+
+	instance.initialize(baseArgs);
+
+	// -dBATCH (or a quit in the arguments) exits the interpreter
+	if (!instance.isInitialized()) {
+	    throw new GhostscriptException(
+		    "Interpreter exited during session initialization: -dBATCH must not be used in session base arguments");
+	}
+
+	jobOpen = false;
+	jobCount = 0;
+	dirty = false;
+    }
+
+    /**
+     * Checks if the session is open and can run jobs.
+     *
+     * @return true if open
+     */
+    public boolean isOpen() {
+	return instance.isInitialized();
+    }
+
+    /**
+     * Starts a job: saves the interpreter state so that it can be restored by
+     * endJob.
+     *
+     * @throws GhostscriptException
+     */
+    public synchronized void beginJob() throws GhostscriptException {
+
+	assertOpen();
+
+	if (jobOpen) {
+	    throw new GhostscriptException("A job is already running");
+	}
+
+	instance.runString("userdict /" + JOB_SAVE_KEY + " save put");
+	jobOpen = true;
+	jobCount++;
+    }
+
+    /**
+     * Ends the current job: restores the interpreter state saved by beginJob.
+     *
+     * @throws GhostscriptException
+     */
+    public synchronized void endJob() throws GhostscriptException {
+
+	assertOpen();
+
+	if (!jobOpen) {
+	    return;
+	}
+
+	jobOpen = false;
+	try {
+	    instance.runString("userdict /" + JOB_SAVE_KEY
+		    + " known { userdict /" + JOB_SAVE_KEY + " get restore } if");
+	} catch (GhostscriptException e) {
+	    // definitions of the job may leak to the next one
+	    dirty = true;
+	    throw e;
+	}
+    }
+
+    /**
+     * Runs a file as a job of the session.
+     *
+     * @param fileName
+     *            File name
+     * @throws GhostscriptException
+     */
+    public synchronized void runFile(String fileName)
+	    throws GhostscriptException {
+
+	beginJob();
+	try {
+	    instance.runFile(fileName);
+	} finally {
+	    endJobQuietly();
+	}
+    }
+
+    /**
+     * Runs a command string as a job of the session.
+     *
+     * @param string
+     *            Command string
+     * @throws GhostscriptException
+     */
+    public synchronized void runString(String string)
+	    throws GhostscriptException {
+
+	beginJob();
+	try {
+	    instance.runString(string);
+	} finally {
+	    endJobQuietly();
+	}
+    }
+
+    /**
+     * Runs binary command data as a job of the session (see
+     * GhostscriptInstance.runBytes).
+     *
+     * @param data
+     *            Command data
+     * @throws GhostscriptException
+     */
+    public synchronized void runBytes(ByteBuffer data)
+	    throws GhostscriptException {
+
+	beginJob();
+	try {
+	    instance.runBytes(data);
+	} finally {
+	    endJobQuietly();
+	}
+    }
+
+    /**
+     * Runs command data read from a stream as a job of the session, without
+     * writing it to a file first (see GhostscriptInstance.runStream).
+     *
+     * @param data
+     *            Stream providing command data
+     * @throws GhostscriptException
+     */
+    public synchronized void runStream(InputStream data)
+	    throws GhostscriptException {
+
+	beginJob();
+	try {
+	    instance.runStream(data);
+	} finally {
+	    endJobQuietly();
+	}
+    }
+
+    /**
+     * Selects the output device of the interpreter (PostScript selectdevice).
+     * Must be called inside a job (between beginJob and endJob) for the device
+     * to be closed, and its output flushed, when the job ends.
+     *
+     * @param deviceName
+     *            Device name (pdfwrite, ps2write, display ...)
+     * @throws GhostscriptException
+     */
+    public synchronized void setDevice(String deviceName)
+	    throws GhostscriptException {
+
+	assertOpen();
+	instance.runString("(" + escape(deviceName) + ") selectdevice");
+    }
+
+    /**
+     * Sets page device parameters (PostScript setpagedevice). Values can be
+     * String (sent as PostScript strings), Boolean or Number objects.
+     *
+     * @param parameters
+     *            Parameters to set (OutputFile, HWResolution ...)
+     * @throws GhostscriptException
+     */
+    public synchronized void setPageDevice(Map<String, Object> parameters)
+	    throws GhostscriptException {
+
+	assertOpen();
+
+	StringBuilder command = new StringBuilder("<<");
+	for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+	    command.append(" /").append(entry.getKey()).append(" ");
+	    Object value = entry.getValue();
+	    if (value instanceof String) {
+		command.append("(").append(escape((String) value)).append(")");
+	    } else {
+		command.append(value);
+	    }
+	}
+	command.append(" >> setpagedevice");
+
+	instance.runString(command.toString());
+    }
+
+    /**
+     * Resets the interpreter state between jobs: ends the current job if any,
+     * and clears operand and dictionary stacks and graphics state.
+     *
+     * @throws GhostscriptException
+     */
+    public synchronized void reset() throws GhostscriptException {
+
+	assertOpen();
+
+	endJob();
+	instance.runString("clear cleardictstack initgraphics");
+    }
+
+    /**
+     * Closes the session: exits the interpreter and deletes its native
+     * instance.
+     *
+     * @throws GhostscriptException
+     */
+    public synchronized void close() throws GhostscriptException {
+
+	try {
+	    instance.exit();
+	} finally {
+	    instance.delete();
+	    jobOpen = false;
+	}
+    }
+
+    /**
+     * Gets the interpreter instance of the session (to set streams or display
+     * callback).
+     *
+     * @return The GhostscriptInstance
+     */
+    public GhostscriptInstance getInstance() {
+	return instance;
+    }
+
+    /**
+     * Gets the arguments used to initialize the interpreter.
+     *
+     * @return Base arguments
+     */
+    public String[] getBaseArgs() {
+	return baseArgs.clone();
+    }
+
+    /**
+     * Checks if the session was initialized with given base arguments.
+     *
+     * @param args
+     *            Arguments to compare
+     * @return true if arguments are the same
+     */
+    public boolean hasBaseArgs(String[] args) {
+	return Arrays.equals(baseArgs, args == null ? DEFAULT_BASE_ARGS : args);
+    }
+
+    /**
+     * Checks if the state saved by a job could not be restored. Definitions
+     * of that job may leak to the next ones: the session should be closed
+     * rather than reused.
+     *
+     * @return true if dirty
+     */
+    public synchronized boolean isDirty() {
+	return dirty;
+    }
+
+    /**
+     * Gets the number of jobs run since the session was opened.
+     *
+     * @return Job count
+     */
+    public int getJobCount() {
+	return jobCount;
+    }
+
+    private void endJobQuietly() {
+
+	try {
+	    endJob();
+	} catch (GhostscriptException e) {
+	    // the job error (if any) is more relevant: nothing
+	}
+    }
+
+    private void assertOpen() throws GhostscriptException {
+
+	if (!instance.isInitialized()) {
+	    throw new GhostscriptException("Session is not open");
+	}
+    }
+
+    /**
+     * Escapes a value to be used as a PostScript string.
+     *
+     * @param value
+     *            Value to escape
+     * @return Escaped value
+     */
+    private static String escape(String value) {
+	return value.replace("\\", "\\\\").replace("(", "\\(")
+		.replace(")", "\\)");
+    }
+}
@@ -0,0 +1,627 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.ghost4j.document.Document;
+
+/**
+ * Framed binary protocol used between a component and a worker JVM over a
+ * local socket. Each frame is made of a type (byte), a payload length (int)
+ * and the payload. Small values (settings, parameters, analysis results,
+ * page descriptions) are sent as serialized objects, while document content
+ * and results are sent raw: streams as a sequence of data chunks ended by an
+ * end frame, and byte arrays as a single frame.
+ * <p>
+ * A failure on the remote side is sent as an error frame, and thrown by the
+ * reading methods.
+ * <p>
+ * When a shared memory directory is set, large byte arrays and data chunks
+ * are not sent through the socket: they are written to a memory-mapped file of
+ * this directory and only the file path and length are sent. The receiver
+ * maps the file, reads it and deletes it.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteChannel implements Closeable {
+
+    /**
+     * Serialized object frame.
+     */
+    private static final byte FRAME_OBJECT = 1;
+
+    /**
+     * Byte array frame (length -1 for null).
+     */
+    private static final byte FRAME_BYTES = 2;
+
+    /**
+     * Stream data chunk frame.
+     */
+    private static final byte FRAME_DATA = 3;
+
+    /**
+     * End of stream frame.
+     */
+    private static final byte FRAME_END = 4;
+
+    /**
+     * Serialized exception frame.
+     */
+    private static final byte FRAME_ERROR = 5;
+
+    /**
+     * Memory-mapped payload frame (data length and file path).
+     */
+    private static final byte FRAME_MAPPED = 6;
+
+    /**
+     * Size of stream data chunks.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Minimum size of payloads sent through shared memory.
+     */
+    private static final int MAPPED_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Underlying channel.
+     */
+    private final ByteChannel channel;
+
+    private final DataInputStream in;
+
+    private final DataOutputStream out;
+
+    /**
+     * Directory of the memory-mapped files used to send large payloads (null
+     * to send everything through the channel).
+     */
+    private File sharedMemoryDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param channel
+     *            Connected (blocking) channel
+     */
+    public RemoteChannel(ByteChannel channel) {
+
+	this.channel = channel;
+	this.in = new DataInputStream(new BufferedInputStream(
+		Channels.newInputStream(channel), CHUNK_SIZE));
+	this.out = new DataOutputStream(new BufferedOutputStream(
+		Channels.newOutputStream(channel), CHUNK_SIZE));
+    }
+
+    /**
+     * Sends a serializable object.
+     *
+     * @param object
+     *            Object to send
+     * @throws IOException
+     */
+    public void writeObject(Object object) throws IOException {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	ObjectOutputStream oos = new ObjectOutputStream(baos);
+	oos.writeObject(object);
+	oos.close();
+
+	writeFrame(FRAME_OBJECT, baos.toByteArray(), 0, baos.size());
+    }
+
+    /**
+     * Receives an object sent with writeObject.
+     *
+     * @return The object
+     * @throws Exception
+     *             If an error was sent instead (the remote exception is
+     *             thrown), or if the object cannot be read
+     */
+    public Object readObject() throws Exception {
+
+	byte[] payload = readFrame(FRAME_OBJECT);
+
+	return deserialize(payload);
+    }
+
+    /**
+     * Sends a byte array, without copy.
+     *
+     * @param bytes
+     *            Bytes to send (can be null)
+     * @throws IOException
+     */
+    public void writeBytes(byte[] bytes) throws IOException {
+
+	if (bytes == null) {
+	    out.writeByte(FRAME_BYTES);
+	    out.writeInt(-1);
+	} else if (isMapped(bytes.length)) {
+	    writeMapped(bytes, 0, bytes.length);
+	} else {
+	    writeFrame(FRAME_BYTES, bytes, 0, bytes.length);
+	}
+    }
+
+    /**
+     * Receives a byte array sent with writeBytes.
+     *
+     * @return The bytes (may be null)
+     * @throws Exception
+     *             If an error was sent instead (the remote exception is
+     *             thrown)
+     */
+    public byte[] readBytes() throws Exception {
+	return readFrame(FRAME_BYTES);
+    }
+
+    /**
+     * Opens a stream sending data as chunks. Closing the stream ends the data
+     * (the channel stays open).
+     *
+     * @return The stream
+     */
+    public OutputStream openDataOutputStream() {
+	return new DataOutputStreamImpl();
+    }
+
+    /**
+     * Opens a stream reading data sent through a data output stream.
+     *
+     * @return The stream (ends when all data is read)
+     */
+    public InputStream openDataInputStream() {
+	return new DataInputStreamImpl();
+    }
+
+    /**
+     * Receives data sent through a data output stream and writes it to an
+     * output stream, chunk by chunk.
+     *
+     * @param outputStream
+     *            Output stream to write data to
+     * @throws Exception
+     *             If an error was sent (the remote exception is thrown)
+     */
+    public void readData(OutputStream outputStream) throws Exception {
+
+	byte[] buffer = new byte[CHUNK_SIZE];
+
+	while (true) {
+	    byte type = in.readByte();
+	    int length = in.readInt();
+
+	    if (type == FRAME_END) {
+		return;
+	    } else if (type == FRAME_ERROR) {
+		throw readError(length);
+	    } else if (type == FRAME_MAPPED) {
+		ByteBuffer mapped = readMapped(length);
+		while (mapped.hasRemaining()) {
+		    int count = Math.min(mapped.remaining(), buffer.length);
+		    mapped.get(buffer, 0, count);
+		    outputStream.write(buffer, 0, count);
+		}
+		continue;
+	    } else if (type != FRAME_DATA) {
+		throw new IOException("Unexpected frame type: " + type);
+	    }
+
+	    while (length > 0) {
+		int count = Math.min(length, buffer.length);
+		in.readFully(buffer, 0, count);
+		outputStream.write(buffer, 0, count);
+		length -= count;
+	    }
+	}
+    }
+
+    /**
+     * Sends a document: its class name followed by its content as data.
+     *
+     * @param document
+     *            Document to send
+     * @throws IOException
+     */
+    public void writeDocument(Document document) throws IOException {
+
+	writeObject(document.getClass().getName());
+
+	OutputStream outputStream = openDataOutputStream();
+	document.write(outputStream);
+	outputStream.close();
+    }
+
+    /**
+     * Receives a document sent with writeDocument. The document class must
+     * implement Document and have a default constructor: other classes are
+     * not instantiated.
+     *
+     * @return The document
+     * @throws Exception
+     *             If an error was sent instead (the remote exception is
+     *             thrown), or if the document cannot be created
+     */
+    public Document readDocument() throws Exception {
+
+	String className = (String) readObject();
+	Class<?> documentClass = Class.forName(className, false, getClass()
+		.getClassLoader());
+	if (!Document.class.isAssignableFrom(documentClass)) {
+	    throw new IOException("Not a document class: " + className);
+	}
+	Document document = (Document) documentClass.getDeclaredConstructor()
+		.newInstance();
+
+	InputStream inputStream = openDataInputStream();
+	document.load(inputStream);
+	// skip unread data
+	while (inputStream.read() != -1) {
+	    // nothing
+	}
+
+	return document;
+    }
+
+    /**
+     * Sends an error, thrown by the next read on the other side.
+     *
+     * @param exception
+     *            Error to send
+     * @throws IOException
+     */
+    public void writeError(Throwable exception) throws IOException {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	try {
+	    ObjectOutputStream oos = new ObjectOutputStream(baos);
+	    oos.writeObject(exception);
+	    oos.close();
+	} catch (IOException e) {
+	    // exception not serializable: send its description only
+	    baos.reset();
+	    ObjectOutputStream oos = new ObjectOutputStream(baos);
+	    oos.writeObject(new IOException(exception.toString()));
+	    oos.close();
+	}
+
+	writeFrame(FRAME_ERROR, baos.toByteArray(), 0, baos.size());
+    }
+
+    /**
+     * Sends buffered frames.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+	out.flush();
+    }
+
+    /**
+     * Closes the channel.
+     */
+    public void close() throws IOException {
+	channel.close();
+    }
+
+    public File getSharedMemoryDirectory() {
+	return sharedMemoryDirectory;
+    }
+
+    public void setSharedMemoryDirectory(File sharedMemoryDirectory) {
+	this.sharedMemoryDirectory = sharedMemoryDirectory;
+    }
+
+    /**
+     * Checks if a payload must be sent through shared memory.
+     */
+    private boolean isMapped(int length) {
+	return sharedMemoryDirectory != null && length >= MAPPED_THRESHOLD;
+    }
+
+    /**
+     * Writes a payload to a memory-mapped file and sends its location.
+     */
+    private void writeMapped(byte[] payload, int offset, int length)
+	    throws IOException {
+
+	File file = File.createTempFile("ghost4j", ".shm",
+		sharedMemoryDirectory);
+	RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+	try {
+	    randomAccessFile.getChannel()
+		    .map(FileChannel.MapMode.READ_WRITE, 0, length)
+		    .put(payload, offset, length);
+	} catch (IOException e) {
+	    randomAccessFile.close();
+	    file.delete();
+	    throw e;
+	}
+	randomAccessFile.close();
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	DataOutputStream dos = new DataOutputStream(baos);
+	dos.writeInt(length);
+	dos.writeUTF(file.getAbsolutePath());
+	dos.close();
+
+	writeFrame(FRAME_MAPPED, baos.toByteArray(), 0, baos.size());
+    }
+
+    /**
+     * Reads the payload of a memory-mapped payload frame and maps the file
+     * (deleted once mapped).
+     */
+    private ByteBuffer readMapped(int frameLength) throws IOException {
+
+	int length = in.readInt();
+	File file = new File(in.readUTF());
+
+	RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+	try {
+	    return randomAccessFile.getChannel().map(
+		    FileChannel.MapMode.READ_ONLY, 0, length);
+	} finally {
+	    randomAccessFile.close();
+	    file.delete();
+	}
+    }
+
+    private void writeFrame(byte type, byte[] payload, int offset, int length)
+	    throws IOException {
+
+	out.writeByte(type);
+	out.writeInt(length);
+	out.write(payload, offset, length);
+    }
+
+    /**
+     * Reads a frame of a given type and returns its payload.
+     */
+    private byte[] readFrame(byte expectedType) throws Exception {
+
+	byte type = in.readByte();
+	int length = in.readInt();
+
+	if (type == FRAME_ERROR) {
+	    throw readError(length);
+	} else if (type == FRAME_MAPPED && expectedType == FRAME_BYTES) {
+	    ByteBuffer mapped = readMapped(length);
+	    byte[] payload = new byte[mapped.remaining()];
+	    mapped.get(payload);
+	    return payload;
+	} else if (type != expectedType) {
+	    throw new IOException("Unexpected frame type: " + type);
+	}
+
+	if (length < 0) {
+	    return null;
+	}
+
+	byte[] payload = new byte[length];
+	in.readFully(payload);
+
+	return payload;
+    }
+
+    /**
+     * Reads the payload of an error frame.
+     */
+    private Exception readError(int length) throws IOException {
+
+	byte[] payload = new byte[length];
+	in.readFully(payload);
+
+	try {
+	    Object error = deserialize(payload);
+	    if (error instanceof Exception) {
+		return (Exception) error;
+	    }
+	    return new IOException("Remote error", (Throwable) error);
+	} catch (ClassNotFoundException e) {
+	    return new IOException("Unknown remote error", e);
+	}
+    }
+
+    private static Object deserialize(byte[] payload) throws IOException,
+	    ClassNotFoundException {
+
+	ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
+		payload));
+	try {
+	    return ois.readObject();
+	} finally {
+	    ois.close();
+	}
+    }
+
+    /**
+     * Output stream writing data chunks.
+     */
+    private class DataOutputStreamImpl extends OutputStream {
+
+	private final byte[] buffer = new byte[CHUNK_SIZE];
+
+	private int count;
+
+	private boolean closed;
+
+	@Override
+	public void write(int b) throws IOException {
+
+	    if (count == buffer.length) {
+		flushChunk();
+	    }
+	    buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+
+	    if (len >= buffer.length) {
+		// large write: send directly
+		flushChunk();
+		if (isMapped(len)) {
+		    writeMapped(b, off, len);
+		} else {
+		    writeFrame(FRAME_DATA, b, off, len);
+		}
+		return;
+	    }
+
+	    if (len > buffer.length - count) {
+		flushChunk();
+	    }
+	    System.arraycopy(b, off, buffer, count, len);
+	    count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+
+	    flushChunk();
+	    out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+	    if (closed) {
+		return;
+	    }
+	    closed = true;
+
+	    flushChunk();
+	    out.writeByte(FRAME_END);
+	    out.writeInt(0);
+	}
+
+	private void flushChunk() throws IOException {
+
+	    if (count > 0) {
+		writeFrame(FRAME_DATA, buffer, 0, count);
+		count = 0;
+	    }
+	}
+    }
+
+    /**
+     * Input stream reading data chunks.
+     */
+    private class DataInputStreamImpl extends InputStream {
+
+	/**
+	 * Bytes left in the current chunk.
+	 */
+	private int remaining;
+
+	/**
+	 * Current chunk, if memory-mapped.
+	 */
+	private ByteBuffer mapped;
+
+	private boolean ended;
+
+	@Override
+	public int read() throws IOException {
+
+	    if (!nextChunk()) {
+		return -1;
+	    }
+	    if (mapped != null) {
+		return mapped.get() & 0xff;
+	    }
+	    int b = in.read();
+	    if (b < 0) {
+		throw new EOFException("Channel closed while reading data");
+	    }
+	    remaining--;
+	    return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+
+	    if (len == 0) {
+		return 0;
+	    }
+	    if (!nextChunk()) {
+		return -1;
+	    }
+	    if (mapped != null) {
+		int count = Math.min(len, mapped.remaining());
+		mapped.get(b, off, count);
+		return count;
+	    }
+
+	    int count = in.read(b, off, Math.min(len, remaining));
+	    if (count < 0) {
+		throw new EOFException("Channel closed while reading data");
+	    }
+	    remaining -= count;
+	    return count;
+	}
+
+	/**
+	 * Moves to the next chunk if the current one is consumed.
+	 *
+	 * @return false if the data is ended
+	 */
+	private boolean nextChunk() throws IOException {
+
+	    while (remaining == 0
+		    && (mapped == null || !mapped.hasRemaining())) {
+
+		mapped = null;
+		if (ended) {
+		    return false;
+		}
+
+		byte type = in.readByte();
+		int length = in.readInt();
+
+		if (type == FRAME_END) {
+		    ended = true;
+		} else if (type == FRAME_ERROR) {
+		    ended = true;
+		    throw new IOException("Remote error while sending data",
+			    readError(length));
+		} else if (type == FRAME_DATA) {
+		    remaining = length;
+		} else if (type == FRAME_MAPPED) {
+		    mapped = readMapped(length);
+		} else {
+		    throw new IOException("Unexpected frame type: " + type);
+		}
+	    }
+
+	    return true;
+	}
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.ghost4j.util.UnixSocketUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server run by a worker JVM to serve component requests over a Unix domain
+ * socket (see RemoteChannel). Each connection carries one request, handled by
+ * AbstractRemoteComponent.serveChannelRequest. A successful response is
+ * followed by the memory used by the worker JVM during the request (see
+ * RemoteWorker.readMemoryUsage).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+class RemoteChannelServer extends Thread {
+
+    /**
+     * Logger used to log messages.
+     */
+    private Logger logger = LoggerFactory.getLogger(RemoteChannelServer.class
+	    .getName());
+
+    /**
+     * Component serving the requests.
+     */
+    private final AbstractRemoteComponent component;
+
+    /**
+     * Server channel.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * Directory of the memory-mapped files used to send large payloads (can
+     * be null).
+     */
+    private final File sharedMemoryDirectory;
+
+    /**
+     * Constructor: binds the socket.
+     *
+     * @param component
+     *            Component serving the requests
+     * @param socketFile
+     *            Socket file to listen on
+     * @param sharedMemoryDirectory
+     *            Directory of the memory-mapped files used to send large
+     *            payloads (null to send everything through the socket)
+     * @throws IOException
+     *             If the socket cannot be bound
+     */
+    RemoteChannelServer(AbstractRemoteComponent component, File socketFile,
+	    File sharedMemoryDirectory) throws IOException {
+
+	super("ghost4j-channel-server");
+	setDaemon(true);
+
+	this.component = component;
+	this.sharedMemoryDirectory = sharedMemoryDirectory;
+	this.serverChannel = UnixSocketUtil.bind(socketFile);
+	socketFile.deleteOnExit();
+    }
+
+    @Override
+    public void run() {
+
+	while (serverChannel.isOpen()) {
+
+	    SocketChannel socketChannel;
+	    try {
+		socketChannel = serverChannel.accept();
+	    } catch (IOException e) {
+		logger.error("Local socket server stopped", e);
+		return;
+	    }
+
+	    RemoteChannel channel = new RemoteChannel(socketChannel);
+	    channel.setSharedMemoryDirectory(sharedMemoryDirectory);
+	    serve(channel);
+	}
+    }
+
+    /**
+     * Serves the request of a connection (requests are served one at a time,
+     * as a worker runs one job at a time).
+     */
+    private void serve(RemoteChannel channel) {
+
+	try {
+
+	    try {
+		// memory usage of the job sent after its result
+		AbstractRemoteComponent.startMemoryUsage();
+		component.serveChannelRequest(channel);
+		channel.writeObject(component.collectMemoryUsage());
+	    } catch (Throwable e) {
+		// errors too (library not found...): the server must keep
+		// running
+		channel.writeError(e);
+	    }
+	    channel.flush();
+
+	} catch (IOException e) {
+	    logger.error("Failed to send response to local socket client", e);
+	} finally {
+	    try {
+		channel.close();
+	    } catch (IOException e) {
+		// nothing
+	    }
+	}
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import gnu.cajo.invoke.Remote;
+import gnu.cajo.utils.ItemServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ghost4j.analyzer.AbstractRemoteAnalyzer;
+import org.ghost4j.analyzer.AnalysisItem;
+import org.ghost4j.analyzer.FontAnalyzer;
+import org.ghost4j.analyzer.InkAnalyzer;
+import org.ghost4j.converter.AbstractRemoteConverter;
+import org.ghost4j.converter.PDFConverter;
+import org.ghost4j.converter.PSConverter;
+import org.ghost4j.display.PageRaster;
+import org.ghost4j.document.Document;
+import org.ghost4j.modifier.AbstractRemoteModifier;
+import org.ghost4j.modifier.SafeAppenderModifier;
+import org.ghost4j.renderer.AbstractRemoteRenderer;
+import org.ghost4j.renderer.SimpleRenderer;
+import org.ghost4j.util.JavaFork;
+
+/**
+ * Server exporting every registered remote component (converters, analyzers,
+ * renderers and modifiers) from a single worker JVM, used by RemotePipeline.
+ * Documents sent to the server stay resident in the worker JVM, identified by
+ * a number, so that several processing steps can be run on them (and on
+ * modified documents) without sending them again.
+ * <p>
+ * Registered components are the Ghost4J remote components, plus the classes
+ * given (comma separated) by the ghost4j.remote.components system property.
+ * Components run in the worker JVM with maxProcessCount set to 0.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteComponentServer extends AbstractRemoteComponent {
+
+    /**
+     * Name of the system property giving extra component classes (comma
+     * separated) to register.
+     */
+    public static final String PROPERTY_NAME_COMPONENTS = "ghost4j.remote.components";
+
+    /**
+     * Channel operations.
+     */
+    static final String OPERATION_PUT_DOCUMENT = "putDocument";
+    static final String OPERATION_GET_DOCUMENT = "getDocument";
+    static final String OPERATION_REMOVE_DOCUMENT = "removeDocument";
+    static final String OPERATION_CLEAR_DOCUMENTS = "clearDocuments";
+    static final String OPERATION_CONVERT = "remoteConvert";
+    static final String OPERATION_ANALYZE = "remoteAnalyze";
+    static final String OPERATION_RENDER = "remoteRender";
+    static final String OPERATION_MODIFY = "remoteModify";
+
+    /**
+     * Ghost4J remote components.
+     */
+    private static final List<Class<?>> DEFAULT_COMPONENTS = Arrays
+	    .<Class<?>> asList(PDFConverter.class, PSConverter.class,
+		    FontAnalyzer.class, InkAnalyzer.class,
+		    SimpleRenderer.class, SafeAppenderModifier.class);
+
+    /**
+     * Names of the registered component classes.
+     */
+    private final Set<String> componentClassNames = new LinkedHashSet<String>();
+
+    /**
+     * Component instances (created when first used), by class name.
+     */
+    private final Map<String, AbstractRemoteComponent> components = new HashMap<String, AbstractRemoteComponent>();
+
+    /**
+     * Resident documents, by number.
+     */
+    private final Map<Integer, Document> documents = new HashMap<Integer, Document>();
+
+    /**
+     * Number of the next resident document.
+     */
+    private int nextDocumentId = 1;
+
+    /**
+     * Constructor: registers the components.
+     */
+    public RemoteComponentServer() {
+
+	for (Class<?> componentClass : DEFAULT_COMPONENTS) {
+	    componentClassNames.add(componentClass.getName());
+	}
+
+	String extraComponents = System.getProperty(PROPERTY_NAME_COMPONENTS);
+	if (extraComponents != null) {
+	    for (String className : extraComponents.split(",")) {
+		if (className.trim().length() > 0) {
+		    componentClassNames.add(className.trim());
+		}
+	    }
+	}
+    }
+
+    /**
+     * Main method used to start the server in a worker JVM.
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String args[]) throws Exception {
+
+	// get port
+	if (System.getenv("cajo.port") == null) {
+	    throw new IOException("No Cajo port defined for remote server");
+	}
+	int cajoPort = Integer.parseInt(System.getenv("cajo.port"));
+
+	// export server
+	RemoteComponentServer server = new RemoteComponentServer();
+	server.setMaxProcessCount(0);
+
+	Remote.config(null, cajoPort, null, 0);
+	ItemServer.bind(server, RemoteComponentServer.class.getCanonicalName());
+	startChannelServer(server);
+	reportServerPort();
+    }
+
+    /**
+     * Makes a document resident in the server.
+     *
+     * @param document
+     *            Document
+     * @return The document number
+     */
+    public synchronized int putDocument(Document document) {
+
+	int documentId = nextDocumentId++;
+	documents.put(documentId, document);
+
+	return documentId;
+    }
+
+    /**
+     * Gets a resident document.
+     *
+     * @param documentId
+     *            Document number
+     * @return The document
+     * @throws IOException
+     *             If there is no such document
+     */
+    public synchronized Document getDocument(int documentId)
+	    throws IOException {
+
+	Document document = documents.get(documentId);
+	if (document == null) {
+	    throw new IOException("No resident document " + documentId);
+	}
+
+	return document;
+    }
+
+    /**
+     * Removes a resident document.
+     *
+     * @param documentId
+     *            Document number
+     */
+    public synchronized void removeDocument(int documentId) {
+	documents.remove(documentId);
+    }
+
+    /**
+     * Removes all resident documents.
+     */
+    public synchronized void clearDocuments() {
+	documents.clear();
+    }
+
+    /**
+     * Converts a resident document.
+     *
+     * @param componentClassName
+     *            Class of the converter
+     * @param settings
+     *            Converter settings
+     * @param documentId
+     *            Document number
+     * @return The conversion result
+     * @throws Exception
+     */
+    public byte[] remoteConvert(String componentClassName,
+	    Map<String, Object> settings, int documentId) throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	convert(componentClassName, settings, documentId, baos);
+
+	return baos.toByteArray();
+    }
+
+    /**
+     * Analyzes a resident document.
+     *
+     * @param componentClassName
+     *            Class of the analyzer
+     * @param settings
+     *            Analyzer settings
+     * @param documentId
+     *            Document number
+     * @return The analysis items
+     * @throws Exception
+     */
+    public synchronized List<AnalysisItem> remoteAnalyze(
+	    String componentClassName, Map<String, Object> settings,
+	    int documentId) throws Exception {
+
+	AbstractRemoteAnalyzer analyzer = (AbstractRemoteAnalyzer) getComponent(
+		componentClassName, AbstractRemoteAnalyzer.class, settings);
+
+	return analyzer.analyze(getDocument(documentId));
+    }
+
+    /**
+     * Renders pages of a resident document.
+     *
+     * @param componentClassName
+     *            Class of the renderer
+     * @param settings
+     *            Renderer settings
+     * @param documentId
+     *            Document number
+     * @param begin
+     *            First page
+     * @param end
+     *            Last page
+     * @return The page rasters
+     * @throws Exception
+     */
+    public synchronized List<PageRaster> remoteRender(
+	    String componentClassName, Map<String, Object> settings,
+	    int documentId, int begin, int end) throws Exception {
+
+	AbstractRemoteRenderer renderer = (AbstractRemoteRenderer) getComponent(
+		componentClassName, AbstractRemoteRenderer.class, settings);
+
+	return renderer.remoteRender(getDocument(documentId), begin, end);
+    }
+
+    /**
+     * Modifies a resident document. The result document is made resident.
+     *
+     * @param componentClassName
+     *            Class of the modifier
+     * @param settings
+     *            Modifier settings
+     * @param documentId
+     *            Document number
+     * @param parameters
+     *            Modifier parameters
+     * @return The number of the result document
+     * @throws Exception
+     */
+    public synchronized int remoteModify(String componentClassName,
+	    Map<String, Object> settings, int documentId,
+	    Map<String, Serializable> parameters) throws Exception {
+
+	AbstractRemoteModifier modifier = (AbstractRemoteModifier) getComponent(
+		componentClassName, AbstractRemoteModifier.class, settings);
+
+	return putDocument(modifier.modify(getDocument(documentId),
+		parameters));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+
+	// operation, followed by its arguments (or by the document to put)
+	String operation = (String) channel.readObject();
+	if (OPERATION_PUT_DOCUMENT.equals(operation)) {
+	    channel.writeObject(putDocument(channel.readDocument()));
+	    return;
+	}
+	Object[] args = (Object[]) channel.readObject();
+
+	if (OPERATION_GET_DOCUMENT.equals(operation)) {
+
+	    channel.writeDocument(getDocument((Integer) args[0]));
+
+	} else if (OPERATION_REMOVE_DOCUMENT.equals(operation)) {
+
+	    removeDocument((Integer) args[0]);
+	    channel.writeObject(null);
+
+	} else if (OPERATION_CLEAR_DOCUMENTS.equals(operation)) {
+
+	    clearDocuments();
+	    channel.writeObject(null);
+
+	} else if (OPERATION_CONVERT.equals(operation)) {
+
+	    // stream result as it is produced
+	    OutputStream outputStream = channel.openDataOutputStream();
+	    convert((String) args[0], (Map<String, Object>) args[1],
+		    (Integer) args[2], outputStream);
+	    outputStream.close();
+
+	} else if (OPERATION_ANALYZE.equals(operation)) {
+
+	    channel.writeObject(remoteAnalyze((String) args[0],
+		    (Map<String, Object>) args[1], (Integer) args[2]));
+
+	} else if (OPERATION_RENDER.equals(operation)) {
+
+	    List<PageRaster> rasters = remoteRender((String) args[0],
+		    (Map<String, Object>) args[1], (Integer) args[2],
+		    (Integer) args[3], (Integer) args[4]);
+
+	    // send page descriptions, followed by raw raster data
+	    channel.writeObject(rasters.size());
+	    for (PageRaster raster : rasters) {
+		byte[] data = raster.getData();
+		raster.setData(null);
+		channel.writeObject(raster);
+		channel.writeBytes(data);
+	    }
+
+	} else if (OPERATION_MODIFY.equals(operation)) {
+
+	    channel.writeObject(remoteModify((String) args[0],
+		    (Map<String, Object>) args[1], (Integer) args[2],
+		    (Map<String, Serializable>) args[3]));
+
+	} else {
+	    throw new IOException("Unknown operation: " + operation);
+	}
+    }
+
+    @Override
+    protected JavaFork buildJavaFork() {
+
+	JavaFork fork = super.buildJavaFork();
+
+	// extra components are registered by the worker JVM too
+	String extraComponents = System.getProperty(PROPERTY_NAME_COMPONENTS);
+	if (extraComponents != null) {
+	    fork.getJvmOptions().add(
+		    "-D" + PROPERTY_NAME_COMPONENTS + "=" + extraComponents);
+	}
+
+	return fork;
+    }
+
+    /**
+     * Converts a resident document to an output stream.
+     */
+    private synchronized void convert(String componentClassName,
+	    Map<String, Object> settings, int documentId,
+	    OutputStream outputStream) throws Exception {
+
+	AbstractRemoteConverter converter = (AbstractRemoteConverter) getComponent(
+		componentClassName, AbstractRemoteConverter.class, settings);
+
+	converter.convert(getDocument(documentId), outputStream);
+    }
+
+    /**
+     * Gets the instance of a registered component (created when first used)
+     * and copies settings to it.
+     */
+    private AbstractRemoteComponent getComponent(String componentClassName,
+	    Class<?> componentType, Map<String, Object> settings)
+	    throws Exception {
+
+	if (!componentClassNames.contains(componentClassName)) {
+	    throw new IllegalArgumentException("Component not registered: "
+		    + componentClassName);
+	}
+
+	AbstractRemoteComponent component = components.get(componentClassName);
+	if (component == null) {
+	    Class<?> componentClass = Class.forName(componentClassName);
+	    if (!AbstractRemoteComponent.class.isAssignableFrom(componentClass)
+		    || !componentType.isAssignableFrom(componentClass)) {
+		throw new IllegalArgumentException(componentClassName
+			+ " is not a remote " + componentType.getSimpleName());
+	    }
+	    component = (AbstractRemoteComponent) componentClass
+		    .getDeclaredConstructor().newInstance();
+	    component.setMaxProcessCount(0);
+	    components.put(componentClassName, component);
+	}
+
+	component.copySettings(settings);
+
+	return component;
+    }
+}
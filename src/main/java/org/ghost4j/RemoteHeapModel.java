@@ -0,0 +1,341 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.ObjectName;
+
+/**
+ * Memory model of remote component jobs, used to size the heap (Xmx) of worker
+ * JVMs. After each job, the live heap (heap used after garbage collection)
+ * and peak resident set size (RSS) of the worker are recorded against a
+ * workload key made of the component class, its resolution and the bucket of
+ * the job size (number of pages or megabytes, rounded up to a power of 2). The
+ * heap of the workers started for a workload is then sized from the largest
+ * live heap recently observed for it, plus a margin, within configurable floor
+ * and ceiling (by default, a quarter of the physical memory). Workloads never
+ * observed keep the size given by the component.
+ * <p>
+ * The peak RSS is recorded but not used for sizing: most of it is native
+ * memory of the Ghostscript library and of the JVM itself, which the heap size
+ * does not bound. It is used to recycle workers instead (see
+ * RemoteWorkerPool).
+ * <p>
+ * A worker which died during a job (most likely killed for lack of memory) is
+ * recorded as having needed twice its heap.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteHeapModel {
+
+    /**
+     * Name of the system property used to set the minimum heap size (in MB) of
+     * worker JVMs.
+     */
+    public static final String PROPERTY_NAME_MIN_XMX = "ghost4j.remote.xmx.min";
+
+    /**
+     * Name of the system property used to set the maximum heap size (in MB) of
+     * worker JVMs (0 for no maximum, default is a quarter of the physical
+     * memory).
+     */
+    public static final String PROPERTY_NAME_MAX_XMX = "ghost4j.remote.xmx.max";
+
+    /**
+     * Default minimum heap size (in MB).
+     */
+    public static final int DEFAULT_MIN_XMX = 64;
+
+    /**
+     * Default maximum heap size (in MB), used if the physical memory size is
+     * unknown.
+     */
+    public static final int DEFAULT_MAX_XMX = 1024;
+
+    /**
+     * Share of the physical memory given at most by default to the heap of a
+     * worker JVM (1/n).
+     */
+    private static final int PHYSICAL_MEMORY_SHARE = 4;
+
+    /**
+     * Number of observations kept per workload.
+     */
+    private static final int HISTORY_SIZE = 8;
+
+    /**
+     * Margin applied to the observed live heap (in percent), leaving room for
+     * the garbage collector.
+     */
+    private static final int MARGIN = 100;
+
+    /**
+     * Heap added to the observed live heap (in MB), covering the objects
+     * allocated between two garbage collections by small jobs.
+     */
+    private static final int HEADROOM = 16;
+
+    /**
+     * Shared instance.
+     */
+    private static RemoteHeapModel instance;
+
+    /**
+     * Minimum heap size (in MB).
+     */
+    private int minXmx;
+
+    /**
+     * Maximum heap size (in MB), 0 for no maximum.
+     */
+    private int maxXmx;
+
+    /**
+     * Observations by workload key.
+     */
+    private final Map<String, Usage> usages = new HashMap<String, Usage>();
+
+    /**
+     * Access to the shared model, used by all remote components. Its floor
+     * and ceiling are read from the ghost4j.remote.xmx.min and
+     * ghost4j.remote.xmx.max system properties.
+     *
+     * @return The shared RemoteHeapModel
+     */
+    public static synchronized RemoteHeapModel getInstance() {
+
+	if (instance == null) {
+	    instance = new RemoteHeapModel(Integer.getInteger(
+		    PROPERTY_NAME_MIN_XMX, DEFAULT_MIN_XMX),
+		    Integer.getInteger(PROPERTY_NAME_MAX_XMX,
+			    getDefaultMaxXmx()));
+	}
+
+	return instance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param minXmx
+     *            Minimum heap size (in MB)
+     * @param maxXmx
+     *            Maximum heap size (in MB), 0 for no maximum
+     */
+    public RemoteHeapModel(int minXmx, int maxXmx) {
+	this.minXmx = minXmx;
+	this.maxXmx = maxXmx;
+    }
+
+    /**
+     * Gets the default maximum heap size of worker JVMs: a quarter of the
+     * physical memory.
+     *
+     * @return The heap size (in MB)
+     */
+    static int getDefaultMaxXmx() {
+
+	try {
+	    // platform attribute (HotSpot and OpenJ9)
+	    Object size = ManagementFactory.getPlatformMBeanServer()
+		    .getAttribute(
+			    new ObjectName(
+				    ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME),
+			    "TotalPhysicalMemorySize");
+	    if (size instanceof Number && ((Number) size).longValue() > 0) {
+		return (int) Math.min(Integer.MAX_VALUE, ((Number) size)
+			.longValue() / PHYSICAL_MEMORY_SHARE / 1024 / 1024);
+	    }
+	} catch (Exception e) {
+	    // unknown
+	}
+
+	return DEFAULT_MAX_XMX;
+    }
+
+    /**
+     * Builds the key identifying a workload.
+     *
+     * @param componentClass
+     *            Class of the component
+     * @param resolution
+     *            Resolution of the component (0 if not applicable)
+     * @param unit
+     *            Unit of the job size (pages, mb...)
+     * @param amount
+     *            Job size
+     * @return The workload key
+     */
+    public static String getWorkloadKey(Class<?> componentClass,
+	    int resolution, String unit, long amount) {
+
+	// size bucket: smallest power of 2 greater than or equal to amount
+	long bucket = 1;
+	while (bucket < amount && bucket > 0) {
+	    bucket <<= 1;
+	}
+
+	return componentClass.getName() + "/" + resolution + "dpi/" + bucket
+		+ unit;
+    }
+
+    /**
+     * Estimates the heap size needed by a workload.
+     *
+     * @param workloadKey
+     *            Workload key
+     * @param defaultXmx
+     *            Heap size (in MB) used if the workload was never observed
+     * @return The heap size (in MB), within floor and ceiling
+     */
+    public synchronized int estimateXmx(String workloadKey, int defaultXmx) {
+
+	int xmx = defaultXmx;
+
+	Usage usage = usages.get(workloadKey);
+	if (usage != null) {
+	    long liveHeapMb = usage.getLiveHeap() / 1024 / 1024;
+	    xmx = (int) Math.min(Integer.MAX_VALUE, liveHeapMb * (100 + MARGIN)
+		    / 100 + HEADROOM);
+	}
+
+	if (xmx < minXmx) {
+	    xmx = minXmx;
+	}
+	if (maxXmx > 0 && xmx > maxXmx) {
+	    xmx = maxXmx;
+	}
+
+	return xmx;
+    }
+
+    /**
+     * Records the memory used by a job.
+     *
+     * @param workloadKey
+     *            Workload key
+     * @param liveHeap
+     *            Largest heap (in bytes) used after garbage collection by the
+     *            worker during the job
+     * @param peakRss
+     *            Peak resident set size (in bytes) of the worker during the
+     *            job, -1 if unknown
+     */
+    public synchronized void record(String workloadKey, long liveHeap,
+	    long peakRss) {
+
+	Usage usage = usages.get(workloadKey);
+	if (usage == null) {
+	    usage = new Usage();
+	    usages.put(workloadKey, usage);
+	}
+
+	usage.add(liveHeap, peakRss);
+    }
+
+    /**
+     * Records a job whose worker died, most likely for lack of memory.
+     *
+     * @param workloadKey
+     *            Workload key
+     * @param xmx
+     *            Heap size (in MB) of the worker
+     */
+    public void recordFailure(String workloadKey, int xmx) {
+
+	// the whole heap was live: next workers get twice as much
+	record(workloadKey, xmx * 1024L * 1024, -1);
+    }
+
+    /**
+     * Gets the largest live heap recently observed for a workload.
+     *
+     * @param workloadKey
+     *            Workload key
+     * @return The live heap (in bytes), -1 if the workload was never observed
+     */
+    public synchronized long getLiveHeap(String workloadKey) {
+
+	Usage usage = usages.get(workloadKey);
+	return usage == null ? -1 : usage.getLiveHeap();
+    }
+
+    /**
+     * Gets the largest peak resident set size recently observed for a
+     * workload.
+     *
+     * @param workloadKey
+     *            Workload key
+     * @return The peak RSS (in bytes), -1 if unknown
+     */
+    public synchronized long getPeakRss(String workloadKey) {
+
+	Usage usage = usages.get(workloadKey);
+	return usage == null ? -1 : usage.getPeakRss();
+    }
+
+    /**
+     * Forgets all observations.
+     */
+    public synchronized void clear() {
+	usages.clear();
+    }
+
+    public synchronized int getMinXmx() {
+	return minXmx;
+    }
+
+    public synchronized void setMinXmx(int minXmx) {
+	this.minXmx = minXmx;
+    }
+
+    public synchronized int getMaxXmx() {
+	return maxXmx;
+    }
+
+    public synchronized void setMaxXmx(int maxXmx) {
+	this.maxXmx = maxXmx;
+    }
+
+    /**
+     * Last observations of a workload.
+     */
+    private static class Usage {
+
+	private final long[] liveHeaps = new long[HISTORY_SIZE];
+	private final long[] peakRsses = new long[HISTORY_SIZE];
+	private int count;
+
+	public void add(long liveHeap, long peakRss) {
+
+	    liveHeaps[count % HISTORY_SIZE] = liveHeap;
+	    peakRsses[count % HISTORY_SIZE] = peakRss;
+	    count++;
+	}
+
+	public long getLiveHeap() {
+	    return max(liveHeaps);
+	}
+
+	public long getPeakRss() {
+	    return max(peakRsses);
+	}
+
+	private long max(long[] values) {
+
+	    long max = -1;
+	    for (int i = 0; i < Math.min(count, HISTORY_SIZE); i++) {
+		max = Math.max(max, values[i]);
+	    }
+
+	    return max;
+	}
+    }
+}
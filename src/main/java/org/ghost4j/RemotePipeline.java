@@ -0,0 +1,461 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.awt.Image;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.ghost4j.analyzer.AbstractRemoteAnalyzer;
+import org.ghost4j.analyzer.AnalysisItem;
+import org.ghost4j.analyzer.AnalyzerException;
+import org.ghost4j.converter.AbstractRemoteConverter;
+import org.ghost4j.converter.ConverterException;
+import org.ghost4j.display.PageRaster;
+import org.ghost4j.document.Document;
+import org.ghost4j.modifier.AbstractRemoteModifier;
+import org.ghost4j.modifier.ModifierException;
+import org.ghost4j.renderer.AbstractRemoteRenderer;
+import org.ghost4j.renderer.RendererException;
+import org.ghost4j.util.ImageUtil;
+
+/**
+ * Runs several processing steps (conversions, analyses, renderings and
+ * modifications) on documents in a single worker JVM leased from the shared
+ * RemoteWorkerPool (see RemoteComponentServer). Documents are uploaded once
+ * and stay resident in the worker JVM, as do the documents produced by
+ * modifiers: steps refer to them by number.
+ * <p>
+ * The worker is leased when the first document is uploaded (its heap is sized
+ * from that document) and released when the pipeline is closed. If the worker
+ * dies, resident documents are lost: steps fail with a RemoteWorkerException
+ * and the pipeline cannot be used anymore.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * RemotePipeline pipeline = new RemotePipeline();
+ * try {
+ *     int documentId = pipeline.upload(document);
+ *     List&lt;AnalysisItem&gt; fonts = pipeline.analyze(new FontAnalyzer(),
+ * 	    documentId);
+ *     pipeline.convert(new PDFConverter(), documentId, outputStream);
+ * } finally {
+ *     pipeline.close();
+ * }
+ * </pre>
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemotePipeline implements Closeable {
+
+    /**
+     * Server component, used to start worker JVMs.
+     */
+    private final RemoteComponentServer server = new RemoteComponentServer();
+
+    /**
+     * Leased worker (null until the first upload).
+     */
+    private RemoteWorker worker;
+
+    /**
+     * Workload key of the pipeline in the remote heap model.
+     */
+    private String workloadKey;
+
+    /**
+     * Failure which made the pipeline unusable (null if usable).
+     */
+    private IOException failure;
+
+    /**
+     * Uploads a document to the worker JVM (leased if not done yet).
+     *
+     * @param document
+     *            Document
+     * @return The number of the resident document
+     * @throws IOException
+     */
+    public synchronized int upload(Document document) throws IOException {
+
+	if (worker == null) {
+	    lease(document);
+	}
+	checkUsable();
+
+	try {
+
+	    RemoteChannel channel = worker.openChannel();
+
+	    if (channel != null) {
+		try {
+		    channel.writeObject(RemoteComponentServer.OPERATION_PUT_DOCUMENT);
+		    channel.writeDocument(document);
+		    channel.flush();
+		    Integer documentId = (Integer) channel.readObject();
+		    worker.readMemoryUsage(channel);
+		    return documentId;
+		} finally {
+		    channel.close();
+		}
+	    } else {
+		return (Integer) worker.invoke(
+			RemoteComponentServer.OPERATION_PUT_DOCUMENT, document);
+	    }
+
+	} catch (IOException e) {
+	    throw fail(e);
+	} catch (Exception e) {
+	    throw new IOException(e);
+	}
+    }
+
+    /**
+     * Downloads a resident document (modification result for instance).
+     *
+     * @param documentId
+     *            Document number
+     * @return The document
+     * @throws IOException
+     */
+    public synchronized Document download(int documentId) throws IOException {
+
+	checkUsable();
+
+	try {
+
+	    RemoteChannel channel = worker.openChannel();
+
+	    if (channel != null) {
+		try {
+		    channel.writeObject(RemoteComponentServer.OPERATION_GET_DOCUMENT);
+		    channel.writeObject(new Object[] { documentId });
+		    channel.flush();
+		    Document document = channel.readDocument();
+		    worker.readMemoryUsage(channel);
+		    return document;
+		} finally {
+		    channel.close();
+		}
+	    } else {
+		return (Document) worker.invoke(
+			RemoteComponentServer.OPERATION_GET_DOCUMENT,
+			documentId);
+	    }
+
+	} catch (IOException e) {
+	    throw fail(e);
+	} catch (Exception e) {
+	    throw new IOException(e);
+	}
+    }
+
+    /**
+     * Removes a resident document from the worker JVM.
+     *
+     * @param documentId
+     *            Document number
+     * @throws IOException
+     */
+    public synchronized void remove(int documentId) throws IOException {
+
+	checkUsable();
+
+	try {
+	    invoke(RemoteComponentServer.OPERATION_REMOVE_DOCUMENT,
+		    new Object[] { documentId });
+	} catch (IOException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new IOException(e);
+	}
+    }
+
+    /**
+     * Converts a resident document.
+     *
+     * @param converter
+     *            Converter (its settings are used)
+     * @param documentId
+     *            Document number
+     * @param outputStream
+     *            Output stream of the conversion result
+     * @throws IOException
+     * @throws ConverterException
+     */
+    public synchronized void convert(AbstractRemoteConverter converter,
+	    int documentId, OutputStream outputStream) throws IOException,
+	    ConverterException {
+
+	checkUsable();
+
+	try {
+
+	    Object[] args = { converter.getClass().getName(),
+		    converter.extractSettings(), documentId };
+	    RemoteChannel channel = worker.openChannel();
+
+	    if (channel != null) {
+
+		// local socket: stream result
+		try {
+		    channel.writeObject(RemoteComponentServer.OPERATION_CONVERT);
+		    channel.writeObject(args);
+		    channel.flush();
+		    channel.readData(outputStream);
+		    worker.readMemoryUsage(channel);
+		} finally {
+		    channel.close();
+		}
+
+	    } else {
+		outputStream.write((byte[]) worker.invoke(
+			RemoteComponentServer.OPERATION_CONVERT, args));
+	    }
+
+	} catch (IOException e) {
+	    throw fail(e);
+	} catch (ConverterException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new ConverterException(e);
+	}
+    }
+
+    /**
+     * Analyzes a resident document.
+     *
+     * @param analyzer
+     *            Analyzer (its settings are used)
+     * @param documentId
+     *            Document number
+     * @return The analysis items
+     * @throws IOException
+     * @throws AnalyzerException
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<AnalysisItem> analyze(
+	    AbstractRemoteAnalyzer analyzer, int documentId)
+	    throws IOException, AnalyzerException {
+
+	checkUsable();
+
+	try {
+	    return (List<AnalysisItem>) invoke(
+		    RemoteComponentServer.OPERATION_ANALYZE, new Object[] {
+			    analyzer.getClass().getName(),
+			    analyzer.extractSettings(), documentId });
+	} catch (IOException e) {
+	    throw e;
+	} catch (AnalyzerException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new AnalyzerException(e);
+	}
+    }
+
+    /**
+     * Renders pages of a resident document.
+     *
+     * @param renderer
+     *            Renderer (its settings are used)
+     * @param documentId
+     *            Document number
+     * @param begin
+     *            First page (starting from 0)
+     * @param end
+     *            Last page
+     * @return The page images
+     * @throws IOException
+     * @throws RendererException
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<Image> render(AbstractRemoteRenderer renderer,
+	    int documentId, int begin, int end) throws IOException,
+	    RendererException {
+
+	checkUsable();
+
+	try {
+
+	    Object[] args = { renderer.getClass().getName(),
+		    renderer.extractSettings(), documentId, begin, end };
+	    RemoteChannel channel = worker.openChannel();
+	    List<PageRaster> rasters;
+
+	    if (channel != null) {
+
+		// local socket: receive raw rasters
+		try {
+		    channel.writeObject(RemoteComponentServer.OPERATION_RENDER);
+		    channel.writeObject(args);
+		    channel.flush();
+
+		    int pageCount = (Integer) channel.readObject();
+		    rasters = new ArrayList<PageRaster>(pageCount);
+		    for (int i = 0; i < pageCount; i++) {
+			PageRaster raster = (PageRaster) channel.readObject();
+			raster.setData(channel.readBytes());
+			rasters.add(raster);
+		    }
+		    worker.readMemoryUsage(channel);
+		} finally {
+		    channel.close();
+		}
+
+	    } else {
+		rasters = (List<PageRaster>) worker.invoke(
+			RemoteComponentServer.OPERATION_RENDER, args);
+	    }
+
+	    return ImageUtil.convertPageRastersToImages(rasters);
+
+	} catch (IOException e) {
+	    throw fail(e);
+	} catch (RendererException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new RendererException(e);
+	}
+    }
+
+    /**
+     * Modifies a resident document. The result document stays resident.
+     *
+     * @param modifier
+     *            Modifier (its settings are used)
+     * @param documentId
+     *            Document number
+     * @param parameters
+     *            Modifier parameters
+     * @return The number of the result document
+     * @throws IOException
+     * @throws ModifierException
+     */
+    public synchronized int modify(AbstractRemoteModifier modifier,
+	    int documentId, Map<String, Serializable> parameters)
+	    throws IOException, ModifierException {
+
+	checkUsable();
+
+	try {
+	    return (Integer) invoke(RemoteComponentServer.OPERATION_MODIFY,
+		    new Object[] { modifier.getClass().getName(),
+			    modifier.extractSettings(), documentId,
+			    parameters });
+	} catch (IOException e) {
+	    throw e;
+	} catch (ModifierException e) {
+	    throw e;
+	} catch (Exception e) {
+	    throw new ModifierException(e);
+	}
+    }
+
+    /**
+     * Releases the worker JVM, after removing resident documents.
+     */
+    public synchronized void close() {
+
+	if (worker == null) {
+	    return;
+	}
+
+	if (failure == null) {
+	    try {
+		invoke(RemoteComponentServer.OPERATION_CLEAR_DOCUMENTS,
+			new Object[0]);
+	    } catch (Exception e) {
+		// worker stopped: documents are gone with it
+		RemoteWorkerPool.getInstance().invalidate(worker);
+		worker = null;
+		return;
+	    }
+	}
+
+	server.recordMemoryUsage(workloadKey, worker);
+	RemoteWorkerPool.getInstance().release(worker);
+	worker = null;
+	failure = null;
+    }
+
+    /**
+     * Leases a worker JVM, sized from the first document.
+     */
+    private void lease(Document document) throws IOException {
+
+	int documentMbSize = (document.getSize() / 1024 / 1024) + 1;
+	workloadKey = server.getWorkloadKey("mb", documentMbSize);
+	int xmxValue = RemoteHeapModel.getInstance().estimateXmx(workloadKey,
+		64 + documentMbSize * 2);
+
+	worker = RemoteWorkerPool.getInstance().borrow(server,
+		RemoteComponentServer.class, xmxValue);
+    }
+
+    /**
+     * Checks that the pipeline can run a step.
+     */
+    private void checkUsable() throws IOException {
+
+	if (worker == null) {
+	    throw new IOException("No document uploaded");
+	}
+	if (failure != null) {
+	    throw new IOException("Remote pipeline worker terminated", failure);
+	}
+    }
+
+    /**
+     * Handles a communication failure: makes the pipeline unusable if the
+     * worker terminated.
+     */
+    private IOException fail(IOException e) {
+
+	IOException result = AbstractRemoteComponent.checkWorkerCrash(worker, e);
+	if (result instanceof RemoteWorkerException) {
+	    failure = result;
+	}
+
+	return result;
+    }
+
+    /**
+     * Invokes an operation whose result is an object.
+     */
+    private Object invoke(String operation, Object[] args) throws Exception {
+
+	try {
+
+	    RemoteChannel channel = worker.openChannel();
+
+	    if (channel != null) {
+		try {
+		    channel.writeObject(operation);
+		    channel.writeObject(args);
+		    channel.flush();
+		    Object result = channel.readObject();
+		    worker.readMemoryUsage(channel);
+		    return result;
+		} finally {
+		    channel.close();
+		}
+	    } else {
+		return worker.invoke(operation, args);
+	    }
+
+	} catch (IOException e) {
+	    throw fail(e);
+	}
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import gnu.cajo.invoke.Remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ghost4j.util.JavaFork;
+import org.ghost4j.util.UnixSocketUtil;
+
+/**
+ * Worker JVM running a remote component server, leased from a
+ * RemoteWorkerPool to run remote component jobs.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteWorker {
+
+    /**
+     * Executor running heartbeat calls, shared by all workers: Cajo calls
+     * cannot time out, so they are run on its threads (reused once calls
+     * complete, a worker stopped after a timeout ends its hung call).
+     */
+    private static final ExecutorService heartbeatExecutor = Executors
+	    .newCachedThreadPool(new ThreadFactory() {
+
+		public Thread newThread(Runnable runnable) {
+
+		    Thread thread = new Thread(runnable,
+			    "ghost4j-remote-worker-heartbeat");
+		    thread.setDaemon(true);
+
+		    return thread;
+		}
+	    });
+
+    /**
+     * Component which started the worker (used to start its replacement).
+     */
+    private final AbstractRemoteComponent component;
+
+    /**
+     * Interface of the remote component.
+     */
+    private final Class<?> remoteInterface;
+
+    /**
+     * Forked JVM.
+     */
+    private final JavaFork fork;
+
+    /**
+     * Port of the remote component server.
+     */
+    private final int port;
+
+    /**
+     * Client proxy of the remote component.
+     */
+    private final Object remote;
+
+    /**
+     * Unix domain socket file the worker listens on (null if the worker only
+     * serves Cajo requests).
+     */
+    private final File socketFile;
+
+    /**
+     * Directory of the memory-mapped files used to exchange large payloads
+     * with the worker (null if shared memory is not used).
+     */
+    private final File sharedMemoryDirectory;
+
+    /**
+     * Maximum heap size of the worker JVM (in MB).
+     */
+    private final int xmx;
+
+    /**
+     * Number of jobs run by the worker.
+     */
+    private int jobCount;
+
+    /**
+     * Time the worker was last released to its pool (System.currentTimeMillis
+     * based).
+     */
+    private long lastReleaseTime;
+
+    /**
+     * Time the worker was last found healthy (System.currentTimeMillis
+     * based).
+     */
+    private long lastCheckTime;
+
+    /**
+     * Peak resident set size of the worker during its last lease or heartbeat
+     * (in bytes, -1 if unknown).
+     */
+    private long peakRss = -1;
+
+    /**
+     * Largest live heap and peak RSS reported with the job results of the
+     * current lease (null if none was reported).
+     */
+    private long[] jobMemoryUsage;
+
+    /**
+     * Constructor.
+     *
+     * @param component
+     *            Component which started the worker
+     * @param remoteInterface
+     *            Interface of the remote component
+     * @param fork
+     *            Forked JVM (started)
+     * @param port
+     *            Port of the remote component server
+     * @param remote
+     *            Client proxy of the remote component
+     * @param socketFile
+     *            Unix domain socket file the worker listens on (can be null)
+     * @param sharedMemoryDirectory
+     *            Directory of the memory-mapped files exchanged with the
+     *            worker (can be null)
+     * @param xmx
+     *            Maximum heap size of the worker JVM (in MB)
+     */
+    RemoteWorker(AbstractRemoteComponent component, Class<?> remoteInterface,
+	    JavaFork fork, int port, Object remote, File socketFile,
+	    File sharedMemoryDirectory, int xmx) {
+
+	this.component = component;
+	this.remoteInterface = remoteInterface;
+	this.fork = fork;
+	this.port = port;
+	this.remote = remote;
+	this.socketFile = socketFile;
+	this.sharedMemoryDirectory = sharedMemoryDirectory;
+	this.xmx = xmx;
+	this.lastReleaseTime = System.currentTimeMillis();
+	this.lastCheckTime = lastReleaseTime;
+    }
+
+    /**
+     * Gets the client proxy of the remote component, to be used with
+     * Remote.invoke.
+     *
+     * @return The proxy object
+     */
+    public Object getRemote() {
+	return remote;
+    }
+
+    /**
+     * Opens a channel to the worker local socket, used to send one request.
+     * 
+     * @return The channel, or null if the worker has no local socket (Cajo
+     *         must be used)
+     * @throws IOException
+     *             If the connection fails
+     */
+    public RemoteChannel openChannel() throws IOException {
+
+	if (socketFile == null) {
+	    return null;
+	}
+
+	RemoteChannel channel = new RemoteChannel(
+		UnixSocketUtil.connect(socketFile));
+	channel.setSharedMemoryDirectory(sharedMemoryDirectory);
+
+	return channel;
+    }
+
+    /**
+     * Invokes a method of the remote component through Cajo. The memory used
+     * by the worker JVM during the call comes back with the result (see
+     * getJobMemoryUsage).
+     * 
+     * @param method
+     *            Name of the method
+     * @param args
+     *            Method arguments (as given to Remote.invoke)
+     * @return The method result
+     * @throws Exception
+     *             If the call fails
+     */
+    public Object invoke(String method, Object args) throws Exception {
+
+	Object[] reply = (Object[]) Remote.invoke(remote, "invokeMeasured",
+		new Object[] { method, args });
+	addJobMemoryUsage((long[]) reply[1]);
+
+	return reply[0];
+    }
+
+    /**
+     * Reads the memory used by the worker JVM during a request, sent after a
+     * successful response on a channel. Must be called once the response is
+     * read, before closing the channel.
+     * 
+     * @param channel
+     *            Channel of the request
+     * @throws Exception
+     *             If the memory usage cannot be read
+     */
+    public void readMemoryUsage(RemoteChannel channel) throws Exception {
+	addJobMemoryUsage((long[]) channel.readObject());
+    }
+
+    /**
+     * Gets the largest live heap (heap used after garbage collection) and
+     * peak resident set size reported with the job results since the worker
+     * was leased.
+     * 
+     * @return Live heap and peak RSS (in bytes, -1 if unknown), or null if no
+     *         job reported its memory usage
+     */
+    public synchronized long[] getJobMemoryUsage() {
+	return jobMemoryUsage == null ? null : jobMemoryUsage.clone();
+    }
+
+    /**
+     * Gets the live heap and peak resident set size of the worker JVM since
+     * the start of its last job (the worker is not reset).
+     * 
+     * @return Live heap and peak RSS (in bytes, -1 if unknown)
+     * @throws Exception
+     *             If the worker cannot be reached
+     */
+    public long[] collectMemoryUsage() throws Exception {
+
+	long[] usage = (long[]) Remote.invoke(remote, "collectMemoryUsage",
+		null);
+
+	synchronized (this) {
+	    peakRss = Math.max(peakRss, usage[1]);
+	}
+
+	return usage;
+    }
+
+    /**
+     * Checks that the worker JVM answers requests (heartbeat). Its memory
+     * usage is collected on the way.
+     * 
+     * @param timeout
+     *            Maximum time to wait for the answer (in milliseconds)
+     * @return true if the worker answered in time
+     */
+    public boolean ping(long timeout) {
+
+	Future<long[]> task = heartbeatExecutor.submit(new Callable<long[]>() {
+
+	    public long[] call() throws Exception {
+		return collectMemoryUsage();
+	    }
+	});
+
+	try {
+	    task.get(timeout, TimeUnit.MILLISECONDS);
+	} catch (InterruptedException e) {
+	    task.cancel(true);
+	    Thread.currentThread().interrupt();
+	    return false;
+	} catch (Exception e) {
+	    task.cancel(true);
+	    return false;
+	}
+
+	synchronized (this) {
+	    lastCheckTime = System.currentTimeMillis();
+	}
+
+	return true;
+    }
+
+    /**
+     * Waits for the worker JVM to terminate.
+     * 
+     * @param timeout
+     *            Maximum time to wait (in milliseconds)
+     * @return true if the worker JVM terminated
+     */
+    public boolean waitForExit(long timeout) {
+
+	try {
+	    return fork.waitFor(timeout);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return !fork.isRunning();
+	}
+    }
+
+    /**
+     * Gets the exit value of the worker JVM.
+     * 
+     * @return The exit value, or -1 if still running
+     */
+    public int getExitValue() {
+	return fork.getExitValue();
+    }
+
+    public Class<?> getComponentClass() {
+	return component.getClass();
+    }
+
+    AbstractRemoteComponent getComponent() {
+	return component;
+    }
+
+    Class<?> getRemoteInterface() {
+	return remoteInterface;
+    }
+
+    public int getPort() {
+	return port;
+    }
+
+    public int getXmx() {
+	return xmx;
+    }
+
+    public synchronized int getJobCount() {
+	return jobCount;
+    }
+
+    public synchronized long getPeakRss() {
+	return peakRss;
+    }
+
+    /**
+     * Checks if the worker JVM is still running.
+     *
+     * @return true if running
+     */
+    public boolean isRunning() {
+	return fork.isRunning();
+    }
+
+    /**
+     * Stops the worker JVM.
+     */
+    void stop() {
+
+	fork.stop();
+	if (socketFile != null) {
+	    RemoteWorkerPool.deleteSocketFile(socketFile);
+	}
+	if (sharedMemoryDirectory != null) {
+	    RemoteWorkerPool.deleteDirectory(sharedMemoryDirectory);
+	}
+    }
+
+    synchronized void leased() {
+	jobCount++;
+	jobMemoryUsage = null;
+	peakRss = -1;
+    }
+
+    private synchronized void addJobMemoryUsage(long[] usage) {
+
+	if (jobMemoryUsage == null) {
+	    jobMemoryUsage = usage.clone();
+	} else {
+	    jobMemoryUsage[0] = Math.max(jobMemoryUsage[0], usage[0]);
+	    jobMemoryUsage[1] = Math.max(jobMemoryUsage[1], usage[1]);
+	}
+	peakRss = Math.max(peakRss, usage[1]);
+    }
+
+    synchronized void released() {
+	lastReleaseTime = System.currentTimeMillis();
+	lastCheckTime = lastReleaseTime;
+    }
+
+    synchronized long getLastReleaseTime() {
+	return lastReleaseTime;
+    }
+
+    synchronized long getLastCheckTime() {
+	return lastCheckTime;
+    }
+}
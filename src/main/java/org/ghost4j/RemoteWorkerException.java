@@ -0,0 +1,44 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a remote worker JVM terminates while running a job
+ * (Ghostscript crash, process killed...).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteWorkerException extends IOException {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 6153096632478122381L;
+
+    /**
+     * Exit value of the worker JVM.
+     */
+    private final int exitValue;
+
+    public RemoteWorkerException(String message, int exitValue,
+	    Throwable cause) {
+	super(message, cause);
+	this.exitValue = exitValue;
+    }
+
+    /**
+     * Gets the exit value of the worker JVM (137 if it was killed with
+     * SIGKILL, by the out of memory killer for instance).
+     * 
+     * @return The exit value
+     */
+    public int getExitValue() {
+	return exitValue;
+    }
+}
@@ -0,0 +1,828 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.ghost4j.util.DiskStore;
+import org.ghost4j.util.JavaFork;
+import org.ghost4j.util.UnixSocketUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of long-lived worker JVMs used by remote components (components with
+ * maxProcessCount > 0). Instead of forking a new JVM for each job, a component
+ * leases an idle worker serving the same component class, runs its job on it
+ * and releases it to the pool: JVM startup, class loading, server binding and
+ * Ghostscript library loading are only paid when a worker is started.
+ * <p>
+ * Workers are started with the heap size asked by the component: an idle
+ * worker is only reused by jobs needing at most its heap size. Workers idle
+ * for more than the idle timeout are stopped (down to the minimum size), and
+ * workers found terminated (crashed) are discarded.
+ * <p>
+ * Idle workers are checked periodically (heartbeat): workers not answering
+ * are stopped and replaced. Workers can also be recycled (stopped and
+ * replaced) after a number of jobs or once their resident set size exceeds a
+ * threshold, to contain native memory leaks.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteWorkerPool {
+
+    /**
+     * Name of the system property used to set the maximum size of the shared
+     * pool.
+     */
+    public static final String PROPERTY_NAME_MAX_SIZE = "ghost4j.remote.pool.size";
+
+    /**
+     * Name of the system property used to set the idle timeout (in
+     * milliseconds) of the shared pool.
+     */
+    public static final String PROPERTY_NAME_IDLE_TIMEOUT = "ghost4j.remote.pool.idletimeout";
+
+    /**
+     * Name of the system property used to disable (false) requests over Unix
+     * domain sockets (enabled by default when supported).
+     */
+    public static final String PROPERTY_NAME_UNIX_SOCKET = "ghost4j.remote.unixsocket";
+
+    /**
+     * Name of the system property used to set the number of jobs after which
+     * a worker of the shared pool is recycled (0 for no limit).
+     */
+    public static final String PROPERTY_NAME_MAX_JOBS = "ghost4j.remote.pool.maxjobs";
+
+    /**
+     * Name of the system property used to set the resident set size (in MB)
+     * above which a worker of the shared pool is recycled (0 for no limit).
+     */
+    public static final String PROPERTY_NAME_MAX_RSS = "ghost4j.remote.pool.maxrss";
+
+    /**
+     * Name of the system property used to set the interval (in milliseconds)
+     * of the heartbeat checks of idle workers of the shared pool (0 to
+     * disable them).
+     */
+    public static final String PROPERTY_NAME_HEARTBEAT_INTERVAL = "ghost4j.remote.pool.heartbeat";
+
+    /**
+     * Name of the system property used to enable (true) the exchange of large
+     * payloads (documents, rasters) with workers through memory-mapped files
+     * instead of the Unix domain socket. Disabled by default.
+     */
+    public static final String PROPERTY_NAME_SHARED_MEMORY = "ghost4j.remote.sharedmemory";
+
+    /**
+     * Directory holding memory-mapped files when available (memory backed
+     * file system on Linux).
+     */
+    private static final File SHARED_MEMORY_ROOT = new File("/dev/shm");
+
+    /**
+     * Default idle timeout (in milliseconds).
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /**
+     * Default heartbeat interval (in milliseconds).
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 30000;
+
+    /**
+     * Maximum time (in milliseconds) a worker has to answer a heartbeat.
+     */
+    private static final long HEARTBEAT_TIMEOUT = 5000;
+
+    /**
+     * Logger used to log messages.
+     */
+    private Logger logger = LoggerFactory.getLogger(RemoteWorkerPool.class
+	    .getName());
+
+    /**
+     * Shared instance.
+     */
+    private static RemoteWorkerPool instance;
+
+    /**
+     * Minimum number of workers kept running when idle.
+     */
+    private int minSize;
+
+    /**
+     * Maximum number of workers (leased and idle).
+     */
+    private int maxSize;
+
+    /**
+     * Time (in milliseconds) after which an idle worker is stopped (0 to stop
+     * workers as soon as they are released).
+     */
+    private long idleTimeout;
+
+    /**
+     * Number of jobs after which a worker is recycled (0 for no limit).
+     */
+    private int maxJobs;
+
+    /**
+     * Resident set size (in MB) above which a worker is recycled (0 for no
+     * limit).
+     */
+    private int maxRss;
+
+    /**
+     * Interval (in milliseconds) of the heartbeat checks of idle workers (0
+     * to disable them).
+     */
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+    /**
+     * Idle workers (most recently released first).
+     */
+    private final LinkedList<RemoteWorker> idleWorkers;
+
+    /**
+     * Number of workers running (leased and idle).
+     */
+    private int size;
+
+    /**
+     * Timer evicting idle workers (created when needed).
+     */
+    private Timer evictionTimer;
+
+    /**
+     * Access to the shared pool. Its maximum size is read from the
+     * ghost4j.remote.pool.size system property (defaults to the number of
+     * processors) and its idle timeout from the
+     * ghost4j.remote.pool.idletimeout system property. Recycling and heartbeat
+     * settings are read from the ghost4j.remote.pool.maxjobs,
+     * ghost4j.remote.pool.maxrss and ghost4j.remote.pool.heartbeat system
+     * properties. Workers of the shared pool are stopped when the JVM exits.
+     *
+     * @return The shared RemoteWorkerPool
+     */
+    public static synchronized RemoteWorkerPool getInstance() {
+
+	if (instance == null) {
+	    int maxSize = Integer.getInteger(PROPERTY_NAME_MAX_SIZE, Runtime
+		    .getRuntime().availableProcessors());
+	    long idleTimeout = Long.getLong(PROPERTY_NAME_IDLE_TIMEOUT,
+		    DEFAULT_IDLE_TIMEOUT);
+	    instance = new RemoteWorkerPool(0, maxSize, idleTimeout);
+	    instance.setMaxJobs(Integer.getInteger(PROPERTY_NAME_MAX_JOBS, 0));
+	    instance.setMaxRss(Integer.getInteger(PROPERTY_NAME_MAX_RSS, 0));
+	    instance.setHeartbeatInterval(Long.getLong(
+		    PROPERTY_NAME_HEARTBEAT_INTERVAL, DEFAULT_HEARTBEAT_INTERVAL));
+
+	    final RemoteWorkerPool pool = instance;
+	    Runtime.getRuntime().addShutdownHook(new Thread() {
+
+		@Override
+		public void run() {
+		    pool.close();
+		}
+	    });
+	}
+
+	return instance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param minSize
+     *            Minimum number of workers kept running when idle
+     * @param maxSize
+     *            Maximum number of workers (leased and idle)
+     * @param idleTimeout
+     *            Time (in milliseconds) after which an idle worker is stopped
+     *            (0 to stop workers as soon as they are released)
+     */
+    public RemoteWorkerPool(int minSize, int maxSize, long idleTimeout) {
+
+	if (maxSize < 1) {
+	    throw new IllegalArgumentException("Pool size must be at least 1");
+	}
+
+	this.minSize = minSize;
+	this.maxSize = maxSize;
+	this.idleTimeout = idleTimeout;
+	this.idleWorkers = new LinkedList<RemoteWorker>();
+    }
+
+    /**
+     * Leases a worker running a remote server for a component. An idle worker
+     * serving the same component class with a large enough heap is reused,
+     * otherwise a new worker is started (waiting for a worker to be released
+     * if the pool is full).
+     *
+     * @param component
+     *            Component needing a worker
+     * @param remoteInterface
+     *            Interface of the remote component
+     * @param xmx
+     *            Minimum heap size of the worker JVM (in MB)
+     * @return A running worker
+     * @throws IOException
+     *             If the worker cannot be started
+     */
+    public RemoteWorker borrow(AbstractRemoteComponent component,
+	    Class<?> remoteInterface, int xmx) throws IOException {
+
+	Class<?> componentClass = component.getClass();
+	List<RemoteWorker> evicted = new ArrayList<RemoteWorker>();
+
+	try {
+	    synchronized (this) {
+		while (true) {
+
+		    // reuse an idle worker
+		    Iterator<RemoteWorker> it = idleWorkers.iterator();
+		    while (it.hasNext()) {
+			RemoteWorker worker = it.next();
+			if (!worker.isRunning()) {
+			    // crashed or killed
+			    it.remove();
+			    size--;
+			} else if (worker.getComponentClass() == componentClass
+				&& worker.getXmx() >= xmx) {
+			    it.remove();
+			    worker.leased();
+			    return worker;
+			}
+		    }
+
+		    // make room by stopping the least recently used idle worker
+		    if (size >= maxSize && !idleWorkers.isEmpty()) {
+			evicted.add(idleWorkers.removeLast());
+			size--;
+		    }
+
+		    // start a new worker
+		    if (size < maxSize) {
+			size++;
+			break;
+		    }
+
+		    try {
+			wait();
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(
+				"Interrupted while waiting for a remote worker");
+		    }
+		}
+	    }
+	} finally {
+	    for (RemoteWorker worker : evicted) {
+		worker.stop();
+	    }
+	}
+
+	try {
+	    RemoteWorker worker = startWorker(component, remoteInterface, xmx);
+	    worker.leased();
+	    return worker;
+	} catch (IOException e) {
+	    discard();
+	    throw e;
+	} catch (RuntimeException e) {
+	    discard();
+	    throw e;
+	}
+    }
+
+    /**
+     * Releases a leased worker to the pool. Terminated workers are discarded,
+     * and workers having reached their job count or resident set size limit
+     * are recycled.
+     *
+     * @param worker
+     *            Worker to release (may be null)
+     */
+    public void release(RemoteWorker worker) {
+
+	if (worker == null) {
+	    return;
+	}
+
+	if (idleTimeout <= 0 || !worker.isRunning()) {
+	    invalidate(worker);
+	    return;
+	}
+
+	if (isWornOut(worker)) {
+	    logger.debug("Recycling remote worker on port " + worker.getPort()
+		    + " after " + worker.getJobCount() + " jobs");
+	    replace(worker);
+	    return;
+	}
+
+	synchronized (this) {
+	    worker.released();
+	    idleWorkers.addFirst(worker);
+	    startEvictionTimer();
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Stops a leased worker that must not be reused (after a failure for
+     * instance).
+     *
+     * @param worker
+     *            Worker to stop (may be null)
+     */
+    public void invalidate(RemoteWorker worker) {
+
+	if (worker == null) {
+	    return;
+	}
+
+	worker.stop();
+	discard();
+    }
+
+    /**
+     * Stops a leased worker that must not be reused and starts another one
+     * in the background (after a job timeout for instance).
+     *
+     * @param worker
+     *            Worker to stop
+     */
+    public void replace(RemoteWorker worker) {
+
+	invalidate(worker);
+	respawn(worker);
+    }
+
+    /**
+     * Stops workers idle for more than the idle timeout, keeping at least the
+     * minimum number of workers running.
+     */
+    public void evictIdleWorkers() {
+
+	List<RemoteWorker> evicted = new ArrayList<RemoteWorker>();
+	List<RemoteWorker> crashed = new ArrayList<RemoteWorker>();
+	long now = System.currentTimeMillis();
+
+	synchronized (this) {
+	    Iterator<RemoteWorker> it = idleWorkers.descendingIterator();
+	    while (it.hasNext()) {
+		RemoteWorker worker = it.next();
+		if (!worker.isRunning()) {
+		    it.remove();
+		    size--;
+		    crashed.add(worker);
+		} else if (size > minSize
+			&& now - worker.getLastReleaseTime() >= idleTimeout) {
+		    it.remove();
+		    size--;
+		    evicted.add(worker);
+		}
+	    }
+	    if (!evicted.isEmpty() || !crashed.isEmpty()) {
+		notifyAll();
+	    }
+	}
+
+	for (RemoteWorker worker : evicted) {
+	    logger.debug("Stopping idle remote worker on port "
+		    + worker.getPort());
+	    worker.stop();
+	}
+
+	for (RemoteWorker worker : crashed) {
+	    logger.debug("Replacing terminated remote worker on port "
+		    + worker.getPort());
+	    worker.stop();
+	    respawn(worker);
+	}
+    }
+
+    /**
+     * Checks idle workers not checked (nor released) for more than the
+     * heartbeat interval: workers not answering or having reached their
+     * resident set size limit are stopped and replaced.
+     */
+    public void checkIdleWorkers() {
+
+	List<RemoteWorker> checked = new ArrayList<RemoteWorker>();
+	long now = System.currentTimeMillis();
+
+	// take workers to check out of the idle list
+	synchronized (this) {
+	    if (heartbeatInterval <= 0) {
+		return;
+	    }
+	    Iterator<RemoteWorker> it = idleWorkers.iterator();
+	    while (it.hasNext()) {
+		RemoteWorker worker = it.next();
+		if (now - worker.getLastCheckTime() >= heartbeatInterval) {
+		    it.remove();
+		    checked.add(worker);
+		}
+	    }
+	}
+
+	for (RemoteWorker worker : checked) {
+
+	    if (worker.ping(HEARTBEAT_TIMEOUT) && !isWornOut(worker)) {
+
+		// healthy: back to the idle list, in release order
+		synchronized (this) {
+		    if (idleTimeout > 0) {
+			ListIterator<RemoteWorker> it = idleWorkers
+				.listIterator();
+			while (it.hasNext()) {
+			    if (it.next().getLastReleaseTime() <= worker
+				    .getLastReleaseTime()) {
+				it.previous();
+				break;
+			    }
+			}
+			it.add(worker);
+			notifyAll();
+			continue;
+		    }
+		}
+
+		// pool closed meanwhile
+		invalidate(worker);
+
+	    } else {
+		logger.debug("Replacing unhealthy remote worker on port "
+			+ worker.getPort());
+		replace(worker);
+	    }
+	}
+    }
+
+    /**
+     * Stops all idle workers. Leased workers are stopped when released.
+     */
+    public void close() {
+
+	List<RemoteWorker> stopped;
+
+	synchronized (this) {
+	    stopped = new ArrayList<RemoteWorker>(idleWorkers);
+	    idleWorkers.clear();
+	    size -= stopped.size();
+	    idleTimeout = 0;
+	    if (evictionTimer != null) {
+		evictionTimer.cancel();
+		evictionTimer = null;
+	    }
+	    notifyAll();
+	}
+
+	for (RemoteWorker worker : stopped) {
+	    worker.stop();
+	}
+    }
+
+    /**
+     * Gets the number of workers running (leased and idle).
+     *
+     * @return Worker count
+     */
+    public synchronized int getSize() {
+	return size;
+    }
+
+    /**
+     * Gets the number of idle workers.
+     *
+     * @return Idle worker count
+     */
+    public synchronized int getIdleCount() {
+	return idleWorkers.size();
+    }
+
+    public synchronized int getMinSize() {
+	return minSize;
+    }
+
+    public synchronized void setMinSize(int minSize) {
+	this.minSize = minSize;
+    }
+
+    public synchronized int getMaxSize() {
+	return maxSize;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+
+	if (maxSize < 1) {
+	    throw new IllegalArgumentException("Pool size must be at least 1");
+	}
+
+	this.maxSize = maxSize;
+	notifyAll();
+    }
+
+    public synchronized long getIdleTimeout() {
+	return idleTimeout;
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeout) {
+	this.idleTimeout = idleTimeout;
+    }
+
+    public synchronized int getMaxJobs() {
+	return maxJobs;
+    }
+
+    public synchronized void setMaxJobs(int maxJobs) {
+	this.maxJobs = maxJobs;
+    }
+
+    public synchronized int getMaxRss() {
+	return maxRss;
+    }
+
+    public synchronized void setMaxRss(int maxRss) {
+	this.maxRss = maxRss;
+    }
+
+    public synchronized long getHeartbeatInterval() {
+	return heartbeatInterval;
+    }
+
+    public synchronized void setHeartbeatInterval(long heartbeatInterval) {
+	this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Checks if a worker reached its job count or resident set size limit.
+     */
+    private synchronized boolean isWornOut(RemoteWorker worker) {
+
+	return (maxJobs > 0 && worker.getJobCount() >= maxJobs)
+		|| (maxRss > 0 && worker.getPeakRss() > maxRss * 1024L * 1024);
+    }
+
+    /**
+     * Starts, in the background, a worker replacing a stopped one (if the
+     * pool is open and not full). The new worker is added to the idle list
+     * once started.
+     */
+    private void respawn(final RemoteWorker stopped) {
+
+	synchronized (this) {
+	    if (idleTimeout <= 0 || size >= maxSize) {
+		return;
+	    }
+	    size++;
+	}
+
+	Thread thread = new Thread("ghost4j-remote-worker-respawn") {
+
+	    @Override
+	    public void run() {
+
+		RemoteWorker worker;
+		try {
+		    worker = startWorker(stopped.getComponent(),
+			    stopped.getRemoteInterface(), stopped.getXmx());
+		} catch (Exception e) {
+		    logger.debug("Cannot replace remote worker", e);
+		    discard();
+		    return;
+		}
+
+		synchronized (RemoteWorkerPool.this) {
+		    if (idleTimeout > 0) {
+			worker.released();
+			idleWorkers.addFirst(worker);
+			startEvictionTimer();
+			RemoteWorkerPool.this.notifyAll();
+			return;
+		    }
+		}
+
+		// pool closed meanwhile
+		invalidate(worker);
+	    }
+	};
+	thread.setDaemon(true);
+	thread.start();
+    }
+
+    /**
+     * Starts a worker JVM running a remote server for a component.
+     */
+    private RemoteWorker startWorker(AbstractRemoteComponent component,
+	    Class<?> remoteInterface, int xmx) throws IOException {
+
+	// check if current class supports stand alone mode
+	if (!component.isStandAloneModeSupported()) {
+	    throw new IOException(
+		    "Standalone mode is not supported by this component: no 'main' method found");
+	}
+
+	// prepare new JVM
+	JavaFork fork = component.buildJavaFork();
+	fork.setXmx(xmx + "m");
+
+	// local socket (if supported), bound by the worker in a directory only
+	// accessible to the current user
+	File socketFile = null;
+	if (UnixSocketUtil.isSupported() && component.isChannelSupported()
+		&& Boolean.parseBoolean(System.getProperty(
+			PROPERTY_NAME_UNIX_SOCKET, "true"))) {
+	    socketFile = new File(createPrivateDirectory(null), "worker.sock");
+	}
+
+	// shared memory directory of the worker (if enabled)
+	File sharedMemoryDirectory = null;
+	if (socketFile != null
+		&& Boolean.getBoolean(PROPERTY_NAME_SHARED_MEMORY)) {
+	    sharedMemoryDirectory = createSharedMemoryDirectory();
+	    Map<String, String> environment = new HashMap<String, String>();
+	    environment.put(AbstractRemoteComponent.SHARED_MEMORY_ENVIRONMENT_NAME,
+		    sharedMemoryDirectory.getAbsolutePath());
+	    fork.setEnvironment(environment);
+	}
+
+	try {
+
+	    // start remote server
+	    int port = component.startRemoteServer(fork, socketFile);
+	    if (socketFile != null && !socketFile.exists()) {
+		// worker could not listen on the socket: use Cajo only
+		deleteSocketFile(socketFile);
+		socketFile = null;
+		if (sharedMemoryDirectory != null) {
+		    deleteDirectory(sharedMemoryDirectory);
+		    sharedMemoryDirectory = null;
+		}
+	    }
+
+	    // get remote component
+	    Object remote = component.getRemoteComponent(port, remoteInterface);
+
+	    logger.debug("Started remote worker for "
+		    + component.getClass().getName() + " on port " + port);
+
+	    return new RemoteWorker(component, remoteInterface, fork, port,
+		    remote, socketFile, sharedMemoryDirectory, xmx);
+
+	} catch (IOException e) {
+	    stopFork(fork, socketFile, sharedMemoryDirectory);
+	    throw e;
+	} catch (Exception e) {
+	    stopFork(fork, socketFile, sharedMemoryDirectory);
+	    throw new IOException("Cannot start remote worker", e);
+	}
+    }
+
+    /**
+     * Stops a worker JVM that failed to start.
+     */
+    private void stopFork(JavaFork fork, File socketFile,
+	    File sharedMemoryDirectory) {
+
+	fork.stop();
+	if (socketFile != null) {
+	    deleteSocketFile(socketFile);
+	}
+	if (sharedMemoryDirectory != null) {
+	    deleteDirectory(sharedMemoryDirectory);
+	}
+    }
+
+    /**
+     * Creates a directory only accessible to the current user (0700).
+     *
+     * @param root
+     *            Parent directory (null for the default temporary directory)
+     * @return The directory
+     * @throws IOException
+     *             If the directory cannot be created
+     */
+    static File createPrivateDirectory(File root) throws IOException {
+
+	Path parent = root != null ? root.toPath() : Paths.get(System
+		.getProperty("java.io.tmpdir"));
+
+	if (FileSystems.getDefault().supportedFileAttributeViews()
+		.contains("posix")) {
+	    return Files.createTempDirectory(
+		    parent,
+		    "ghost4j",
+		    PosixFilePermissions.asFileAttribute(PosixFilePermissions
+			    .fromString("rwx------"))).toFile();
+	}
+
+	// other file systems: restrict permissions once created
+	File directory = Files.createTempDirectory(parent, "ghost4j").toFile();
+	directory.setReadable(false, false);
+	directory.setReadable(true, true);
+	directory.setWritable(false, false);
+	directory.setWritable(true, true);
+	directory.setExecutable(false, false);
+	directory.setExecutable(true, true);
+
+	return directory;
+    }
+
+    /**
+     * Deletes a worker socket file with its private directory.
+     */
+    static void deleteSocketFile(File socketFile) {
+
+	socketFile.delete();
+	socketFile.getParentFile().delete();
+    }
+
+    /**
+     * Creates the directory of the memory-mapped files exchanged with a
+     * worker (only accessible to the current user): in /dev/shm when
+     * available, in the DiskStore root otherwise.
+     */
+    private static File createSharedMemoryDirectory() throws IOException {
+
+	File root = SHARED_MEMORY_ROOT;
+	if (!root.isDirectory() || !root.canWrite()) {
+	    root = new File(DiskStore.ROOT_PATH);
+	}
+
+	root.mkdirs();
+
+	return createPrivateDirectory(root);
+    }
+
+    /**
+     * Deletes a shared memory directory with the files left in it.
+     */
+    static void deleteDirectory(File directory) {
+
+	File[] files = directory.listFiles();
+	if (files != null) {
+	    for (File file : files) {
+		file.delete();
+	    }
+	}
+	directory.delete();
+    }
+
+    /**
+     * Forgets a worker that was counted in the pool size.
+     */
+    private synchronized void discard() {
+
+	size--;
+	notifyAll();
+    }
+
+    /**
+     * Starts the timer evicting idle workers (if not started yet).
+     */
+    private void startEvictionTimer() {
+
+	if (evictionTimer != null) {
+	    return;
+	}
+
+	long period = idleTimeout / 2;
+	if (heartbeatInterval > 0) {
+	    period = Math.min(period, heartbeatInterval);
+	}
+	period = Math.max(1000, period);
+	evictionTimer = new Timer("ghost4j-remote-worker-evictor", true);
+	evictionTimer.schedule(new TimerTask() {
+
+	    @Override
+	    public void run() {
+		evictIdleWorkers();
+		checkIdleWorkers();
+	    }
+	}, period, period);
+    }
+}
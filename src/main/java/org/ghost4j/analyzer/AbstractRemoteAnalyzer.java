@@ -11,11 +11,13 @@ import gnu.cajo.utils.ItemServer;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import org.ghost4j.AbstractRemoteComponent;
+import org.ghost4j.RemoteChannel;
+import org.ghost4j.RemoteWorker;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
-import org.ghost4j.util.JavaFork;
 
 public abstract class AbstractRemoteAnalyzer extends AbstractRemoteComponent
 	implements RemoteAnalyzer {
@@ -49,14 +51,26 @@ public abstract class AbstractRemoteAnalyzer extends AbstractRemoteComponent
 	    Remote.config(null, cajoPort, null, 0);
 	    ItemServer.bind(analyzerCopy,
 		    RemoteAnalyzer.class.getCanonicalName());
+	    startChannelServer((AbstractRemoteComponent) analyzerCopy);
+	    reportServerPort();
 
 	} catch (Exception e) {
 	    throw new AnalyzerException(e);
 	}
     }
 
+    @Override
     @SuppressWarnings("unchecked")
-    public List<AnalysisItem> analyze(Document document) throws IOException,
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+
+	this.copySettings((Map<String, Object>) channel.readObject());
+	Document document = channel.readDocument();
+
+	channel.writeObject(run(document));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<AnalysisItem> analyze(final Document document) throws IOException,
 	    AnalyzerException, DocumentException {
 
 	if (maxProcessCount == 0) {
@@ -68,48 +82,70 @@ public abstract class AbstractRemoteAnalyzer extends AbstractRemoteComponent
 
 	    // handle parallel processes
 
-	    // wait for a process to get free
-	    this.waitForFreeProcess();
-	    processCount++;
-
 	    // check if current class supports stand alone mode
 	    if (!this.isStandAloneModeSupported()) {
 		throw new AnalyzerException(
 			"Standalone mode is not supported by this analyzer: no 'main' method found");
 	    }
 
-	    // prepare new JVM
-	    JavaFork fork = this.buildJavaFork();
+	    // wait for a process to get free
+	    this.acquireProcess();
 
-	    // set JVM Xmx parameter according to the document size
+	    // set JVM Xmx parameter according to the memory used by similar
+	    // jobs (or to the document size)
 	    int documentMbSize = (document.getSize() / 1024 / 1024) + 1;
-	    int xmxValue = 64 + documentMbSize;
-	    fork.setXmx(xmxValue + "m");
+	    String workloadKey = this.getWorkloadKey("mb", documentMbSize);
 
-	    int cajoPort = 0;
 	    try {
 
-		// start remove server
-		cajoPort = this.startRemoteServer(fork);
+		// run on a worker JVM (started if none is idle)
+		return this.runRemoteJob(RemoteAnalyzer.class, workloadKey,
+			64 + documentMbSize, new RemoteJob<List<AnalysisItem>>() {
+
+			    @Override
+			    protected List<AnalysisItem> run(RemoteWorker worker)
+				    throws Exception {
+
+				RemoteChannel channel = worker.openChannel();
+
+				if (channel != null) {
+
+				    // local socket: stream document
+				    try {
+					channel.writeObject(extractSettings());
+					channel.writeDocument(document);
+					channel.flush();
+
+					List<AnalysisItem> result = (List<AnalysisItem>) channel
+						.readObject();
+					worker.readMemoryUsage(channel);
+
+					return result;
+				    } finally {
+					channel.close();
+				    }
+
+				} else {
 
-		// get remote component
-		Object remote = this.getRemoteComponent(cajoPort,
-			RemoteAnalyzer.class);
+				    Object remote = worker.getRemote();
 
-		// copy analyzer settings to remote analyzer
-		Remote.invoke(remote, "copySettings", this.extractSettings());
+				    // copy analyzer settings to remote analyzer
+				    Remote.invoke(remote, "copySettings",
+					    extractSettings());
 
-		// perform remote analyze
-		return (List<AnalysisItem>) Remote.invoke(remote, "run",
-			document);
+				    // perform remote analyze
+				    return (List<AnalysisItem>) worker.invoke(
+					    "run", document);
+				}
+			    }
+			});
 
 	    } catch (IOException e) {
 		throw e;
 	    } catch (Exception e) {
 		throw new AnalyzerException(e);
 	    } finally {
-		processCount--;
-		fork.stop();
+		this.releaseProcess();
 	    }
 	}
 
@@ -14,12 +14,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
-import org.ghost4j.Ghostscript;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PDFDocument;
-import org.ghost4j.util.DiskStore;
 
 /**
  * Font analyzer: analyze fonts used in a document.
@@ -64,14 +65,13 @@ public class FontAnalyzer extends AbstractRemoteAnalyzer {
     private List<AnalysisItem> run(PDFDocument document) throws IOException,
 	    AnalyzerException {
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key
-	DiskStore diskStore = DiskStore.getInstance();
-	String inputDiskStoreKey = diskStore.generateUniqueKey();
-	// write document to input file
-	document.write(diskStore.addFile(inputDiskStoreKey));
+	// input file (in memory when supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String inputPath = fileSystem.addInput(document);
 
 	// prepare args
 	String[] gsArgs = {
@@ -80,9 +80,7 @@ public class FontAnalyzer extends AbstractRemoteAnalyzer {
 		"-dNOPAUSE",
 		"-dBATCH",
 		"-dNODISPLAY",
-		"-sFile="
-			+ diskStore.getFile(inputDiskStoreKey)
-				.getAbsolutePath(), "-sOutputFile=%stdout",
+		"-sFile=" + inputPath, "-sOutputFile=%stdout",
 		"-f", "-" };
 
 	// load .ps script
@@ -94,12 +92,11 @@ public class FontAnalyzer extends AbstractRemoteAnalyzer {
 	    ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
 	    // execute and exit interpreter
-	    synchronized (gs) {
-
-		gs.setStdIn(is);
-		gs.setStdOut(baos);
-		gs.initialize(gsArgs);
-	    }
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
+	    gs.setStdIn(is);
+	    gs.setStdOut(baos);
+	    gs.initialize(gsArgs);
 
 	    // parse results from stdout
 	    List<AnalysisItem> result = new ArrayList<AnalysisItem>();
@@ -148,15 +145,15 @@ public class FontAnalyzer extends AbstractRemoteAnalyzer {
 
 	    IOUtils.closeQuietly(is);
 
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new AnalyzerException(e);
 	    }
 
 	    // remove temporary file
-	    diskStore.removeFile(inputDiskStoreKey);
+	    fileSystem.close();
 	}
 
     }
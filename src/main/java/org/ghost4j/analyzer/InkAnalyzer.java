@@ -8,20 +8,21 @@
 package org.ghost4j.analyzer;
 
 import java.io.ByteArrayOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.io.IOUtils;
-import org.ghost4j.Ghostscript;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PDFDocument;
 import org.ghost4j.document.PSDocument;
-import org.ghost4j.util.DiskStore;
 
 /**
  * Ink analyzer: analyze ink coverage of a document. For some reason, the API
@@ -65,38 +66,36 @@ public class InkAnalyzer extends AbstractRemoteAnalyzer implements Analyzer {
     private InkAnalysisItem analyzeSinglePage(Document page)
 	    throws IOException, AnalyzerException, DocumentException {
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key for input and output
-	DiskStore diskStore = DiskStore.getInstance();
-	String inputDiskStoreKey = diskStore.generateUniqueKey();
-	String outputDiskStoreKey = diskStore.generateUniqueKey();
-	// write page to input file
-	page.write(diskStore.addFile(inputDiskStoreKey));
+	// input and output files (in memory when supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String inputPath = fileSystem.addInput(page);
+	String outputPath = fileSystem.addOutput();
 
 	// prepare args
 	// strange thing : result cannot be get with stdout (need to store in a
 	// temp file)
 	String[] gsArgs = { "-inkcov", "-dBATCH", "-dNOPAUSE", "-dQUIET",
 		"-sDEVICE=inkcov",
-		"-sOutputFile=" + diskStore.addFile(outputDiskStoreKey), "-f",
-		diskStore.getFile(inputDiskStoreKey).getAbsolutePath() };
+		"-sOutputFile=" + outputPath, "-f", inputPath };
 
-	FileReader fr = null;
+	InputStreamReader fr = null;
 
 	try {
 
 	    ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
 	    // execute and exit interpreter
-	    synchronized (gs) {
-		gs.initialize(gsArgs);
-		gs.exit();
-	    }
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
+	    gs.initialize(gsArgs);
+	    gs.exit();
 
 	    // parse results from stdout
-	    fr = new FileReader(diskStore.getFile(outputDiskStoreKey));
+	    fr = new InputStreamReader(fileSystem.openInput(outputPath));
 	    char[] chars = new char[100];
 	    fr.read(chars);
 	    String output = new String(chars).trim();
@@ -126,16 +125,15 @@ public class InkAnalyzer extends AbstractRemoteAnalyzer implements Analyzer {
 
 	    IOUtils.closeQuietly(fr);
 
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new AnalyzerException(e);
 	    }
 
 	    // remove temporary files
-	    diskStore.removeFile(inputDiskStoreKey);
-	    diskStore.removeFile(outputDiskStoreKey);
+	    fileSystem.close();
 	}
 
     }
@@ -10,13 +10,16 @@ import gnu.cajo.invoke.Remote;
 import gnu.cajo.utils.ItemServer;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Map;
 
 import org.ghost4j.AbstractRemoteComponent;
+import org.ghost4j.RemoteChannel;
+import org.ghost4j.RemoteWorker;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
-import org.ghost4j.util.JavaFork;
 
 /**
  * Abstract remote converter implementation. Used as base class for remote
@@ -56,6 +59,8 @@ public abstract class AbstractRemoteConverter extends AbstractRemoteComponent
 	    Remote.config(null, cajoPort, null, 0);
 	    ItemServer.bind(converterCopy,
 		    RemoteConverter.class.getCanonicalName());
+	    startChannelServer((AbstractRemoteComponent) converterCopy);
+	    reportServerPort();
 
 	} catch (Exception e) {
 	    throw new ConverterException(e);
@@ -76,7 +81,20 @@ public abstract class AbstractRemoteConverter extends AbstractRemoteComponent
 
     }
 
-    public void convert(Document document, OutputStream outputStream)
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+
+	this.copySettings((Map<String, Object>) channel.readObject());
+	Document document = channel.readDocument();
+
+	// stream result as it is produced
+	OutputStream outputStream = channel.openDataOutputStream();
+	run(document, outputStream);
+	outputStream.close();
+    }
+
+    public void convert(final Document document, OutputStream outputStream)
 	    throws IOException, ConverterException, DocumentException {
 
 	if (maxProcessCount == 0) {
@@ -88,54 +106,113 @@ public abstract class AbstractRemoteConverter extends AbstractRemoteComponent
 
 	    // handle parallel processes
 
-	    // wait for a process to get free
-	    this.waitForFreeProcess();
-	    processCount++;
-
 	    // check if current class supports stand alone mode
 	    if (!this.isStandAloneModeSupported()) {
 		throw new ConverterException(
 			"Standalone mode is not supported by this converter: no 'main' method found");
 	    }
 
-	    // prepare new JVM
-	    JavaFork fork = this.buildJavaFork();
+	    // wait for a process to get free
+	    this.acquireProcess();
 
-	    // set JVM Xmx parameter according to the document size
+	    // set JVM Xmx parameter according to the memory used by similar
+	    // jobs (or to the document size)
 	    int documentMbSize = (document.getSize() / 1024 / 1024) + 1;
-	    int xmxValue = 64 + documentMbSize;
-	    fork.setXmx(xmxValue + "m");
+	    String workloadKey = this.getWorkloadKey("mb", documentMbSize);
 
-	    int cajoPort = 0;
+	    // track output: the job cannot be retried once output is written
+	    final TrackingOutputStream trackingOutputStream = new TrackingOutputStream(
+		    outputStream);
 
 	    try {
 
-		// start remove server
-		cajoPort = this.startRemoteServer(fork);
+		// run on a worker JVM (started if none is idle)
+		this.runRemoteJob(RemoteConverter.class, workloadKey,
+			64 + documentMbSize, new RemoteJob<Void>() {
+
+			    @Override
+			    protected Void run(RemoteWorker worker)
+				    throws Exception {
+
+				RemoteChannel channel = worker.openChannel();
+
+				if (channel != null) {
+
+				    // local socket: stream document and result
+				    try {
+					channel.writeObject(extractSettings());
+					channel.writeDocument(document);
+					channel.flush();
+					channel.readData(trackingOutputStream);
+					worker.readMemoryUsage(channel);
+				    } finally {
+					channel.close();
+				    }
+
+				} else {
+
+				    Object remote = worker.getRemote();
+
+				    // copy converter settings to remote
+				    // converter
+				    Remote.invoke(remote, "copySettings",
+					    extractSettings());
 
-		// get remote component
-		Object remote = this.getRemoteComponent(cajoPort,
-			RemoteConverter.class);
+				    // perform remote conversion
+				    byte[] result = (byte[]) worker.invoke(
+					    "remoteConvert", document);
 
-		// copy converter settings to remote converter
-		Remote.invoke(remote, "copySettings", this.extractSettings());
+				    // write result to output stream
+				    trackingOutputStream.write(result);
+				}
 
-		// perform remote conversion
-		byte[] result = (byte[]) Remote.invoke(remote, "remoteConvert",
-			document);
+				return null;
+			    }
 
-		// write result to output stream
-		outputStream.write(result);
+			    @Override
+			    protected boolean isRetryable() {
+				return !trackingOutputStream.isWritten();
+			    }
+			});
 
 	    } catch (IOException e) {
 		throw e;
 	    } catch (Exception e) {
 		throw new ConverterException(e);
 	    } finally {
-		processCount--;
-		fork.stop();
+		this.releaseProcess();
 	    }
 	}
 
     }
+
+    /**
+     * Output stream remembering if data was written to it.
+     */
+    private static class TrackingOutputStream extends FilterOutputStream {
+
+	private volatile boolean written;
+
+	public TrackingOutputStream(OutputStream outputStream) {
+	    super(outputStream);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    written = true;
+	    out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (len > 0) {
+		written = true;
+	    }
+	    out.write(b, off, len);
+	}
+
+	public boolean isWritten() {
+	    return written;
+	}
+    }
 }
@@ -7,21 +7,20 @@
 
 package org.ghost4j.converter;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.io.IOUtils;
-import org.ghost4j.Ghostscript;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PSDocument;
 import org.ghost4j.document.PaperSize;
-import org.ghost4j.util.DiskStore;
 
 /**
  * PDF converter.
@@ -121,12 +120,13 @@ public class PDFConverter extends AbstractRemoteConverter {
 	// assert document is supported
 	this.assertDocumentSupported(document);
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key
-	DiskStore diskStore = DiskStore.getInstance();
-	String diskStoreKey = diskStore.generateUniqueKey();
+	// output file (in memory when supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String outputPath = fileSystem.addOutput();
 
 	// prepare Ghostscript interpreter parameters
 	int argCount = 15;
@@ -212,8 +212,7 @@ public class PDFConverter extends AbstractRemoteConverter {
 	gsArgs[paramPosition] = "-sDEVICE=pdfwrite";
 	// output to file, as stdout redirect does not work properly
 	paramPosition++;
-	gsArgs[paramPosition] = "-sOutputFile="
-		+ diskStore.addFile(diskStoreKey).getAbsolutePath();
+	gsArgs[paramPosition] = "-sOutputFile=" + outputPath;
 	paramPosition++;
 	gsArgs[paramPosition] = "-q";
 	paramPosition++;
@@ -221,48 +220,37 @@ public class PDFConverter extends AbstractRemoteConverter {
 	paramPosition++;
 	gsArgs[paramPosition] = "-";
 
-	InputStream is = new ByteArrayInputStream(document.getContent());
-
 	try {
 
 	    // execute and exit interpreter
-	    synchronized (gs) {
-		gs.setStdIn(is);
-		gs.initialize(gsArgs);
-
-	    }
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
+	    gs.setStdIn(ByteBuffer.wrap(document.getContent()));
+	    gs.initialize(gsArgs);
 
 	    // write obtained file to output stream
-	    File outputFile = diskStore.getFile(diskStoreKey);
-	    if (outputFile == null) {
-		throw new ConverterException("Cannot retrieve file with key "
-			+ diskStoreKey + " from disk store");
+	    InputStream is = fileSystem.openInput(outputPath);
+	    try {
+		IOUtils.copy(is, outputStream);
+	    } finally {
+		IOUtils.closeQuietly(is);
 	    }
 
-	    FileInputStream fis = new FileInputStream(outputFile);
-	    byte[] content = new byte[(int) outputFile.length()];
-	    fis.read(content);
-	    fis.close();
-
-	    outputStream.write(content);
-
 	} catch (GhostscriptException e) {
 
 	    throw new ConverterException(e);
 
 	} finally {
 
-	    IOUtils.closeQuietly(is);
-
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new ConverterException(e);
 	    }
 
 	    // remove temporary file
-	    diskStore.removeFile(diskStoreKey);
+	    fileSystem.close();
 	}
 
     }
@@ -6,19 +6,20 @@
  */
 package org.ghost4j.converter;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
-import org.ghost4j.Ghostscript;
+import org.apache.commons.io.IOUtils;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PDFDocument;
 import org.ghost4j.document.PSDocument;
 import org.ghost4j.document.PaperSize;
-import org.ghost4j.util.DiskStore;
 
 /**
  * PS converter.
@@ -105,16 +106,14 @@ public class PSConverter extends AbstractRemoteConverter {
 	    throw new ConverterException(e);
 	}
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key for output file
-	DiskStore diskStore = DiskStore.getInstance();
-	String outputDiskStoreKey = diskStore.generateUniqueKey();
-	// generate a unique diskstore key for input file
-	String inputDiskStoreKey = diskStore.generateUniqueKey();
-	// write document to input file
-	document.write(diskStore.addFile(inputDiskStoreKey));
+	// input and output files (in memory when supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String outputPath = fileSystem.addOutput();
+	String inputPath = fileSystem.addInput(document);
 
 	// prepare Ghostscript interpreter parameters
 	String[] gsArgs = {
@@ -128,51 +127,42 @@ public class PSConverter extends AbstractRemoteConverter {
 		"-dDEVICEHEIGHTPOINTS=" + paperSize.getHeight(),
 		"-sDEVICE=" + deviceName,
 		// output to file, as stdout redirect does not work properly
-		"-sOutputFile="
-			+ diskStore.addFile(outputDiskStoreKey)
-				.getAbsolutePath(), "-q", "-f",
+		"-sOutputFile=" + outputPath, "-q", "-f",
 		// read from a file as stdin redirect does not work properly
 		// with PDF file as input
-		diskStore.getFile(inputDiskStoreKey).getAbsolutePath() };
+		inputPath };
 
 	try {
 
 	    // execute and exit interpreter
-	    synchronized (gs) {
-		gs.initialize(gsArgs);
-		gs.exit();
-	    }
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
+	    gs.initialize(gsArgs);
+	    gs.exit();
 
 	    // write obtained file to output stream
-	    File outputFile = diskStore.getFile(outputDiskStoreKey);
-	    if (outputFile == null) {
-		throw new ConverterException("Cannot retrieve file with key "
-			+ outputDiskStoreKey + " from disk store");
+	    InputStream is = fileSystem.openInput(outputPath);
+	    try {
+		IOUtils.copy(is, outputStream);
+	    } finally {
+		IOUtils.closeQuietly(is);
 	    }
 
-	    FileInputStream fis = new FileInputStream(outputFile);
-	    byte[] content = new byte[(int) outputFile.length()];
-	    fis.read(content);
-	    fis.close();
-
-	    outputStream.write(content);
-
 	} catch (GhostscriptException e) {
 
 	    throw new ConverterException(e);
 
 	} finally {
 
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new ConverterException(e);
 	    }
 
 	    // remove temporary files
-	    diskStore.removeFile(outputDiskStoreKey);
-	    diskStore.removeFile(inputDiskStoreKey);
+	    fileSystem.close();
 	}
 
     }
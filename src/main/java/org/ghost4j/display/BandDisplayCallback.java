@@ -0,0 +1,61 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.display;
+
+import java.nio.ByteBuffer;
+
+import org.ghost4j.GhostscriptException;
+
+/**
+ * Display callback receiving page rasters progressively, as bands of scanlines
+ * reported updated by the display device (display_update), before the whole
+ * page is rasterized. This allows page content to be streamed (to a viewer for
+ * instance) while the rest of the page is still being rendered. The complete
+ * page is still sent to displayPage when rendering ends.
+ * <p>
+ * Ghostscript controls how often updates are reported: a band may be reported
+ * again if its scanlines are painted again later in the page.
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public interface BandDisplayCallback extends DisplayCallback {
+
+    /**
+     * Bit of the display format telling that the first row in memory is the
+     * bottom row of the page (-dDisplayFormat DISPLAY_BOTTOMFIRST flag).
+     */
+    public static final int DISPLAY_BOTTOMFIRST = 0x20000;
+
+    /**
+     * Method called when a band of the page raster has been updated.
+     * 
+     * @param width
+     *            Page width
+     * @param height
+     *            Page height
+     * @param raster
+     *            Raster (length of a row in bytes)
+     * @param format
+     *            Format
+     * @param y
+     *            Index of the first page row of the band (0 is the top row)
+     * @param bandHeight
+     *            Number of rows in the band
+     * @param bandData
+     *            Direct buffer over the native raster data of the band
+     *            (raster * bandHeight bytes, rows in memory order: bottom row
+     *            first if the DISPLAY_BOTTOMFIRST flag is set in format).
+     *            Important: the buffer is only valid until the method returns,
+     *            it must not be kept or used afterwards (copy the data if
+     *            needed).
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void displayBand(int width, int height, int raster, int format,
+	    int y, int bandHeight, ByteBuffer bandData)
+	    throws GhostscriptException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.display;
+
+import java.nio.ByteBuffer;
+
+import org.ghost4j.GhostscriptException;
+
+/**
+ * Display callback receiving page image data as a ByteBuffer view over the
+ * native image memory of the display device, instead of a copy in a byte
+ * array. When a DirectDisplayCallback is used, the displayPage method taking a
+ * ByteBuffer is called in place of the one taking a byte array, so that page
+ * rasters can be encoded, downsampled or hashed without a heap copy.
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public interface DirectDisplayCallback extends DisplayCallback {
+
+    /**
+     * Method called on show page.
+     * 
+     * @param width
+     *            Width
+     * @param height
+     *            Height
+     * @param raster
+     *            Raster
+     * @param format
+     *            Format
+     * @param copies
+     *            Copies
+     * @param flush
+     *            Flush
+     * @param imageData
+     *            Direct buffer over native image data (raster * height bytes).
+     *            Data layout and order is controlled by the -dDisplayFormat
+     *            argument. Important: the buffer is only valid until the method
+     *            returns, it must not be kept or used afterwards (copy the data
+     *            if needed).
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void displayPage(int width, int height, int raster, int format,
+	    int copies, int flush, ByteBuffer imageData)
+	    throws GhostscriptException;
+}
@@ -0,0 +1,258 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.display;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+/**
+ * Pool of native buffers used as page bitmap memory by the display device
+ * (display_memalloc / display_memfree callbacks). Buffers are grouped in size
+ * classes keyed by page width, height and display format: consecutive renders
+ * at the same resolution reuse the same native memory instead of allocating
+ * and freeing a new bitmap for each page.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class DisplayMemoryPool {
+
+    /**
+     * Default maximum number of idle buffers kept per size class.
+     */
+    public static final int DEFAULT_MAX_IDLE_PER_CLASS = 2;
+
+    /**
+     * Shared instance.
+     */
+    private static DisplayMemoryPool instance;
+
+    /**
+     * Maximum number of idle buffers kept per size class.
+     */
+    private final int maxIdlePerClass;
+
+    /**
+     * Idle buffers, by size class.
+     */
+    private final Map<String, LinkedList<PooledMemory>> idleBuffers;
+
+    /**
+     * Buffers handed to Ghostscript, by native address.
+     */
+    private final Map<Long, PooledMemory> usedBuffers;
+
+    private int idleCount;
+    private long idleBytes;
+    private long usedBytes;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Access to the shared pool.
+     *
+     * @return The shared DisplayMemoryPool
+     */
+    public static synchronized DisplayMemoryPool getInstance() {
+
+	if (instance == null) {
+	    instance = new DisplayMemoryPool(DEFAULT_MAX_IDLE_PER_CLASS);
+	}
+
+	return instance;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxIdlePerClass
+     *            Maximum number of idle buffers kept per size class (buffers
+     *            freed beyond this limit are released to the system)
+     */
+    public DisplayMemoryPool(int maxIdlePerClass) {
+
+	this.maxIdlePerClass = maxIdlePerClass;
+	this.idleBuffers = new HashMap<String, LinkedList<PooledMemory>>();
+	this.usedBuffers = new HashMap<Long, PooledMemory>();
+    }
+
+    /**
+     * Allocates page bitmap memory, reusing an idle buffer of the same size
+     * class when available.
+     *
+     * @param width
+     *            Page width
+     * @param height
+     *            Page height
+     * @param format
+     *            Display format
+     * @param size
+     *            Requested size in bytes
+     * @return Pointer to the allocated memory
+     */
+    public synchronized Pointer allocate(int width, int height, int format,
+	    long size) {
+
+	String sizeClass = getSizeClass(width, height, format);
+
+	PooledMemory memory = null;
+	LinkedList<PooledMemory> idle = idleBuffers.get(sizeClass);
+	if (idle != null) {
+	    while (!idle.isEmpty() && memory == null) {
+		PooledMemory candidate = idle.removeFirst();
+		idleCount--;
+		idleBytes -= candidate.size();
+		if (candidate.size() >= size) {
+		    memory = candidate;
+		} else {
+		    candidate.release();
+		}
+	    }
+	}
+
+	if (memory != null) {
+	    hitCount++;
+	} else {
+	    missCount++;
+	    memory = new PooledMemory(sizeClass, size);
+	}
+
+	usedBuffers.put(Pointer.nativeValue(memory), memory);
+	usedBytes += memory.size();
+
+	return memory;
+    }
+
+    /**
+     * Frees page bitmap memory allocated by the pool: the buffer is kept for
+     * reuse, or released if its size class already holds enough idle
+     * buffers.
+     *
+     * @param mem
+     *            Pointer returned by allocate
+     * @return false if the memory was not allocated by the pool
+     */
+    public synchronized boolean free(Pointer mem) {
+
+	PooledMemory memory = usedBuffers.remove(Pointer.nativeValue(mem));
+	if (memory == null) {
+	    return false;
+	}
+	usedBytes -= memory.size();
+
+	LinkedList<PooledMemory> idle = idleBuffers.get(memory.sizeClass);
+	if (idle == null) {
+	    idle = new LinkedList<PooledMemory>();
+	    idleBuffers.put(memory.sizeClass, idle);
+	}
+
+	if (idle.size() < maxIdlePerClass) {
+	    idle.addFirst(memory);
+	    idleCount++;
+	    idleBytes += memory.size();
+	} else {
+	    memory.release();
+	}
+
+	return true;
+    }
+
+    /**
+     * Releases all idle buffers to the system.
+     */
+    public synchronized void clear() {
+
+	for (LinkedList<PooledMemory> idle : idleBuffers.values()) {
+	    for (PooledMemory memory : idle) {
+		memory.release();
+	    }
+	}
+	idleBuffers.clear();
+	idleCount = 0;
+	idleBytes = 0;
+    }
+
+    /**
+     * Gets the number of buffers currently used by Ghostscript.
+     *
+     * @return Used buffer count
+     */
+    public synchronized int getUsedCount() {
+	return usedBuffers.size();
+    }
+
+    /**
+     * Gets the size of buffers currently used by Ghostscript.
+     *
+     * @return Used size in bytes
+     */
+    public synchronized long getUsedBytes() {
+	return usedBytes;
+    }
+
+    /**
+     * Gets the number of idle buffers waiting to be reused.
+     *
+     * @return Idle buffer count
+     */
+    public synchronized int getIdleCount() {
+	return idleCount;
+    }
+
+    /**
+     * Gets the size of idle buffers waiting to be reused.
+     *
+     * @return Idle size in bytes
+     */
+    public synchronized long getIdleBytes() {
+	return idleBytes;
+    }
+
+    /**
+     * Gets the number of allocations served by an idle buffer.
+     *
+     * @return Hit count
+     */
+    public synchronized long getHitCount() {
+	return hitCount;
+    }
+
+    /**
+     * Gets the number of allocations that required new native memory.
+     *
+     * @return Miss count
+     */
+    public synchronized long getMissCount() {
+	return missCount;
+    }
+
+    private static String getSizeClass(int width, int height, int format) {
+	return width + "x" + height + "/" + format;
+    }
+
+    /**
+     * Native memory belonging to a size class, that can be released
+     * explicitly.
+     */
+    private static class PooledMemory extends Memory {
+
+	private final String sizeClass;
+
+	public PooledMemory(String sizeClass, long size) {
+	    super(size);
+	    this.sizeClass = sizeClass;
+	}
+
+	public void release() {
+	    dispose();
+	}
+    }
+}
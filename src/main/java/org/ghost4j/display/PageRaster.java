@@ -7,6 +7,7 @@
 package org.ghost4j.display;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Class representing a page raster (used by PageRasterDisplayCallBack)
@@ -25,6 +26,7 @@ public class PageRaster implements Serializable {
     private int raster;
     private int format;
     private byte[] data;
+    private List<Separation> separations;
 
     public int getWidth() {
 	return width;
@@ -65,4 +67,18 @@ public class PageRaster implements Serializable {
     public void setData(byte[] data) {
 	this.data = data;
     }
+
+    /**
+     * Gets colorants of the raster, by component index (separation format
+     * only).
+     * 
+     * @return Colorants or null if the raster is not in separation format
+     */
+    public List<Separation> getSeparations() {
+	return separations;
+    }
+
+    public void setSeparations(List<Separation> separations) {
+	this.separations = separations;
+    }
 }
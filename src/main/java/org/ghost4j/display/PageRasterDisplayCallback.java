@@ -8,25 +8,34 @@ package org.ghost4j.display;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.ghost4j.GhostscriptException;
 
 /**
- * Display callback in charge of extracting raw page rasters (PageRaster)
+ * Display callback in charge of extracting raw page rasters (PageRaster).
+ * Colorants of separation format rasters are attached to each page raster.
  * 
  * @author Gilles Grousset (gi.grousset@gmail.com)
  * 
  */
-public class PageRasterDisplayCallback implements DisplayCallback {
+public class PageRasterDisplayCallback implements SeparationDisplayCallback {
 
     private List<PageRaster> rasters;
 
+    /**
+     * Colorants reported so far, by component index.
+     */
+    private Map<Integer, Separation> separations;
+
     /**
      * Constructor
      */
     public PageRasterDisplayCallback() {
 
 	rasters = new ArrayList<PageRaster>();
+	separations = new TreeMap<Integer, Separation>();
     }
 
     public void displayClose() throws GhostscriptException {
@@ -48,6 +57,10 @@ public class PageRasterDisplayCallback implements DisplayCallback {
 	pageRaster.setRaster(raster);
 	pageRaster.setFormat(format);
 	pageRaster.setData(imageData);
+	if ((format & DISPLAY_COLORS_MASK) == DISPLAY_COLORS_SEPARATION) {
+	    pageRaster.setSeparations(new ArrayList<Separation>(separations
+		    .values()));
+	}
 
 	// add it to the result list
 	rasters.add(pageRaster);
@@ -76,6 +89,12 @@ public class PageRasterDisplayCallback implements DisplayCallback {
 	    throws GhostscriptException {
     }
 
+    public void displaySeparation(int component, String name, int c, int m,
+	    int y, int k) throws GhostscriptException {
+
+	separations.put(component, new Separation(component, name, c, m, y, k));
+    }
+
     public List<PageRaster> getRasters() {
 	return rasters;
     }
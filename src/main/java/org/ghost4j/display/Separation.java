@@ -0,0 +1,96 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j.display;
+
+import java.io.Serializable;
+
+/**
+ * Class representing a colorant of a separation format page raster (process
+ * or spot color), with its CMYK equivalent. CMYK values range from 0 (no ink)
+ * to 65535 (full ink).
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class Separation implements Serializable {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 3519728012635486110L;
+    private int component;
+    private String name;
+    private int c;
+    private int m;
+    private int y;
+    private int k;
+
+    public Separation() {
+    }
+
+    public Separation(int component, String name, int c, int m, int y, int k) {
+
+	this.component = component;
+	this.name = name;
+	this.c = c;
+	this.m = m;
+	this.y = y;
+	this.k = k;
+    }
+
+    /**
+     * Gets the index of the colorant in raster pixels.
+     * 
+     * @return Component index
+     */
+    public int getComponent() {
+	return component;
+    }
+
+    public void setComponent(int component) {
+	this.component = component;
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    public void setName(String name) {
+	this.name = name;
+    }
+
+    public int getC() {
+	return c;
+    }
+
+    public void setC(int c) {
+	this.c = c;
+    }
+
+    public int getM() {
+	return m;
+    }
+
+    public void setM(int m) {
+	this.m = m;
+    }
+
+    public int getY() {
+	return y;
+    }
+
+    public void setY(int y) {
+	this.y = y;
+    }
+
+    public int getK() {
+	return k;
+    }
+
+    public void setK(int k) {
+	this.k = k;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.display;
+
+import org.ghost4j.GhostscriptException;
+
+/**
+ * Display callback receiving the colorants of separation format rasters. With
+ * -dDisplayFormat=16#80800 (DISPLAY_COLORS_SEPARATION, 8 bits per component),
+ * each pixel holds one ink value per colorant (0 for no ink, 255 for full ink):
+ * process colors (cyan, magenta, yellow, black) first, then spot colors in the
+ * order they are found in the document. The colorants of a page are reported
+ * through displaySeparation before the page is sent to displayPage.
+ * <p>
+ * Requires a Ghostscript version supporting display callback version 2 (8.50
+ * or later).
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public interface SeparationDisplayCallback extends DisplayCallback {
+
+    /**
+     * Bit of the display format selecting separation output
+     * (DISPLAY_COLORS_SEPARATION flag).
+     */
+    public static final int DISPLAY_COLORS_SEPARATION = 0x80000;
+
+    /**
+     * Mask of the display format bits selecting the color model.
+     */
+    public static final int DISPLAY_COLORS_MASK = 0x8000f;
+
+    /**
+     * Method called when a colorant is assigned to a raster component.
+     * 
+     * @param component
+     *            Index of the component in raster pixels
+     * @param name
+     *            Colorant name (Cyan, Magenta, Yellow, Black or spot color
+     *            name)
+     * @param c
+     *            Cyan value of the CMYK equivalent (0 to 65535)
+     * @param m
+     *            Magenta value of the CMYK equivalent (0 to 65535)
+     * @param y
+     *            Yellow value of the CMYK equivalent (0 to 65535)
+     * @param k
+     *            Black value of the CMYK equivalent (0 to 65535)
+     * @throws org.ghost4j.GhostscriptException
+     */
+    public void displaySeparation(int component, String name, int c, int m,
+	    int y, int k) throws GhostscriptException;
+}
@@ -15,9 +15,10 @@ import java.io.Serializable;
 import java.util.Map;
 
 import org.ghost4j.AbstractRemoteComponent;
+import org.ghost4j.RemoteChannel;
+import org.ghost4j.RemoteWorker;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
-import org.ghost4j.util.JavaFork;
 
 /**
  * Abstract remote modifier implementation. Used as base class for remote
@@ -58,6 +59,8 @@ public abstract class AbstractRemoteModifier extends AbstractRemoteComponent
 	    Remote.config(null, cajoPort, null, 0);
 	    ItemServer.bind(modifierCopy,
 		    RemoteModifier.class.getCanonicalName());
+	    startChannelServer((AbstractRemoteComponent) modifierCopy);
+	    reportServerPort();
 
 	} catch (Exception e) {
 	    throw new ModifierException(e);
@@ -73,7 +76,20 @@ public abstract class AbstractRemoteModifier extends AbstractRemoteComponent
 
     }
 
-    public Document modify(Document source, Map<String, Serializable> parameters)
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+
+	this.copySettings((Map<String, Object>) channel.readObject());
+	Map<String, Serializable> parameters = (Map<String, Serializable>) channel
+		.readObject();
+	Document source = channel.readDocument();
+
+	channel.writeDocument(run(source, parameters));
+    }
+
+    public Document modify(final Document source,
+	    final Map<String, Serializable> parameters)
 	    throws ModifierException, DocumentException, IOException {
 
 	if (maxProcessCount == 0) {
@@ -85,51 +101,74 @@ public abstract class AbstractRemoteModifier extends AbstractRemoteComponent
 
 	    // handle parallel processes
 
-	    // wait for a process to get free
-	    this.waitForFreeProcess();
-	    processCount++;
-
 	    // check if current class supports stand alone mode
 	    if (!this.isStandAloneModeSupported()) {
 		throw new ModifierException(
 			"Standalone mode is not supported by this modifier: no 'main' method found");
 	    }
 
-	    // prepare new JVM
-	    JavaFork fork = this.buildJavaFork();
-
-	    // set JVM Xmx parameter according to the document size
-	    int documentMbSize = ((source.getSize() / 1024 / 1024) + 1) * 2;
-	    int xmxValue = 64 + documentMbSize;
-	    fork.setXmx(xmxValue + "m");
+	    // wait for a process to get free
+	    this.acquireProcess();
 
-	    int cajoPort = 0;
+	    // set JVM Xmx parameter according to the memory used by similar
+	    // jobs (or to the document size)
+	    int documentMbSize = (source.getSize() / 1024 / 1024) + 1;
+	    String workloadKey = this.getWorkloadKey("mb", documentMbSize);
 
 	    try {
 
-		// start remove server
-		cajoPort = this.startRemoteServer(fork);
+		// run on a worker JVM (started if none is idle)
+		return this.runRemoteJob(RemoteModifier.class, workloadKey,
+			64 + documentMbSize * 2, new RemoteJob<Document>() {
+
+			    @Override
+			    protected Document run(RemoteWorker worker)
+				    throws Exception {
+
+				RemoteChannel channel = worker.openChannel();
+
+				if (channel != null) {
+
+				    // local socket: stream source and result
+				    // documents
+				    try {
+					channel.writeObject(extractSettings());
+					channel.writeObject(parameters);
+					channel.writeDocument(source);
+					channel.flush();
+
+					Document result = channel.readDocument();
+					worker.readMemoryUsage(channel);
+
+					return result;
+				    } finally {
+					channel.close();
+				    }
+
+				} else {
 
-		// get remote component
-		Object remote = this.getRemoteComponent(cajoPort,
-			RemoteModifier.class);
+				    Object remote = worker.getRemote();
 
-		// copy modifier settings to remote converter
-		Remote.invoke(remote, "copySettings", this.extractSettings());
+				    // copy modifier settings to remote
+				    // converter
+				    Remote.invoke(remote, "copySettings",
+					    extractSettings());
 
-		// perform remote conversion
-		Object[] args = { source, parameters };
-		Document result = (Document) Remote.invoke(remote,
-			"remoteModify", args);
+				    // perform remote conversion
+				    Object[] args = { source, parameters };
+				    Document result = (Document) worker.invoke(
+					    "remoteModify", args);
 
-		// return result
-		return result;
+				    // return result
+				    return result;
+				}
+			    }
+			});
 
 	    } catch (Exception e) {
 		throw new ModifierException(e);
 	    } finally {
-		processCount--;
-		fork.stop();
+		this.releaseProcess();
 	    }
 	}
 
@@ -7,16 +7,19 @@
 package org.ghost4j.modifier;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.Map;
 
-import org.ghost4j.Ghostscript;
+import org.apache.commons.io.IOUtils;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PDFDocument;
 import org.ghost4j.document.PSDocument;
-import org.ghost4j.util.DiskStore;
 
 /**
  * Safe appender : appends a document to another one. Document types can be
@@ -61,19 +64,16 @@ public class SafeAppenderModifier extends AbstractRemoteModifier {
 		    "No document to append found in parameters map");
 	}
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key for source and append documents, and
-	// for output file
-	DiskStore diskStore = DiskStore.getInstance();
-	String sourceDiskStoreKey = diskStore.generateUniqueKey();
-	String appendDiskStoreKey = diskStore.generateUniqueKey();
-	String outputDiskStoreKey = diskStore.generateUniqueKey();
-
-	// write source and append to files
-	source.write(diskStore.addFile(sourceDiskStoreKey));
-	append.write(diskStore.addFile(appendDiskStoreKey));
+	// source and append documents, and output file (in memory when
+	// supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String sourcePath = fileSystem.addInput(source);
+	String appendPath = fileSystem.addInput(append);
+	String outputPath = fileSystem.addOutput();
 
 	// guess output device from source document type
 	String deviceName = "pswrite";
@@ -99,21 +99,18 @@ public class SafeAppenderModifier extends AbstractRemoteModifier {
 		"-dSAFER",
 		"-dBATCH",
 		"-sDEVICE=" + deviceName,
-		"-sOutputFile="
-			+ diskStore.addFile(outputDiskStoreKey)
-				.getAbsolutePath(), "-q", "-f",
-		diskStore.getFile(sourceDiskStoreKey).getAbsolutePath(),
-		diskStore.getFile(appendDiskStoreKey).getAbsolutePath() };
+		"-sOutputFile=" + outputPath, "-q", "-f", sourcePath,
+		appendPath };
 
 	Document result = null;
 
 	try {
 
 	    // execute and exit interpreter
-	    synchronized (gs) {
-		gs.initialize(gsArgs);
-		gs.exit();
-	    }
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
+	    gs.initialize(gsArgs);
+	    gs.exit();
 
 	    // load obtained document (same type as source document)
 	    if (source.getType().equals(Document.TYPE_PDF)) {
@@ -121,7 +118,12 @@ public class SafeAppenderModifier extends AbstractRemoteModifier {
 	    } else if (source.getType().equals(Document.TYPE_POSTSCRIPT)) {
 		result = new PSDocument();
 	    }
-	    result.load(diskStore.getFile(outputDiskStoreKey));
+	    InputStream is = fileSystem.openInput(outputPath);
+	    try {
+		result.load(is);
+	    } finally {
+		IOUtils.closeQuietly(is);
+	    }
 
 	} catch (GhostscriptException e) {
 
@@ -129,17 +131,15 @@ public class SafeAppenderModifier extends AbstractRemoteModifier {
 
 	} finally {
 
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new ModifierException(e);
 	    }
 
 	    // remove temporary files
-	    diskStore.removeFile(outputDiskStoreKey);
-	    diskStore.removeFile(sourceDiskStoreKey);
-	    diskStore.removeFile(appendDiskStoreKey);
+	    fileSystem.close();
 	}
 
 	return result;
@@ -11,14 +11,17 @@ import gnu.cajo.utils.ItemServer;
 
 import java.awt.Image;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.ghost4j.AbstractRemoteComponent;
+import org.ghost4j.RemoteChannel;
+import org.ghost4j.RemoteWorker;
 import org.ghost4j.display.PageRaster;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.util.ImageUtil;
-import org.ghost4j.util.JavaFork;
 
 public abstract class AbstractRemoteRenderer extends AbstractRemoteComponent
 	implements RemoteRenderer {
@@ -52,6 +55,8 @@ public abstract class AbstractRemoteRenderer extends AbstractRemoteComponent
 	    Remote.config(null, cajoPort, null, 0);
 	    ItemServer.bind(rendererCopy,
 		    RemoteRenderer.class.getCanonicalName());
+	    startChannelServer((AbstractRemoteComponent) rendererCopy);
+	    reportServerPort();
 
 	} catch (Exception e) {
 	    throw new RendererException(e);
@@ -64,6 +69,26 @@ public abstract class AbstractRemoteRenderer extends AbstractRemoteComponent
 	return this.run(document, begin, end);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void serveChannelRequest(RemoteChannel channel) throws Exception {
+
+	this.copySettings((Map<String, Object>) channel.readObject());
+	int[] range = (int[]) channel.readObject();
+	Document document = channel.readDocument();
+
+	List<PageRaster> rasters = run(document, range[0], range[1]);
+
+	// send page descriptions, followed by raw raster data
+	channel.writeObject(rasters.size());
+	for (PageRaster raster : rasters) {
+	    byte[] data = raster.getData();
+	    raster.setData(null);
+	    channel.writeObject(raster);
+	    channel.writeBytes(data);
+	}
+    }
+
     public List<Image> render(Document document) throws IOException,
 	    RendererException, DocumentException {
 
@@ -71,8 +96,9 @@ public abstract class AbstractRemoteRenderer extends AbstractRemoteComponent
     }
 
     @SuppressWarnings("unchecked")
-    public List<Image> render(Document document, int begin, int end)
-	    throws IOException, RendererException, DocumentException {
+    public List<Image> render(final Document document, final int begin,
+	    final int end) throws IOException, RendererException,
+	    DocumentException {
 
 	// check range
 	if ((begin > end) || (end > document.getPageCount()) || (begin < 0)
@@ -90,50 +116,85 @@ public abstract class AbstractRemoteRenderer extends AbstractRemoteComponent
 
 	    // handle parallel processes
 
-	    // wait for a process to get free
-	    this.waitForFreeProcess();
-	    processCount++;
-
 	    // check if current class supports stand alone mode
 	    if (!this.isStandAloneModeSupported()) {
 		throw new RendererException(
 			"Standalone mode is not supported by this renderer: no 'main' method found");
 	    }
 
-	    // prepare new JVM
-	    JavaFork fork = this.buildJavaFork();
+	    // wait for a process to get free
+	    this.acquireProcess();
 
-	    // set JVM Xmx parameter according to the document size
+	    // set JVM Xmx parameter according to the memory used by similar
+	    // jobs (or to the document size)
 	    int documentMbSize = (document.getSize() / 1024 / 1024) + 1;
-	    int xmxValue = 64 + documentMbSize;
-	    fork.setXmx(xmxValue + "m");
+	    String workloadKey = this.getWorkloadKey("pages", end - begin + 1);
 
-	    int cajoPort = 0;
 	    try {
 
-		// start remove server
-		cajoPort = this.startRemoteServer(fork);
-
-		// get remote component
-		Object remote = this.getRemoteComponent(cajoPort,
-			RemoteRenderer.class);
-
-		// copy renderer settings to remote renderer
-		Remote.invoke(remote, "copySettings", this.extractSettings());
-
-		// perform remote rendering
-		Object[] args = { document, begin, end };
-		return ImageUtil
-			.convertPageRastersToImages((List<PageRaster>) Remote
-				.invoke(remote, "remoteRender", args));
+		// run on a worker JVM (started if none is idle)
+		List<PageRaster> rasters = this.runRemoteJob(
+			RemoteRenderer.class, workloadKey, 64 + documentMbSize,
+			new RemoteJob<List<PageRaster>>() {
+
+			    @Override
+			    protected List<PageRaster> run(RemoteWorker worker)
+				    throws Exception {
+
+				RemoteChannel channel = worker.openChannel();
+
+				if (channel != null) {
+
+				    // local socket: stream document, receive
+				    // raw rasters
+				    try {
+					channel.writeObject(extractSettings());
+					channel.writeObject(new int[] { begin,
+						end });
+					channel.writeDocument(document);
+					channel.flush();
+
+					int pageCount = (Integer) channel
+						.readObject();
+					List<PageRaster> rasters = new ArrayList<PageRaster>(
+						pageCount);
+					for (int i = 0; i < pageCount; i++) {
+					    PageRaster raster = (PageRaster) channel
+						    .readObject();
+					    raster.setData(channel.readBytes());
+					    rasters.add(raster);
+					}
+					worker.readMemoryUsage(channel);
+
+					return rasters;
+				    } finally {
+					channel.close();
+				    }
+
+				} else {
+
+				    Object remote = worker.getRemote();
+
+				    // copy renderer settings to remote renderer
+				    Remote.invoke(remote, "copySettings",
+					    extractSettings());
+
+				    // perform remote rendering
+				    Object[] args = { document, begin, end };
+				    return (List<PageRaster>) worker.invoke(
+					    "remoteRender", args);
+				}
+			    }
+			});
+
+		return ImageUtil.convertPageRastersToImages(rasters);
 
 	    } catch (IOException e) {
 		throw e;
 	    } catch (Exception e) {
 		throw new RendererException(e);
 	    } finally {
-		processCount--;
-		fork.stop();
+		this.releaseProcess();
 	    }
 	}
     }
@@ -11,15 +11,17 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
-import org.ghost4j.Ghostscript;
 import org.ghost4j.GhostscriptException;
+import org.ghost4j.GhostscriptFileSystem;
+import org.ghost4j.GhostscriptInstance;
+import org.ghost4j.GhostscriptInstancePool;
+import org.ghost4j.display.DisplayMemoryPool;
 import org.ghost4j.display.PageRaster;
 import org.ghost4j.display.PageRasterDisplayCallback;
 import org.ghost4j.document.Document;
 import org.ghost4j.document.DocumentException;
 import org.ghost4j.document.PDFDocument;
 import org.ghost4j.document.PSDocument;
-import org.ghost4j.util.DiskStore;
 
 public class SimpleRenderer extends AbstractRemoteRenderer {
 
@@ -64,14 +66,13 @@ public class SimpleRenderer extends AbstractRemoteRenderer {
 	// assert document is supported
 	this.assertDocumentSupported(document);
 
-	// get Ghostscript instance
-	Ghostscript gs = Ghostscript.getInstance();
+	// get Ghostscript instance pool
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	GhostscriptInstance gs = null;
 
-	// generate a unique diskstore key for input file
-	DiskStore diskStore = DiskStore.getInstance();
-	String inputDiskStoreKey = diskStore.generateUniqueKey();
-	// write document to input file
-	document.write(diskStore.addFile(inputDiskStoreKey));
+	// input file (in memory when supported)
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem();
+	String inputPath = fileSystem.addInput(document);
 
 	// create display callback
 	PageRasterDisplayCallback displayCallback = new PageRasterDisplayCallback();
@@ -89,38 +90,39 @@ public class SimpleRenderer extends AbstractRemoteRenderer {
 	    gsArgs[gsArgs.length - 1] = "-dGraphicsAlphaBits="
 		    + this.antialiasing;
 	}
-	
+
 	// add file path args
 	gsArgs = Arrays.copyOf(gsArgs, gsArgs.length + 2);
 	gsArgs[gsArgs.length - 2] = "-f";
-	gsArgs[gsArgs.length - 1] = diskStore.getFile(inputDiskStoreKey).getAbsolutePath();
+	gsArgs[gsArgs.length - 1] = inputPath;
 
 	// execute and exit interpreter
 	try {
-	    synchronized (gs) {
-
-		// set display callback
-		gs.setDisplayCallback(displayCallback);
+	    gs = pool.borrow();
+	    gs.setFileSystem(fileSystem);
 
-		gs.initialize(gsArgs);
-		gs.exit();
+	    // set display callback
+	    gs.setDisplayCallback(displayCallback);
+	    // reuse page bitmap memory across renders
+	    gs.setDisplayMemoryPool(DisplayMemoryPool.getInstance());
 
-	    }
+	    gs.initialize(gsArgs);
+	    gs.exit();
 	} catch (GhostscriptException e) {
 
 	    throw new RendererException(e);
 
 	} finally {
 
-	    // delete Ghostscript instance
+	    // release Ghostscript instance
 	    try {
-		Ghostscript.deleteInstance();
+		pool.release(gs);
 	    } catch (GhostscriptException e) {
 		throw new RendererException(e);
 	    }
 
 	    // remove temporary file
-	    diskStore.removeFile(inputDiskStoreKey);
+	    fileSystem.close();
 	}
 
 	return displayCallback.getRasters();
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.ghost4j.display.PageRaster;
+import org.ghost4j.display.Separation;
+import org.ghost4j.display.SeparationDisplayCallback;
 
 /**
  * Image utilities class.
@@ -49,7 +51,8 @@ public class ImageUtil {
 
     /**
      * Converts a PageRaster object to an Image object. Raster data is supposed
-     * to hold RGB image data
+     * to hold RGB image data, or separation data (see
+     * convertSeparationPageRasterToImage)
      * 
      * @param raster
      *            Page raster to convert
@@ -57,6 +60,10 @@ public class ImageUtil {
      */
     public static Image converterPageRasterToImage(PageRaster raster) {
 
+	if (isSeparationFormat(raster.getFormat())) {
+	    return convertSeparationPageRasterToImage(raster);
+	}
+
 	// create raster
 	DataBufferByte dbb = new DataBufferByte(raster.getData(),
 		raster.getData().length);
@@ -72,4 +79,187 @@ public class ImageUtil {
 	// create image and return it
 	return new BufferedImage(cm, wr, false, null);
     }
+
+    /**
+     * Checks if a display format is a separation format
+     * (DISPLAY_COLORS_SEPARATION).
+     * 
+     * @param format
+     *            Display format
+     * @return true if separation format
+     */
+    public static boolean isSeparationFormat(int format) {
+	return (format & SeparationDisplayCallback.DISPLAY_COLORS_MASK) ==
+		SeparationDisplayCallback.DISPLAY_COLORS_SEPARATION;
+    }
+
+    /**
+     * Extracts the plane of a colorant from a separation format PageRaster (8
+     * bits per component).
+     * 
+     * @param raster
+     *            Page raster holding separation data
+     * @param component
+     *            Index of the colorant component
+     * @return Ink values of the colorant (width * height bytes, one per
+     *         pixel, from 0 for no ink to 255 for full ink)
+     */
+    public static byte[] getSeparationPlane(PageRaster raster, int component) {
+
+	int width = raster.getWidth();
+	int height = raster.getHeight();
+	int bytesPerPixel = getBytesPerPixel(raster);
+	byte[] data = raster.getData();
+
+	byte[] plane = new byte[width * height];
+	for (int row = 0; row < height; row++) {
+	    int offset = row * raster.getRaster() + component;
+	    int index = row * width;
+	    for (int column = 0; column < width; column++) {
+		plane[index++] = data[offset];
+		offset += bytesPerPixel;
+	    }
+	}
+
+	return plane;
+    }
+
+    /**
+     * Computes ink coverage of each colorant of a separation format
+     * PageRaster, as done by the inkcov device.
+     * 
+     * @param raster
+     *            Page raster holding separation data
+     * @return Coverage ratio (0 to 1) of each colorant, by component index
+     */
+    public static double[] getSeparationCoverage(PageRaster raster) {
+
+	int width = raster.getWidth();
+	int height = raster.getHeight();
+	int bytesPerPixel = getBytesPerPixel(raster);
+	int componentCount = getComponentCount(raster);
+	byte[] data = raster.getData();
+
+	long[] sums = new long[componentCount];
+	for (int row = 0; row < height; row++) {
+	    int offset = row * raster.getRaster();
+	    for (int column = 0; column < width; column++) {
+		for (int component = 0; component < componentCount; component++) {
+		    sums[component] += data[offset + component] & 0xff;
+		}
+		offset += bytesPerPixel;
+	    }
+	}
+
+	double[] result = new double[componentCount];
+	double pixelCount = (double) width * height;
+	for (int component = 0; component < componentCount; component++) {
+	    result[component] = pixelCount > 0 ? sums[component]
+		    / (pixelCount * 255) : 0;
+	}
+
+	return result;
+    }
+
+    /**
+     * Converts a separation format PageRaster object to an RGB Image object
+     * (8 bits per component). Colorants are composited using their CMYK
+     * equivalents, then converted to RGB with a naive CMYK to RGB conversion
+     * (preview quality).
+     * 
+     * @param raster
+     *            Page raster holding separation data
+     * @return An image
+     */
+    public static Image convertSeparationPageRasterToImage(PageRaster raster) {
+
+	int width = raster.getWidth();
+	int height = raster.getHeight();
+	int bytesPerPixel = getBytesPerPixel(raster);
+	int componentCount = getComponentCount(raster);
+	byte[] data = raster.getData();
+
+	// CMYK equivalents of colorants (process colors by default)
+	int[][] equivalents = new int[componentCount][];
+	for (int component = 0; component < componentCount; component++) {
+	    equivalents[component] = new int[4];
+	    if (component < 4) {
+		equivalents[component][component] = 65535;
+	    }
+	}
+	if (raster.getSeparations() != null) {
+	    for (Separation separation : raster.getSeparations()) {
+		if (separation.getComponent() < componentCount) {
+		    equivalents[separation.getComponent()] = new int[] {
+			    separation.getC(), separation.getM(),
+			    separation.getY(), separation.getK() };
+		}
+	    }
+	}
+
+	byte[] rgb = new byte[width * height * 3];
+	double[] cmyk = new double[4];
+	int index = 0;
+	for (int row = 0; row < height; row++) {
+	    int offset = row * raster.getRaster();
+	    for (int column = 0; column < width; column++) {
+
+		cmyk[0] = cmyk[1] = cmyk[2] = cmyk[3] = 0;
+		for (int component = 0; component < componentCount; component++) {
+		    int ink = data[offset + component] & 0xff;
+		    if (ink != 0) {
+			for (int i = 0; i < 4; i++) {
+			    cmyk[i] += ink * equivalents[component][i]
+				    / (255.0 * 65535);
+			}
+		    }
+		}
+
+		double white = 1 - Math.min(1, cmyk[3]);
+		for (int i = 0; i < 3; i++) {
+		    rgb[index++] = (byte) Math.round(255 * white
+			    * (1 - Math.min(1, cmyk[i])));
+		}
+		offset += bytesPerPixel;
+	    }
+	}
+
+	// create raster
+	DataBufferByte dbb = new DataBufferByte(rgb, rgb.length);
+	WritableRaster wr = Raster.createInterleavedRaster(dbb, width, height,
+		width * 3, 3, new int[] { 0, 1, 2 }, null);
+
+	// create color space
+	ColorSpace cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+	ColorModel cm = new ComponentColorModel(cs, false, false,
+		Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+
+	// create image and return it
+	return new BufferedImage(cm, wr, false, null);
+    }
+
+    /**
+     * Gets the number of bytes per pixel of a separation format raster (row
+     * length in bytes may include padding).
+     */
+    private static int getBytesPerPixel(PageRaster raster) {
+	return raster.getWidth() > 0 ? raster.getRaster() / raster.getWidth()
+		: 0;
+    }
+
+    /**
+     * Gets the number of colorants of a separation format raster: reported
+     * colorants, at least the 4 process colors.
+     */
+    private static int getComponentCount(PageRaster raster) {
+
+	int count = 4;
+	if (raster.getSeparations() != null) {
+	    for (Separation separation : raster.getSeparations()) {
+		count = Math.max(count, separation.getComponent() + 1);
+	    }
+	}
+
+	return Math.min(count, getBytesPerPixel(raster));
+    }
 }
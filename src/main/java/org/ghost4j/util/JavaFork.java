@@ -6,7 +6,11 @@
  */
 package org.ghost4j.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
@@ -14,8 +18,18 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * This class allows launching another JVM from the current JVM. It takes the
@@ -28,6 +42,21 @@ public class JavaFork implements Runnable {
     private static final String JAVA_COMMAND;
     private static final String PATH_SEPARATOR = System
 	    .getProperty("path.separator");
+    /**
+     * Class data sharing archives being created by running JVMs.
+     */
+    private static final Set<File> archivesInCreation = new HashSet<File>();
+
+    /**
+     * First Java version supporting dynamic class data sharing archives.
+     */
+    private static final int SHARED_ARCHIVE_JAVA_VERSION = 13;
+
+    /**
+     * Feature version of the JVM run by the java command (0 if unknown, -1
+     * until read).
+     */
+    private static int javaVersion = -1;
 	private static final String FILE_SEPARATOR = File.separator;
 
     static {
@@ -45,7 +74,7 @@ public class JavaFork implements Runnable {
     /**
      * Process object of the JVM. Is null if the JVM is not running.
      */
-    private Process process;
+    private volatile Process process;
     /**
      * If set to TRUE, output and error streams are redirected to the main JVM
      * output stream
@@ -71,6 +100,35 @@ public class JavaFork implements Runnable {
      */
     private String xms = "64m";
 
+    /**
+     * Additional JVM options (for instance -XX:TieredStopAtLevel=1).
+     */
+    private List<String> jvmOptions = new ArrayList<String>();
+
+    /**
+     * Directory of class data sharing archives. When set, the JVM loads its
+     * classes from the archive matching its start class and classpath; if the
+     * archive does not exist yet, it is created with the classes loaded when
+     * the JVM stops. Requires Java 13 or later (ignored by older JVMs).
+     */
+    private File sharedArchiveDirectory;
+
+    /**
+     * Prefix of the output line printed by the JVM once ready (null if no
+     * ready message is expected).
+     */
+    private String readyMessagePrefix;
+
+    /**
+     * Released when the ready message is received or when the JVM stops.
+     */
+    private final CountDownLatch readyLatch = new CountDownLatch(1);
+
+    /**
+     * Ready message received (without prefix). Is null if not received yet.
+     */
+    private volatile String readyMessage;
+
     public void start(Class<?> startClass) {
 
 	this.setStartClass(startClass);
@@ -110,6 +168,51 @@ public class JavaFork implements Runnable {
 	}
     }
 
+    /**
+     * Checks if the forked JVM process is running.
+     * 
+     * @return true if started and not terminated yet
+     */
+    public boolean isRunning() {
+
+	Process current = process;
+	return current != null && current.isAlive();
+    }
+
+    /**
+     * Waits for the forked JVM process to terminate.
+     * 
+     * @param timeout
+     *            Maximum time to wait (in milliseconds)
+     * @return true if the process terminated (or was not started)
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting
+     */
+    public boolean waitFor(long timeout) throws InterruptedException {
+
+	Process current = process;
+	return current == null
+		|| current.waitFor(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the exit value of the forked JVM process. On Unix, a process
+     * killed by a signal exits with 128 + the signal number (137 for
+     * SIGKILL).
+     * 
+     * @return The exit value, or -1 if the process is not started or still
+     *         running
+     */
+    public int getExitValue() {
+
+	Process current = process;
+	if (current == null || current.isAlive()) {
+	    return -1;
+	}
+
+	return current.exitValue();
+    }
+
     public void run() {
 
 	// check if process is not already running
@@ -133,33 +236,41 @@ public class JavaFork implements Runnable {
 	} else {
 	    fileEncoding += System.getProperty("file.encoding");
 	}
-	ProcessBuilder processBuilder = new ProcessBuilder(JAVA_COMMAND,
-		fileEncoding, "-Xms" + xms, "-Xmx" + xmx, "-cp", classPath,
-		startClass.getName());
+	List<String> command = new ArrayList<String>();
+	command.add(JAVA_COMMAND);
+	command.add(fileEncoding);
 	if (System.getProperty("jna.library.path") != null) {
-	    String jnaLibraryPath = "-Djna.library.path="
-		    + System.getProperty("jna.library.path");
-	    processBuilder = new ProcessBuilder(JAVA_COMMAND, fileEncoding,
-		    jnaLibraryPath, "-Xms" + xms, "-Xmx" + xmx, "-cp",
-		    classPath, startClass.getName());
+	    command.add("-Djna.library.path="
+		    + System.getProperty("jna.library.path"));
 	}
+	command.add("-Xms" + xms);
+	command.add("-Xmx" + xmx);
+	File archiveInCreation = addSharedArchiveOptions(command, classPath);
+	command.addAll(jvmOptions);
+	command.add("-cp");
+	command.add(classPath);
+	command.add(startClass.getName());
+	ProcessBuilder processBuilder = new ProcessBuilder(command);
 	processBuilder.directory(new File(System.getProperty("user.dir")));
 	processBuilder.environment().putAll(System.getenv());
 	if (getEnvironment() != null) {
 	    processBuilder.environment().putAll(getEnvironment());
 	}
+	if (redirectStreams) {
+	    // error stream (must be set before starting)
+	    processBuilder.redirectErrorStream(true);
+	}
 
 	// start
 	try {
 	    process = processBuilder.start();
 
-	    // redirect output stream to main process output stream
-	    if (redirectStreams) {
-		// error stream
-		processBuilder.redirectErrorStream(true);
-		// standard stream
-		StreamGobbler outputStreamGobbler = new StreamGobbler(
-			process.getInputStream(), System.out);
+	    // read output stream: redirect it to main process output stream
+	    // and / or watch it for the ready message
+	    if (redirectStreams || readyMessagePrefix != null) {
+		StreamGobbler outputStreamGobbler = new ReadyMessageGobbler(
+			process.getInputStream(), redirectStreams ? System.out
+				: null);
 		outputStreamGobbler.start();
 	    }
 
@@ -167,8 +278,189 @@ public class JavaFork implements Runnable {
 
 	} catch (Exception e) {
 	    throw new RuntimeException(e);
+	} finally {
+	    // no ready message will come anymore
+	    readyLatch.countDown();
+
+	    if (archiveInCreation != null) {
+		publishSharedArchive(archiveInCreation);
+	    }
+	}
+
+    }
+
+    /**
+     * Waits until the JVM prints its ready message (line starting with the
+     * ready message prefix) on its output. Returns as soon as the message is
+     * received, or as soon as the JVM stops.
+     * 
+     * @param timeout
+     *            Timeout in milliseconds
+     * @return The ready message, without its prefix
+     * @throws IOException
+     *             If the JVM stopped before being ready or if the timeout is
+     *             exceeded
+     */
+    public String waitUntilReady(long timeout) throws IOException {
+
+	if (readyMessagePrefix == null) {
+	    throw new IllegalStateException("No ready message prefix defined");
+	}
+
+	try {
+	    if (!readyLatch.await(timeout, TimeUnit.MILLISECONDS)) {
+		throw new IOException("Timeout waiting for forked JVM to be ready");
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException(
+		    "Interrupted while waiting for forked JVM to be ready");
+	}
+
+	if (readyMessage == null) {
+	    throw new IOException("Forked JVM stopped before being ready");
+	}
+
+	return readyMessage;
+    }
+
+    /**
+     * Gets the class data sharing archive of the JVM.
+     * 
+     * @param classPath
+     *            Classpath of the JVM
+     * @return The archive file, or null if class data sharing is not enabled
+     */
+    public File getSharedArchiveFile(String classPath) {
+
+	if (sharedArchiveDirectory == null || startClass == null) {
+	    return null;
+	}
+
+	// an archive is only valid for the classpath it was created with
+	return new File(sharedArchiveDirectory, startClass.getName() + "-"
+		+ digest(classPath) + ".jsa");
+    }
+
+    /**
+     * Gets the feature version (8, 11, 17...) of the JVM run by the java
+     * command, which may differ from the current JVM. The version is read
+     * once.
+     * 
+     * @return The version, 0 if unknown
+     */
+    public static synchronized int getJavaVersion() {
+
+	if (javaVersion >= 0) {
+	    return javaVersion;
+	}
+
+	javaVersion = 0;
+	try {
+	    Process process = new ProcessBuilder(JAVA_COMMAND, "-version")
+		    .redirectErrorStream(true).start();
+	    ByteArrayOutputStream output = new ByteArrayOutputStream();
+	    InputStream is = process.getInputStream();
+	    byte[] buffer = new byte[1024];
+	    int read;
+	    while ((read = is.read(buffer)) != -1) {
+		output.write(buffer, 0, read);
+	    }
+	    process.waitFor();
+
+	    // version "1.8.0_292", version "17.0.2", version "21"
+	    Matcher matcher = Pattern.compile("version \"(\\d+)(?:\\.(\\d+))?")
+		    .matcher(output.toString());
+	    if (matcher.find()) {
+		javaVersion = Integer.parseInt(matcher.group(1));
+		if (javaVersion == 1 && matcher.group(2) != null) {
+		    javaVersion = Integer.parseInt(matcher.group(2));
+		}
+	    }
+	} catch (Exception e) {
+	    // unknown
 	}
 
+	return javaVersion;
+    }
+
+    /**
+     * Gets the SHA-1 digest of a string, in hexadecimal.
+     */
+    private static String digest(String value) {
+
+	try {
+	    byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+		    value.getBytes("UTF-8"));
+	    StringBuilder result = new StringBuilder();
+	    for (byte b : digest) {
+		result.append(String.format("%02x", b));
+	    }
+	    return result.toString();
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException(e);
+	} catch (UnsupportedEncodingException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * Adds class data sharing options to the command: the archive is used if
+     * it exists, or created when the JVM stops if no other JVM is creating
+     * it.
+     * 
+     * @return The temporary file the archive is created in, or null
+     */
+    private File addSharedArchiveOptions(List<String> command, String classPath) {
+
+	File archive = getSharedArchiveFile(classPath);
+	if (archive == null) {
+	    return null;
+	}
+
+	// options are unknown to older JVMs (which refuse to start)
+	if (getJavaVersion() < SHARED_ARCHIVE_JAVA_VERSION) {
+	    return null;
+	}
+
+	if (archive.exists()) {
+	    command.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+	    return null;
+	}
+
+	synchronized (archivesInCreation) {
+	    if (!archivesInCreation.add(archive)) {
+		// being created by another JVM
+		return null;
+	    }
+	}
+
+	archive.getParentFile().mkdirs();
+	File temporaryArchive = new File(archive.getAbsolutePath() + ".tmp");
+	command.add("-XX:ArchiveClassesAtExit="
+		+ temporaryArchive.getAbsolutePath());
+
+	return temporaryArchive;
+    }
+
+    /**
+     * Makes an archive created by a stopped JVM available to new JVMs.
+     */
+    private void publishSharedArchive(File temporaryArchive) {
+
+	String path = temporaryArchive.getAbsolutePath();
+	File archive = new File(path.substring(0, path.length()
+		- ".tmp".length()));
+
+	// no archive if the JVM could not write it (old JVM, directories in
+	// classpath...)
+	if (temporaryArchive.length() == 0 || !temporaryArchive.renameTo(archive)) {
+	    temporaryArchive.delete();
+	}
+
+	synchronized (archivesInCreation) {
+	    archivesInCreation.remove(archive);
+	}
     }
 
     private String getCurrentClasspath() {
@@ -246,9 +538,9 @@ public class JavaFork implements Runnable {
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
-    } else {
-    	throw new RuntimeException("Found unknown ClassLoader type, cannot scan classes: " + classLoader.getClass().getName());
     }
+    // other class loaders (like the application class loader of Java 9 and
+    // later): java.class.path property is used below
 
 	String cp = cpBuilder.toString();
 
@@ -310,4 +602,63 @@ public class JavaFork implements Runnable {
 	this.xms = xms;
     }
 
+    public List<String> getJvmOptions() {
+	return jvmOptions;
+    }
+
+    public void setJvmOptions(List<String> jvmOptions) {
+	this.jvmOptions = jvmOptions;
+    }
+
+    public File getSharedArchiveDirectory() {
+	return sharedArchiveDirectory;
+    }
+
+    public void setSharedArchiveDirectory(File sharedArchiveDirectory) {
+	this.sharedArchiveDirectory = sharedArchiveDirectory;
+    }
+
+    public String getReadyMessagePrefix() {
+	return readyMessagePrefix;
+    }
+
+    public void setReadyMessagePrefix(String readyMessagePrefix) {
+	this.readyMessagePrefix = readyMessagePrefix;
+    }
+
+    /**
+     * Stream gobbler catching the ready message.
+     */
+    private class ReadyMessageGobbler extends StreamGobbler {
+
+	public ReadyMessageGobbler(InputStream inputStream,
+		OutputStream outputStream) {
+	    super(inputStream, outputStream);
+	}
+
+	@Override
+	public void run() {
+
+	    try {
+		super.run();
+	    } finally {
+		// output closed: JVM is stopping
+		readyLatch.countDown();
+	    }
+	}
+
+	@Override
+	protected boolean processLine(String line) {
+
+	    if (readyMessagePrefix != null && readyMessage == null
+		    && line.startsWith(readyMessagePrefix)) {
+		readyMessage = line.substring(readyMessagePrefix.length());
+		readyLatch.countDown();
+		return false;
+	    }
+
+	    return true;
+	}
+    }
+
 }
@@ -52,7 +52,8 @@ public class StreamGobbler extends Thread {
 		    inputStreamReader);
 	    String line = null;
 	    while ((line = bufferedReader.readLine()) != null) {
-		if (printWriter != null) {
+		boolean forward = processLine(line);
+		if (forward && printWriter != null) {
 		    printWriter.println(line);
 		}
 	    }
@@ -68,4 +69,16 @@ public class StreamGobbler extends Thread {
 	}
 
     }
+
+    /**
+     * Called for each line read, before writing it. Can be overridden to watch
+     * the stream content.
+     * 
+     * @param line
+     *            Line read
+     * @return false if the line must not be written to the output stream
+     */
+    protected boolean processLine(String line) {
+	return true;
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Unix domain socket utilities class. Unix domain socket channels are only
+ * available on Java 16 and later: they are accessed through reflection so that
+ * the library still runs on older JVMs (isSupported returns false).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class UnixSocketUtil {
+
+    /**
+     * UnixDomainSocketAddress.of(String) method. Is null if not supported.
+     */
+    private static final Method ADDRESS_FACTORY;
+
+    /**
+     * UNIX protocol family. Is null if not supported.
+     */
+    private static final ProtocolFamily UNIX_FAMILY;
+
+    static {
+	Method addressFactory = null;
+	ProtocolFamily unixFamily = null;
+	try {
+	    Class<?> addressClass = Class
+		    .forName("java.net.UnixDomainSocketAddress");
+	    addressFactory = addressClass.getMethod("of", String.class);
+	    unixFamily = StandardProtocolFamily.valueOf("UNIX");
+	} catch (Exception e) {
+	    // not supported
+	    addressFactory = null;
+	    unixFamily = null;
+	}
+	ADDRESS_FACTORY = addressFactory;
+	UNIX_FAMILY = unixFamily;
+    }
+
+    /**
+     * Checks if Unix domain socket channels are supported by the JVM.
+     *
+     * @return true if supported
+     */
+    public static boolean isSupported() {
+	return UNIX_FAMILY != null;
+    }
+
+    /**
+     * Opens a server channel listening on a Unix domain socket.
+     *
+     * @param file
+     *            Socket file (must not exist)
+     * @return The bound server channel
+     * @throws IOException
+     *             If Unix domain sockets are not supported or if the socket
+     *             cannot be bound
+     */
+    public static ServerSocketChannel bind(File file) throws IOException {
+
+	ServerSocketChannel channel = (ServerSocketChannel) open(ServerSocketChannel.class);
+	try {
+	    channel.bind(getAddress(file));
+	} catch (IOException e) {
+	    channel.close();
+	    throw e;
+	}
+
+	return channel;
+    }
+
+    /**
+     * Opens a channel connected to a Unix domain socket.
+     *
+     * @param file
+     *            Socket file
+     * @return The connected channel
+     * @throws IOException
+     *             If Unix domain sockets are not supported or if the
+     *             connection fails
+     */
+    public static SocketChannel connect(File file) throws IOException {
+
+	SocketChannel channel = (SocketChannel) open(SocketChannel.class);
+	try {
+	    channel.connect(getAddress(file));
+	} catch (IOException e) {
+	    channel.close();
+	    throw e;
+	}
+
+	return channel;
+    }
+
+    /**
+     * Calls the open(ProtocolFamily) method of a channel class with the UNIX
+     * protocol family.
+     */
+    private static Object open(Class<?> channelClass) throws IOException {
+
+	if (!isSupported()) {
+	    throw new IOException(
+		    "Unix domain sockets are not supported by this JVM");
+	}
+
+	try {
+	    return channelClass.getMethod("open", ProtocolFamily.class).invoke(
+		    null, UNIX_FAMILY);
+	} catch (InvocationTargetException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IOException("Cannot open Unix domain socket channel",
+		    e.getCause());
+	} catch (Exception e) {
+	    throw new IOException("Cannot open Unix domain socket channel", e);
+	}
+    }
+
+    /**
+     * Gets the socket address of a socket file.
+     */
+    private static SocketAddress getAddress(File file) throws IOException {
+
+	try {
+	    return (SocketAddress) ADDRESS_FACTORY.invoke(null,
+		    file.getAbsolutePath());
+	} catch (Exception e) {
+	    throw new IOException("Invalid Unix domain socket path: " + file, e);
+	}
+    }
+}
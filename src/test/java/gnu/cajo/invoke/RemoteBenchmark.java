@@ -0,0 +1,99 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package gnu.cajo.invoke;
+
+import java.lang.reflect.Method;
+
+/**
+ * Micro benchmark of local Remote.invoke calls (method cache lookup and
+ * invocation), compared with a lookup followed by Method.invoke. Not run by
+ * the test suite: run the main method.
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteBenchmark {
+
+    private static final int WARMUP_CALLS = 1000000;
+
+    private static final int CALLS = 5000000;
+
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+
+	final Item item = new Item();
+
+	runInvoke(item, WARMUP_CALLS);
+	runReflection(item, WARMUP_CALLS);
+
+	long invokeTime = runInvoke(item, CALLS);
+	long reflectionTime = runReflection(item, CALLS);
+
+	// concurrent callers share the cache
+	Thread[] threads = new Thread[THREADS];
+	final long[] times = new long[THREADS];
+	for (int i = 0; i < THREADS; i++) {
+	    final int index = i;
+	    threads[i] = new Thread() {
+
+		@Override
+		public void run() {
+		    try {
+			times[index] = runInvoke(item, CALLS);
+		    } catch (Exception e) {
+			times[index] = -1;
+		    }
+		}
+	    };
+	    threads[i].start();
+	}
+	long concurrentTime = 0;
+	for (int i = 0; i < THREADS; i++) {
+	    threads[i].join();
+	    concurrentTime = Math.max(concurrentTime, times[i]);
+	}
+
+	System.out.println("add(int, int), " + CALLS + " calls");
+	System.out.println("Remote.invoke:                " + invokeTime
+		/ CALLS + " ns/call");
+	System.out.println("findBestMethod+Method.invoke: " + reflectionTime
+		/ CALLS + " ns/call");
+	System.out.println("Remote.invoke, " + THREADS + " threads:     "
+		+ concurrentTime / CALLS + " ns/call");
+    }
+
+    private static long runInvoke(Item item, int calls) throws Exception {
+
+	long start = System.nanoTime();
+	for (int i = 0; i < calls; i++) {
+	    Remote.invoke(item, "add", new Object[] { i, 1 });
+	}
+	return System.nanoTime() - start;
+    }
+
+    private static long runReflection(Item item, int calls) throws Exception {
+
+	long start = System.nanoTime();
+	for (int i = 0; i < calls; i++) {
+	    Object[] args = { i, 1 };
+	    Method method = Remote.findBestMethod(item, "add", new Class[] {
+		    Integer.class, Integer.class });
+	    method.invoke(item, args);
+	}
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Item invoked by the benchmark.
+     */
+    public static class Item {
+
+	public int add(int a, int b) {
+	    return a + b;
+	}
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package gnu.cajo.invoke;
+
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+/**
+ * Remote method lookup and invocation tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteTest extends TestCase {
+
+    public RemoteTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testInvoke() throws Exception {
+
+	Item item = new Item();
+
+	assertEquals(5, Remote.invoke(item, "add", new Object[] { 2, 3 }));
+	assertEquals("object", Remote.invoke(item, "describe", new Object()));
+	assertEquals("string", Remote.invoke(item, "describe", "text"));
+	assertNull(Remote.invoke(item, "reset", null));
+	assertEquals(1, item.resetCount);
+
+	try {
+	    Remote.invoke(item, "fail", null);
+	    fail("Exception of the method should be thrown");
+	} catch (IllegalStateException e) {
+	    assertEquals("failure", e.getMessage());
+	}
+
+	try {
+	    Remote.invoke(item, "unknown", "text");
+	    fail("Unknown method should not be found");
+	} catch (NoSuchMethodException e) {
+	    // expected
+	}
+    }
+
+    public void testStaticAndVarargs() throws Exception {
+
+	Item item = new Item();
+
+	assertEquals(6, Remote.invoke(item, "twice", 3));
+	assertEquals("a,b", Remote.invoke(item, "join",
+		new Object[] { new String[] { "a", "b" } }));
+
+	// cached handles
+	assertEquals(8, Remote.invoke(item, "twice", 4));
+	assertEquals("c", Remote.invoke(item, "join",
+		new Object[] { new String[] { "c" } }));
+    }
+
+    public void testCache() throws Exception {
+
+	Item item = new Item();
+
+	// argument arrays are new at each call: lookups must hit the cache
+	Method method = Remote.findBestMethod(item, "add", new Class[] {
+		Integer.class, Integer.class });
+	int cacheSize = Remote.getCacheSize();
+	for (int i = 0; i < 10000; i++) {
+	    assertSame(method, Remote.findBestMethod(item, "add", new Class[] {
+		    Integer.class, Integer.class }));
+	    Remote.invoke(item, "add", new Object[] { i, i });
+	}
+	assertEquals(cacheSize, Remote.getCacheSize());
+    }
+
+    /**
+     * Item invoked by the tests.
+     */
+    public static class Item {
+
+	private int resetCount;
+
+	public int add(int a, int b) {
+	    return a + b;
+	}
+
+	public String describe(Object object) {
+	    return "object";
+	}
+
+	public String describe(String string) {
+	    return "string";
+	}
+
+	public void reset() {
+	    resetCount++;
+	}
+
+	public void fail() {
+	    throw new IllegalStateException("failure");
+	}
+
+	public static int twice(Integer value) {
+	    return value * 2;
+	}
+
+	public String join(String... values) {
+
+	    StringBuilder result = new StringBuilder();
+	    for (String value : values) {
+		if (result.length() > 0) {
+		    result.append(',');
+		}
+		result.append(value);
+	    }
+	    return result.toString();
+	}
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.converter.PDFConverter;
+
+/**
+ * AbstractRemoteComponent process admission tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class AbstractRemoteComponentTest extends TestCase {
+
+    public AbstractRemoteComponentTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testTimeout() throws Exception {
+
+	PDFConverter component = new PDFConverter();
+	component.setMaxProcessCount(1);
+	component.setProcessWaitTimeout(100);
+
+	component.acquireProcess();
+	assertEquals(1, component.getProcessCount());
+
+	try {
+	    component.acquireProcess();
+	    fail("No process should be available");
+	} catch (IOException e) {
+	    // expected
+	}
+
+	component.releaseProcess();
+	assertEquals(0, component.getProcessCount());
+    }
+
+    public void testWakeUp() throws Exception {
+
+	final PDFConverter component = new PDFConverter();
+	component.setMaxProcessCount(1);
+	component.acquireProcess();
+
+	final CountDownLatch admitted = new CountDownLatch(1);
+	Thread waiting = new Thread() {
+
+	    @Override
+	    public void run() {
+		try {
+		    component.acquireProcess();
+		    admitted.countDown();
+		} catch (IOException e) {
+		    // not admitted
+		}
+	    }
+	};
+	waiting.start();
+
+	// wait for the thread to be queued
+	long deadline = System.currentTimeMillis() + 5000;
+	while (component.getQueueLength() == 0
+		&& System.currentTimeMillis() < deadline) {
+	    Thread.sleep(10);
+	}
+	assertEquals(1, component.getQueueLength());
+
+	// released process is handed over without polling delay
+	component.releaseProcess();
+	assertTrue(admitted.await(500, TimeUnit.MILLISECONDS));
+	assertEquals(1, component.getProcessCount());
+	component.releaseProcess();
+    }
+
+    public void testMaxQueueLength() throws Exception {
+
+	final PDFConverter component = new PDFConverter();
+	component.setMaxProcessCount(1);
+	component.setMaxQueueLength(1);
+	component.acquireProcess();
+
+	Thread waiting = new Thread() {
+
+	    @Override
+	    public void run() {
+		try {
+		    component.acquireProcess();
+		    component.releaseProcess();
+		} catch (IOException e) {
+		    // not admitted
+		}
+	    }
+	};
+	waiting.start();
+
+	long deadline = System.currentTimeMillis() + 5000;
+	while (component.getQueueLength() == 0
+		&& System.currentTimeMillis() < deadline) {
+	    Thread.sleep(10);
+	}
+
+	// queue is full: rejected without waiting
+	try {
+	    component.acquireProcess();
+	    fail("Request should be rejected");
+	} catch (IOException e) {
+	    // expected
+	}
+
+	component.releaseProcess();
+	waiting.join(5000);
+	assertEquals(0, component.getProcessCount());
+    }
+
+    public void testChannelSupport() throws Exception {
+
+	// remote base classes serve channel requests
+	AbstractRemoteComponent converter = new PDFConverter();
+	assertTrue(converter.isChannelSupported());
+	assertTrue(new RemoteComponentServer().isChannelSupported());
+
+	// other components are only served by Cajo
+	assertFalse(new AbstractRemoteComponent() {
+	}.isChannelSupported());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import junit.framework.TestCase;
+
+/**
+ * GhostscriptExecutor tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptExecutorTest extends TestCase {
+
+    private GhostscriptExecutor executor;
+
+    public GhostscriptExecutorTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	executor = new GhostscriptExecutor(1, 1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+
+	executor.shutdown();
+	executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public void testSubmit() throws Exception {
+
+	CompletableFuture<String> future = executor
+		.submit(new Callable<String>() {
+
+		    public String call() throws Exception {
+			return Thread.currentThread().getName();
+		    }
+		});
+
+	assertTrue(future.get(5, TimeUnit.SECONDS).startsWith(
+		"ghost4j-executor-"));
+    }
+
+    public void testSubmitFailure() throws Exception {
+
+	CompletableFuture<String> future = executor
+		.submit(new Callable<String>() {
+
+		    public String call() throws Exception {
+			throw new GhostscriptException("failure");
+		    }
+		});
+
+	try {
+	    future.get(5, TimeUnit.SECONDS);
+	    fail("Job should fail");
+	} catch (ExecutionException e) {
+	    assertTrue(e.getCause() instanceof GhostscriptException);
+	}
+    }
+
+    public void testQueueFull() throws Exception {
+
+	final CountDownLatch latch = new CountDownLatch(1);
+	Callable<String> blocking = new Callable<String>() {
+
+	    public String call() throws Exception {
+		latch.await();
+		return "done";
+	    }
+	};
+
+	// one running, one queued, one rejected
+	CompletableFuture<String> running = executor.submit(blocking);
+	while (executor.getActiveCount() == 0) {
+	    Thread.sleep(10);
+	}
+	CompletableFuture<String> queued = executor.submit(blocking);
+	CompletableFuture<String> rejected = executor.submit(blocking);
+
+	assertEquals(1, executor.getQueueSize());
+	assertTrue(rejected.isCompletedExceptionally());
+	try {
+	    rejected.get();
+	} catch (ExecutionException e) {
+	    assertTrue(e.getCause() instanceof RejectedExecutionException);
+	}
+
+	latch.countDown();
+	assertEquals("done", running.get(5, TimeUnit.SECONDS));
+	assertEquals("done", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testSubmitWhenInputReady() throws Exception {
+
+	CompletableFuture<String> input = new CompletableFuture<String>();
+
+	CompletableFuture<Integer> future = executor.submit(input,
+		new Function<String, Integer>() {
+
+		    public Integer apply(String value) {
+			return value.length();
+		    }
+		});
+
+	assertFalse(future.isDone());
+	input.complete("ghost4j");
+
+	assertEquals(Integer.valueOf(7), future.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testCancelRunningJob() throws Exception {
+
+	final CountDownLatch started = new CountDownLatch(1);
+	CompletableFuture<Boolean> future = executor
+		.submit(new Callable<Boolean>() {
+
+		    public Boolean call() throws Exception {
+			started.countDown();
+			// stands for the interpreter poll callback
+			while (!GhostscriptJob.current().isInterrupted()) {
+			    Thread.sleep(10);
+			}
+			return true;
+		    }
+		});
+
+	started.await(5, TimeUnit.SECONDS);
+	future.cancel(true);
+
+	// interpreter thread is released
+	assertEquals("free", executor.submit(new Callable<String>() {
+
+	    public String call() throws Exception {
+		return "free";
+	    }
+	}).get(5, TimeUnit.SECONDS));
+    }
+
+    public void testJobTimeout() throws Exception {
+
+	CompletableFuture<Boolean> future = executor.submit(
+		new Callable<Boolean>() {
+
+		    public Boolean call() throws Exception {
+			// stands for the interpreter poll callback
+			while (!GhostscriptJob.current().isTimedOut()) {
+			    Thread.sleep(10);
+			}
+			return true;
+		    }
+		}, 50, TimeUnit.MILLISECONDS);
+
+	try {
+	    future.get(5, TimeUnit.SECONDS);
+	    fail("Job should time out");
+	} catch (ExecutionException e) {
+	    assertTrue(e.getCause() instanceof TimeoutException);
+	}
+    }
+
+    public void testJobTimeoutWithoutPoll() throws Exception {
+
+	final CountDownLatch latch = new CountDownLatch(1);
+	CompletableFuture<String> future = executor.submit(
+		new Callable<String>() {
+
+		    public String call() throws Exception {
+			// interpreter ignoring the deadline
+			latch.await();
+			return "done";
+		    }
+		}, 50, TimeUnit.MILLISECONDS);
+
+	try {
+	    future.get(5, TimeUnit.SECONDS);
+	    fail("Job should time out");
+	} catch (ExecutionException e) {
+	    assertTrue(e.getCause() instanceof TimeoutException);
+	}
+
+	// late result is discarded
+	latch.countDown();
+	assertEquals("free", executor.submit(new Callable<String>() {
+
+	    public String call() throws Exception {
+		return "free";
+	    }
+	}).get(5, TimeUnit.SECONDS));
+	assertTrue(future.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.ghost4j.document.PSDocument;
+
+/**
+ * GhostscriptFileSystem tests (DiskStore mode, as in-memory files require a
+ * Ghostscript library).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptFileSystemTest extends TestCase {
+
+    public GhostscriptFileSystemTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testAddInput() throws Exception {
+
+	byte[] content = "%!PS-Adobe-3.0\n%%EndComments\nshowpage\n%%EOF\n".getBytes("ISO-8859-1");
+	PSDocument document = new PSDocument();
+	document.load(new ByteArrayInputStream(content));
+
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem(false);
+	assertFalse(fileSystem.isInMemory());
+
+	String path = fileSystem.addInput(document);
+	File file = new File(path);
+	assertTrue(file.exists());
+
+	InputStream is = fileSystem.openInput(path);
+	try {
+	    assertTrue(Arrays.equals(content, IOUtils.toByteArray(is)));
+	} finally {
+	    IOUtils.closeQuietly(is);
+	}
+
+	fileSystem.close();
+	assertFalse(file.exists());
+    }
+
+    public void testAddOutput() throws Exception {
+
+	GhostscriptFileSystem fileSystem = new GhostscriptFileSystem(false);
+
+	String path = fileSystem.addOutput();
+	assertFalse(path.equals(fileSystem.addOutput()));
+
+	// simulate interpreter output
+	FileOutputStream fos = new FileOutputStream(path);
+	fos.write(new byte[] { 1, 2, 3 });
+	fos.close();
+
+	InputStream is = fileSystem.openInput(path);
+	try {
+	    assertEquals(3, IOUtils.toByteArray(is).length);
+	} finally {
+	    IOUtils.closeQuietly(is);
+	}
+
+	fileSystem.close();
+	assertFalse(new File(path).exists());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * GhostscriptInstancePool tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptInstancePoolTest extends TestCase {
+
+    public GhostscriptInstancePoolTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testBorrowAndRelease() throws Exception {
+
+	GhostscriptInstancePool pool = new GhostscriptInstancePool(2);
+
+	GhostscriptInstance gs1 = pool.borrow();
+	GhostscriptInstance gs2 = pool.borrow();
+
+	assertNotSame(gs1, gs2);
+	assertEquals(2, pool.getActiveCount());
+
+	pool.release(gs1);
+	assertEquals(1, pool.getActiveCount());
+
+	// released instance is reused
+	assertSame(gs1, pool.borrow());
+
+	pool.release(gs1);
+	pool.release(gs2);
+	assertEquals(0, pool.getActiveCount());
+    }
+
+    public void testBorrowTimeout() throws Exception {
+
+	GhostscriptInstancePool pool = new GhostscriptInstancePool(1);
+
+	GhostscriptInstance gs = pool.borrow();
+
+	try {
+	    pool.borrow(100, TimeUnit.MILLISECONDS);
+	    fail("Pool should be exhausted");
+	} catch (GhostscriptException e) {
+	    // expected
+	}
+
+	pool.release(gs);
+	assertNotNull(pool.borrow(100, TimeUnit.MILLISECONDS));
+    }
+
+    public void testReleaseResetsInstance() throws Exception {
+
+	GhostscriptInstancePool pool = new GhostscriptInstancePool(1);
+
+	GhostscriptInstance gs = pool.borrow();
+	gs.setStdOut(System.out);
+	pool.release(gs);
+
+	assertNull(pool.borrow().getStdOut());
+    }
+
+    public void testSingletonThreadFailsFast() throws Exception {
+
+	GhostscriptInstancePool pool = new GhostscriptInstancePool(1);
+
+	// permit held by a singleton initialized by this thread
+	pool.acquirePermit();
+	pool.setSingletonThread(Thread.currentThread());
+
+	try {
+	    pool.borrow();
+	    fail("Borrowing should fail");
+	} catch (GhostscriptException e) {
+	    assertTrue(e.getMessage().contains("singleton"));
+	}
+
+	pool.setSingletonThread(null);
+	pool.releasePermit();
+	pool.release(pool.borrow(100, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * GhostscriptJob tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptJobTest extends TestCase {
+
+    public GhostscriptJobTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testCancel() throws Exception {
+
+	GhostscriptJob job = new GhostscriptJob();
+	assertFalse(job.isInterrupted());
+
+	job.cancel();
+	assertTrue(job.isCancelled());
+	assertTrue(job.isInterrupted());
+	assertFalse(job.isTimedOut());
+    }
+
+    public void testTimeout() throws Exception {
+
+	GhostscriptJob job = new GhostscriptJob(50, TimeUnit.MILLISECONDS);
+	assertFalse(job.isTimedOut());
+
+	Thread.sleep(100);
+	assertTrue(job.isTimedOut());
+	assertTrue(job.isInterrupted());
+    }
+
+    public void testAttachAndCheck() throws Exception {
+
+	GhostscriptJob job = new GhostscriptJob();
+	job.attach();
+	try {
+	    assertSame(job, GhostscriptJob.current());
+
+	    // not interrupted: nothing
+	    GhostscriptJob.checkCurrent(-100);
+
+	    job.cancel();
+	    try {
+		GhostscriptJob.checkCurrent(-100);
+		fail("Cancelled job should be reported");
+	    } catch (GhostscriptException e) {
+		// expected
+	    }
+	} finally {
+	    job.detach();
+	}
+
+	assertNull(GhostscriptJob.current());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Micro benchmark comparing the call overhead of interface mapping and direct
+ * mapping (GhostscriptLibraryDirect) on gsapi_run_string_continue. Not run by
+ * the test suite: run the main method with the Ghostscript library
+ * available.
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptLibraryBenchmark {
+
+    private static final int WARMUP_CALLS = 20000;
+
+    private static final int CALLS = 200000;
+
+    public static void main(String[] args) throws Exception {
+
+	String libName = GhostscriptLibraryLoader.getLibraryName();
+	GhostscriptLibrary interfaceMapped = (GhostscriptLibrary) Native
+		.loadLibrary(libName, GhostscriptLibrary.class);
+	GhostscriptLibrary directMapped = new GhostscriptLibraryDirect(libName,
+		interfaceMapped);
+
+	// interpreter waiting for commands
+	PointerByReference instanceByRef = new PointerByReference();
+	interfaceMapped.gsapi_new_instance(instanceByRef.getPointer(), null);
+	Pointer instance = instanceByRef.getValue();
+	String[] gsArgs = { "-dQUIET", "-dNOPAUSE", "-dNODISPLAY" };
+	interfaceMapped.gsapi_init_with_args(instance, gsArgs.length, gsArgs);
+
+	IntByReference exitCode = new IntByReference();
+	interfaceMapped.gsapi_run_string_begin(instance, 0, exitCode);
+
+	// a single space: minimal work in the interpreter
+	Memory data = new Memory(1);
+	data.setByte(0, (byte) ' ');
+
+	run(interfaceMapped, instance, data, exitCode, WARMUP_CALLS);
+	run(directMapped, instance, data, exitCode, WARMUP_CALLS);
+
+	long interfaceTime = run(interfaceMapped, instance, data, exitCode,
+		CALLS);
+	long directTime = run(directMapped, instance, data, exitCode, CALLS);
+
+	interfaceMapped.gsapi_run_string_end(instance, 0, exitCode);
+	interfaceMapped.gsapi_exit(instance);
+	interfaceMapped.gsapi_delete_instance(instance);
+
+	System.out.println("gsapi_run_string_continue, " + CALLS + " calls");
+	System.out.println("interface mapping: " + interfaceTime / CALLS
+		+ " ns/call");
+	System.out.println("direct mapping:    " + directTime / CALLS
+		+ " ns/call");
+    }
+
+    private static long run(GhostscriptLibrary library, Pointer instance,
+	    Pointer data, IntByReference exitCode, int calls) {
+
+	long start = System.nanoTime();
+	for (int i = 0; i < calls; i++) {
+	    library.gsapi_run_string_continue(instance, data, 1, 0, exitCode);
+	}
+	return System.nanoTime() - start;
+    }
+}
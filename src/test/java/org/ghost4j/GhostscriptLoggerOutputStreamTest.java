@@ -0,0 +1,84 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.slf4j.event.Level;
+
+/**
+ * GhostscriptLoggerOutputStream tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptLoggerOutputStreamTest extends TestCase {
+
+    private List<String> messages;
+
+    private GhostscriptLoggerOutputStream stream;
+
+    public GhostscriptLoggerOutputStreamTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	messages = new ArrayList<String>();
+	stream = new GhostscriptLoggerOutputStream(Level.INFO) {
+
+	    @Override
+	    protected boolean isLogEnabled() {
+		return true;
+	    }
+
+	    @Override
+	    protected void log(String message) {
+		messages.add(message);
+	    }
+	};
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testWriteLines() throws Exception {
+
+	stream.write("first\nsecond\nthi".getBytes());
+	stream.write("rd\n".getBytes());
+
+	assertEquals(3, messages.size());
+	assertEquals("first", messages.get(0));
+	assertEquals("second", messages.get(1));
+	assertEquals("third", messages.get(2));
+    }
+
+    public void testWriteMixed() throws Exception {
+
+	stream.write('a');
+	stream.write("b\nc".getBytes(), 0, 3);
+	stream.write('\n');
+
+	assertEquals(2, messages.size());
+	assertEquals("ab", messages.get(0));
+	assertEquals("c", messages.get(1));
+    }
+
+    public void testWriteSlice() throws Exception {
+
+	stream.write("xxline\nyy".getBytes(), 2, 5);
+
+	assertEquals(1, messages.size());
+	assertEquals("line", messages.get(0));
+    }
+}
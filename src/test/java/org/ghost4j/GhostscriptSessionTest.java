@@ -0,0 +1,181 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * GhostscriptSession tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class GhostscriptSessionTest extends TestCase {
+
+    private final String testResourcesPath = "target/test-classes";
+
+    private GhostscriptSession session;
+
+    public GhostscriptSessionTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	session = new GhostscriptSession(new GhostscriptInstance(), null);
+	session.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+
+	session.close();
+    }
+
+    public void testRunSeveralJobs() throws Exception {
+
+	File file = new File(testResourcesPath, "input.ps");
+
+	session.runFile(file.getPath());
+	session.runFile(file.getPath());
+
+	assertTrue(session.isOpen());
+	assertEquals(2, session.getJobCount());
+    }
+
+    public void testJobDefinitionsAreRestored() throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	session.getInstance().setStdOut(baos);
+
+	session.runString("/ghost4jtest 1 def");
+	session.runString("userdict /ghost4jtest known ==");
+
+	assertEquals("false", baos.toString().trim());
+    }
+
+    public void testRunStream() throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	session.getInstance().setStdOut(baos);
+
+	// more than one chunk of generated PostScript
+	StringBuilder ps = new StringBuilder();
+	for (int i = 0; i < 20000; i++) {
+	    ps.append("/ghost4jtest ").append(i).append(" def\n");
+	}
+	ps.append("ghost4jtest ==\n");
+	assertTrue(ps.length() > GhostscriptInstance.RUN_CHUNK_SIZE);
+
+	session.runStream(new ByteArrayInputStream(ps.toString().getBytes()));
+
+	assertEquals("19999", baos.toString().trim());
+    }
+
+    public void testRunStreamReadFailure() throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	session.getInstance().setStdOut(baos);
+
+	// stream failing after its first chunk
+	final byte[] chunk = new byte[GhostscriptInstance.RUN_CHUNK_SIZE];
+	Arrays.fill(chunk, (byte) ' ');
+	InputStream data = new InputStream() {
+
+	    private boolean chunkRead;
+
+	    @Override
+	    public int read() throws IOException {
+		throw new IOException("Stream failure");
+	    }
+
+	    @Override
+	    public int read(byte[] b, int off, int len) throws IOException {
+		if (chunkRead) {
+		    throw new IOException("Stream failure");
+		}
+		chunkRead = true;
+		System.arraycopy(chunk, 0, b, off, len);
+		return len;
+	    }
+	};
+
+	try {
+	    session.runStream(data);
+	    fail("GhostscriptException expected");
+	} catch (GhostscriptException e) {
+	    // the read failure is reported, not the end of the run
+	    assertTrue(e.getCause() instanceof IOException);
+	}
+
+	// interpreter is usable again
+	session.runString("(ghost4j) ==");
+
+	assertEquals("(ghost4j)", baos.toString().trim());
+    }
+
+    public void testRunBytes() throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	session.getInstance().setStdOut(baos);
+
+	ByteBuffer data = ByteBuffer.allocateDirect(32);
+	data.put("(ghost4j) ==".getBytes());
+	data.flip();
+	session.runBytes(data);
+
+	assertEquals("(ghost4j)", baos.toString().trim());
+    }
+
+    public void testReset() throws Exception {
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	session.getInstance().setStdOut(baos);
+
+	session.beginJob();
+	session.getInstance().runString("1 2 3");
+	session.reset();
+
+	assertTrue(session.isOpen());
+	session.runString("count ==");
+
+	assertEquals("0", baos.toString().trim());
+    }
+
+    public void testDirtySessionIsClosed() throws Exception {
+
+	// one interpreter at a time
+	session.close();
+	GhostscriptInstancePool pool = new GhostscriptInstancePool(1);
+
+	// job replacing its save object: state cannot be restored
+	GhostscriptSession dirty = pool.borrowSession(null);
+	dirty.runString("userdict /ghost4jjobsave 0 put");
+	assertTrue(dirty.isDirty());
+	pool.release(dirty);
+	assertEquals(0, pool.getIdleSessionCount());
+
+	// clean session is kept warm
+	GhostscriptSession clean = pool.borrowSession(null);
+	clean.runString("1 pop");
+	assertFalse(clean.isDirty());
+	pool.release(clean);
+	assertEquals(1, pool.getIdleSessionCount());
+
+	pool.closeIdleSessions();
+    }
+}
@@ -12,9 +12,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
+import org.ghost4j.display.BandDisplayCallback;
+import org.ghost4j.display.DirectDisplayCallback;
 import org.ghost4j.display.ImageWriterDisplayCallback;
 
 /**
@@ -55,6 +70,52 @@ public class GhostscriptTest extends TestCase {
 	assertNotNull(revision.getRevisionDate());
 	assertNotNull(revision.getNumber());
 
+	// cached revision copied for each caller
+	GhostscriptRevision other = Ghostscript.getRevision();
+	assertNotSame(revision, other);
+	assertEquals(revision.getProduct(), other.getProduct());
+	assertEquals(revision.getCopyright(), other.getCopyright());
+	assertEquals(revision.getRevisionDate(), other.getRevisionDate());
+	assertNotSame(revision.getRevisionDate(), other.getRevisionDate());
+	assertEquals(revision.getNumber(), other.getNumber());
+
+    }
+
+    public void testNativeCallbacksReused() throws Exception {
+
+	String[] names = { "nativeStdInCallback", "nativeStdOutCallback",
+		"nativeStdErrCallback", "nativePollCallback" };
+	Object[] callbacks = new Object[names.length];
+
+	GhostscriptInstance gs = new GhostscriptInstance();
+	try {
+	    gs.initialize(new String[] { "-dQUIET", "-dNODISPLAY" });
+	    gs.exit();
+	    for (int i = 0; i < names.length; i++) {
+		callbacks[i] = getField(gs, names[i]);
+		assertNotNull(callbacks[i]);
+	    }
+
+	    // same callbacks passed to the library on next initialization
+	    gs.initialize(new String[] { "-dQUIET", "-dNODISPLAY" });
+	    for (int i = 0; i < names.length; i++) {
+		assertSame(callbacks[i], getField(gs, names[i]));
+	    }
+	} finally {
+	    try {
+		gs.exit();
+	    } finally {
+		gs.delete();
+	    }
+	}
+    }
+
+    private static Object getField(Object object, String name)
+	    throws Exception {
+
+	Field field = GhostscriptInstance.class.getDeclaredField(name);
+	field.setAccessible(true);
+	return field.get(object);
     }
 
     /**
@@ -190,6 +251,104 @@ public class GhostscriptTest extends TestCase {
 	}
     }
 
+    /**
+     * Test binary standard input from a stream.
+     */
+    public void testBinaryStdInStream() throws Exception {
+
+	byte[] data = buildBinaryData();
+	Ghostscript.getInstance().setStdIn(new ByteArrayInputStream(data));
+
+	assertEquals(toHex(data), runHexDump());
+    }
+
+    /**
+     * Test binary standard input from a buffer.
+     */
+    public void testBinaryStdInByteBuffer() throws Exception {
+
+	byte[] data = buildBinaryData();
+	ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+	buffer.put(data);
+	buffer.flip();
+	Ghostscript.getInstance().setStdIn(buffer);
+
+	assertEquals(toHex(data), runHexDump());
+	// position of the given buffer is not modified
+	assertEquals(0, buffer.position());
+    }
+
+    /**
+     * Test binary standard input from a channel.
+     */
+    public void testBinaryStdInChannel() throws Exception {
+
+	byte[] data = buildBinaryData();
+	Ghostscript.getInstance().setStdIn(
+		Channels.newChannel(new ByteArrayInputStream(data)));
+
+	assertEquals(toHex(data), runHexDump());
+    }
+
+    /**
+     * Builds binary standard input data: all byte values (including bytes
+     * greater than 0x7f, invalid alone in UTF-8), over several stdin
+     * callback calls.
+     */
+    private static byte[] buildBinaryData() {
+
+	byte[] data = new byte[100000];
+	for (int i = 0; i < data.length; i++) {
+	    data[i] = (byte) (0x80 + i * 7);
+	}
+
+	return data;
+    }
+
+    /**
+     * Runs a program dumping standard input as hexadecimal to standard
+     * output, without ghost4j.encoding (binary input).
+     *
+     * @return The lower case hexadecimal dump
+     */
+    private String runHexDump() throws Exception {
+
+	String encoding = System.getProperty(Ghostscript.PROPERTY_NAME_ENCODING);
+	System.clearProperty(Ghostscript.PROPERTY_NAME_ENCODING);
+
+	try {
+	    Ghostscript gs = Ghostscript.getInstance();
+	    ByteArrayOutputStream os = new ByteArrayOutputStream();
+	    gs.setStdOut(os);
+
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dBATCH", "-dNODISPLAY" };
+	    gs.initialize(args);
+	    gs.runString("/in (%stdin) (r) file def /out (%stdout) (w) file def"
+		    + " /buf 4096 string def"
+		    + " { in buf readstring exch out exch writehexstring"
+		    + " not { exit } if } loop out flushfile");
+	    gs.exit();
+
+	    return os.toString("US-ASCII").trim().toLowerCase();
+
+	} finally {
+	    if (encoding != null) {
+		System.setProperty(Ghostscript.PROPERTY_NAME_ENCODING, encoding);
+	    }
+	}
+    }
+
+    private static String toHex(byte[] data) {
+
+	StringBuilder hex = new StringBuilder(data.length * 2);
+	for (byte b : data) {
+	    hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+	    hex.append(Character.forDigit(b & 0xf, 16));
+	}
+
+	return hex.toString();
+    }
+
     /**
      * Test Ghostscript standard output.
      */
@@ -309,4 +468,347 @@ public class GhostscriptTest extends TestCase {
 	}
 
     }
+
+    /**
+     * Test Ghostscript set with a display callback receiving direct buffers.
+     */
+    public void testDirectDisplayCallback() {
+
+	Ghostscript gs = Ghostscript.getInstance();
+
+	try {
+
+	    // create display callback
+	    final List<Integer> pageSizes = new ArrayList<Integer>();
+	    DirectDisplayCallback displayCallback = new DirectDisplayCallback() {
+
+		public void displayPage(int width, int height, int raster,
+			int format, int copies, int flush, ByteBuffer imageData)
+			throws GhostscriptException {
+		    assertTrue(imageData.isDirect());
+		    pageSizes.add(imageData.remaining());
+		}
+
+		public void displayPage(int width, int height, int raster,
+			int format, int copies, int flush, byte[] imageData)
+			throws GhostscriptException {
+		    fail("Byte array displayPage should not be called");
+		}
+
+		public void displayOpen() throws GhostscriptException {
+		}
+
+		public void displayPreClose() throws GhostscriptException {
+		}
+
+		public void displayClose() throws GhostscriptException {
+		}
+
+		public void displayPreSize(int width, int height, int raster,
+			int format) throws GhostscriptException {
+		}
+
+		public void displaySize(int width, int height, int raster,
+			int format) throws GhostscriptException {
+		}
+
+		public void displaySync() throws GhostscriptException {
+		}
+
+		public void displayUpdate(int x, int y, int width, int height)
+			throws GhostscriptException {
+		}
+	    };
+
+	    // set display callback
+	    gs.setDisplayCallback(displayCallback);
+
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dBATCH", "-dSAFER",
+		    "-sDEVICE=display", "-sDisplayHandle=0",
+		    "-dDisplayFormat=16#804", "-r20"
+
+	    };
+
+	    gs.initialize(args);
+
+	    File file = new File(testResourcesPath, "input.ps");
+	    gs.runFile(file.getPath());
+
+	    gs.exit();
+
+	    assertEquals(1, pageSizes.size());
+	    assertTrue(pageSizes.get(0) > 0);
+
+	} catch (Exception e) {
+	    fail(e.getMessage());
+	}
+
+    }
+
+    /**
+     * Test Ghostscript set with a display callback receiving bands.
+     */
+    public void testBandDisplayCallback() {
+
+	Ghostscript gs = Ghostscript.getInstance();
+
+	try {
+
+	    // create display callback
+	    final List<Integer> bandSizes = new ArrayList<Integer>();
+	    BandDisplayCallback displayCallback = new BandDisplayCallback() {
+
+		public void displayBand(int width, int height, int raster,
+			int format, int y, int bandHeight, ByteBuffer bandData)
+			throws GhostscriptException {
+		    assertTrue(y >= 0 && y + bandHeight <= height);
+		    assertEquals(raster * bandHeight, bandData.remaining());
+		    bandSizes.add(bandData.remaining());
+		}
+
+		public void displayPage(int width, int height, int raster,
+			int format, int copies, int flush, byte[] imageData)
+			throws GhostscriptException {
+		}
+
+		public void displayOpen() throws GhostscriptException {
+		}
+
+		public void displayPreClose() throws GhostscriptException {
+		}
+
+		public void displayClose() throws GhostscriptException {
+		}
+
+		public void displayPreSize(int width, int height, int raster,
+			int format) throws GhostscriptException {
+		}
+
+		public void displaySize(int width, int height, int raster,
+			int format) throws GhostscriptException {
+		}
+
+		public void displaySync() throws GhostscriptException {
+		}
+
+		public void displayUpdate(int x, int y, int width, int height)
+			throws GhostscriptException {
+		}
+	    };
+
+	    // set display callback
+	    gs.setDisplayCallback(displayCallback);
+
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dBATCH", "-dSAFER",
+		    "-sDEVICE=display", "-sDisplayHandle=0",
+		    "-dDisplayFormat=16#804", "-r20"
+
+	    };
+
+	    gs.initialize(args);
+
+	    File file = new File(testResourcesPath, "input.ps");
+	    gs.runFile(file.getPath());
+
+	    gs.exit();
+
+	    assertFalse(bandSizes.isEmpty());
+
+	} catch (Exception e) {
+	    fail(e.getMessage());
+	}
+
+    }
+
+    /**
+     * Test interruption of an endless job by a timeout.
+     */
+    public void testJobTimeout() throws Exception {
+
+	if (!isPollSupported()) {
+	    System.out
+		    .println("testJobTimeout skipped: poll callback not called by the Ghostscript library");
+	    return;
+	}
+
+	final GhostscriptJob job = new GhostscriptJob(1, TimeUnit.SECONDS);
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	// run on another thread so that a failure cannot hang the test
+	Thread thread = new Thread("ghost4j-test-endless-job") {
+
+	    @Override
+	    public void run() {
+
+		job.attach();
+		try {
+		    runEndlessJob();
+		} catch (Throwable e) {
+		    failure.set(e);
+		} finally {
+		    job.detach();
+		}
+	    }
+	};
+	thread.setDaemon(true);
+	thread.start();
+	thread.join(30000);
+
+	assertFalse("Endless job should be interrupted", thread.isAlive());
+	assertTrue(failure.get() instanceof GhostscriptException);
+	assertTrue(job.isTimedOut());
+    }
+
+    /**
+     * Test interruption of an endless job by a GhostscriptExecutor timeout.
+     */
+    public void testExecutorTimeout() throws Exception {
+
+	if (!isPollSupported()) {
+	    System.out
+		    .println("testExecutorTimeout skipped: poll callback not called by the Ghostscript library");
+	    return;
+	}
+
+	GhostscriptExecutor executor = new GhostscriptExecutor(1, 1);
+
+	try {
+	    CompletableFuture<Void> future = executor.submit(
+		    new Callable<Void>() {
+
+			public Void call() throws Exception {
+			    runEndlessJob();
+			    return null;
+			}
+		    }, 1, TimeUnit.SECONDS);
+
+	    try {
+		future.get(30, TimeUnit.SECONDS);
+		fail("Endless job should time out");
+	    } catch (ExecutionException e) {
+		assertTrue(e.getCause() instanceof TimeoutException);
+	    }
+
+	    // interpreter thread is released
+	    assertEquals("free", executor.submit(new Callable<String>() {
+
+		public String call() throws Exception {
+		    return "free";
+		}
+	    }).get(30, TimeUnit.SECONDS));
+
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    /**
+     * Checks if the loaded Ghostscript library calls the poll callback, by
+     * running a short job counting polls.
+     */
+    private boolean isPollSupported() throws GhostscriptException {
+
+	final AtomicInteger polls = new AtomicInteger();
+	GhostscriptJob probe = new GhostscriptJob() {
+
+	    @Override
+	    public boolean isInterrupted() {
+		polls.incrementAndGet();
+		return false;
+	    }
+	};
+
+	Ghostscript gs = Ghostscript.getInstance();
+	probe.attach();
+	try {
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dNODISPLAY" };
+	    gs.initialize(args);
+	    gs.runString("0 1 100000 { pop } for");
+	} finally {
+	    probe.detach();
+	    gs.exit();
+	}
+
+	return polls.get() > 0;
+    }
+
+    /**
+     * Runs an endless job on a new interpreter instance.
+     */
+    private static void runEndlessJob() throws GhostscriptException {
+
+	GhostscriptInstance gs = new GhostscriptInstance();
+	try {
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dNODISPLAY" };
+	    gs.initialize(args);
+	    gs.runString("{ } loop");
+	} finally {
+	    try {
+		gs.exit();
+	    } finally {
+		gs.delete();
+	    }
+	}
+    }
+
+    public void testParams() {
+
+	Ghostscript gs = Ghostscript.getInstance();
+
+	try {
+
+	    String[] args = { "-dQUIET", "-dNOPAUSE", "-dBATCH",
+		    "-sDEVICE=nullpage" };
+	    gs.initialize(args);
+
+	    // change resolution on the running interpreter
+	    gs.setParsedParam("HWResolution", "[150 150]");
+	    assertTrue(gs.getParsedParam("HWResolution").contains("150"));
+
+	    Map<String, Integer> types = gs.getParamTypes();
+	    assertTrue(types.containsKey("HWResolution"));
+
+	} catch (GhostscriptException e) {
+	    fail(e.getMessage());
+	}
+
+    }
+
+    public void testSingletonHoldsPoolPermit() throws Exception {
+
+	GhostscriptInstancePool pool = GhostscriptInstancePool.getInstance();
+	assertEquals(1, pool.getMaxSize());
+
+	Ghostscript gs = Ghostscript.getInstance();
+	gs.initialize(null);
+
+	// other threads wait for the singleton to be exited
+	final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+	Thread thread = new Thread() {
+
+	    @Override
+	    public void run() {
+		try {
+		    GhostscriptInstancePool.getInstance().borrow(100,
+			    TimeUnit.MILLISECONDS);
+		} catch (Throwable e) {
+		    failure.set(e);
+		}
+	    }
+	};
+	thread.start();
+	thread.join(10000);
+	assertTrue(failure.get() instanceof GhostscriptException);
+
+	// initializing thread fails instead of waiting for itself
+	try {
+	    pool.borrow();
+	    fail("Borrowing should fail");
+	} catch (GhostscriptException e) {
+	    assertTrue(e.getMessage().contains("singleton"));
+	}
+
+	gs.exit();
+	pool.release(pool.borrow(100, TimeUnit.MILLISECONDS));
+    }
 }
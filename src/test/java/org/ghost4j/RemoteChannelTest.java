@@ -0,0 +1,230 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.document.Document;
+import org.ghost4j.document.PDFDocument;
+import org.ghost4j.util.UnixSocketUtil;
+
+/**
+ * RemoteChannel tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteChannelTest extends TestCase {
+
+    private RemoteChannel client;
+    private RemoteChannel server;
+
+    public RemoteChannelTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	// connected channels over TCP loopback
+	ServerSocketChannel serverChannel = ServerSocketChannel.open();
+	serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+		0));
+	client = new RemoteChannel(SocketChannel.open(serverChannel
+		.getLocalAddress()));
+	server = new RemoteChannel(serverChannel.accept());
+	serverChannel.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+	client.close();
+	server.close();
+
+	super.tearDown();
+    }
+
+    public void testObjectsAndBytes() throws Exception {
+
+	client.writeObject("settings");
+	client.writeBytes(new byte[] { 1, 2, 3 });
+	client.writeBytes(null);
+	client.flush();
+
+	assertEquals("settings", server.readObject());
+	assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, server.readBytes()));
+	assertNull(server.readBytes());
+    }
+
+    public void testData() throws Exception {
+
+	// more data than socket buffers: written by another thread
+	final byte[] data = new byte[1024 * 1024];
+	for (int i = 0; i < data.length; i++) {
+	    data[i] = (byte) i;
+	}
+
+	Thread writer = new Thread() {
+
+	    @Override
+	    public void run() {
+		try {
+		    OutputStream outputStream = client.openDataOutputStream();
+		    outputStream.write(data, 0, 10);
+		    outputStream.write(data[10]);
+		    outputStream.write(data, 11, data.length - 11);
+		    outputStream.close();
+		    client.flush();
+		} catch (Exception e) {
+		    // reported as missing data
+		}
+	    }
+	};
+	writer.start();
+
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	server.readData(baos);
+	writer.join();
+
+	assertTrue(Arrays.equals(data, baos.toByteArray()));
+    }
+
+    public void testDocument() throws Exception {
+
+	PDFDocument document = new PDFDocument();
+	document.load(this.getClass().getClassLoader()
+		.getResourceAsStream("input.pdf"));
+
+	Thread writer = new DocumentWriter(client, document);
+	writer.start();
+
+	Document received = server.readDocument();
+	writer.join();
+
+	assertTrue(received instanceof PDFDocument);
+	assertTrue(Arrays.equals(document.getContent(), received.getContent()));
+    }
+
+    public void testDocumentClassCheck() throws Exception {
+
+	// class name of a frame not naming a document: not instantiated
+	client.writeObject(StringBuilder.class.getName());
+	client.flush();
+
+	try {
+	    server.readDocument();
+	    fail("Class should be rejected");
+	} catch (IOException e) {
+	    assertTrue(e.getMessage().contains("Not a document class"));
+	}
+    }
+
+    public void testError() throws Exception {
+
+	server.writeError(new IllegalStateException("remote failure"));
+	server.flush();
+
+	try {
+	    client.readObject();
+	    fail("Remote exception should be thrown");
+	} catch (IllegalStateException e) {
+	    assertEquals("remote failure", e.getMessage());
+	}
+    }
+
+    public void testSharedMemory() throws Exception {
+
+	File directory = File.createTempFile("ghost4j", ".shm");
+	directory.delete();
+	directory.mkdirs();
+	client.setSharedMemoryDirectory(directory);
+
+	byte[] data = new byte[2 * 1024 * 1024];
+	for (int i = 0; i < data.length; i++) {
+	    data[i] = (byte) i;
+	}
+
+	// large payloads are only announced on the channel
+	client.writeBytes(data);
+	OutputStream outputStream = client.openDataOutputStream();
+	outputStream.write(data);
+	outputStream.close();
+	client.flush();
+	assertEquals(2, directory.list().length);
+
+	assertTrue(Arrays.equals(data, server.readBytes()));
+	ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	server.readData(baos);
+	assertTrue(Arrays.equals(data, baos.toByteArray()));
+
+	// files are deleted once read
+	assertEquals(0, directory.list().length);
+	directory.delete();
+    }
+
+    public void testUnixSocket() throws Exception {
+
+	if (!UnixSocketUtil.isSupported()) {
+	    return;
+	}
+
+	File socketFile = File.createTempFile("ghost4j", ".sock");
+	socketFile.delete();
+
+	ServerSocketChannel serverChannel = UnixSocketUtil.bind(socketFile);
+	try {
+	    RemoteChannel unixClient = new RemoteChannel(
+		    UnixSocketUtil.connect(socketFile));
+	    RemoteChannel unixServer = new RemoteChannel(serverChannel.accept());
+
+	    unixClient.writeObject(Integer.valueOf(42));
+	    unixClient.flush();
+	    assertEquals(42, unixServer.readObject());
+
+	    unixClient.close();
+	    unixServer.close();
+	} finally {
+	    serverChannel.close();
+	    socketFile.delete();
+	}
+    }
+
+    /**
+     * Thread sending a document.
+     */
+    private static class DocumentWriter extends Thread {
+
+	private final RemoteChannel channel;
+	private final Document document;
+
+	public DocumentWriter(RemoteChannel channel, Document document) {
+	    this.channel = channel;
+	    this.document = document;
+	}
+
+	@Override
+	public void run() {
+	    try {
+		channel.writeDocument(document);
+		channel.flush();
+	    } catch (Exception e) {
+		// reported as missing data
+	    }
+	}
+    }
+}
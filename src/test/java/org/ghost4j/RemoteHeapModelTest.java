@@ -0,0 +1,98 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.converter.PDFConverter;
+import org.ghost4j.renderer.SimpleRenderer;
+
+/**
+ * RemoteHeapModel tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteHeapModelTest extends TestCase {
+
+    private static final long MB = 1024 * 1024;
+
+    public RemoteHeapModelTest(String testName) {
+	super(testName);
+    }
+
+    public void testWorkloadKey() throws Exception {
+
+	assertEquals(RemoteHeapModel.getWorkloadKey(SimpleRenderer.class, 300,
+		"pages", 5), RemoteHeapModel.getWorkloadKey(
+		SimpleRenderer.class, 300, "pages", 8));
+	assertFalse(RemoteHeapModel.getWorkloadKey(SimpleRenderer.class, 300,
+		"pages", 8).equals(
+		RemoteHeapModel.getWorkloadKey(SimpleRenderer.class, 300,
+			"pages", 9)));
+	assertFalse(RemoteHeapModel.getWorkloadKey(SimpleRenderer.class, 300,
+		"pages", 1).equals(
+		RemoteHeapModel.getWorkloadKey(SimpleRenderer.class, 72,
+			"pages", 1)));
+    }
+
+    public void testEstimate() throws Exception {
+
+	RemoteHeapModel model = new RemoteHeapModel(64, 512);
+	String key = RemoteHeapModel.getWorkloadKey(PDFConverter.class, 0,
+		"mb", 1);
+
+	// never observed: default size within floor and ceiling
+	assertEquals(65, model.estimateXmx(key, 65));
+	assertEquals(64, model.estimateXmx(key, 10));
+	assertEquals(512, model.estimateXmx(key, 1000));
+
+	// sized from the largest observed live heap
+	model.record(key, 200 * MB, 300 * MB);
+	model.record(key, 100 * MB, 150 * MB);
+	assertEquals(200 * MB, model.getLiveHeap(key));
+	assertEquals(300 * MB, model.getPeakRss(key));
+	assertEquals(416, model.estimateXmx(key, 65));
+
+	// within the ceiling
+	model.record(key, 300 * MB, -1);
+	assertEquals(512, model.estimateXmx(key, 65));
+
+	// small jobs still get the floor
+	model.clear();
+	model.record(key, 10 * MB, -1);
+	assertEquals(64, model.estimateXmx(key, 65));
+
+	// default ceiling is finite
+	assertTrue(RemoteHeapModel.getDefaultMaxXmx() > 0);
+	assertEquals(-1, model.getPeakRss(key));
+    }
+
+    public void testFailure() throws Exception {
+
+	RemoteHeapModel model = new RemoteHeapModel(64, 0);
+	String key = RemoteHeapModel.getWorkloadKey(PDFConverter.class, 0,
+		"mb", 1);
+
+	// a worker killed with 100 MB needs more next time
+	model.recordFailure(key, 100);
+	assertTrue(model.estimateXmx(key, 65) > 200);
+    }
+
+    public void testHistory() throws Exception {
+
+	RemoteHeapModel model = new RemoteHeapModel(1, 0);
+	String key = RemoteHeapModel.getWorkloadKey(PDFConverter.class, 0,
+		"mb", 1);
+
+	// an old observation is forgotten after enough smaller ones
+	model.record(key, 500 * MB, -1);
+	for (int i = 0; i < 8; i++) {
+	    model.record(key, 40 * MB, -1);
+	}
+	assertEquals(40 * MB, model.getLiveHeap(key));
+    }
+}
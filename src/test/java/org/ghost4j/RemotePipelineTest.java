@@ -0,0 +1,111 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.converter.ConverterException;
+import org.ghost4j.converter.PDFConverter;
+import org.ghost4j.document.Document;
+import org.ghost4j.document.PDFDocument;
+
+/**
+ * RemotePipeline tests (start worker JVMs, Ghostscript is not needed).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemotePipelineTest extends TestCase {
+
+    private PDFDocument document;
+
+    public RemotePipelineTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	document = new PDFDocument();
+	document.load(this.getClass().getClassLoader()
+		.getResourceAsStream("input.pdf"));
+    }
+
+    public void testResidentDocuments() throws Exception {
+
+	// Cajo (worker not kept in the pool)
+	RemoteWorkerPool pool = RemoteWorkerPool.getInstance();
+	long idleTimeout = pool.getIdleTimeout();
+	System.setProperty(RemoteWorkerPool.PROPERTY_NAME_UNIX_SOCKET, "false");
+	pool.setIdleTimeout(0);
+	try {
+	    checkResidentDocuments();
+	} finally {
+	    pool.setIdleTimeout(idleTimeout);
+	    System.clearProperty(RemoteWorkerPool.PROPERTY_NAME_UNIX_SOCKET);
+	}
+
+	// local socket (when supported)
+	checkResidentDocuments();
+    }
+
+    public void testUnregisteredComponent() throws Exception {
+
+	RemotePipeline pipeline = new RemotePipeline();
+	try {
+	    int documentId = pipeline.upload(document);
+
+	    try {
+		pipeline.convert(new UnregisteredConverter(), documentId,
+			new ByteArrayOutputStream());
+		fail("Unregistered component should be refused");
+	    } catch (ConverterException e) {
+		assertTrue(e.getCause() instanceof IllegalArgumentException);
+	    }
+
+	    // pipeline still usable
+	    assertNotNull(pipeline.download(documentId));
+	} finally {
+	    pipeline.close();
+	}
+    }
+
+    private void checkResidentDocuments() throws Exception {
+
+	RemotePipeline pipeline = new RemotePipeline();
+	try {
+	    int first = pipeline.upload(document);
+	    int second = pipeline.upload(document);
+	    assertTrue(first != second);
+
+	    Document received = pipeline.download(first);
+	    assertTrue(received instanceof PDFDocument);
+	    assertTrue(Arrays.equals(document.getContent(),
+		    received.getContent()));
+
+	    pipeline.remove(first);
+	    try {
+		pipeline.download(first);
+		fail("Removed document should not be found");
+	    } catch (Exception e) {
+		// expected
+	    }
+	    assertNotNull(pipeline.download(second));
+	} finally {
+	    pipeline.close();
+	}
+    }
+
+    /**
+     * Converter not registered in the remote component server.
+     */
+    public static class UnregisteredConverter extends PDFConverter {
+    }
+}
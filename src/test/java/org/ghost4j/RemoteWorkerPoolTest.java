@@ -0,0 +1,352 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.converter.PDFConverter;
+import org.ghost4j.converter.RemoteConverter;
+
+/**
+ * RemoteWorkerPool supervision tests (start worker JVMs, Ghostscript is not
+ * needed).
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class RemoteWorkerPoolTest extends TestCase {
+
+    private RemoteWorkerPool pool;
+    private PDFConverter component;
+
+    public RemoteWorkerPoolTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+
+	pool = new RemoteWorkerPool(0, 2, 60000);
+	pool.setHeartbeatInterval(0);
+	component = new PDFConverter();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+
+	pool.close();
+
+	super.tearDown();
+    }
+
+    public void testLeaseAndReturn() throws Exception {
+
+	RemoteWorker worker = pool.borrow(component, RemoteConverter.class, 64);
+	assertTrue(worker.isRunning());
+	assertEquals(1, pool.getSize());
+	assertEquals(0, pool.getIdleCount());
+
+	pool.release(worker);
+	assertEquals(1, pool.getSize());
+	assertEquals(1, pool.getIdleCount());
+
+	// idle worker heap too small: another worker is started
+	RemoteWorker larger = pool.borrow(component, RemoteConverter.class, 128);
+	assertNotSame(worker, larger);
+	assertEquals(2, pool.getSize());
+	pool.release(larger);
+
+	// most recently released worker with a large enough heap is reused
+	assertSame(larger, pool.borrow(component, RemoteConverter.class, 64));
+	assertEquals(1, pool.getIdleCount());
+	pool.release(larger);
+
+	// no idle timeout: released workers are stopped
+	pool.setIdleTimeout(0);
+	RemoteWorker stopped = pool.borrow(component, RemoteConverter.class, 64);
+	pool.release(stopped);
+	assertTrue(stopped.waitForExit(10000));
+    }
+
+    public void testMaxSize() throws Exception {
+
+	final RemoteWorker first = pool.borrow(component,
+		RemoteConverter.class, 64);
+	RemoteWorker second = pool.borrow(component, RemoteConverter.class, 64);
+	assertEquals(2, pool.getSize());
+
+	// pool full: waits for a worker to be released
+	final RemoteWorker[] third = new RemoteWorker[1];
+	Thread thread = new Thread() {
+
+	    @Override
+	    public void run() {
+		try {
+		    third[0] = pool.borrow(component, RemoteConverter.class, 64);
+		} catch (IOException e) {
+		    // reported as no worker
+		}
+	    }
+	};
+	thread.start();
+	thread.join(500);
+	assertTrue(thread.isAlive());
+
+	pool.release(first);
+	thread.join(10000);
+	assertSame(first, third[0]);
+	assertEquals(2, pool.getSize());
+
+	// pool full with an idle worker unfit for the job: the idle worker is
+	// stopped to make room
+	pool.release(second);
+	RemoteWorker larger = pool.borrow(component, RemoteConverter.class, 128);
+	assertTrue(second.waitForExit(10000));
+	assertEquals(2, pool.getSize());
+
+	pool.release(first);
+	pool.release(larger);
+    }
+
+    public void testIdleEviction() throws Exception {
+
+	pool.setMinSize(1);
+	pool.setIdleTimeout(100);
+
+	RemoteWorker first = pool.borrow(component, RemoteConverter.class, 64);
+	RemoteWorker second = pool.borrow(component, RemoteConverter.class, 64);
+	pool.release(first);
+	pool.release(second);
+	assertEquals(2, pool.getIdleCount());
+
+	// least recently released worker stopped, minimum size kept
+	Thread.sleep(200);
+	pool.evictIdleWorkers();
+	assertEquals(1, pool.getSize());
+	assertEquals(1, pool.getIdleCount());
+	assertTrue(first.waitForExit(10000));
+	assertTrue(second.isRunning());
+    }
+
+    public void testRecycling() throws Exception {
+
+	pool.setMaxJobs(2);
+
+	RemoteWorker worker = pool.borrow(component, RemoteConverter.class, 64);
+	pool.release(worker);
+	assertSame(worker, pool.borrow(component, RemoteConverter.class, 64));
+	pool.release(worker);
+
+	// recycled after its second job, and replaced
+	assertTrue(worker.waitForExit(10000));
+	RemoteWorker replacement = waitForIdleWorker();
+	assertNotSame(worker, replacement);
+	assertTrue(replacement.isRunning());
+    }
+
+    public void testHeartbeat() throws Exception {
+
+	RemoteWorker worker = pool.borrow(component, RemoteConverter.class, 64);
+	pool.release(worker);
+
+	// healthy worker stays idle
+	pool.setHeartbeatInterval(1);
+	Thread.sleep(10);
+	pool.checkIdleWorkers();
+	assertEquals(1, pool.getIdleCount());
+	assertTrue(worker.isRunning());
+	assertTrue(worker.getPeakRss() != 0);
+
+	// dead worker is replaced
+	worker.stop();
+	worker.waitForExit(10000);
+	Thread.sleep(10);
+	pool.checkIdleWorkers();
+	RemoteWorker replacement = waitForIdleWorker();
+	assertNotSame(worker, replacement);
+	assertEquals(1, pool.getSize());
+    }
+
+    public void testJobMemoryUsage() throws Exception {
+
+	RemoteWorker worker = pool.borrow(component, RemoteConverter.class, 64);
+	assertNull(worker.getJobMemoryUsage());
+
+	// reported with the call result
+	assertEquals(Boolean.TRUE,
+		worker.invoke("isStandAloneModeSupported", null));
+	long[] usage = worker.getJobMemoryUsage();
+	assertNotNull(usage);
+	assertTrue(usage[0] > 0);
+
+	// reset for the next lease
+	pool.release(worker);
+	assertSame(worker, pool.borrow(component, RemoteConverter.class, 64));
+	assertNull(worker.getJobMemoryUsage());
+	pool.release(worker);
+    }
+
+    public void testCrashRetry() throws Exception {
+
+	PDFConverter retried = new PDFConverter();
+	retried.setMaxProcessCount(1);
+
+	// first worker dies during the job, second one completes it
+	String result = retried.runRemoteJob(RemoteConverter.class, "test",
+		64, new AbstractRemoteComponent.RemoteJob<String>() {
+
+		    private int attempts;
+
+		    @Override
+		    protected String run(RemoteWorker worker) throws Exception {
+
+			if (++attempts == 1) {
+			    worker.stop();
+			    throw new EOFException("Connection closed");
+			}
+			return "done";
+		    }
+		});
+	assertEquals("done", result);
+
+	// not retryable: crash reported
+	try {
+	    retried.runRemoteJob(RemoteConverter.class, "test", 64,
+		    new AbstractRemoteComponent.RemoteJob<String>() {
+
+			@Override
+			protected String run(RemoteWorker worker)
+				throws Exception {
+			    worker.stop();
+			    throw new EOFException("Connection closed");
+			}
+
+			@Override
+			protected boolean isRetryable() {
+			    return false;
+			}
+		    });
+	    fail("Crash should be reported");
+	} catch (RemoteWorkerException e) {
+	    assertEquals("Connection closed", e.getCause().getMessage());
+	}
+    }
+
+    public void testJobFailure() throws Exception {
+
+	PDFConverter failing = new PDFConverter();
+	failing.setMaxProcessCount(1);
+
+	// exception sent back by a running worker: thrown without waiting
+	final IOException failure = new IOException("No resident document 1");
+	final long[] start = new long[1];
+	try {
+	    failing.runRemoteJob(RemoteConverter.class, "test", 64,
+		    new AbstractRemoteComponent.RemoteJob<String>() {
+
+			@Override
+			protected String run(RemoteWorker worker)
+				throws Exception {
+			    start[0] = System.currentTimeMillis();
+			    throw failure;
+			}
+		    });
+	    fail("Job failure should be thrown");
+	} catch (IOException e) {
+	    assertSame(failure, e);
+	}
+	assertTrue(System.currentTimeMillis() - start[0] < 1000);
+
+	assertTrue(AbstractRemoteComponent
+		.isTransportFailure(new EOFException()));
+	assertTrue(AbstractRemoteComponent.isTransportFailure(new IOException(
+		"Connection reset by peer")));
+	assertFalse(AbstractRemoteComponent.isTransportFailure(failure));
+    }
+
+    public void testJobTimeout() throws Exception {
+
+	PDFConverter limited = new PDFConverter();
+	limited.setMaxProcessCount(1);
+	limited.setJobTimeout(500);
+
+	// hanging job: worker killed at the deadline, job not retried
+	final RemoteWorker[] leased = new RemoteWorker[1];
+	final int[] attempts = new int[1];
+	try {
+	    limited.runRemoteJob(RemoteConverter.class, "test", 64,
+		    new AbstractRemoteComponent.RemoteJob<String>() {
+
+			@Override
+			protected String run(RemoteWorker worker)
+				throws Exception {
+			    attempts[0]++;
+			    leased[0] = worker;
+			    // stands for a call waiting for the worker answer
+			    worker.waitForExit(30000);
+			    throw new EOFException("Connection closed");
+			}
+		    });
+	    fail("Job should time out");
+	} catch (IOException e) {
+	    assertTrue(e.getMessage().contains("timed out"));
+	}
+	assertEquals(1, attempts[0]);
+	assertFalse(leased[0].isRunning());
+
+	// next job runs on another worker
+	assertEquals("done", limited.runRemoteJob(RemoteConverter.class,
+		"test", 64, new AbstractRemoteComponent.RemoteJob<String>() {
+
+		    @Override
+		    protected String run(RemoteWorker worker) throws Exception {
+			assertNotSame(leased[0], worker);
+			return "done";
+		    }
+		}));
+    }
+
+    public void testPrivateDirectory() throws Exception {
+
+	File directory = RemoteWorkerPool.createPrivateDirectory(null);
+	try {
+	    assertTrue(directory.isDirectory());
+	    if (FileSystems.getDefault().supportedFileAttributeViews()
+		    .contains("posix")) {
+		assertEquals("rwx------",
+			PosixFilePermissions.toString(Files
+				.getPosixFilePermissions(directory.toPath())));
+	    }
+	} finally {
+	    directory.delete();
+	}
+    }
+
+    /**
+     * Waits for a worker to be idle in the pool, then leases it.
+     */
+    private RemoteWorker waitForIdleWorker() throws Exception {
+
+	long deadline = System.currentTimeMillis() + 30000;
+	while (pool.getIdleCount() == 0) {
+	    assertTrue("No idle worker", System.currentTimeMillis() < deadline);
+	    Thread.sleep(50);
+	}
+
+	RemoteWorker worker = pool.borrow(component, RemoteConverter.class, 64);
+	pool.release(worker);
+
+	return worker;
+    }
+}
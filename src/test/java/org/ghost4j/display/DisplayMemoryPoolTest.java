@@ -0,0 +1,86 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+package org.ghost4j.display;
+
+import junit.framework.TestCase;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+/**
+ * DisplayMemoryPool tests.
+ *
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class DisplayMemoryPoolTest extends TestCase {
+
+    public DisplayMemoryPoolTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    public void testReuseSameSizeClass() throws Exception {
+
+	DisplayMemoryPool pool = new DisplayMemoryPool(2);
+
+	Pointer first = pool.allocate(100, 200, 0x804, 60000);
+	assertEquals(1, pool.getUsedCount());
+	assertEquals(60000, pool.getUsedBytes());
+
+	assertTrue(pool.free(first));
+	assertEquals(0, pool.getUsedCount());
+	assertEquals(1, pool.getIdleCount());
+
+	// same size class: memory is reused
+	Pointer second = pool.allocate(100, 200, 0x804, 60000);
+	assertEquals(Pointer.nativeValue(first), Pointer.nativeValue(second));
+	assertEquals(1, pool.getHitCount());
+	assertEquals(1, pool.getMissCount());
+
+	// other size class: new memory
+	Pointer third = pool.allocate(50, 100, 0x804, 15000);
+	assertEquals(2, pool.getMissCount());
+
+	pool.free(second);
+	pool.free(third);
+	assertEquals(2, pool.getIdleCount());
+	assertEquals(75000, pool.getIdleBytes());
+
+	pool.clear();
+	assertEquals(0, pool.getIdleCount());
+	assertEquals(0, pool.getIdleBytes());
+    }
+
+    public void testMaxIdlePerClass() throws Exception {
+
+	DisplayMemoryPool pool = new DisplayMemoryPool(1);
+
+	Pointer first = pool.allocate(10, 10, 0x804, 300);
+	Pointer second = pool.allocate(10, 10, 0x804, 300);
+
+	pool.free(first);
+	pool.free(second);
+
+	assertEquals(1, pool.getIdleCount());
+    }
+
+    public void testFreeUnknownMemory() throws Exception {
+
+	DisplayMemoryPool pool = new DisplayMemoryPool(1);
+
+	assertFalse(pool.free(new Memory(16)));
+    }
+}
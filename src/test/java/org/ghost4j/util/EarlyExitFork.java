@@ -0,0 +1,17 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.util;
+
+public class EarlyExitFork {
+
+    public static void main(String[] args) throws Exception {
+
+	System.out.println("START FORKED");
+	System.exit(1);
+    }
+}
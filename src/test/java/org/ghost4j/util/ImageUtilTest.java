@@ -0,0 +1,101 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.ghost4j.display.PageRaster;
+import org.ghost4j.display.Separation;
+
+/**
+ * ImageUtil tests.
+ * 
+ * @author Gilles Grousset (gi.grousset@gmail.com)
+ */
+public class ImageUtilTest extends TestCase {
+
+    public ImageUtilTest(String testName) {
+	super(testName);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+	super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+	super.tearDown();
+    }
+
+    /**
+     * Builds a 2x1 separation raster (8 bytes per pixel): first pixel is full
+     * cyan, second pixel is full spot color (pure red equivalent).
+     */
+    private PageRaster createSeparationRaster() {
+
+	byte[] data = new byte[16];
+	data[0] = (byte) 255;
+	data[8 + 4] = (byte) 255;
+
+	List<Separation> separations = new ArrayList<Separation>();
+	separations.add(new Separation(0, "Cyan", 65535, 0, 0, 0));
+	separations.add(new Separation(1, "Magenta", 0, 65535, 0, 0));
+	separations.add(new Separation(2, "Yellow", 0, 0, 65535, 0));
+	separations.add(new Separation(3, "Black", 0, 0, 0, 65535));
+	separations.add(new Separation(4, "Spot", 0, 65535, 65535, 0));
+
+	PageRaster raster = new PageRaster();
+	raster.setWidth(2);
+	raster.setHeight(1);
+	raster.setRaster(16);
+	raster.setFormat(0x80800);
+	raster.setData(data);
+	raster.setSeparations(separations);
+
+	return raster;
+    }
+
+    public void testGetSeparationPlane() throws Exception {
+
+	PageRaster raster = createSeparationRaster();
+
+	byte[] cyan = ImageUtil.getSeparationPlane(raster, 0);
+	assertEquals(2, cyan.length);
+	assertEquals(255, cyan[0] & 0xff);
+	assertEquals(0, cyan[1] & 0xff);
+
+	byte[] spot = ImageUtil.getSeparationPlane(raster, 4);
+	assertEquals(0, spot[0] & 0xff);
+	assertEquals(255, spot[1] & 0xff);
+    }
+
+    public void testGetSeparationCoverage() throws Exception {
+
+	double[] coverage = ImageUtil
+		.getSeparationCoverage(createSeparationRaster());
+
+	assertEquals(5, coverage.length);
+	assertEquals(0.5, coverage[0], 0.001);
+	assertEquals(0.0, coverage[3], 0.001);
+	assertEquals(0.5, coverage[4], 0.001);
+    }
+
+    public void testConvertSeparationPageRasterToImage() throws Exception {
+
+	BufferedImage image = (BufferedImage) ImageUtil
+		.converterPageRasterToImage(createSeparationRaster());
+
+	assertEquals(0x00ffff, image.getRGB(0, 0) & 0xffffff);
+	assertEquals(0xff0000, image.getRGB(1, 0) & 0xffffff);
+    }
+}
@@ -5,6 +5,9 @@
 
 package org.ghost4j.util;
 
+import java.io.File;
+import java.io.IOException;
+
 import junit.framework.TestCase;
 
 /**
@@ -43,4 +46,49 @@ public class JavaForkTest extends TestCase {
 
     }
 
+    public void testWaitUntilReady() throws Exception {
+
+	JavaFork fork = new JavaFork();
+	fork.setStartClass(ReadyFork.class);
+	fork.setReadyMessagePrefix("ghost4j.remote.port=");
+	fork.start();
+
+	// other output lines are skipped
+	assertEquals("4321", fork.waitUntilReady(30000).trim());
+	assertTrue(fork.waitFor(30000));
+    }
+
+    public void testStoppedBeforeReady() throws Exception {
+
+	JavaFork fork = new JavaFork();
+	fork.setStartClass(EarlyExitFork.class);
+	fork.setReadyMessagePrefix("ghost4j.remote.port=");
+	fork.start();
+
+	try {
+	    fork.waitUntilReady(30000);
+	    fail("Ready message expected to be missing");
+	} catch (IOException e) {
+	    assertTrue(e.getMessage().contains("stopped before being ready"));
+	}
+    }
+
+    public void testSharedArchiveFile() throws Exception {
+
+	JavaFork fork = new JavaFork();
+	fork.setStartClass(ForkTest.class);
+	assertNull(fork.getSharedArchiveFile("a.jar"));
+
+	// one archive per classpath
+	fork.setSharedArchiveDirectory(new File("target"));
+	File archive = fork.getSharedArchiveFile("a.jar");
+	assertEquals(archive, fork.getSharedArchiveFile("a.jar"));
+	assertFalse(archive.equals(fork.getSharedArchiveFile("b.jar")));
+	assertTrue(archive.getName().matches(
+		"org\\.ghost4j\\.util\\.ForkTest-[0-9a-f]{40}\\.jsa"));
+
+	// version of the java command
+	assertTrue(JavaFork.getJavaVersion() >= 8);
+    }
+
 }
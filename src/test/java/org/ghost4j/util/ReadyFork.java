@@ -0,0 +1,19 @@
+/*
+ * Ghost4J: a Java wrapper for Ghostscript API.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at http://www.gnu.org/licenses/lgpl.html.
+ */
+
+package org.ghost4j.util;
+
+public class ReadyFork {
+
+    public static void main(String[] args) throws Exception {
+
+	System.out.println("START FORKED");
+	System.out.println("ghost4j.remote.port=4321");
+	Thread.sleep(1000);
+	System.out.println("END FORKED");
+    }
+}